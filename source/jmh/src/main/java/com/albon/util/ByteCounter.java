@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * <p>
+ * This ByteCounter class counts the input bytes processed by a benchmark,
+ * JMH reports them as a secondary result "bytes" in bytes per second next
+ * to the rows per second of the benchmark.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>One instance per benchmark thread.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ByteCounter {
+
+	/**
+	 * Input bytes processed in the current iteration.
+	 */
+	public long bytes;
+
+	/**
+	 * Reset the counter before each iteration.
+	 */
+	@Setup(Level.Iteration)
+	public void reset() {
+		bytes = 0L;
+	}
+
+}
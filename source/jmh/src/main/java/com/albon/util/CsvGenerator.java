@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * <p>
+ * This CsvGenerator class writes synthetic input files A and B with the
+ * headers of test_files, and the template of test_files, for benchmarks
+ * of 1M up to 100M rows. Rows are built on the fly thus the size of the
+ * files is only bound by the disk.
+ * </p>
+ * <p>
+ * Every row is ASCII: one character is one byte in the default charset.
+ * The same seed always writes the same files.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class CsvGenerator {
+
+	/**
+	 * Shape of the generated rows.
+	 */
+	public enum Shape {
+		/**
+		 * The 6 columns of test_files with a short Data column.
+		 */
+		NARROW,
+		/**
+		 * NARROW followed by WIDE_COLUMNS extra columns.
+		 */
+		WIDE,
+		/**
+		 * The 6 columns of test_files with a large quoted HTML Data column.
+		 */
+		HTML
+	}
+
+	/**
+	 * Default length of the HTML Data column.
+	 */
+	public static final int DEFAULT_HTML_CHARS = 4096;
+
+	/**
+	 * Number of extra columns of a WIDE row.
+	 */
+	public static final int WIDE_COLUMNS = 60;
+
+	/**
+	 * Number of distinct HTML Data columns, picked row after row.
+	 */
+	private static final int HTML_VARIANTS = 64;
+
+	/**
+	 * Size of the write buffer.
+	 */
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * Header of input A.
+	 */
+	private static final String A_HEADER = "FirstName,LastName,Address,Website,Data,ID";
+
+	/**
+	 * Header of input B.
+	 */
+	private static final String B_HEADER = "\"First Name\",LastName,ADDRESS,URL,\"da ta\",I.D.";
+
+	/**
+	 * Header of the template.
+	 */
+	private static final String TEMPLATE = "ID,Data,LastName,URL";
+
+	/**
+	 * Shape of the rows.
+	 */
+	private final Shape shape;
+
+	/**
+	 * HTML Data columns, quoted with their double quotes doubled.
+	 */
+	private final String[] htmls;
+
+	/**
+	 * Row builder, reused.
+	 */
+	private final StringBuilder row;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pShape Shape of the rows
+	 * @param htmlChars int approximate length of the HTML Data column
+	 * @param seed long seed of the random content
+	 */
+	public CsvGenerator(final Shape pShape, final int htmlChars, final long seed) {
+		Helper.checkObject(pShape, "pShape");
+		Random random = new Random(seed);
+		shape = pShape;
+		htmls = new String[HTML_VARIANTS];
+		if (shape == Shape.HTML) {
+			for (int index = 0; index < HTML_VARIANTS; index++) {
+				htmls[index] = html(random, htmlChars / 2 + random.nextInt(htmlChars + 1));
+			}
+		}
+		row = new StringBuilder(shape == Shape.HTML ? htmlChars * 2 + 256 : 1024);
+	}
+
+	/**
+	 * Build a quoted HTML page with attributes in doubled double quotes.
+	 *
+	 * @param random Random
+	 * @param chars int approximate length
+	 * @return String
+	 */
+	private static String html(final Random random, final int chars) {
+		StringBuilder sb = new StringBuilder(chars + 128);
+		sb.append("\"<!DOCTYPE html><html lang=\"\"en\"\"><head><meta charset=\"\"utf-8\"\">")
+			.append("<title>Philippine Interisland Shipping Association</title></head><body>");
+		while (sb.length() < chars) {
+			sb.append("<div class=\"\"c").append(random.nextInt(100))
+				.append("\"\">Lorem ipsum, dolor sit amet ").append(random.nextInt(100000))
+				.append("</div>");
+		}
+		sb.append("</body></html>\"");
+		return sb.toString();
+	}
+
+	/**
+	 * Get the header of an input.
+	 *
+	 * @param b boolean true for input B
+	 * @return String
+	 */
+	public String header(final boolean b) {
+		row.setLength(0);
+		row.append(b ? B_HEADER : A_HEADER);
+		if (shape == Shape.WIDE) {
+			for (int column = 0; column < WIDE_COLUMNS; column++) {
+				row.append(",Extra").append(column);
+			}
+		}
+		return row.toString();
+	}
+
+	/**
+	 * Get the template header.
+	 *
+	 * @return String
+	 */
+	public static String template() {
+		return TEMPLATE;
+	}
+
+	/**
+	 * Build one row, valid until the next call.
+	 *
+	 * @param index long row number
+	 * @param b boolean true for input B
+	 * @return StringBuilder without line terminator
+	 */
+	public StringBuilder row(final long index, final boolean b) {
+		StringBuilder sb = row;
+		sb.setLength(0);
+		sb.append("First").append(index % 1000L).append(',');
+		// B has a longer LastName every third row
+		sb.append("\"Dela Cruz ").append(index % 97L);
+		if (b && index % 3L == 0L) {
+			sb.append(" Jr.");
+		}
+		sb.append("\",\"").append(index).append(" Jupiter Planet, Quantum St.\",");
+		sb.append("https://example.com/me?i=").append(index % 7L)
+			.append("&uid=").append(index).append(',');
+		if (shape == Shape.HTML) {
+			sb.append(htmls[(int) (index % HTML_VARIANTS)]);
+		}
+		else {
+			sb.append("data").append(index % 10007L);
+		}
+		sb.append(',').append(index);
+		if (shape == Shape.WIDE) {
+			for (int column = 0; column < WIDE_COLUMNS; column++) {
+				sb.append(",v").append(column).append('_').append(index % 89L);
+			}
+		}
+		return sb;
+	}
+
+	/**
+	 * Write a.csv, b.csv and template.csv into a directory.
+	 *
+	 * @param dir File directory, created if missing
+	 * @param rows long number of rows of each input
+	 * @throws IOException If any error at File I/O level
+	 */
+	public void write(final File dir, final long rows) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can't create "+ dir);
+		}
+		write(new File(dir, "a.csv"), rows, false);
+		write(new File(dir, "b.csv"), rows, true);
+		Writer w = open(new File(dir, "template.csv"));
+		try {
+			w.write(TEMPLATE);
+			w.write('\n');
+		} finally {
+			w.close();
+		}
+	}
+
+	/**
+	 * Write one input file.
+	 *
+	 * @param file File
+	 * @param rows long number of rows
+	 * @param b boolean true for input B
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void write(final File file, final long rows, final boolean b
+	) throws IOException {
+		Writer w = open(file);
+		try {
+			w.write(header(b));
+			w.write('\n');
+			for (long index = 0L; index < rows; index++) {
+				w.append(row(index, b));
+				w.write('\n');
+			}
+		} finally {
+			w.close();
+		}
+	}
+
+	/**
+	 * Open a file for writing in the default charset.
+	 *
+	 * @param file File
+	 * @return Writer
+	 * @throws IOException If any error at File I/O level
+	 */
+	private static Writer open(final File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(
+			new FileOutputStream(file), Charset.defaultCharset()), BUFFER_SIZE);
+	}
+
+	/**
+	 * Generate the files of a benchmark.
+	 *
+	 * @param args Array of String parameters
+	 * @throws IOException If any error at File I/O level
+	 */
+	public static void main(final String[] args) throws IOException {
+		long rows = 1000000L;
+		Shape shape = Shape.NARROW;
+		int htmlChars = DEFAULT_HTML_CHARS;
+		long seed = 1L;
+		File dir = null;
+		String par;
+		int index;
+		for (index = 0; index + 1 < args.length; index += 2) {
+			par = args[index];
+			if ("--rows".equals(par)) {
+				rows = Helper.atol(args[index + 1]);
+			}
+			else if ("--shape".equals(par)) {
+				shape = Shape.valueOf(args[index + 1].toUpperCase());
+			}
+			else if ("--html-chars".equals(par)) {
+				htmlChars = Helper.atoi(args[index + 1]);
+			}
+			else if ("--seed".equals(par)) {
+				seed = Helper.atol(args[index + 1]);
+			}
+			else if ("--o".equals(par)) {
+				dir = new File(args[index + 1]);
+			}
+			else {
+				break;
+			}
+		}
+		if (index != args.length || dir == null || rows < 1L || htmlChars < 1) {
+			System.err.println("usage: com.albon.util.CsvGenerator --o DIR"
+				+ " [--rows N] [--shape narrow|wide|html] [--html-chars C] [--seed S]");
+			System.exit(1);
+			return;
+		}
+		long start = System.currentTimeMillis();
+		new CsvGenerator(shape, htmlChars, seed).write(dir, rows);
+		System.err.println("Generated "+ rows +" "+ shape.name().toLowerCase()
+			+" rows into '"+ dir +"' in "+ (System.currentTimeMillis() - start) +" ms");
+	}
+
+}
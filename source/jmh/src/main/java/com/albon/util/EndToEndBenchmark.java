@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * This EndToEndBenchmark class measures a whole merge of generated files,
+ * from reading input A and B to the output file on disk. One operation is
+ * one merge of every row, the "bytes" result is the input throughput.
+ * </p>
+ * <p>
+ * The files are generated once per fork into a temporary directory, or
+ * into the directory of the system property mergecsv.bench.dir where they
+ * are kept and reused by the next run.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>One instance per benchmark.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class EndToEndBenchmark {
+
+	/**
+	 * Shape of the rows.
+	 */
+	@Param({"NARROW", "HTML"})
+	public CsvGenerator.Shape shape;
+
+	/**
+	 * Number of rows of each input.
+	 */
+	@Param({"100000"})
+	public long rows;
+
+	/**
+	 * How the merge runs: single, threads, mmap or utf8 (memory mapped and
+	 * merged as UTF-8 bytes).
+	 */
+	@Param({"single", "threads", "mmap", "utf8"})
+	public String mode;
+
+	/**
+	 * Directory of the input files.
+	 */
+	private File dir;
+
+	/**
+	 * True if dir is removed at the end.
+	 */
+	private boolean temporary;
+
+	/**
+	 * Output file.
+	 */
+	private File output;
+
+	/**
+	 * Bytes of input A and B.
+	 */
+	private long bytes;
+
+	/**
+	 * Engine of the mode, reused by every merge.
+	 */
+	private MergeEngine engine;
+
+	/**
+	 * Generate the input files unless already there, create the engine.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Setup
+	public void setUp() throws IOException {
+		String base = System.getProperty("mergecsv.bench.dir");
+		MergeOptions options = new MergeOptions();
+		temporary = base == null;
+		if (temporary) {
+			dir = Files.createTempDirectory("mergecsv-bench").toFile();
+		}
+		else {
+			dir = new File(base, shape.name().toLowerCase() + "-" + rows);
+		}
+		if (!new File(dir, "template.csv").isFile()) {
+			new CsvGenerator(shape, CsvGenerator.DEFAULT_HTML_CHARS, 1L).write(dir, rows);
+		}
+		output = File.createTempFile("mergecsv-bench", ".csv");
+		bytes = new File(dir, "a.csv").length() + new File(dir, "b.csv").length();
+		if ("threads".equals(mode)) {
+			options.setThreads(Math.max(2, Runtime.getRuntime().availableProcessors()));
+		}
+		else if ("mmap".equals(mode)) {
+			options.setMmap(true);
+		}
+		else if ("utf8".equals(mode)) {
+			options.setMmap(true);
+			options.setCharset(StandardCharsets.UTF_8);
+		}
+		engine = new MergeEngine(options);
+	}
+
+	/**
+	 * Merge input A and B into the output file.
+	 *
+	 * @param counter ByteCounter
+	 * @return MergeResult consumed by JMH
+	 * @throws MergeCsvException If any error at File I/O level
+	 */
+	@Benchmark
+	public MergeResult merge(final ByteCounter counter) throws MergeCsvException {
+		MergeResult result = engine.merge(
+			CsvSource.of(new File(dir, "template.csv").toPath()),
+			new CsvSource[] {
+				CsvSource.of(new File(dir, "a.csv").toPath()),
+				CsvSource.of(new File(dir, "b.csv").toPath())
+			},
+			output.toPath());
+		counter.bytes = counter.bytes + bytes;
+		return result;
+	}
+
+	/**
+	 * Merge looking at one byte at a time, to compare with merge searching
+	 * eight bytes at a time.
+	 *
+	 * @param counter ByteCounter
+	 * @return MergeResult consumed by JMH
+	 * @throws MergeCsvException If any error at File I/O level
+	 */
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dmergecsv.scan=scalar")
+	public MergeResult mergeScalar(final ByteCounter counter
+	) throws MergeCsvException {
+		return merge(counter);
+	}
+
+	/**
+	 * Stop the engine, remove the output and the temporary input files.
+	 */
+	@TearDown
+	public void tearDown() {
+		engine.close();
+		output.delete();
+		if (temporary) {
+			for (String name : new String[] {"a.csv", "b.csv", "template.csv"}) {
+				new File(dir, name).delete();
+			}
+			dir.delete();
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * This MergeBenchmark class measures the column projection and merge of
+ * already tokenized records of input A and B into the template columns,
+ * apart from reading and tokenizing. One operation is one merged row.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>One instance per benchmark thread.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MergeBenchmark {
+
+	/**
+	 * Number of rows merged by one invocation.
+	 */
+	static final int ROWS = 1024;
+
+	/**
+	 * Shape of the rows.
+	 */
+	@Param({"NARROW", "WIDE", "HTML"})
+	public CsvGenerator.Shape shape;
+
+	/**
+	 * Tokenized records of input A and B, row after row.
+	 */
+	private CsvTokenizer[][] records;
+
+	/**
+	 * Characters of every row of input A and B.
+	 */
+	private long chars;
+
+	/**
+	 * Writes the merged records.
+	 */
+	private RecordMerger merger;
+
+	/**
+	 * Merged records, reset on each invocation.
+	 */
+	private CharArrayOutputSink sink;
+
+	/**
+	 * Generate and tokenize the rows, map the template columns.
+	 */
+	@Setup
+	public void setUp() {
+		CsvGenerator generator = new CsvGenerator(shape,
+			CsvGenerator.DEFAULT_HTML_CHARS, 1L);
+		CsvTokenizer header = new CsvTokenizer();
+		String[] template;
+		String[] columns;
+		int[][] indexes;
+		String line;
+		header.tokenize(CsvGenerator.template());
+		template = header.toArray();
+		indexes = new int[2][template.length];
+		for (int input = 0; input < 2; input++) {
+			header.tokenize(generator.header(input == 1));
+			columns = header.toArray();
+			for (int index = 0; index < template.length; index++) {
+				for (int column = 0; column < columns.length; column++) {
+					if (template[index].equals(columns[column])) {
+						indexes[input][index] = column + 1;
+					}
+				}
+			}
+		}
+		merger = new RecordMerger(indexes);
+
+		records = new CsvTokenizer[ROWS][2];
+		chars = 0L;
+		for (int index = 0; index < ROWS; index++) {
+			for (int input = 0; input < 2; input++) {
+				records[index][input] = new CsvTokenizer();
+				line = generator.row(index, input == 1).toString();
+				records[index][input].tokenize(line);
+				chars = chars + line.length();
+			}
+		}
+		sink = new CharArrayOutputSink(ROWS * 64);
+	}
+
+	/**
+	 * Merge every pair of records.
+	 *
+	 * @param counter ByteCounter
+	 * @return CharArrayOutputSink merged records, consumed by JMH
+	 * @throws IOException never, records are merged in memory
+	 */
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public CharArrayOutputSink merge(final ByteCounter counter) throws IOException {
+		sink.reset();
+		for (CsvTokenizer[] pair : records) {
+			merger.write(pair, sink);
+		}
+		counter.bytes = counter.bytes + chars;
+		return sink;
+	}
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ * This TokenizerBenchmark class measures CsvTokenizer and Utf8CsvTokenizer
+ * on narrow, wide and large quoted HTML rows. One operation is one row, thus with -prof gc the
+ * gc.alloc.rate.norm result is the allocation per row.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>One instance per benchmark thread.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBenchmark {
+
+	/**
+	 * Number of rows tokenized by one invocation.
+	 */
+	static final int ROWS = 1024;
+
+	/**
+	 * Shape of the rows.
+	 */
+	@Param({"NARROW", "WIDE", "HTML"})
+	public CsvGenerator.Shape shape;
+
+	/**
+	 * Rows without line terminator.
+	 */
+	private char[][] rows;
+
+	/**
+	 * Rows encoded in UTF-8.
+	 */
+	private byte[][] utf8Rows;
+
+	/**
+	 * Characters of every row.
+	 */
+	private long chars;
+
+	/**
+	 * Tokenizer, reused row after row.
+	 */
+	private CsvTokenizer tokenizer;
+
+	/**
+	 * UTF-8 tokenizer, reused row after row.
+	 */
+	private Utf8CsvTokenizer utf8Tokenizer;
+
+	/**
+	 * Generate the rows.
+	 */
+	@Setup
+	public void setUp() {
+		CsvGenerator generator = new CsvGenerator(shape,
+			CsvGenerator.DEFAULT_HTML_CHARS, 1L);
+		StringBuilder sb;
+		rows = new char[ROWS][];
+		utf8Rows = new byte[ROWS][];
+		chars = 0L;
+		for (int index = 0; index < ROWS; index++) {
+			sb = generator.row(index, false);
+			rows[index] = new char[sb.length()];
+			sb.getChars(0, sb.length(), rows[index], 0);
+			utf8Rows[index] = sb.toString().getBytes(StandardCharsets.UTF_8);
+			chars = chars + sb.length();
+		}
+		tokenizer = new CsvTokenizer();
+		utf8Tokenizer = new Utf8CsvTokenizer();
+	}
+
+	/**
+	 * Split every row into field offsets.
+	 *
+	 * @param counter ByteCounter
+	 * @return int number of fields, consumed by JMH
+	 */
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public int tokenize(final ByteCounter counter) {
+		int fields = 0;
+		for (char[] row : rows) {
+			fields = fields + tokenizer.tokenize(row, row.length);
+		}
+		counter.bytes = counter.bytes + chars;
+		return fields;
+	}
+
+	/**
+	 * Split every UTF-8 row into field byte offsets.
+	 *
+	 * @param counter ByteCounter
+	 * @return int number of fields, consumed by JMH
+	 */
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public int tokenizeUtf8(final ByteCounter counter) {
+		int fields = 0;
+		for (byte[] row : utf8Rows) {
+			fields = fields + utf8Tokenizer.tokenize(row, row.length);
+		}
+		counter.bytes = counter.bytes + chars;
+		return fields;
+	}
+
+	/**
+	 * Split every UTF-8 row looking at one byte at a time, to compare with
+	 * tokenizeUtf8 searching eight bytes at a time.
+	 *
+	 * @param counter ByteCounter
+	 * @return int number of fields, consumed by JMH
+	 */
+	@Benchmark
+	@Fork(value = 1, jvmArgsAppend = "-Dmergecsv.scan=scalar")
+	@OperationsPerInvocation(ROWS)
+	public int tokenizeUtf8Scalar(final ByteCounter counter) {
+		return tokenizeUtf8(counter);
+	}
+
+	/**
+	 * Split every row and create a String of each field.
+	 *
+	 * @param counter ByteCounter
+	 * @return int number of characters, consumed by JMH
+	 */
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public int tokenizeToStrings(final ByteCounter counter) {
+		int length = 0;
+		for (char[] row : rows) {
+			tokenizer.tokenize(row, row.length);
+			for (String field : tokenizer.toArray()) {
+				length = length + field.length();
+			}
+		}
+		counter.bytes = counter.bytes + chars;
+		return length;
+	}
+
+}
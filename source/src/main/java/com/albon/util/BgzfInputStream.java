@@ -0,0 +1,302 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * This BgzfInputStream class decompresses a file of BGZF members in
+ * parallel. Each member declares its compressed size, so the members are
+ * read one after another without being decompressed, inflated on a pool of
+ * threads and handed to the reader in their original order.
+ * </p>
+ * <p>
+ * A few members are kept in flight, thus memory stays bounded whatever the
+ * size of the file. The CRC32 and size of every member are checked.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class BgzfInputStream extends InputStream {
+
+	/**
+	 * Size of a member trailer, CRC32 and size.
+	 */
+	private static final int TRAILER = 8;
+
+	/**
+	 * Compressed members.
+	 */
+	private final InputStream in;
+
+	/**
+	 * Threads inflating members.
+	 */
+	private final ExecutorService pool;
+
+	/**
+	 * Members being inflated, in file order.
+	 */
+	private final Deque<Future<byte[]>> pending;
+
+	/**
+	 * Maximum number of members in flight.
+	 */
+	private final int depth;
+
+	/**
+	 * Member being read.
+	 */
+	private byte[] current;
+
+	/**
+	 * Next byte to read in current.
+	 */
+	private int position;
+
+	/**
+	 * True once the last member has been read from the file.
+	 */
+	private boolean eof;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pIn InputStream compressed members, positioned on the first one
+	 * @param threads int number of threads inflating members
+	 */
+	BgzfInputStream(final InputStream pIn, final int threads) {
+		in = pIn;
+		pool = Gzip.pool(threads, "mergecsv-gunzip");
+		pending = new ArrayDeque<Future<byte[]>>();
+		depth = threads * 4;
+		current = new byte[0];
+		position = 0;
+		eof = false;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!next()) {
+			return -1;
+		}
+		int b = current[position] & 0xFF;
+		position = position + 1;
+		return b;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		int n;
+		if (len == 0) {
+			return 0;
+		}
+		if (!next()) {
+			return -1;
+		}
+		n = Math.min(len, current.length - position);
+		System.arraycopy(current, position, b, off, n);
+		position = position + n;
+		return n;
+	}
+
+	/**
+	 * Move to the next inflated member once the current one is read.
+	 *
+	 * @return boolean false at end of file
+	 * @throws IOException If any error at File I/O level or invalid member
+	 */
+	private boolean next() throws IOException {
+		byte[] block;
+		while (position >= current.length) {
+			while (!eof && pending.size() < depth) {
+				block = readMember();
+				if (block == null) {
+					eof = true;
+				}
+				else {
+					pending.add(pool.submit(inflater(block)));
+				}
+			}
+			if (pending.isEmpty()) {
+				return false;
+			}
+			try {
+				current = pending.poll().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while inflating", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) {
+					throw (IOException) e.getCause();
+				}
+				throw new IOException(e.getCause());
+			}
+			position = 0;
+		}
+		return true;
+	}
+
+	/**
+	 * Read the next compressed member.
+	 *
+	 * @return Array of byte whole member, null at end of file
+	 * @throws IOException If any error at File I/O level or invalid member
+	 */
+	private byte[] readMember() throws IOException {
+		byte[] head = new byte[Gzip.BGZF_HEADER];
+		byte[] block;
+		int size;
+		int length = readFully(head, 0, head.length);
+		if (length == 0) {
+			return null;
+		}
+		if (length < head.length || !Gzip.isBgzf(head)) {
+			throw new IOException("Invalid BGZF member");
+		}
+		size = ((head[16] & 0xFF) | (head[17] & 0xFF) << 8) + 1;
+		if (size < Gzip.BGZF_HEADER + TRAILER) {
+			throw new IOException("Invalid BGZF member size "+ size);
+		}
+		block = new byte[size];
+		System.arraycopy(head, 0, block, 0, head.length);
+		if (readFully(block, head.length, size - head.length) < size - head.length) {
+			throw new IOException("Truncated BGZF member");
+		}
+		return block;
+	}
+
+	/**
+	 * Read until the given number of bytes or the end of file.
+	 *
+	 * @param b Array of byte
+	 * @param off int offset in b
+	 * @param len int number of bytes
+	 * @return int number of bytes read
+	 * @throws IOException If any error at File I/O level
+	 */
+	private int readFully(final byte[] b, final int off, final int len) throws IOException {
+		int length = 0;
+		int n;
+		while (length < len) {
+			n = in.read(b, off + length, len - length);
+			if (n < 0) {
+				break;
+			}
+			length = length + n;
+		}
+		return length;
+	}
+
+	/**
+	 * Task inflating one member.
+	 *
+	 * @param block Array of byte whole member
+	 * @return Callable
+	 */
+	private static Callable<byte[]> inflater(final byte[] block) {
+		return new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws IOException {
+				return inflate(block);
+			}
+		};
+	}
+
+	/**
+	 * Inflate one member and check it.
+	 *
+	 * @param block Array of byte whole member
+	 * @return Array of byte decompressed bytes
+	 * @throws IOException If the member is corrupted
+	 */
+	static byte[] inflate(final byte[] block) throws IOException {
+		int trailer = block.length - TRAILER;
+		int crc = readInt(block, trailer);
+		int size = readInt(block, trailer + 4);
+		byte[] out = new byte[size];
+		int length = 0;
+		Inflater inflater = new Inflater(true);
+		CRC32 check = new CRC32();
+		try {
+			inflater.setInput(block, Gzip.BGZF_HEADER, trailer - Gzip.BGZF_HEADER);
+			while (length < size && !inflater.finished()) {
+				length = length + inflater.inflate(out, length, size - length);
+				if (inflater.needsInput() || inflater.needsDictionary()) {
+					break;
+				}
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupted BGZF member", e);
+		} finally {
+			inflater.end();
+		}
+		check.update(out, 0, length);
+		if (length != size || (int) check.getValue() != crc) {
+			throw new IOException("Corrupted BGZF member");
+		}
+		return out;
+	}
+
+	/**
+	 * Read a little endian int.
+	 *
+	 * @param b Array of byte
+	 * @param off int offset
+	 * @return int
+	 */
+	static int readInt(final byte[] b, final int off) {
+		return (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8
+			| (b[off + 2] & 0xFF) << 16 | (b[off + 3] & 0xFF) << 24;
+	}
+
+	/**
+	 * Stop inflating and close the file.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	public void close() throws IOException {
+		for (Future<byte[]> f : pending) {
+			f.cancel(true);
+		}
+		pending.clear();
+		pool.shutdownNow();
+		in.close();
+	}
+
+}
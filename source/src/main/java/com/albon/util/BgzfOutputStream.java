@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ * This BgzfOutputStream class compresses into BGZF members on a pool of
+ * threads. Bytes are cut into blocks, each block is deflated into its own
+ * gzip member by a worker while the next block is filled, and members are
+ * written in their original order.
+ * </p>
+ * <p>
+ * A BGZF file is a valid multi-member gzip file readable by gzip, and each
+ * member declares its compressed size so a BgzfInputStream decompresses it
+ * in parallel too. The file ends with the empty BGZF end of file member.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class BgzfOutputStream extends OutputStream {
+
+	/**
+	 * Uncompressed bytes of a member, small enough for any member to fit
+	 * into the 64K limit of BGZF even when the block does not compress.
+	 */
+	private static final int BLOCK_SIZE = 65280;
+
+	/**
+	 * Maximum size of a member.
+	 */
+	private static final int MAX_MEMBER = 65536;
+
+	/**
+	 * Size of a member trailer, CRC32 and size.
+	 */
+	private static final int TRAILER = 8;
+
+	/**
+	 * Empty member ending a BGZF file.
+	 */
+	private static final byte[] EOF_MEMBER = {
+		0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0,
+		'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+	};
+
+	/**
+	 * Destination of the members.
+	 */
+	private final OutputStream out;
+
+	/**
+	 * True to force a file on the storage device on close.
+	 */
+	private final boolean fsync;
+
+	/**
+	 * Threads deflating blocks.
+	 */
+	private final ExecutorService pool;
+
+	/**
+	 * Blocks being deflated, in output order.
+	 */
+	private final Deque<Future<byte[]>> pending;
+
+	/**
+	 * Maximum number of blocks in flight.
+	 */
+	private final int depth;
+
+	/**
+	 * Block being filled.
+	 */
+	private byte[] block;
+
+	/**
+	 * Number of bytes in block.
+	 */
+	private int count;
+
+	/**
+	 * True once closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pOut OutputStream destination of the members
+	 * @param threads int number of threads deflating blocks
+	 * @param pFsync boolean true to force a FileOutputStream on the storage
+	 *   device on close
+	 */
+	BgzfOutputStream(final OutputStream pOut, final int threads,
+			final boolean pFsync
+	) {
+		Helper.checkObject(pOut, "pOut");
+		out = pOut;
+		fsync = pFsync;
+		pool = Gzip.pool(threads, "mergecsv-gzip");
+		pending = new ArrayDeque<Future<byte[]>>();
+		depth = threads * 4;
+		block = new byte[BLOCK_SIZE];
+		count = 0;
+		closed = false;
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		if (count == block.length) {
+			submit();
+		}
+		block[count] = (byte) b;
+		count = count + 1;
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		int offset = off;
+		int left = len;
+		int n;
+		while (left > 0) {
+			if (count == block.length) {
+				submit();
+			}
+			n = Math.min(left, block.length - count);
+			System.arraycopy(b, offset, block, count, n);
+			count = count + n;
+			offset = offset + n;
+			left = left - n;
+		}
+	}
+
+	/**
+	 * Hand the current block to a worker, write the oldest members when too
+	 * many are in flight.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void submit() throws IOException {
+		final byte[] data = block;
+		final int size = count;
+		pending.add(pool.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() {
+				return deflate(data, 0, size);
+			}
+		}));
+		block = new byte[BLOCK_SIZE];
+		count = 0;
+		while (pending.size() > depth) {
+			writeOldest();
+		}
+	}
+
+	/**
+	 * Wait for the oldest member and write it.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void writeOldest() throws IOException {
+		try {
+			out.write(pending.poll().get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while deflating", e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Deflate bytes into one member, or two when the bytes do not compress
+	 * enough for the size limit of a member.
+	 *
+	 * @param data Array of byte
+	 * @param off int offset in data
+	 * @param len int number of bytes
+	 * @return Array of byte members
+	 */
+	static byte[] deflate(final byte[] data, final int off, final int len) {
+		byte[] member = new byte[MAX_MEMBER];
+		int size = Gzip.BGZF_HEADER;
+		int half;
+		byte[] first;
+		byte[] second;
+		byte[] both;
+		CRC32 crc = new CRC32();
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setInput(data, off, len);
+			deflater.finish();
+			while (!deflater.finished() && size < MAX_MEMBER - TRAILER) {
+				size = size + deflater.deflate(member, size, MAX_MEMBER - TRAILER - size);
+			}
+			if (!deflater.finished()) {
+				half = len / 2;
+				first = deflate(data, off, half);
+				second = deflate(data, off + half, len - half);
+				both = new byte[first.length + second.length];
+				System.arraycopy(first, 0, both, 0, first.length);
+				System.arraycopy(second, 0, both, first.length, second.length);
+				return both;
+			}
+		} finally {
+			deflater.end();
+		}
+		crc.update(data, off, len);
+		System.arraycopy(EOF_MEMBER, 0, member, 0, Gzip.BGZF_HEADER);
+		member[16] = (byte) (size + TRAILER - 1);
+		member[17] = (byte) ((size + TRAILER - 1) >>> 8);
+		writeInt(member, size, (int) crc.getValue());
+		writeInt(member, size + 4, len);
+		size = size + TRAILER;
+		both = new byte[size];
+		System.arraycopy(member, 0, both, 0, size);
+		return both;
+	}
+
+	/**
+	 * Write a little endian int.
+	 *
+	 * @param b Array of byte
+	 * @param off int offset
+	 * @param value int
+	 */
+	private static void writeInt(final byte[] b, final int off, final int value) {
+		b[off] = (byte) value;
+		b[off + 1] = (byte) (value >>> 8);
+		b[off + 2] = (byte) (value >>> 16);
+		b[off + 3] = (byte) (value >>> 24);
+	}
+
+	/**
+	 * Compress what is buffered and write every member.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (count > 0) {
+			submit();
+		}
+		while (!pending.isEmpty()) {
+			writeOldest();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write every member, the end of file member and close the destination.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			flush();
+			out.write(EOF_MEMBER);
+			out.flush();
+			if (fsync && out instanceof FileOutputStream) {
+				((FileOutputStream) out).getFD().sync();
+			}
+		} finally {
+			pool.shutdownNow();
+			out.close();
+		}
+	}
+
+}
@@ -0,0 +1,518 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.util.ArrayDeque;
+
+/**
+ * <p>
+ * This BufferPool class lends char and byte buffers: the read buffers of the
+ * line readers, the line buffers of their records and the row buffers of
+ * the output sinks. Merges following each other, or running side by side
+ * in a MergeServer, reuse the same buffers instead of allocating 64K or more
+ * per input and per merge, and a buffer grown for one long record goes back
+ * to the pool when its owner shrinks it, for the next long record.
+ * </p>
+ * <p>
+ * Buffers come in sizes of a power of two, each size has its own idle
+ * buffers. At most a bounded number of idle buffers of each size, and of
+ * idle bytes overall, is kept; a buffer given back beyond that is left to
+ * the garbage collector. The pool counts what it does, see toJson.
+ * </p>
+ * <p>
+ * The line buffer of a record is sized by a Rows: it grows at once to the
+ * 99th percentile of the row lengths seen, or more for a longer row, and
+ * shrinks back to that size after a run of shorter rows. Merging records
+ * of steady lengths then allocates nothing per row.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is thread safe, every method
+ * is synchronized.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class BufferPool {
+
+	/**
+	 * Idle buffers of each size kept by the shared pool.
+	 */
+	static final int DEFAULT_MAX_IDLE = 64;
+
+	/**
+	 * Idle bytes kept by the shared pool, 64 MB.
+	 */
+	static final long DEFAULT_MAX_IDLE_BYTES = 64L * 1024L * 1024L;
+
+	/**
+	 * Pool shared by every reader and sink.
+	 */
+	static final BufferPool SHARED = new BufferPool(DEFAULT_MAX_IDLE,
+		DEFAULT_MAX_IDLE_BYTES);
+
+	/**
+	 * Size of the smallest buffer, as a power of two: 1K.
+	 */
+	private static final int MIN_SIZE = 10;
+
+	/**
+	 * Size of the largest buffer kept, as a power of two: 1G.
+	 */
+	private static final int MAX_SIZE = 30;
+
+	/**
+	 * Idle buffers of each size kept, at most.
+	 */
+	private final int maxIdle;
+
+	/**
+	 * Idle bytes kept, at most.
+	 */
+	private final long maxIdleBytes;
+
+	/**
+	 * Idle char buffers by size.
+	 */
+	private final ArrayDeque<char[]>[] chars;
+
+	/**
+	 * Idle byte buffers by size.
+	 */
+	private final ArrayDeque<byte[]>[] bytes;
+
+	/**
+	 * Bytes of the idle buffers.
+	 */
+	private long idleBytes;
+
+	/**
+	 * Buffers taken.
+	 */
+	private long taken;
+
+	/**
+	 * Buffers taken out of the idle buffers.
+	 */
+	private long reused;
+
+	/**
+	 * Bytes of the buffers allocated.
+	 */
+	private long allocatedBytes;
+
+	/**
+	 * Buffers given back and kept.
+	 */
+	private long returned;
+
+	/**
+	 * Buffers given back but not kept.
+	 */
+	private long dropped;
+
+	/**
+	 * Line buffers grown for a longer row.
+	 */
+	private long grown;
+
+	/**
+	 * Line buffers shrunk after shorter rows.
+	 */
+	private long shrunk;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pMaxIdle int idle buffers of each size kept, at most
+	 * @param pMaxIdleBytes long idle bytes kept, at most
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	BufferPool(final int pMaxIdle, final long pMaxIdleBytes) {
+		int size;
+		maxIdle = pMaxIdle;
+		maxIdleBytes = pMaxIdleBytes;
+		chars = new ArrayDeque[MAX_SIZE + 1];
+		bytes = new ArrayDeque[MAX_SIZE + 1];
+		for (size = MIN_SIZE; size <= MAX_SIZE; size++) {
+			chars[size] = new ArrayDeque<char[]>();
+			bytes[size] = new ArrayDeque<byte[]>();
+		}
+	}
+
+	/**
+	 * Get the power of two of the buffer size holding the given size.
+	 *
+	 * @param size int minimum size
+	 * @return int between MIN_SIZE and MAX_SIZE + 1, the latter for a
+	 *   buffer not kept
+	 */
+	private static int sizeOf(final int size) {
+		if (size > 1 << MAX_SIZE) {
+			return MAX_SIZE + 1;
+		}
+		return Math.max(MIN_SIZE, 32 - Integer.numberOfLeadingZeros(size - 1));
+	}
+
+	/**
+	 * Get the power of two of the size of a buffer given back.
+	 *
+	 * @param length int length of the buffer
+	 * @return int 0 if the buffer is not of a size kept
+	 */
+	private static int sizeOfBuffer(final int length) {
+		int size = 31 - Integer.numberOfLeadingZeros(length);
+		if (length != 1 << size || size < MIN_SIZE || size > MAX_SIZE) {
+			return 0;
+		}
+		return size;
+	}
+
+	/**
+	 * Take a char buffer.
+	 *
+	 * @param size int minimum size of the buffer
+	 * @return Array of char of a power of two, not cleared
+	 */
+	synchronized char[] takeChars(final int size) {
+		int pow = sizeOf(size);
+		char[] buffer;
+		taken = taken + 1;
+		if (pow > MAX_SIZE) {
+			allocatedBytes = allocatedBytes + 2L * size;
+			return new char[size];
+		}
+		buffer = chars[pow].pollLast();
+		if (buffer != null) {
+			reused = reused + 1;
+			idleBytes = idleBytes - 2L * buffer.length;
+			return buffer;
+		}
+		allocatedBytes = allocatedBytes + (2L << pow);
+		return new char[1 << pow];
+	}
+
+	/**
+	 * Give back a char buffer, the caller must not use it anymore.
+	 *
+	 * @param buffer Array of char, may be null
+	 */
+	synchronized void give(final char[] buffer) {
+		int pow;
+		if (buffer == null) {
+			return;
+		}
+		pow = sizeOfBuffer(buffer.length);
+		if (pow == 0 || chars[pow].size() >= maxIdle
+				|| idleBytes + 2L * buffer.length > maxIdleBytes) {
+			dropped = dropped + 1;
+			return;
+		}
+		chars[pow].addLast(buffer);
+		idleBytes = idleBytes + 2L * buffer.length;
+		returned = returned + 1;
+	}
+
+	/**
+	 * Take a byte buffer.
+	 *
+	 * @param size int minimum size of the buffer
+	 * @return Array of byte of a power of two, not cleared
+	 */
+	synchronized byte[] takeBytes(final int size) {
+		int pow = sizeOf(size);
+		byte[] buffer;
+		taken = taken + 1;
+		if (pow > MAX_SIZE) {
+			allocatedBytes = allocatedBytes + size;
+			return new byte[size];
+		}
+		buffer = bytes[pow].pollLast();
+		if (buffer != null) {
+			reused = reused + 1;
+			idleBytes = idleBytes - buffer.length;
+			return buffer;
+		}
+		allocatedBytes = allocatedBytes + (1L << pow);
+		return new byte[1 << pow];
+	}
+
+	/**
+	 * Give back a byte buffer, the caller must not use it anymore.
+	 *
+	 * @param buffer Array of byte, may be null
+	 */
+	synchronized void give(final byte[] buffer) {
+		int pow;
+		if (buffer == null) {
+			return;
+		}
+		pow = sizeOfBuffer(buffer.length);
+		if (pow == 0 || bytes[pow].size() >= maxIdle
+				|| idleBytes + buffer.length > maxIdleBytes) {
+			dropped = dropped + 1;
+			return;
+		}
+		bytes[pow].addLast(buffer);
+		idleBytes = idleBytes + buffer.length;
+		returned = returned + 1;
+	}
+
+	/**
+	 * Count a line buffer grown, or shrunk.
+	 *
+	 * @param grow boolean true if grown
+	 */
+	private synchronized void resized(final boolean grow) {
+		if (grow) {
+			grown = grown + 1;
+		}
+		else {
+			shrunk = shrunk + 1;
+		}
+	}
+
+	/**
+	 * Get a snapshot of the counters of the pool as a JSON object.
+	 *
+	 * @return String
+	 */
+	synchronized String toJson() {
+		int idle = 0;
+		int size;
+		for (size = MIN_SIZE; size <= MAX_SIZE; size++) {
+			idle = idle + chars[size].size() + bytes[size].size();
+		}
+		return "{\"taken\":"+ taken
+			+",\"reused\":"+ reused
+			+",\"allocatedBytes\":"+ allocatedBytes
+			+",\"returned\":"+ returned
+			+",\"dropped\":"+ dropped
+			+",\"grown\":"+ grown
+			+",\"shrunk\":"+ shrunk
+			+",\"idle\":"+ idle
+			+",\"idleBytes\":"+ idleBytes +"}";
+	}
+
+	/**
+	 * <p>
+	 * This Rows class sizes the line buffer of one reader, or sink, out of
+	 * the lengths of its rows. Lengths are counted by power of two, the 99th
+	 * percentile is worked out every SAMPLE rows and counts are halved every
+	 * HALF_LIFE rows so that it follows the rows of the current file.
+	 * </p>
+	 * <p>
+	 * <strong>Thread Safety: </strong>This class is mutable thus not thread
+	 * safe, it belongs to its reader or sink.
+	 * </p>
+	 */
+	static final class Rows {
+
+		/**
+		 * Default rows shorter than the 99th percentile before a line buffer
+		 * longer than it shrinks.
+		 */
+		static final int DEFAULT_SHRINK_ROWS = 4096;
+
+		/**
+		 * Rows between two updates of the 99th percentile.
+		 */
+		private static final int SAMPLE = 1024;
+
+		/**
+		 * Rows after which the counts are halved.
+		 */
+		private static final long HALF_LIFE = 1L << 20;
+
+		/**
+		 * Pool of the line buffers.
+		 */
+		private final BufferPool pool;
+
+		/**
+		 * Size of the line buffer, at least.
+		 */
+		private final int minimum;
+
+		/**
+		 * Rows not longer than the target before the line buffer shrinks.
+		 */
+		private final int shrinkRows;
+
+		/**
+		 * Rows counted by power of two of their length.
+		 */
+		private final long[] counts;
+
+		/**
+		 * Rows counted.
+		 */
+		private long rows;
+
+		/**
+		 * Size of the line buffer, the 99th percentile of the rows.
+		 */
+		private int target;
+
+		/**
+		 * Rows in a row not longer than the target.
+		 */
+		private int shortRows;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param pPool BufferPool of the line buffers
+		 * @param pMinimum int size of the line buffer, at least
+		 * @param pShrinkRows int rows not longer than the 99th percentile
+		 *   before a longer line buffer shrinks
+		 */
+		Rows(final BufferPool pPool, final int pMinimum, final int pShrinkRows) {
+			pool = pPool;
+			minimum = pMinimum;
+			shrinkRows = pShrinkRows;
+			counts = new long[33];
+			rows = 0L;
+			target = pMinimum;
+			shortRows = 0;
+		}
+
+		/**
+		 * Count a row.
+		 *
+		 * @param length int length of the row
+		 */
+		void add(final int length) {
+			counts[32 - Integer.numberOfLeadingZeros(length)]++;
+			rows = rows + 1;
+			if ((rows & (SAMPLE - 1)) == 0L) {
+				update();
+			}
+			shortRows = length <= target ? shortRows + 1 : 0;
+		}
+
+		/**
+		 * Work out the 99th percentile of the rows, halve the counts after
+		 * HALF_LIFE rows.
+		 */
+		private void update() {
+			long sum = 0L;
+			long limit = rows - rows / 100L;
+			int pow;
+			for (pow = 0; pow < counts.length - 1; pow++) {
+				sum = sum + counts[pow];
+				if (sum >= limit) {
+					break;
+				}
+			}
+			target = Math.max(minimum, pow >= MAX_SIZE ? 1 << MAX_SIZE : 1 << pow);
+			if (rows >= HALF_LIFE) {
+				rows = 0L;
+				for (pow = 0; pow < counts.length; pow++) {
+					counts[pow] = counts[pow] / 2L;
+					rows = rows + counts[pow];
+				}
+			}
+		}
+
+		/**
+		 * Get the size of the line buffer, the 99th percentile of the rows.
+		 *
+		 * @return int
+		 */
+		int getTarget() {
+			return target;
+		}
+
+		/**
+		 * Grow a line buffer, the former buffer goes back to the pool.
+		 *
+		 * @param buffer Array of char
+		 * @param used int characters of buffer to keep
+		 * @param size int minimum size of the line buffer
+		 * @return Array of char
+		 */
+		char[] grow(final char[] buffer, final int used, final int size) {
+			char[] p = pool.takeChars(Math.max(size, target));
+			System.arraycopy(buffer, 0, p, 0, used);
+			pool.give(buffer);
+			pool.resized(true);
+			return p;
+		}
+
+		/**
+		 * Grow a line buffer, the former buffer goes back to the pool.
+		 *
+		 * @param buffer Array of byte
+		 * @param used int bytes of buffer to keep
+		 * @param size int minimum size of the line buffer
+		 * @return Array of byte
+		 */
+		byte[] grow(final byte[] buffer, final int used, final int size) {
+			byte[] p = pool.takeBytes(Math.max(size, target));
+			System.arraycopy(buffer, 0, p, 0, used);
+			pool.give(buffer);
+			pool.resized(true);
+			return p;
+		}
+
+		/**
+		 * Shrink an empty line buffer longer than needed after shortRows rows
+		 * not longer than the target, the former buffer goes back to the pool.
+		 *
+		 * @param buffer Array of char
+		 * @return Array of char, buffer if kept
+		 */
+		char[] shrink(final char[] buffer) {
+			char[] p;
+			if (shortRows < shrinkRows || buffer.length <= target) {
+				return buffer;
+			}
+			shortRows = 0;
+			p = pool.takeChars(target);
+			pool.give(buffer);
+			pool.resized(false);
+			return p;
+		}
+
+		/**
+		 * Shrink an empty line buffer longer than needed after shortRows rows
+		 * not longer than the target, the former buffer goes back to the pool.
+		 *
+		 * @param buffer Array of byte
+		 * @return Array of byte, buffer if kept
+		 */
+		byte[] shrink(final byte[] buffer) {
+			byte[] p;
+			if (shortRows < shrinkRows || buffer.length <= target) {
+				return buffer;
+			}
+			shortRows = 0;
+			p = pool.takeBytes(target);
+			pool.give(buffer);
+			pool.resized(false);
+			return p;
+		}
+
+	}
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * This ByteLineReader interface defines a source of lines read as raw bytes
+ * into a reused byte buffer, for charsets where line terminators are single
+ * ASCII bytes.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>Implementations are not required to be
+ * thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public interface ByteLineReader {
+
+	/**
+	 * Read the next line.
+	 *
+	 * @return int number of bytes on the line or -1 at end of stream
+	 * @throws IOException If any error at File I/O level
+	 */
+	int readLine() throws IOException;
+
+	/**
+	 * Get the line buffer, valid until the next readLine.
+	 *
+	 * @return Array of byte
+	 */
+	byte[] getLine();
+
+	/**
+	 * Close the source of lines.
+	 */
+	void close();
+
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * <p>
+ * This ChannelOutputSink class encodes records into a large reused byte
+ * buffer and writes it through a channel in big blocks, only when the buffer
+ * is full, on flush or on close.
+ * </p>
+ * <p>
+ * UTF-8 is encoded directly into the byte buffer, other charsets go through
+ * a CharsetEncoder. Unmappable characters are replaced the same way as
+ * FileWriter does.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class ChannelOutputSink extends OutputSink {
+
+	/**
+	 * Default size of the byte buffer.
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 16 * 65536;
+
+	/**
+	 * Size of the char buffer of the CharsetEncoder path.
+	 */
+	private static final int CHAR_BUFFER_SIZE = 8192;
+
+	/**
+	 * Destination.
+	 */
+	private final WritableByteChannel channel;
+
+	/**
+	 * True to force the data on the storage device on close.
+	 */
+	private final boolean fsync;
+
+	/**
+	 * Encoded bytes waiting to be written.
+	 */
+	private final ByteBuffer bytes;
+
+	/**
+	 * Backing array of bytes.
+	 */
+	private final byte[] array;
+
+	/**
+	 * Encoder, null when encoding UTF-8 directly.
+	 */
+	private final CharsetEncoder encoder;
+
+	/**
+	 * Characters waiting to be encoded, null when encoding UTF-8 directly.
+	 */
+	private final CharBuffer chars;
+
+	/**
+	 * Next free byte in array, UTF-8 path only.
+	 */
+	private int count;
+
+	/**
+	 * High surrogate waiting for its low surrogate, UTF-8 path only.
+	 */
+	private char highSurrogate;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pChannel WritableByteChannel destination
+	 * @param pCharset Charset of the output
+	 * @param pBufferSize int size of the byte buffer
+	 * @param pFlushRows int records between two flush, 0 for none
+	 * @param pFsync boolean true to force data on the storage device on close
+	 */
+	public ChannelOutputSink(final WritableByteChannel pChannel,
+			final Charset pCharset,
+			final int pBufferSize,
+			final int pFlushRows,
+			final boolean pFsync
+	) {
+		super(pFlushRows);
+		Helper.checkObject(pChannel, "pChannel");
+		Helper.checkObject(pCharset, "pCharset");
+		channel = pChannel;
+		fsync = pFsync;
+		array = new byte[Math.max(pBufferSize, 16)];
+		bytes = ByteBuffer.wrap(array);
+		if ("UTF-8".equals(pCharset.name())) {
+			encoder = null;
+			chars = null;
+		} else {
+			encoder = pCharset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+		}
+		count = 0;
+		highSurrogate = 0;
+	}
+
+	@Override
+	public void write(final char c) throws IOException {
+		if (encoder == null) {
+			if (c < 0x80 && highSurrogate == 0) {
+				if (count == array.length) {
+					drain();
+				}
+				array[count++] = (byte) c;
+			} else {
+				encode(c);
+			}
+			return;
+		}
+		if (!chars.hasRemaining()) {
+			encodeChars(false);
+		}
+		chars.put(c);
+	}
+
+	@Override
+	public void write(final char[] buffer, final int offset, final int length
+	) throws IOException {
+		int index = offset;
+		int limit = offset + length;
+		int n;
+		char c;
+		if (encoder == null) {
+			while (index < limit) {
+				// ASCII run copied without per character checks on capacity
+				n = Math.min(limit - index, array.length - count);
+				if (n == 0 || highSurrogate != 0) {
+					write(buffer[index++]);
+					continue;
+				}
+				n = index + n;
+				while (index < n) {
+					c = buffer[index];
+					if (c >= 0x80) {
+						break;
+					}
+					array[count++] = (byte) c;
+					index = index + 1;
+				}
+				if (index < n) {
+					encode(buffer[index++]);
+				}
+			}
+			return;
+		}
+		while (index < limit) {
+			if (!chars.hasRemaining()) {
+				encodeChars(false);
+			}
+			n = Math.min(limit - index, chars.remaining());
+			chars.put(buffer, index, n);
+			index = index + n;
+		}
+	}
+
+	@Override
+	public void write(final String s) throws IOException {
+		int index = 0;
+		int limit = s.length();
+		while (index < limit) {
+			write(s.charAt(index++));
+		}
+	}
+
+	/**
+	 * Write UTF-8 encoded bytes, copied as they are when the output is UTF-8.
+	 *
+	 * @param buffer Array of byte
+	 * @param offset int offset of the first byte
+	 * @param length int number of bytes
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	public void writeUtf8(final byte[] buffer, final int offset, final int length
+	) throws IOException {
+		int index = offset;
+		int limit = offset + length;
+		int n;
+		if (encoder != null) {
+			super.writeUtf8(buffer, offset, length);
+			return;
+		}
+		if (highSurrogate != 0) {
+			// Unpaired high surrogate
+			highSurrogate = 0;
+			write('?');
+		}
+		while (index < limit) {
+			if (count == array.length) {
+				drain();
+			}
+			n = Math.min(limit - index, array.length - count);
+			System.arraycopy(buffer, index, array, count, n);
+			count = count + n;
+			index = index + n;
+		}
+	}
+
+	/**
+	 * Encode one non ASCII character or surrogate as UTF-8.
+	 *
+	 * @param c char
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void encode(final char c) throws IOException {
+		int cp;
+		if (array.length - count < 4) {
+			drain();
+		}
+		if (highSurrogate != 0) {
+			char high = highSurrogate;
+			highSurrogate = 0;
+			if (Character.isLowSurrogate(c)) {
+				cp = Character.toCodePoint(high, c);
+				array[count++] = (byte) (0xF0 | (cp >> 18));
+				array[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				array[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				array[count++] = (byte) (0x80 | (cp & 0x3F));
+				return;
+			}
+			// Unpaired high surrogate
+			array[count++] = (byte) '?';
+			write(c);
+			return;
+		}
+		if (c < 0x80) {
+			array[count++] = (byte) c;
+		}
+		else if (c < 0x800) {
+			array[count++] = (byte) (0xC0 | (c >> 6));
+			array[count++] = (byte) (0x80 | (c & 0x3F));
+		}
+		else if (Character.isHighSurrogate(c)) {
+			highSurrogate = c;
+		}
+		else if (Character.isLowSurrogate(c)) {
+			// Unpaired low surrogate
+			array[count++] = (byte) '?';
+		}
+		else {
+			array[count++] = (byte) (0xE0 | (c >> 12));
+			array[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			array[count++] = (byte) (0x80 | (c & 0x3F));
+		}
+	}
+
+	/**
+	 * Encode waiting characters into the byte buffer, CharsetEncoder path.
+	 *
+	 * @param endOfInput boolean true on close
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void encodeChars(final boolean endOfInput) throws IOException {
+		CoderResult cr;
+		chars.flip();
+		bytes.position(count);
+		for (;;) {
+			cr = encoder.encode(chars, bytes, endOfInput);
+			if (cr.isOverflow()) {
+				count = bytes.position();
+				drain();
+				bytes.position(count);
+				continue;
+			}
+			break;
+		}
+		if (endOfInput) {
+			while (encoder.flush(bytes).isOverflow()) {
+				count = bytes.position();
+				drain();
+				bytes.position(count);
+			}
+		}
+		count = bytes.position();
+		chars.compact();
+	}
+
+	/**
+	 * Write every encoded byte to the channel.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void drain() throws IOException {
+		bytes.clear();
+		bytes.limit(count);
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		bytes.clear();
+		count = 0;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (encoder != null) {
+			encodeChars(false);
+		}
+		drain();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (encoder != null) {
+				encodeChars(true);
+			}
+			else if (highSurrogate != 0) {
+				// Unpaired high surrogate
+				highSurrogate = 0;
+				if (count == array.length) {
+					drain();
+				}
+				array[count++] = (byte) '?';
+			}
+			drain();
+			if (fsync && channel instanceof FileChannel) {
+				((FileChannel) channel).force(true);
+			}
+		} finally {
+			channel.close();
+		}
+	}
+
+}
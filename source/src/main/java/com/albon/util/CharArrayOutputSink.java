@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * This CharArrayOutputSink class keeps records in a growing char array, for
+ * records merged apart from the final destination. The array may be taken
+ * from a BufferPool, and given back once the records are written. The end
+ * of each record is kept, so that writeTo ends the records one by one on the
+ * destination the way they were ended here.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class CharArrayOutputSink extends OutputSink {
+
+	/**
+	 * Written characters.
+	 */
+	private char[] chars;
+
+	/**
+	 * Pool of the char array, null if allocated.
+	 */
+	private final BufferPool pool;
+
+	/**
+	 * Number of written characters.
+	 */
+	private int count;
+
+	/**
+	 * End offset of each run of characters ended by ended.
+	 */
+	private int[] ends;
+
+	/**
+	 * Records of each run, 0 for the header.
+	 */
+	private int[] records;
+
+	/**
+	 * Number of runs ended.
+	 */
+	private int runs;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity int initial capacity in characters
+	 */
+	public CharArrayOutputSink(final int capacity) {
+		super(0);
+		pool = null;
+		chars = new char[Math.max(capacity, 16)];
+		count = 0;
+		ends = new int[64];
+		records = new int[64];
+		runs = 0;
+	}
+
+	/**
+	 * Constructor, the char array is taken from a pool.
+	 *
+	 * @param capacity int initial capacity in characters
+	 * @param pPool BufferPool
+	 */
+	CharArrayOutputSink(final int capacity, final BufferPool pPool) {
+		super(0);
+		pool = pPool;
+		chars = pPool.takeChars(Math.max(capacity, 16));
+		count = 0;
+		ends = new int[64];
+		records = new int[64];
+		runs = 0;
+	}
+
+	/**
+	 * Make room for more characters.
+	 *
+	 * @param size int number of characters to add
+	 */
+	private void ensure(final int size) {
+		if (count + size > chars.length) {
+			char[] p = pool != null
+				? pool.takeChars(Math.max(count + size, chars.length * 2))
+				: new char[Math.max(count + size, chars.length * 2)];
+			System.arraycopy(chars, 0, p, 0, count);
+			if (pool != null) {
+				pool.give(chars);
+			}
+			chars = p;
+		}
+	}
+
+	@Override
+	public void write(final char c) {
+		ensure(1);
+		chars[count++] = c;
+	}
+
+	@Override
+	public void write(final char[] buffer, final int offset, final int length) {
+		ensure(length);
+		System.arraycopy(buffer, offset, chars, count, length);
+		count = count + length;
+	}
+
+	@Override
+	public void write(final String s) {
+		int length = s.length();
+		ensure(length);
+		s.getChars(0, length, chars, count);
+		count = count + length;
+	}
+
+	/**
+	 * Keep the end of the characters written since the last run.
+	 *
+	 * @param pCount int records ended, 0 for the header
+	 */
+	@Override
+	protected void ended(final int pCount) {
+		if (runs == ends.length) {
+			ends = Arrays.copyOf(ends, runs * 2);
+			records = Arrays.copyOf(records, runs * 2);
+		}
+		ends[runs] = count;
+		records[runs] = pCount;
+		runs = runs + 1;
+	}
+
+	/**
+	 * Write every record into another sink, each ended as it was ended
+	 * here. Characters not ended yet are written as they are.
+	 *
+	 * @param sink OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	public void writeTo(final OutputSink sink) throws IOException {
+		int start = 0;
+		int run;
+		for (run = 0; run < runs; run++) {
+			sink.write(chars, start, ends[run] - start);
+			if (records[run] == 0) {
+				sink.endHeader();
+			}
+			else {
+				sink.endRows(records[run]);
+			}
+			start = ends[run];
+		}
+		if (start < count) {
+			sink.write(chars, start, count - start);
+		}
+	}
+
+	/**
+	 * Get number of written characters.
+	 *
+	 * @return int
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Give the char array back to its pool, the sink must not be used
+	 * anymore.
+	 */
+	void release() {
+		if (pool != null) {
+			pool.give(chars);
+			chars = null;
+			count = 0;
+			runs = 0;
+		}
+	}
+
+	/**
+	 * Forget every record, keep the capacity.
+	 */
+	public void reset() {
+		count = 0;
+		runs = 0;
+	}
+
+	@Override
+	public void flush() {
+		// Nothing to flush
+	}
+
+	@Override
+	public void close() {
+		// Nothing to close
+	}
+
+}
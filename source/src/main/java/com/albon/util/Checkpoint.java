@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * <p>
+ * This Checkpoint class records how far a merge by line position went, so
+ * a merge that stopped can resume instead of starting over: the offset of
+ * the next record of every input, the bytes of the output and the counters.
+ * </p>
+ * <p>
+ * The checkpoint is a properties file next to the output, written to a
+ * temporary file then moved over the checkpoint, thus always complete. It
+ * also holds the size and modification time of the template and of every
+ * input: a merge only resumes on the same unchanged files.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class Checkpoint {
+
+	/**
+	 * Extension of a checkpoint file, appended to the output file name.
+	 */
+	static final String EXTENSION = ".ckpt";
+
+	/**
+	 * Checkpoint file.
+	 */
+	private final File file;
+
+	/**
+	 * Template then input files.
+	 */
+	private final String[] names;
+
+	/**
+	 * Size of the template then of each input.
+	 */
+	private final long[] sizes;
+
+	/**
+	 * Modification time of the template then of each input.
+	 */
+	private final long[] modified;
+
+	/**
+	 * Offset of the next record of each input.
+	 */
+	private final long[] offsets;
+
+	/**
+	 * Records between two checkpoints.
+	 */
+	private final int interval;
+
+	/**
+	 * Bytes of the output up to the checkpoint.
+	 */
+	private long outputOffset;
+
+	/**
+	 * Records written to the output.
+	 */
+	private long rows;
+
+	/**
+	 * Records read from every input.
+	 */
+	private long records;
+
+	/**
+	 * Records ignored.
+	 */
+	private long ignored;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pFile File checkpoint file
+	 * @param pNames Array of String template then input files
+	 * @param pInterval int records between two checkpoints
+	 */
+	private Checkpoint(final File pFile, final String[] pNames,
+			final int pInterval
+	) {
+		file = pFile;
+		names = pNames;
+		sizes = new long[pNames.length];
+		modified = new long[pNames.length];
+		offsets = new long[pNames.length - 1];
+		interval = pInterval;
+	}
+
+	/**
+	 * Get the checkpoint file of an output file.
+	 *
+	 * @param output String output file
+	 * @return File
+	 */
+	static File of(final String output) {
+		return new File(output + EXTENSION);
+	}
+
+	/**
+	 * Create the checkpoint of a new merge, stamped with the current size
+	 * and modification time of its files.
+	 *
+	 * @param output String output file
+	 * @param files Array of File template then input files
+	 * @param pInterval int records between two checkpoints
+	 * @return Checkpoint
+	 */
+	static Checkpoint create(final String output, final File[] files,
+			final int pInterval
+	) {
+		String[] names = new String[files.length];
+		Checkpoint checkpoint;
+		int index;
+		for (index = 0; index < files.length; index++) {
+			names[index] = files[index].getPath();
+		}
+		checkpoint = new Checkpoint(of(output), names, pInterval);
+		for (index = 0; index < files.length; index++) {
+			checkpoint.sizes[index] = files[index].length();
+			checkpoint.modified[index] = files[index].lastModified();
+		}
+		return checkpoint;
+	}
+
+	/**
+	 * Load the checkpoint of an output file and check it was taken on the
+	 * same files.
+	 *
+	 * @param output String output file
+	 * @param files Array of File template then input files
+	 * @param pInterval int records between two checkpoints, 0 to keep the
+	 *   interval of the checkpoint
+	 * @return Checkpoint
+	 * @throws MergeCsvException If missing, invalid or the files changed
+	 */
+	static Checkpoint load(final String output, final File[] files,
+			final int pInterval
+	) throws MergeCsvException {
+		File pFile = of(output);
+		Properties p = new Properties();
+		InputStream in = null;
+		String[] names;
+		Checkpoint checkpoint;
+		int index;
+		try {
+			in = new FileInputStream(pFile);
+			p.load(in);
+		} catch (FileNotFoundException ex) {
+			throw new MergeCsvException("No checkpoint '"+ pFile +"' to resume", ex);
+		} catch (IOException ex) {
+			throw new MergeCsvException("Error reading '"+ pFile +"'", ex);
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException ignore) {
+				}
+			}
+		}
+		if (Helper.atoi(p.getProperty("files")) != files.length) {
+			throw new MergeCsvException("Checkpoint '"+ pFile
+				+"' is not of the same number of inputs");
+		}
+		names = new String[files.length];
+		for (index = 0; index < files.length; index++) {
+			names[index] = p.getProperty("file."+ index);
+		}
+		checkpoint = new Checkpoint(pFile, names, pInterval > 0 ? pInterval
+			: Helper.atoi(p.getProperty("interval")));
+		for (index = 0; index < files.length; index++) {
+			checkpoint.sizes[index] = Helper.atol(p.getProperty("file."+ index +".size"));
+			checkpoint.modified[index] = Helper.atol(p.getProperty("file."+ index +".modified"));
+			if (index > 0) {
+				checkpoint.offsets[index - 1] = Helper.atol(
+					p.getProperty("file."+ index +".offset"));
+			}
+			if (!files[index].getPath().equals(names[index])
+					|| files[index].length() != checkpoint.sizes[index]
+					|| files[index].lastModified() != checkpoint.modified[index]) {
+				throw new MergeCsvException("'"+ files[index]
+					+"' changed since checkpoint '"+ pFile +"'");
+			}
+		}
+		checkpoint.outputOffset = Helper.atol(p.getProperty("output.offset"));
+		checkpoint.rows = Helper.atol(p.getProperty("rows"));
+		checkpoint.records = Helper.atol(p.getProperty("records"));
+		checkpoint.ignored = Helper.atol(p.getProperty("ignored"));
+		if (checkpoint.interval < 1 || checkpoint.outputOffset < 0L
+				|| checkpoint.records < 0L) {
+			throw new MergeCsvException("Invalid checkpoint '"+ pFile +"'");
+		}
+		return checkpoint;
+	}
+
+	/**
+	 * Record a checkpoint, the output must be flushed.
+	 *
+	 * @param pRecords long records read from every input
+	 * @param pIgnored long records ignored
+	 * @param pRows long records written to the output
+	 * @param output File output file
+	 * @param inputs Array of CsvInput, each at its next record
+	 * @throws IOException If any error at File I/O level
+	 */
+	void save(final long pRecords, final long pIgnored, final long pRows,
+			final File output, final CsvInput[] inputs
+	) throws IOException {
+		Properties p = new Properties();
+		Path target = file.toPath();
+		Path tmp;
+		OutputStream out;
+		boolean done = false;
+		int index;
+		records = pRecords;
+		ignored = pIgnored;
+		rows = pRows;
+		outputOffset = output.length();
+		for (index = 0; index < inputs.length; index++) {
+			offsets[index] = inputs[index].getPosition();
+		}
+		p.setProperty("files", Integer.toString(names.length));
+		for (index = 0; index < names.length; index++) {
+			p.setProperty("file."+ index, names[index]);
+			p.setProperty("file."+ index +".size", Long.toString(sizes[index]));
+			p.setProperty("file."+ index +".modified", Long.toString(modified[index]));
+			if (index > 0) {
+				p.setProperty("file."+ index +".offset", Long.toString(offsets[index - 1]));
+			}
+		}
+		p.setProperty("interval", Integer.toString(interval));
+		p.setProperty("output.offset", Long.toString(outputOffset));
+		p.setProperty("rows", Long.toString(rows));
+		p.setProperty("records", Long.toString(records));
+		p.setProperty("ignored", Long.toString(ignored));
+		tmp = Helper.createTempFile(target);
+		try {
+			out = new FileOutputStream(tmp.toFile());
+			try {
+				p.store(out, "MergeCSV checkpoint");
+			} finally {
+				out.close();
+			}
+			Helper.replaceAtomically(tmp, target);
+			done = true;
+		} finally {
+			if (!done) {
+				Files.deleteIfExists(tmp);
+			}
+		}
+	}
+
+	/**
+	 * Delete the checkpoint once the merge is done.
+	 */
+	void delete() {
+		if (file.exists() && !file.delete()) {
+			MergeCSV.log("Can't delete checkpoint '"+ file +"'");
+		}
+	}
+
+	/**
+	 * Get the checkpoint file.
+	 *
+	 * @return File
+	 */
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * Get the offset of the next record of an input.
+	 *
+	 * @param input int input index
+	 * @return long
+	 */
+	long getOffset(final int input) {
+		return offsets[input];
+	}
+
+	/**
+	 * Get the records between two checkpoints.
+	 *
+	 * @return int
+	 */
+	int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Get the bytes of the output up to the checkpoint.
+	 *
+	 * @return long
+	 */
+	long getOutputOffset() {
+		return outputOffset;
+	}
+
+	/**
+	 * Get the records written to the output.
+	 *
+	 * @return long
+	 */
+	long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Get the records read from every input.
+	 *
+	 * @return long
+	 */
+	long getRecords() {
+		return records;
+	}
+
+	/**
+	 * Get the records ignored.
+	 *
+	 * @return long
+	 */
+	long getIgnored() {
+		return ignored;
+	}
+
+}
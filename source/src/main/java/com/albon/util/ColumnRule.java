@@ -0,0 +1,530 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQuery;
+
+/**
+ * <p>
+ * This ColumnRule class decides the value of one output column out of the
+ * values of the column on each input. The rules are given by name in a rules
+ * file next to the template and compiled once, before the merge, into one
+ * ColumnRule per output column: the merge loop calls the rule of a column
+ * without looking anything up.
+ * </p>
+ * <ul>
+ * <li>LONGEST: the longer value wins, on equal length the input given first,
+ * the default of every column.</li>
+ * <li>FIRST_NON_EMPTY: the first input having a value wins, thus {A} unless
+ * its value is empty.</li>
+ * <li>MAX_NUMERIC: the greatest number wins, written as is.</li>
+ * <li>LATEST_DATE: the latest date wins, written as is; the argument is the
+ * DateTimeFormatter pattern of the dates, yyyy-MM-dd by default with an
+ * optional time.</li>
+ * <li>SUM: the sum of the numbers of all inputs.</li>
+ * <li>TRIM: the longer value wins, written without leading and trailing
+ * blanks, inner blanks collapsed into one space; quoted again when needed,
+ * its double quotes doubled.</li>
+ * </ul>
+ * <p>
+ * Values that are not numbers, or dates, are left out of MAX_NUMERIC, SUM
+ * and LATEST_DATE; when no input has a number, or a date, LONGEST decides.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is not mutable thus thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+abstract class ColumnRule {
+
+	/**
+	 * Default pattern of LATEST_DATE, a date with an optional time.
+	 */
+	static final String DEFAULT_DATE_PATTERN = "yyyy-MM-dd[['T'][' ']HH:mm[:ss]]";
+
+	/**
+	 * The longer value wins, the default rule.
+	 */
+	static final ColumnRule LONGEST = new Longest();
+
+	/**
+	 * Name of the rule.
+	 */
+	private final String name;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pName String name of the rule
+	 */
+	ColumnRule(final String pName) {
+		name = pName;
+	}
+
+	/**
+	 * Get the name of the rule.
+	 *
+	 * @return String
+	 */
+	final String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the argument of the rule.
+	 *
+	 * @return String null for a rule without argument
+	 */
+	String getArgument() {
+		return null;
+	}
+
+	/**
+	 * Write the value of the column.
+	 *
+	 * @param records Array of CsvRecord, one record of each input,
+	 *   null for an input without record
+	 * @param from Array of int inputs having the column in precedence order
+	 * @param fields Array of int field of the column on each of from
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	abstract void write(CsvRecord[] records, int[] from, int[] fields,
+		OutputSink w) throws IOException;
+
+	/**
+	 * Create a rule out of its name.
+	 *
+	 * @param pName String LONGEST, FIRST_NON_EMPTY, MAX_NUMERIC, LATEST_DATE,
+	 *   SUM or TRIM, in any case
+	 * @param argument String argument of the rule, null for its default
+	 * @return ColumnRule or null if the name is unknown
+	 * @throws IllegalArgumentException If the argument is invalid
+	 */
+	static ColumnRule of(final String pName, final String argument) {
+		String rule = pName == null ? "" : pName.trim().toUpperCase();
+		if ("LONGEST".equals(rule)) {
+			return LONGEST;
+		}
+		if ("FIRST_NON_EMPTY".equals(rule)) {
+			return new FirstNonEmpty();
+		}
+		if ("MAX_NUMERIC".equals(rule)) {
+			return new MaxNumeric();
+		}
+		if ("LATEST_DATE".equals(rule)) {
+			return new LatestDate(Helper.isStringNullOrEmpty(argument)
+				? DEFAULT_DATE_PATTERN : argument);
+		}
+		if ("SUM".equals(rule)) {
+			return new Sum();
+		}
+		if ("TRIM".equals(rule)) {
+			return new Trim();
+		}
+		return null;
+	}
+
+	/**
+	 * Get the index in from of the longer value, the first on equal length.
+	 *
+	 * @param records Array of CsvRecord
+	 * @param from Array of int
+	 * @param fields Array of int
+	 * @return int -1 if no input has a record
+	 */
+	static int longest(final CsvRecord[] records, final int[] from,
+			final int[] fields
+	) {
+		int best = -1;
+		int bestLength = -1;
+		int length;
+		int index;
+		CsvRecord record;
+		for (index = 0; index < from.length; index++) {
+			record = records[from[index]];
+			if (record == null) {
+				continue;
+			}
+			length = record.getFieldLength(fields[index]);
+			if (length > bestLength) {
+				best = index;
+				bestLength = length;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Get a field without its double quotes and blanks.
+	 *
+	 * @param value String field as written
+	 * @return String
+	 */
+	static String unquote(final String value) {
+		String s = value.trim();
+		if (s.length() >= 2 && s.charAt(0) == '"'
+				&& s.charAt(s.length() - 1) == '"') {
+			s = s.substring(1, s.length() - 1).trim();
+		}
+		return s;
+	}
+
+	/**
+	 * Get the number of a field.
+	 *
+	 * @param record CsvRecord
+	 * @param field int
+	 * @return BigDecimal or null if the field is not a number
+	 */
+	static BigDecimal number(final CsvRecord record, final int field) {
+		if (record.getFieldLength(field) == 0) {
+			return null;
+		}
+		try {
+			return new BigDecimal(unquote(record.getField(field)));
+		} catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * The longer value wins, on equal length the input given first.
+	 */
+	private static final class Longest extends ColumnRule {
+
+		/**
+		 * Constructor.
+		 */
+		private Longest() {
+			super("LONGEST");
+		}
+
+		@Override
+		void write(final CsvRecord[] records, final int[] from,
+				final int[] fields, final OutputSink w
+		) throws IOException {
+			int best = longest(records, from, fields);
+			if (best >= 0) {
+				records[from[best]].writeField(fields[best], w);
+			}
+		}
+
+	}
+
+	/**
+	 * The first input having a value wins.
+	 */
+	private static final class FirstNonEmpty extends ColumnRule {
+
+		/**
+		 * Constructor.
+		 */
+		private FirstNonEmpty() {
+			super("FIRST_NON_EMPTY");
+		}
+
+		@Override
+		void write(final CsvRecord[] records, final int[] from,
+				final int[] fields, final OutputSink w
+		) throws IOException {
+			CsvRecord record;
+			int index;
+			for (index = 0; index < from.length; index++) {
+				record = records[from[index]];
+				if (record != null && record.getFieldLength(fields[index]) > 0) {
+					record.writeField(fields[index], w);
+					return;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * The greatest number wins.
+	 */
+	private static final class MaxNumeric extends ColumnRule {
+
+		/**
+		 * Constructor.
+		 */
+		private MaxNumeric() {
+			super("MAX_NUMERIC");
+		}
+
+		@Override
+		void write(final CsvRecord[] records, final int[] from,
+				final int[] fields, final OutputSink w
+		) throws IOException {
+			BigDecimal max = null;
+			BigDecimal value;
+			CsvRecord record;
+			int best = -1;
+			int index;
+			for (index = 0; index < from.length; index++) {
+				record = records[from[index]];
+				if (record == null) {
+					continue;
+				}
+				value = number(record, fields[index]);
+				if (value != null && (max == null || value.compareTo(max) > 0)) {
+					max = value;
+					best = index;
+				}
+			}
+			if (best < 0) {
+				best = longest(records, from, fields);
+			}
+			if (best >= 0) {
+				records[from[best]].writeField(fields[best], w);
+			}
+		}
+
+	}
+
+	/**
+	 * The latest date wins.
+	 */
+	private static final class LatestDate extends ColumnRule {
+
+		/**
+		 * Query of a date with a time.
+		 */
+		private static final TemporalQuery<LocalDateTime> DATE_TIME =
+			new TemporalQuery<LocalDateTime>() {
+				@Override
+				public LocalDateTime queryFrom(final TemporalAccessor temporal) {
+					return LocalDateTime.from(temporal);
+				}
+			};
+
+		/**
+		 * Query of a date without a time.
+		 */
+		private static final TemporalQuery<LocalDate> DATE =
+			new TemporalQuery<LocalDate>() {
+				@Override
+				public LocalDate queryFrom(final TemporalAccessor temporal) {
+					return LocalDate.from(temporal);
+				}
+			};
+
+		/**
+		 * Format of the dates.
+		 */
+		private final DateTimeFormatter formatter;
+
+		/**
+		 * Pattern of the dates.
+		 */
+		private final String pattern;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param pPattern String DateTimeFormatter pattern
+		 * @throws IllegalArgumentException If the pattern is invalid
+		 */
+		private LatestDate(final String pPattern) {
+			super("LATEST_DATE");
+			formatter = DateTimeFormatter.ofPattern(pPattern);
+			pattern = pPattern;
+		}
+
+		/**
+		 * Get the pattern of the dates.
+		 *
+		 * @return String
+		 */
+		@Override
+		String getArgument() {
+			return pattern;
+		}
+
+		/**
+		 * Get the seconds since the epoch of a field.
+		 *
+		 * @param record CsvRecord
+		 * @param field int
+		 * @return long or Long.MIN_VALUE if the field is not a date
+		 */
+		private long seconds(final CsvRecord record, final int field) {
+			TemporalAccessor date;
+			if (record.getFieldLength(field) == 0) {
+				return Long.MIN_VALUE;
+			}
+			try {
+				date = formatter.parseBest(unquote(record.getField(field)),
+					DATE_TIME, DATE);
+			} catch (DateTimeException ex) {
+				return Long.MIN_VALUE;
+			}
+			if (date instanceof LocalDate) {
+				date = ((LocalDate) date).atStartOfDay();
+			}
+			return ((LocalDateTime) date).toEpochSecond(ZoneOffset.UTC);
+		}
+
+		@Override
+		void write(final CsvRecord[] records, final int[] from,
+				final int[] fields, final OutputSink w
+		) throws IOException {
+			long latest = Long.MIN_VALUE;
+			long value;
+			CsvRecord record;
+			int best = -1;
+			int index;
+			for (index = 0; index < from.length; index++) {
+				record = records[from[index]];
+				if (record == null) {
+					continue;
+				}
+				value = seconds(record, fields[index]);
+				if (value != Long.MIN_VALUE && (best < 0 || value > latest)) {
+					latest = value;
+					best = index;
+				}
+			}
+			if (best < 0) {
+				best = longest(records, from, fields);
+			}
+			if (best >= 0) {
+				records[from[best]].writeField(fields[best], w);
+			}
+		}
+
+	}
+
+	/**
+	 * The sum of the numbers of all inputs.
+	 */
+	private static final class Sum extends ColumnRule {
+
+		/**
+		 * Constructor.
+		 */
+		private Sum() {
+			super("SUM");
+		}
+
+		@Override
+		void write(final CsvRecord[] records, final int[] from,
+				final int[] fields, final OutputSink w
+		) throws IOException {
+			BigDecimal sum = null;
+			BigDecimal value;
+			CsvRecord record;
+			int best;
+			int index;
+			for (index = 0; index < from.length; index++) {
+				record = records[from[index]];
+				if (record == null) {
+					continue;
+				}
+				value = number(record, fields[index]);
+				if (value != null) {
+					sum = sum == null ? value : sum.add(value);
+				}
+			}
+			if (sum != null) {
+				w.write(sum.toPlainString());
+				return;
+			}
+			best = longest(records, from, fields);
+			if (best >= 0) {
+				records[from[best]].writeField(fields[best], w);
+			}
+		}
+
+	}
+
+	/**
+	 * The longer value wins, trimmed and with its blanks collapsed.
+	 */
+	private static final class Trim extends ColumnRule {
+
+		/**
+		 * Constructor.
+		 */
+		private Trim() {
+			super("TRIM");
+		}
+
+		@Override
+		void write(final CsvRecord[] records, final int[] from,
+				final int[] fields, final OutputSink w
+		) throws IOException {
+			int best = longest(records, from, fields);
+			String value;
+			StringBuilder sb;
+			boolean blank = false;
+			boolean quote = false;
+			char c;
+			int index;
+			if (best < 0) {
+				return;
+			}
+			// Doubled quotes are made single here and doubled again on write
+			value = unquote(records[from[best]].getField(fields[best]))
+				.replace("\"\"", "\"");
+			sb = new StringBuilder(value.length() + 2);
+			for (index = 0; index < value.length(); index++) {
+				c = value.charAt(index);
+				if (c <= ' ') {
+					blank = true;
+					continue;
+				}
+				if (blank && sb.length() > 0) {
+					sb.append(' ');
+					quote = true;
+				}
+				blank = false;
+				if (c == ',' || c == '"') {
+					quote = true;
+				}
+				sb.append(c);
+			}
+			if (quote) {
+				w.write('"');
+				w.write(sb.indexOf("\"") < 0 ? sb.toString()
+					: sb.toString().replace("\"", "\"\""));
+				w.write('"');
+			}
+			else {
+				w.write(sb.toString());
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,743 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * This ColumnarCache class reads an input CSV from its columnar cache, a
+ * binary file written once next to the CSV and read instead of parsing the
+ * CSV again on the next merges.
+ * </p>
+ * <p>
+ * The cache holds the header, the size and the modification time of the
+ * CSV, and its records in groups of rows. Within a group every column is a
+ * chunk of its own: the end offset of each field, the length of each field
+ * in characters when the column is not ASCII, then the field bytes in UTF-8
+ * exactly as they are written to the output. Only the chunks of the selected
+ * columns are memory mapped, the other columns read as empty fields.
+ * </p>
+ * <p>
+ * A cache is stale once the CSV changes size or modification time, or when
+ * it was written for another charset or record mode; it is then rebuilt.
+ * A cache is written to a temporary file moved over the cache, a merge never
+ * reads a partial cache.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class ColumnarCache implements CsvRecord {
+
+	/**
+	 * Extension of a cache file, appended to the CSV file name.
+	 */
+	static final String EXTENSION = ".mcc";
+
+	/**
+	 * First bytes of a cache file, "MCC1".
+	 */
+	private static final int MAGIC = 0x4D434331;
+
+	/**
+	 * Version of the cache layout.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Maximum rows of a group.
+	 */
+	private static final int GROUP_ROWS = 65536;
+
+	/**
+	 * Field bytes after which a group is written before GROUP_ROWS.
+	 */
+	private static final int GROUP_BYTES = 64 * 1024 * 1024;
+
+	/**
+	 * Size of the fixed part of a group header, the number of rows.
+	 */
+	private static final int GROUP_HEADER = 4;
+
+	/**
+	 * Size of the header of each column in a group, chunk size and ASCII flag.
+	 */
+	private static final int COLUMN_HEADER = 5;
+
+	/**
+	 * Fields of one column of the group being written.
+	 */
+	private static final class Column {
+		/**
+		 * Field bytes.
+		 */
+		private byte[] data = new byte[8192];
+
+		/**
+		 * Number of bytes in data.
+		 */
+		private int size;
+
+		/**
+		 * End offset of each field in data.
+		 */
+		private int[] ends = new int[1024];
+
+		/**
+		 * Length of each field in characters.
+		 */
+		private int[] chars = new int[1024];
+
+		/**
+		 * True while every field is ASCII.
+		 */
+		private boolean ascii = true;
+
+		/**
+		 * Add the field of a row.
+		 *
+		 * @param row int row in the group
+		 * @param field String field as written, empty if missing
+		 * @return int number of bytes of the field
+		 */
+		private int add(final int row, final String field) {
+			byte[] b = field.getBytes(StandardCharsets.UTF_8);
+			if (row == ends.length) {
+				ends = Arrays.copyOf(ends, row * 2);
+				chars = Arrays.copyOf(chars, row * 2);
+			}
+			if (size + b.length > data.length) {
+				data = Arrays.copyOf(data, Math.max(size + b.length, data.length * 2));
+			}
+			System.arraycopy(b, 0, data, size, b.length);
+			size = size + b.length;
+			ends[row] = size;
+			chars[row] = field.length();
+			ascii = ascii && b.length == field.length();
+			return b.length;
+		}
+
+		/**
+		 * Get the size of the chunk of this column.
+		 *
+		 * @param rows int rows of the group
+		 * @return int
+		 */
+		private int chunkSize(final int rows) {
+			return (ascii ? 4 : 8) * rows + size;
+		}
+
+		/**
+		 * Write the chunk of this column.
+		 *
+		 * @param out DataOutputStream
+		 * @param rows int rows of the group
+		 * @throws IOException If any error at File I/O level
+		 */
+		private void write(final DataOutputStream out, final int rows
+		) throws IOException {
+			int row;
+			for (row = 0; row < rows; row++) {
+				out.writeInt(ends[row]);
+			}
+			if (!ascii) {
+				for (row = 0; row < rows; row++) {
+					out.writeInt(chars[row]);
+				}
+			}
+			out.write(data, 0, size);
+			size = 0;
+			ascii = true;
+		}
+	}
+
+	/**
+	 * Name of the input, used in messages.
+	 */
+	private final String name;
+
+	/**
+	 * Opened cache file.
+	 */
+	private final RandomAccessFile file;
+
+	/**
+	 * Channel of the opened cache file.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Header columns.
+	 */
+	private final String[] header;
+
+	/**
+	 * Header line as read from the CSV.
+	 */
+	private final String headerLine;
+
+	/**
+	 * Columns read, the others are empty.
+	 */
+	private final boolean[] selected;
+
+	/**
+	 * Offset of the next group in the cache file.
+	 */
+	private long nextGroup;
+
+	/**
+	 * Rows of the current group.
+	 */
+	private int groupRows;
+
+	/**
+	 * Current row in the group.
+	 */
+	private int row;
+
+	/**
+	 * Field count of each row of the current group.
+	 */
+	private MappedByteBuffer counts;
+
+	/**
+	 * Chunk of each selected column of the current group, null if not mapped.
+	 */
+	private final MappedByteBuffer[] chunks;
+
+	/**
+	 * Offset of the chunk of each column of the current group.
+	 */
+	private final long[] chunkOffsets;
+
+	/**
+	 * Size of the chunk of each column of the current group.
+	 */
+	private final int[] chunkSizes;
+
+	/**
+	 * True for each column of the current group without character lengths.
+	 */
+	private final boolean[] ascii;
+
+	/**
+	 * Number of fields of the current row.
+	 */
+	private int fieldCount;
+
+	/**
+	 * Bytes of a field, reused.
+	 */
+	private byte[] scratch;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pName String name of the input
+	 * @param pFile RandomAccessFile opened cache file
+	 * @param pHeader Array of String header columns
+	 * @param pHeaderLine String header line
+	 * @param pFirstGroup long offset of the first group
+	 */
+	private ColumnarCache(final String pName,
+			final RandomAccessFile pFile,
+			final String[] pHeader,
+			final String pHeaderLine,
+			final long pFirstGroup
+	) {
+		name = pName;
+		file = pFile;
+		channel = pFile.getChannel();
+		header = pHeader;
+		headerLine = pHeaderLine;
+		selected = new boolean[pHeader.length];
+		Arrays.fill(selected, true);
+		nextGroup = pFirstGroup;
+		groupRows = 0;
+		row = 0;
+		counts = null;
+		chunks = new MappedByteBuffer[pHeader.length];
+		chunkOffsets = new long[pHeader.length];
+		chunkSizes = new int[pHeader.length];
+		ascii = new boolean[pHeader.length];
+		fieldCount = 0;
+		scratch = new byte[256];
+	}
+
+	/**
+	 * Get the cache file of a CSV file.
+	 *
+	 * @param source File CSV file
+	 * @return File
+	 */
+	static File of(final File source) {
+		return new File(source.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Open the cache of a CSV file if it is up to date.
+	 *
+	 * @param pName String name of the input
+	 * @param source File CSV file
+	 * @param format String charset and record mode the cache is read with
+	 * @return ColumnarCache positioned before the first record, null if the
+	 *   cache is missing or stale
+	 * @throws IOException If any error at File I/O level
+	 */
+	static ColumnarCache open(final String pName, final File source,
+			final String format
+	) throws IOException {
+		File cache = of(source);
+		RandomAccessFile raf;
+		DataInputStream in;
+		byte[] b;
+		String[] columns;
+		String line;
+		int index;
+		if (!cache.isFile()) {
+			return null;
+		}
+		raf = new RandomAccessFile(cache, "r");
+		try {
+			if (raf.length() < 12 || raf.readInt() != MAGIC
+					|| raf.readInt() != VERSION) {
+				raf.close();
+				return null;
+			}
+			b = new byte[raf.readInt()];
+			raf.readFully(b);
+			in = new DataInputStream(new ByteArrayInputStream(b));
+			if (in.readLong() != source.length()
+					|| in.readLong() != source.lastModified()
+					|| !in.readUTF().equals(format)) {
+				raf.close();
+				return null;
+			}
+			line = readString(in);
+			columns = new String[in.readInt()];
+			for (index = 0; index < columns.length; index++) {
+				columns[index] = readString(in);
+			}
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+		return new ColumnarCache(pName, raf, columns, line, 12L + b.length);
+	}
+
+	/**
+	 * Write the cache of a CSV file, replacing any previous cache.
+	 *
+	 * @param input CsvInput CSV file with its header read
+	 * @param source File CSV file
+	 * @param format String charset and record mode the CSV is read with
+	 * @return long number of records cached
+	 * @throws MergeCsvException If the CSV can't be read
+	 * @throws IOException If any error at File I/O level
+	 */
+	static long build(final CsvInput input, final File source,
+			final String format
+	) throws MergeCsvException, IOException {
+		// Stamped before reading, a CSV changed meanwhile is cached again
+		long size = source.length();
+		long modified = source.lastModified();
+		Path target = of(source).toPath();
+		Path tmp;
+		String[] columns = input.getHeader();
+		Column[] data = new Column[columns.length];
+		int[] counts = new int[GROUP_ROWS];
+		ByteArrayOutputStream head = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(head);
+		CsvRecord record;
+		long records = 0L;
+		int rows = 0;
+		int bytes = 0;
+		int count;
+		int index;
+		boolean done = false;
+
+		out.writeLong(size);
+		out.writeLong(modified);
+		out.writeUTF(format);
+		writeString(out, input.getHeaderLine());
+		out.writeInt(columns.length);
+		for (index = 0; index < columns.length; index++) {
+			writeString(out, columns[index]);
+			data[index] = new Column();
+		}
+
+		tmp = Helper.createTempFile(target);
+		out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tmp.toFile()), 65536));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(head.size());
+			head.writeTo(out);
+			while (input.next()) {
+				record = input.getRecord();
+				count = Math.min(record.getFieldCount(), columns.length);
+				counts[rows] = count;
+				for (index = 0; index < columns.length; index++) {
+					bytes = bytes + data[index].add(rows,
+						index < count ? record.getField(index) : "");
+				}
+				rows = rows + 1;
+				records = records + 1L;
+				if (rows == GROUP_ROWS || bytes >= GROUP_BYTES) {
+					writeGroup(out, data, counts, rows);
+					rows = 0;
+					bytes = 0;
+				}
+			}
+			input.checkError();
+			if (rows > 0) {
+				writeGroup(out, data, counts, rows);
+			}
+			out.writeInt(0);
+			out.close();
+			out = null;
+			Helper.replaceAtomically(tmp, target);
+			done = true;
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException ignore) {
+				}
+			}
+			if (!done) {
+				Files.deleteIfExists(tmp);
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Write one group of rows.
+	 *
+	 * @param out DataOutputStream
+	 * @param data Array of Column
+	 * @param counts Array of int field count of each row
+	 * @param rows int rows of the group
+	 * @throws IOException If any error at File I/O level
+	 */
+	private static void writeGroup(final DataOutputStream out,
+			final Column[] data,
+			final int[] counts,
+			final int rows
+	) throws IOException {
+		int index;
+		out.writeInt(rows);
+		for (index = 0; index < data.length; index++) {
+			out.writeInt(data[index].chunkSize(rows));
+			out.writeByte(data[index].ascii ? 1 : 0);
+		}
+		for (index = 0; index < rows; index++) {
+			out.writeInt(counts[index]);
+		}
+		for (index = 0; index < data.length; index++) {
+			data[index].write(out, rows);
+		}
+	}
+
+	/**
+	 * Write a String of any length in UTF-8.
+	 *
+	 * @param out DataOutputStream
+	 * @param s String
+	 * @throws IOException If any error at File I/O level
+	 */
+	private static void writeString(final DataOutputStream out, final String s
+	) throws IOException {
+		byte[] b = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	/**
+	 * Read a String written by writeString.
+	 *
+	 * @param in DataInputStream
+	 * @return String
+	 * @throws IOException If any error at File I/O level
+	 */
+	private static String readString(final DataInputStream in) throws IOException {
+		byte[] b = new byte[in.readInt()];
+		in.readFully(b);
+		return new String(b, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Read only the given columns, the others read as empty fields and are
+	 * never mapped.
+	 *
+	 * @param columns Array of boolean, true for each column to read
+	 */
+	void select(final boolean[] columns) {
+		int index;
+		for (index = 0; index < selected.length; index++) {
+			selected[index] = index < columns.length && columns[index];
+		}
+	}
+
+	/**
+	 * Move to the next record.
+	 *
+	 * @return boolean false after the last record
+	 * @throws IOException If any error at File I/O level
+	 */
+	boolean next() throws IOException {
+		row = row + 1;
+		if (row >= groupRows && !readGroup()) {
+			fieldCount = 0;
+			return false;
+		}
+		fieldCount = counts.getInt(row * 4);
+		return true;
+	}
+
+	/**
+	 * Read the header of the next group and map its selected columns.
+	 *
+	 * @return boolean false after the last group
+	 * @throws IOException If any error at File I/O level
+	 */
+	private boolean readGroup() throws IOException {
+		ByteBuffer b = read(nextGroup, GROUP_HEADER);
+		long offset;
+		int index;
+		groupRows = b.getInt();
+		if (groupRows <= 0) {
+			// Stay on the end marker
+			groupRows = 0;
+			return false;
+		}
+		b = read(nextGroup + GROUP_HEADER, COLUMN_HEADER * header.length);
+		offset = nextGroup + GROUP_HEADER + b.capacity();
+		counts = channel.map(FileChannel.MapMode.READ_ONLY, offset, groupRows * 4L);
+		offset = offset + groupRows * 4L;
+		for (index = 0; index < header.length; index++) {
+			chunkSizes[index] = b.getInt();
+			ascii[index] = b.get() != 0;
+			chunkOffsets[index] = offset;
+			offset = offset + chunkSizes[index];
+			chunks[index] = selected[index] ? channel.map(
+				FileChannel.MapMode.READ_ONLY, chunkOffsets[index],
+				chunkSizes[index]) : null;
+		}
+		nextGroup = offset;
+		row = 0;
+		return true;
+	}
+
+	/**
+	 * Read bytes of the cache file.
+	 *
+	 * @param offset long offset in the cache file
+	 * @param size int number of bytes
+	 * @return ByteBuffer ready to be read
+	 * @throws IOException If the cache is truncated or any File I/O error
+	 */
+	private ByteBuffer read(final long offset, final int size) throws IOException {
+		ByteBuffer b = ByteBuffer.allocate(size);
+		while (b.hasRemaining()) {
+			if (channel.read(b, offset + b.position()) < 0) {
+				throw new IOException("Truncated cache of '"+ name +"'");
+			}
+		}
+		b.flip();
+		return b;
+	}
+
+	/**
+	 * Get the start offset of a field in its chunk.
+	 *
+	 * @param index int field index
+	 * @return int
+	 */
+	private int start(final int index) {
+		int base = (ascii[index] ? 4 : 8) * groupRows;
+		return row == 0 ? base : base + chunks[index].getInt((row - 1) * 4);
+	}
+
+	/**
+	 * Copy the bytes of a field into scratch.
+	 *
+	 * @param index int field index
+	 * @return int number of bytes
+	 */
+	private int copy(final int index) {
+		MappedByteBuffer chunk = chunks[index];
+		int start;
+		int size;
+		if (chunk == null) {
+			return 0;
+		}
+		start = start(index);
+		size = (ascii[index] ? 4 : 8) * groupRows + chunk.getInt(row * 4) - start;
+		if (size > scratch.length) {
+			scratch = new byte[Math.max(size, scratch.length * 2)];
+		}
+		chunk.position(start);
+		chunk.get(scratch, 0, size);
+		chunk.position(0);
+		return size;
+	}
+
+	/**
+	 * Get the header columns.
+	 *
+	 * @return Array of String
+	 */
+	String[] getHeader() {
+		return header;
+	}
+
+	/**
+	 * Get the header line as read from the CSV.
+	 *
+	 * @return String
+	 */
+	String getHeaderLine() {
+		return headerLine;
+	}
+
+	/**
+	 * Get number of fields of the current record.
+	 *
+	 * @return int
+	 */
+	@Override
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Get the length of a field as it is written, 0 if not selected.
+	 *
+	 * @param index int field index
+	 * @return int
+	 */
+	@Override
+	public int getFieldLength(final int index) {
+		MappedByteBuffer chunk = chunks[index];
+		if (chunk == null) {
+			return 0;
+		}
+		if (!ascii[index]) {
+			return chunk.getInt((groupRows + row) * 4);
+		}
+		return 4 * groupRows + chunk.getInt(row * 4) - start(index);
+	}
+
+	/**
+	 * Get a field as String, empty if not selected.
+	 *
+	 * @param index int field index
+	 * @return String
+	 */
+	@Override
+	public String getField(final int index) {
+		int size = copy(index);
+		return new String(scratch, 0, size, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write a field without creating a String.
+	 *
+	 * @param index int field index
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	public void writeField(final int index, final OutputSink w) throws IOException {
+		int size = copy(index);
+		if (size > 0) {
+			w.writeUtf8(scratch, 0, size);
+		}
+	}
+
+	/**
+	 * Get all fields as Strings.
+	 *
+	 * @return Array of String
+	 */
+	@Override
+	public String[] toArray() {
+		String[] datas = new String[fieldCount];
+		for (int index = 0; index < fieldCount; index++) {
+			datas[index] = getField(index);
+		}
+		return datas;
+	}
+
+	/**
+	 * Get the record as a CSV line of the fields as written, a line that
+	 * tokenizes into the same fields.
+	 *
+	 * @return String
+	 */
+	@Override
+	public String getLine() {
+		StringBuilder sb = new StringBuilder();
+		for (int index = 0; index < fieldCount; index++) {
+			if (index > 0) {
+				sb.append(',');
+			}
+			sb.append(getField(index));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Close the cache file.
+	 */
+	void close() {
+		try {
+			file.close();
+		} catch (IOException ignore) {
+		}
+	}
+
+}
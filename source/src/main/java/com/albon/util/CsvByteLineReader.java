@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <p>
+ * This CsvByteLineReader class reads lines of raw bytes into a reused byte
+ * buffer. A line is terminated the same way as CsvLineReader, by a line
+ * feed, a carriage return or a carriage return followed by a line feed.
+ * Records are read the same way as CsvLineReader in record mode. Line
+ * terminators and double quotes are searched eight bytes at a time by Swar
+ * unless it is turned off.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class CsvByteLineReader implements ByteLineReader {
+
+	/**
+	 * Size of the read buffer.
+	 */
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * Initial size of the line buffer.
+	 */
+	private static final int LINE_SIZE = 8192;
+
+	/**
+	 * Source of bytes.
+	 */
+	private final InputStream stream;
+
+	/**
+	 * Maximum bytes of a record, 0 to read lines.
+	 */
+	private final int maxRecord;
+
+	/**
+	 * Read buffer, taken from the pool, null once closed.
+	 */
+	private byte[] buffer;
+
+	/**
+	 * Read buffer wrapped for reading eight bytes at a time.
+	 */
+	private ByteBuffer words;
+
+	/**
+	 * Next byte to consume in read buffer.
+	 */
+	private int position;
+
+	/**
+	 * Number of valid bytes in read buffer.
+	 */
+	private int limit;
+
+	/**
+	 * Row lengths sizing the line buffer.
+	 */
+	private final BufferPool.Rows sizes;
+
+	/**
+	 * Line buffer, reused, taken from the pool.
+	 */
+	private byte[] line;
+
+	/**
+	 * Number of bytes in line buffer.
+	 */
+	private int length;
+
+	/**
+	 * Skip the line feed following a carriage return.
+	 */
+	private boolean skipLF;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pStream InputStream source of bytes
+	 */
+	public CsvByteLineReader(final InputStream pStream) {
+		this(pStream, 0);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pStream InputStream source of bytes
+	 * @param pMaxRecord int maximum bytes of a record, 0 to read lines
+	 */
+	public CsvByteLineReader(final InputStream pStream, final int pMaxRecord) {
+		Helper.checkObject(pStream, "pStream");
+		stream = pStream;
+		maxRecord = pMaxRecord;
+		buffer = BufferPool.SHARED.takeBytes(BUFFER_SIZE);
+		words = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+		position = 0;
+		limit = 0;
+		line = BufferPool.SHARED.takeBytes(LINE_SIZE);
+		sizes = new BufferPool.Rows(BufferPool.SHARED, LINE_SIZE,
+			BufferPool.Rows.DEFAULT_SHRINK_ROWS);
+		length = 0;
+		skipLF = false;
+	}
+
+	/**
+	 * Read the next line, or record in record mode.
+	 *
+	 * @return int number of bytes on the line or -1 at end of stream
+	 * @throws IOException If any error at File I/O level or record too long
+	 */
+	@Override
+	public int readLine() throws IOException {
+		int start;
+		byte b;
+		boolean quoted = false;
+		line = sizes.shrink(line);
+		length = 0;
+		for (;;) {
+			if (position >= limit) {
+				if (!fill()) {
+					return length > 0 ? length : -1;
+				}
+			}
+			if (skipLF) {
+				skipLF = false;
+				if (buffer[position] == '\n') {
+					position = position + 1;
+					continue;
+				}
+			}
+			start = position;
+			if (Swar.ENABLED) {
+				while (position < limit) {
+					position = maxRecord == 0
+						? Swar.indexOf(words, position, limit, Swar.LFS, Swar.CRS)
+						: quoted
+						? Swar.indexOf(words, position, limit, Swar.QUOTES)
+						: Swar.indexOf(words, position, limit, Swar.QUOTES,
+							Swar.LFS, Swar.CRS);
+					if (position == limit || buffer[position] != '"') {
+						break;
+					}
+					quoted = !quoted;
+					position = position + 1;
+				}
+			}
+			else if (maxRecord == 0) {
+				while (position < limit) {
+					b = buffer[position];
+					if (b == '\n' || b == '\r') {
+						break;
+					}
+					position = position + 1;
+				}
+			}
+			else {
+				while (position < limit) {
+					b = buffer[position];
+					if (b == '"') {
+						quoted = !quoted;
+					}
+					else if ((b == '\n' || b == '\r') && !quoted) {
+						break;
+					}
+					position = position + 1;
+				}
+			}
+			append(start, position - start);
+			if (position < limit) {
+				b = buffer[position];
+				position = position + 1;
+				if (b == '\r') {
+					skipLF = true;
+				}
+				sizes.add(length);
+				return length;
+			}
+		}
+	}
+
+	/**
+	 * Get the line buffer, valid until the next readLine.
+	 *
+	 * @return Array of byte
+	 */
+	@Override
+	public byte[] getLine() {
+		return line;
+	}
+
+	/**
+	 * Close the source of bytes, the read and line
+	 * buffers go back to the pool.
+	 */
+	@Override
+	public void close() {
+		try {
+			stream.close();
+		} catch (IOException ignore) {
+		}
+		BufferPool.SHARED.give(buffer);
+		BufferPool.SHARED.give(line);
+		buffer = null;
+		line = null;
+		words = null;
+	}
+
+	/**
+	 * Append bytes of the read buffer into the line buffer.
+	 *
+	 * @param start int offset in read buffer
+	 * @param size int number of bytes
+	 * @throws IOException If the record is too long
+	 */
+	private void append(final int start, final int size) throws IOException {
+		if (maxRecord > 0 && length + size > maxRecord) {
+			throw new IOException("Record longer than "+ maxRecord
+				+" bytes, unbalanced double quote?");
+		}
+		if (length + size > line.length) {
+			line = sizes.grow(line, length, length + size);
+		}
+		System.arraycopy(buffer, start, line, length, size);
+		length = length + size;
+	}
+
+	/**
+	 * Refill the read buffer.
+	 *
+	 * @return boolean false at end of stream
+	 * @throws IOException If any error at File I/O level
+	 */
+	private boolean fill() throws IOException {
+		int n;
+		do {
+			n = stream.read(buffer, 0, buffer.length);
+		} while (n == 0);
+		if (n < 0) {
+			return false;
+		}
+		position = 0;
+		limit = n;
+		return true;
+	}
+
+}
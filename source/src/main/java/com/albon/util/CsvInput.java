@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * This CsvInput class binds an input CSV file with its header and the
+ * tokenizer of its current record. Lines are read either as characters
+ * or, for UTF-8, as raw bytes that are never decoded.
+ * </p>
+ * <p>
+ * An input read from its columnar cache has no lines: its records come
+ * tokenized from the cache, lines can't be read one by one.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class CsvInput {
+
+	/**
+	 * Name of the input, used in messages.
+	 */
+	private final String name;
+
+	/**
+	 * Source of lines, null when reading bytes.
+	 */
+	private final LineReader reader;
+
+	/**
+	 * Source of UTF-8 lines, null when reading characters.
+	 */
+	private final ByteLineReader byteReader;
+
+	/**
+	 * Tokenizer of the current record, also of an UTF-8 line that must be
+	 * decoded.
+	 */
+	private final CsvTokenizer tokenizer;
+
+	/**
+	 * Tokenizer of the current UTF-8 record, null when reading characters.
+	 */
+	private final Utf8CsvTokenizer byteTokenizer;
+
+	/**
+	 * Columnar cache of the records, null when reading lines.
+	 */
+	private final ColumnarCache cache;
+
+	/**
+	 * Current record, either tokenizer.
+	 */
+	private CsvRecord record;
+
+	/**
+	 * Header columns.
+	 */
+	private String[] header;
+
+	/**
+	 * Header line as read.
+	 */
+	private String headerLine;
+
+	/**
+	 * Error that ended the reading, null if none.
+	 */
+	private IOException error;
+
+	/**
+	 * Number of fields tokenized on each record.
+	 */
+	private int fieldLimit;
+
+	/**
+	 * Characters, or bytes, of the lines read.
+	 */
+	private long bytesRead;
+
+	/**
+	 * Longest line read.
+	 */
+	private int peakRecord;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pName String name of the input
+	 * @param pReader LineReader source of lines
+	 */
+	CsvInput(final String pName, final LineReader pReader) {
+		Helper.checkObject(pReader, "pReader");
+		name = pName;
+		reader = pReader;
+		byteReader = null;
+		tokenizer = new CsvTokenizer();
+		byteTokenizer = null;
+		cache = null;
+		record = tokenizer;
+		header = null;
+		headerLine = null;
+		error = null;
+		fieldLimit = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Constructor of an UTF-8 input read as bytes.
+	 *
+	 * @param pName String name of the input
+	 * @param pReader ByteLineReader source of UTF-8 lines
+	 */
+	CsvInput(final String pName, final ByteLineReader pReader) {
+		Helper.checkObject(pReader, "pReader");
+		name = pName;
+		reader = null;
+		byteReader = pReader;
+		tokenizer = new CsvTokenizer();
+		byteTokenizer = new Utf8CsvTokenizer();
+		cache = null;
+		record = byteTokenizer;
+		header = null;
+		headerLine = null;
+		error = null;
+		fieldLimit = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Constructor of an input read from its columnar cache.
+	 *
+	 * @param pName String name of the input
+	 * @param pCache ColumnarCache records of the input
+	 */
+	CsvInput(final String pName, final ColumnarCache pCache) {
+		Helper.checkObject(pCache, "pCache");
+		name = pName;
+		reader = null;
+		byteReader = null;
+		tokenizer = new CsvTokenizer();
+		byteTokenizer = null;
+		cache = pCache;
+		record = pCache;
+		header = null;
+		headerLine = null;
+		error = null;
+		fieldLimit = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Read line without tokenizing it, an error ends the reading and is kept
+	 * for checkError.
+	 *
+	 * @return int number of characters, or bytes, or -1 at end of file
+	 */
+	int readLine() {
+		int length;
+		try {
+			length = reader != null ? reader.readLine() : byteReader.readLine();
+		} catch (IOException e) {
+			error = e;
+			length = -1;
+		}
+		if (length > 0) {
+			bytesRead = bytesRead + length;
+			if (length > peakRecord) {
+				peakRecord = length;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Check that the reading did not end on an error.
+	 *
+	 * @throws MergeCsvException If the reading ended on an error
+	 */
+	void checkError() throws MergeCsvException {
+		if (error != null) {
+			throw new MergeCsvException("Error reading '"+ name +"': "
+				+ error.getMessage(), error);
+		}
+	}
+
+	/**
+	 * Tokenize the line just read.
+	 *
+	 * @param length int number of characters, or bytes
+	 * @return int number of fields
+	 */
+	private int tokenize(final int length) {
+		byte[] line;
+		if (reader != null) {
+			return tokenizer.tokenize(reader.getLine(), length);
+		}
+		line = byteReader.getLine();
+		record = byteTokenizer;
+		byteTokenizer.tokenize(line, length);
+		if (byteTokenizer.needsDecoding()) {
+			record = tokenizer;
+			tokenizer.tokenize(new String(line, 0, length, StandardCharsets.UTF_8));
+		}
+		return record.getFieldCount();
+	}
+
+	/**
+	 * Read the CSV header information.
+	 *
+	 * @return Array of String
+	 *
+	 * @throws MergeCsvException If no valid CSV header
+	 */
+	String[] readHeader() throws MergeCsvException {
+
+		if (cache != null) {
+			header = cache.getHeader();
+			headerLine = cache.getHeaderLine();
+			return header;
+		}
+		int length = readLine();
+		checkError();
+		// minimum value "a,b"
+		if (length < 3) {
+			throw new MergeCsvException("Missing header data on '"+ name +"'");
+		}
+
+		// minumin value is 2
+		if (tokenize(length) < 2) {
+			throw new MergeCsvException("Missing header data on '"+ name +"'");
+		}
+
+		header = record.toArray();
+		headerLine = record.getLine();
+		return header;
+	}
+
+	/**
+	 * Read and tokenize the next record.
+	 *
+	 * @return boolean false if there is no more valid record
+	 */
+	boolean next() {
+		if (cache != null) {
+			try {
+				return cache.next();
+			} catch (IOException e) {
+				error = e;
+				return false;
+			}
+		}
+		int length = readLine();
+		if (length < 2) {
+			return false;
+		}
+		return tokenize(length) >= 2;
+	}
+
+	/**
+	 * Check if the current record has at least as many fields as the header,
+	 * or as the field limit when lower.
+	 *
+	 * @return boolean
+	 */
+	boolean isComplete() {
+		return record.getFieldCount() >= getWidth();
+	}
+
+	/**
+	 * Get the number of fields of a complete record.
+	 *
+	 * @return int
+	 */
+	int getWidth() {
+		return Math.min(header.length, fieldLimit);
+	}
+
+	/**
+	 * Tokenize only the first fields of each record, once the header is read.
+	 * A record is then complete when it has these fields.
+	 *
+	 * @param pFieldLimit int number of fields, Integer.MAX_VALUE for all
+	 */
+	void setFieldLimit(final int pFieldLimit) {
+		fieldLimit = pFieldLimit;
+		tokenizer.setFieldLimit(pFieldLimit);
+		if (byteTokenizer != null) {
+			byteTokenizer.setFieldLimit(pFieldLimit);
+		}
+	}
+
+	/**
+	 * Read only the given columns from the cache, the others read as empty
+	 * fields. Lines are always tokenized whole.
+	 *
+	 * @param columns Array of boolean, true for each column needed
+	 */
+	void select(final boolean[] columns) {
+		if (cache != null) {
+			cache.select(columns);
+		}
+	}
+
+	/**
+	 * Check if records are read from a columnar cache.
+	 *
+	 * @return boolean
+	 */
+	boolean isCached() {
+		return cache != null;
+	}
+
+	/**
+	 * Get the offset in the file of the next record, only for a memory
+	 * mapped file.
+	 *
+	 * @return long -1 if the input can't tell
+	 * @throws IOException If any error at File I/O level
+	 */
+	long getPosition() throws IOException {
+		if (reader instanceof MappedLineReader) {
+			return ((MappedLineReader) reader).getPosition();
+		}
+		if (byteReader instanceof MappedByteLineReader) {
+			return ((MappedByteLineReader) byteReader).getPosition();
+		}
+		return -1L;
+	}
+
+	/**
+	 * Read the next record from an offset returned by getPosition, the
+	 * header is kept.
+	 *
+	 * @param offset long
+	 * @throws IllegalStateException If the input is not a memory mapped file
+	 */
+	void seek(final long offset) {
+		if (reader instanceof MappedLineReader) {
+			((MappedLineReader) reader).seek(offset);
+		}
+		else if (byteReader instanceof MappedByteLineReader) {
+			((MappedByteLineReader) byteReader).seek(offset);
+		}
+		else {
+			throw new IllegalStateException("Input '"+ name +"' can't seek");
+		}
+	}
+
+	/**
+	 * Get the number of fields tokenized on each record.
+	 *
+	 * @return int
+	 */
+	int getFieldLimit() {
+		return fieldLimit;
+	}
+
+	/**
+	 * Get number of characters, or bytes, of the lines read.
+	 *
+	 * @return long
+	 */
+	long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Get the length of the longest line read.
+	 *
+	 * @return int
+	 */
+	int getPeakRecord() {
+		return peakRecord;
+	}
+
+	/**
+	 * Get the current record.
+	 *
+	 * @return CsvRecord
+	 */
+	CsvRecord getRecord() {
+		return record;
+	}
+
+	/**
+	 * Check if lines are read as UTF-8 bytes.
+	 *
+	 * @return boolean
+	 */
+	boolean isBytes() {
+		return byteReader != null;
+	}
+
+	/**
+	 * Get the line buffer filled by readLine, valid until the next read,
+	 * only when reading characters.
+	 *
+	 * @return Array of char
+	 */
+	char[] getLineBuffer() {
+		return reader.getLine();
+	}
+
+	/**
+	 * Get the current record as String.
+	 *
+	 * @return String
+	 */
+	String getLine() {
+		return record.getLine();
+	}
+
+	/**
+	 * Get the header columns.
+	 *
+	 * @return Array of String
+	 */
+	String[] getHeader() {
+		return header;
+	}
+
+	/**
+	 * Get the header line as read.
+	 *
+	 * @return String
+	 */
+	String getHeaderLine() {
+		return headerLine;
+	}
+
+	/**
+	 * Get the name of this input.
+	 *
+	 * @return String
+	 */
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * Free file resources.
+	 */
+	void close() {
+		if (cache != null) {
+			cache.close();
+		}
+		else if (reader != null) {
+			reader.close();
+		}
+		else {
+			byteReader.close();
+		}
+	}
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * <p>
+ * This CsvLineReader class reads lines into a reused char buffer. A line is
+ * terminated the same way as BufferedReader.readLine, by a line feed, a
+ * carriage return or a carriage return followed by a line feed.
+ * </p>
+ * <p>
+ * In record mode a line terminator between double quotes belongs to the
+ * record, as in RFC 4180, and the quote state is carried across refills of
+ * the read buffer. A record longer than the maximum is an error, most
+ * likely an unbalanced double quote.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class CsvLineReader implements LineReader {
+
+	/**
+	 * Size of the read buffer.
+	 */
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * Initial size of the line buffer.
+	 */
+	private static final int LINE_SIZE = 8192;
+
+	/**
+	 * Source of characters.
+	 */
+	private final Reader reader;
+
+	/**
+	 * Maximum characters of a record, 0 to read lines.
+	 */
+	private final int maxRecord;
+
+	/**
+	 * Read buffer, taken from the pool, null once closed.
+	 */
+	private char[] buffer;
+
+	/**
+	 * Next character to consume in read buffer.
+	 */
+	private int position;
+
+	/**
+	 * Number of valid characters in read buffer.
+	 */
+	private int limit;
+
+	/**
+	 * Row lengths sizing the line buffer.
+	 */
+	private final BufferPool.Rows sizes;
+
+	/**
+	 * Line buffer, reused, taken from the pool.
+	 */
+	private char[] line;
+
+	/**
+	 * Number of characters in line buffer.
+	 */
+	private int length;
+
+	/**
+	 * Skip the line feed following a carriage return.
+	 */
+	private boolean skipLF;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pReader Reader source of characters
+	 */
+	public CsvLineReader(final Reader pReader) {
+		this(pReader, 0);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pReader Reader source of characters
+	 * @param pMaxRecord int maximum characters of a record, 0 to read lines
+	 */
+	public CsvLineReader(final Reader pReader, final int pMaxRecord) {
+		Helper.checkObject(pReader, "pReader");
+		reader = pReader;
+		maxRecord = pMaxRecord;
+		buffer = BufferPool.SHARED.takeChars(BUFFER_SIZE);
+		position = 0;
+		limit = 0;
+		line = BufferPool.SHARED.takeChars(LINE_SIZE);
+		sizes = new BufferPool.Rows(BufferPool.SHARED, LINE_SIZE,
+			BufferPool.Rows.DEFAULT_SHRINK_ROWS);
+		length = 0;
+		skipLF = false;
+	}
+
+	/**
+	 * Read the next line, or record in record mode.
+	 *
+	 * @return int number of characters on the line or -1 at end of stream
+	 * @throws IOException If any error at File I/O level or record too long
+	 */
+	@Override
+	public int readLine() throws IOException {
+		int start;
+		char c;
+		boolean quoted = false;
+		line = sizes.shrink(line);
+		length = 0;
+		for (;;) {
+			if (position >= limit) {
+				if (!fill()) {
+					return length > 0 ? length : -1;
+				}
+			}
+			if (skipLF) {
+				skipLF = false;
+				if (buffer[position] == '\n') {
+					position = position + 1;
+					continue;
+				}
+			}
+			start = position;
+			if (maxRecord == 0) {
+				while (position < limit) {
+					c = buffer[position];
+					if (c == '\n' || c == '\r') {
+						break;
+					}
+					position = position + 1;
+				}
+			}
+			else {
+				while (position < limit) {
+					c = buffer[position];
+					if (c == '"') {
+						quoted = !quoted;
+					}
+					else if ((c == '\n' || c == '\r') && !quoted) {
+						break;
+					}
+					position = position + 1;
+				}
+			}
+			append(start, position - start);
+			if (position < limit) {
+				c = buffer[position];
+				position = position + 1;
+				if (c == '\r') {
+					skipLF = true;
+				}
+				sizes.add(length);
+				return length;
+			}
+		}
+	}
+
+	/**
+	 * Get the line buffer, valid until the next readLine.
+	 *
+	 * @return Array of char
+	 */
+	@Override
+	public char[] getLine() {
+		return line;
+	}
+
+	/**
+	 * Get number of characters in the line buffer.
+	 *
+	 * @return int
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Close the source of characters, the read and line
+	 * buffers go back to the pool.
+	 */
+	@Override
+	public void close() {
+		try {
+			reader.close();
+		} catch (IOException ignore) {
+		}
+		BufferPool.SHARED.give(buffer);
+		BufferPool.SHARED.give(line);
+		buffer = null;
+		line = null;
+	}
+
+	/**
+	 * Append characters of the read buffer into the line buffer.
+	 *
+	 * @param start int offset in read buffer
+	 * @param size int number of characters
+	 * @throws IOException If the record is too long
+	 */
+	private void append(final int start, final int size) throws IOException {
+		if (maxRecord > 0 && length + size > maxRecord) {
+			throw new IOException("Record longer than "+ maxRecord
+				+" characters, unbalanced double quote?");
+		}
+		if (length + size > line.length) {
+			line = sizes.grow(line, length, length + size);
+		}
+		System.arraycopy(buffer, start, line, length, size);
+		length = length + size;
+	}
+
+	/**
+	 * Refill the read buffer.
+	 *
+	 * @return boolean false at end of stream
+	 * @throws IOException If any error at File I/O level
+	 */
+	private boolean fill() throws IOException {
+		int n;
+		do {
+			n = reader.read(buffer, 0, buffer.length);
+		} while (n == 0);
+		if (n < 0) {
+			return false;
+		}
+		position = 0;
+		limit = n;
+		return true;
+	}
+
+}
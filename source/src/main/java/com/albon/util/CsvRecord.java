@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * This CsvRecord interface defines the fields of one tokenized CSV line, as
+ * the merge reads and writes them whatever the line was read from.
+ * </p>
+ * <p>
+ * A field is exposed exactly as the CSV output expects it: a quoted field
+ * keeps its quotes (a missing closing quote is added), an unquoted field is
+ * trimmed and wrapped in double quotes if it contains a space.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>Implementations are not required to be
+ * thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public interface CsvRecord {
+
+	/**
+	 * Get number of fields.
+	 *
+	 * @return int
+	 */
+	int getFieldCount();
+
+	/**
+	 * Get the length of a field as it is written, in UTF-16 characters.
+	 *
+	 * @param index int field index
+	 * @return int
+	 */
+	int getFieldLength(int index);
+
+	/**
+	 * Get a field as String.
+	 *
+	 * @param index int field index
+	 * @return String
+	 */
+	String getField(int index);
+
+	/**
+	 * Write a field without creating a String.
+	 *
+	 * @param index int field index
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	void writeField(int index, OutputSink w) throws IOException;
+
+	/**
+	 * Get all fields as Strings.
+	 *
+	 * @return Array of String
+	 */
+	String[] toArray();
+
+	/**
+	 * Get the whole line as String.
+	 *
+	 * @return String
+	 */
+	String getLine();
+
+}
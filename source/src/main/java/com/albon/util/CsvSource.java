@@ -0,0 +1,355 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>
+ * This CsvSource class describes where a CSV is read from: a file, a Reader
+ * or an InputStream. A file is opened by each merge and closed at its end,
+ * a Reader or an InputStream belongs to the caller, it is read by one merge
+ * only and left open.
+ * </p>
+ * <p>
+ * A file or an InputStream in UTF-8 can be read as raw bytes, its fields
+ * are then copied to the output without being decoded.
+ * </p>
+ * <p>
+ * A gzip file or InputStream is recognized by its magic bytes and read
+ * decompressed, on other threads than the one parsing its lines.
+ * </p>
+ * <p>
+ * A path that is not a regular file, such as a named pipe, is opened only
+ * once per merge: it is neither memory mapped nor sniffed for gzip ahead of
+ * being read.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is immutable thus thread safe,
+ * a Reader or an InputStream can still be read only once.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class CsvSource {
+
+	/**
+	 * Reader that does not close the Reader of the caller.
+	 */
+	private static final class KeepOpenReader extends FilterReader {
+		/**
+		 * Constructor.
+		 *
+		 * @param in Reader
+		 */
+		private KeepOpenReader(final Reader in) {
+			super(in);
+		}
+
+		@Override
+		public void close() {
+			// The caller closes its Reader
+		}
+	}
+
+	/**
+	 * InputStream that does not close the InputStream of the caller.
+	 */
+	private static final class KeepOpenStream extends FilterInputStream {
+		/**
+		 * Constructor.
+		 *
+		 * @param in InputStream
+		 */
+		private KeepOpenStream(final InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public void close() {
+			// The caller closes its InputStream
+		}
+	}
+
+	/**
+	 * Name of the source, used in messages.
+	 */
+	private final String name;
+
+	/**
+	 * File, null for a stream.
+	 */
+	private final File file;
+
+	/**
+	 * Charset of the file or the InputStream, null for the one of the merge.
+	 */
+	private final Charset charset;
+
+	/**
+	 * Reader of the caller, null if none.
+	 */
+	private final Reader reader;
+
+	/**
+	 * InputStream of the caller, null if none.
+	 */
+	private final InputStream stream;
+
+	/**
+	 * Set once a Reader or an InputStream has been read.
+	 */
+	private final AtomicBoolean used;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pName String
+	 * @param pFile File or null
+	 * @param pCharset Charset or null
+	 * @param pReader Reader or null
+	 * @param pStream InputStream or null
+	 */
+	private CsvSource(final String pName,
+			final File pFile,
+			final Charset pCharset,
+			final Reader pReader,
+			final InputStream pStream
+	) {
+		name = pName;
+		file = pFile;
+		charset = pCharset;
+		reader = pReader;
+		stream = pStream;
+		used = new AtomicBoolean(false);
+	}
+
+	/**
+	 * Create the source of a file in the charset of the merge.
+	 *
+	 * @param path Path
+	 * @return CsvSource
+	 */
+	public static CsvSource of(final Path path) {
+		Helper.checkObject(path, "path");
+		return new CsvSource(path.toString(), path.toFile(), null, null, null);
+	}
+
+	/**
+	 * Create the source of a file.
+	 *
+	 * @param path Path
+	 * @param charset Charset of the file
+	 * @return CsvSource
+	 */
+	public static CsvSource of(final Path path, final Charset charset) {
+		Helper.checkObject(path, "path");
+		Helper.checkObject(charset, "charset");
+		return new CsvSource(path.toString(), path.toFile(), charset, null, null);
+	}
+
+	/**
+	 * Create the source of a Reader, read once and left open.
+	 *
+	 * @param reader Reader
+	 * @param name String name used in messages
+	 * @return CsvSource
+	 */
+	public static CsvSource of(final Reader reader, final String name) {
+		Helper.checkObject(reader, "reader");
+		return new CsvSource(name, null, null, reader, null);
+	}
+
+	/**
+	 * Create the source of an InputStream, read once and left open.
+	 *
+	 * @param stream InputStream
+	 * @param charset Charset of the stream
+	 * @param name String name used in messages
+	 * @return CsvSource
+	 */
+	public static CsvSource of(final InputStream stream,
+			final Charset charset,
+			final String name
+	) {
+		Helper.checkObject(stream, "stream");
+		Helper.checkObject(charset, "charset");
+		return new CsvSource(name, null, charset, null, stream);
+	}
+
+	/**
+	 * Get the name of the source.
+	 *
+	 * @return String
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the file of the source.
+	 *
+	 * @return File null for a stream
+	 */
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * Get the size of the file.
+	 *
+	 * @return long number of bytes, -1 for a stream or a file that is not a
+	 *   regular file such as a FIFO
+	 */
+	public long size() {
+		return file == null || !file.isFile() ? -1L : file.length();
+	}
+
+	/**
+	 * Get the charset of the source.
+	 *
+	 * @param fallback Charset of the merge
+	 * @return Charset
+	 */
+	Charset getCharset(final Charset fallback) {
+		return charset != null ? charset : fallback;
+	}
+
+	/**
+	 * Check if the source can be read as UTF-8 bytes.
+	 *
+	 * @param fallback Charset of the merge
+	 * @return boolean
+	 */
+	boolean isUtf8(final Charset fallback) {
+		return reader == null
+			&& StandardCharsets.UTF_8.equals(getCharset(fallback));
+	}
+
+	/**
+	 * Mark a stream as read.
+	 *
+	 * @throws IllegalStateException If a stream has already been read
+	 */
+	private void use() {
+		if (file == null && used.getAndSet(true)) {
+			throw new IllegalStateException("Source '"+ name +"' already read");
+		}
+	}
+
+	/**
+	 * Open the source.
+	 *
+	 * @param mmap boolean true to map a file in memory when its charset allows
+	 * @param fallback Charset of the merge
+	 * @param maxRecord int maximum size of a record, 0 to read lines
+	 * @return LineReader
+	 * @throws FileNotFoundException If the file does not exist
+	 * @throws IOException If any error at File I/O level
+	 * @throws IllegalStateException If a stream has already been read
+	 */
+	LineReader open(final boolean mmap, final Charset fallback,
+			final int maxRecord
+	) throws IOException {
+		Charset cs = getCharset(fallback);
+		use();
+		if (reader != null) {
+			return new CsvLineReader(new KeepOpenReader(reader), maxRecord);
+		}
+		if (file != null && mmap && MappedCsvFile.isSupported(cs)
+				&& file.isFile() && !Gzip.isGzip(file)) {
+			MappedCsvFile mapped = map(cs);
+			return new MappedLineReader(mapped, 0L, mapped.size(), true,
+				maxRecord);
+		}
+		return new CsvLineReader(new InputStreamReader(openStream(), cs),
+			maxRecord);
+	}
+
+	/**
+	 * Open the source as UTF-8 bytes, only if isUtf8.
+	 *
+	 * @param mmap boolean true to map a file in memory
+	 * @param maxRecord int maximum bytes of a record, 0 to read lines
+	 * @return ByteLineReader
+	 * @throws FileNotFoundException If the file does not exist
+	 * @throws IOException If any error at File I/O level
+	 * @throws IllegalStateException If a stream has already been read
+	 */
+	ByteLineReader openBytes(final boolean mmap, final int maxRecord)
+			throws IOException {
+		use();
+		if (file != null && mmap && file.isFile() && !Gzip.isGzip(file)) {
+			MappedCsvFile mapped = map(StandardCharsets.UTF_8);
+			return new MappedByteLineReader(mapped, 0L, mapped.size(), true,
+				maxRecord);
+		}
+		return new CsvByteLineReader(openStream(), maxRecord);
+	}
+
+	/**
+	 * Open the bytes of a file or stream, decompressed if gzip.
+	 *
+	 * @return InputStream
+	 * @throws FileNotFoundException If the file does not exist
+	 * @throws IOException If any error at File I/O level
+	 */
+	private InputStream openStream() throws IOException {
+		if (file == null) {
+			return Gzip.open(new KeepOpenStream(stream));
+		}
+		// A named pipe is sniffed on the stream itself, it can't be reopened
+		if (!file.isFile() || Gzip.isGzip(file)) {
+			return Gzip.open(new FileInputStream(file));
+		}
+		return new FileInputStream(file);
+	}
+
+	/**
+	 * Map the file in memory.
+	 *
+	 * @param cs Charset of the file
+	 * @return MappedCsvFile
+	 * @throws FileNotFoundException If the file does not exist
+	 * @throws IOException If any error at File I/O level
+	 */
+	private MappedCsvFile map(final Charset cs) throws IOException {
+		if (!file.isFile()) {
+			throw new FileNotFoundException(file.getPath());
+		}
+		return new MappedCsvFile(file, cs);
+	}
+
+}
@@ -0,0 +1,497 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * This CsvTokenizer class splits one comma delimited line into fields in a
+ * single pass. Field boundaries are kept as offsets into the line buffer,
+ * a String is only created when a field is explicitly requested.
+ * </p>
+ * <p>
+ * A field is exposed exactly as the CSV output expects it: a quoted field
+ * keeps its quotes (a missing closing quote is added), an unquoted field is
+ * trimmed and wrapped in double quotes if it contains a space.
+ * </p>
+ * <p>
+ * With a field limit the scan stops once the last needed field is found,
+ * the remaining fields of the line are neither scanned nor counted.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * One instance is meant to be reused line after line by a single thread.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class CsvTokenizer implements CsvRecord {
+
+	/**
+	 * Double quote character.
+	 */
+	private static final char DOUBLE_QUOTE = '"';
+
+	/**
+	 * Field delimiter character.
+	 */
+	private static final char DELIMITER = ',';
+
+	/**
+	 * Field is written as is.
+	 */
+	private static final int AS_IS = 0;
+
+	/**
+	 * Field is a literal missing its closing double quote.
+	 */
+	private static final int CLOSE_QUOTE = 1;
+
+	/**
+	 * Field contains a space and is wrapped in double quotes.
+	 */
+	private static final int WRAP_QUOTE = 2;
+
+	/**
+	 * Initial number of fields.
+	 */
+	private static final int INITIAL_FIELDS = 16;
+
+	/**
+	 * Line buffer, reused.
+	 */
+	private char[] line;
+
+	/**
+	 * Offset of the line in line buffer.
+	 */
+	private int base;
+
+	/**
+	 * End offset of the line in line buffer.
+	 */
+	private int length;
+
+	/**
+	 * Start offset of each field.
+	 */
+	private int[] starts;
+
+	/**
+	 * End offset (exclusive) of each field.
+	 */
+	private int[] ends;
+
+	/**
+	 * Fix up of each field, one of AS_IS, CLOSE_QUOTE or WRAP_QUOTE.
+	 */
+	private int[] fixes;
+
+	/**
+	 * Number of fields found on the last line.
+	 */
+	private int fieldCount;
+
+	/**
+	 * Number of fields after which the scan of a line stops.
+	 */
+	private int fieldLimit;
+
+	/**
+	 * Default constructor.
+	 */
+	public CsvTokenizer() {
+		line = new char[0];
+		base = 0;
+		length = 0;
+		starts = new int[INITIAL_FIELDS];
+		ends = new int[INITIAL_FIELDS];
+		fixes = new int[INITIAL_FIELDS];
+		fieldCount = 0;
+		fieldLimit = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Tokenize the given line.
+	 *
+	 * @param pLine String line without line terminator
+	 * @return int number of fields
+	 */
+	public int tokenize(final String pLine) {
+		int size = pLine.length();
+		if (line.length < size) {
+			line = new char[Math.max(size, line.length * 2)];
+		}
+		pLine.getChars(0, size, line, 0);
+		return scan(line, 0, size);
+	}
+
+	/**
+	 * Tokenize the given characters, the buffer is referenced not copied
+	 * thus it must not be modified while fields are in use.
+	 *
+	 * @param buffer Array of char
+	 * @param size int number of characters in buffer
+	 * @return int number of fields
+	 */
+	public int tokenize(final char[] buffer, final int size) {
+		return scan(buffer, 0, size);
+	}
+
+	/**
+	 * Tokenize the given characters starting at an offset, the buffer is
+	 * referenced not copied thus it must not be modified while fields are
+	 * in use.
+	 *
+	 * @param buffer Array of char
+	 * @param offset int offset of the line in buffer
+	 * @param size int number of characters of the line
+	 * @return int number of fields
+	 */
+	public int tokenize(final char[] buffer, final int offset, final int size) {
+		return scan(buffer, offset, offset + size);
+	}
+
+	/**
+	 * Scan the whole line, one field after another.
+	 *
+	 * @param buffer Array of char
+	 * @param from int offset of the line in buffer
+	 * @param to int end offset of the line in buffer
+	 * @return int number of fields
+	 */
+	private int scan(final char[] buffer, final int from, final int to) {
+		int index = from;
+		int offset;
+		line = buffer;
+		base = from;
+		length = to;
+		fieldCount = 0;
+		do {
+			if (fieldCount == starts.length) {
+				grow();
+			}
+			offset = scanField(index);
+			if (offset == index) {
+				break;
+			}
+			fieldCount = fieldCount + 1;
+			index = offset;
+		} while (offset < to && fieldCount < fieldLimit);
+
+		return fieldCount;
+	}
+
+	/**
+	 * Stop the scan of each line after the given number of fields, the rest
+	 * of the line is skipped without being looked at.
+	 *
+	 * @param pFieldLimit int number of fields, Integer.MAX_VALUE for all
+	 * @throws IllegalArgumentException If given pFieldLimit is less than 1
+	 */
+	public void setFieldLimit(final int pFieldLimit) {
+		if (pFieldLimit < 1) {
+			throw new IllegalArgumentException("Invalid field limit '"+ pFieldLimit +"'");
+		}
+		fieldLimit = pFieldLimit;
+	}
+
+	/**
+	 * Scan one field starting at the given offset and record its boundaries
+	 * at slot fieldCount.
+	 *
+	 * @param pOffset int start of the field
+	 * @return int start of the next field
+	 */
+	private int scanField(final int pOffset) {
+		final char[] b = line;
+		final int limit = length;
+		int offset = pOffset;
+		int start = pOffset;
+		int end;
+		char c;
+		boolean inLiteral = false;
+		if (offset < limit) {
+			if (b[offset] == DOUBLE_QUOTE) {
+				inLiteral = true;
+				offset = offset + 1;
+				// Check two-double-quote
+				if (offset < limit && b[offset] == DOUBLE_QUOTE) {
+					offset = offset + 1;
+					inLiteral = false;
+				}
+			}
+		}
+		end = offset;
+		while (offset < limit) {
+			c = b[offset];
+			offset = offset + 1;
+			if (c == DELIMITER && inLiteral) {
+				end = offset;
+				continue;
+			}
+			if (c == DOUBLE_QUOTE) {
+				// Check for two-double-quote
+				if (offset < limit && b[offset] == DOUBLE_QUOTE) {
+					offset = offset + 1;
+					end = offset;
+					continue;
+				}
+				end = offset;
+				offset = offset + 1;
+				offset = skipBlanks(offset);
+				break;
+			}
+			if (c == DELIMITER) {
+				offset = skipBlanks(offset);
+				break;
+			}
+			end = offset;
+		}
+
+		int fix = AS_IS;
+		if (inLiteral) {
+			// Fix in literal delimiter
+			if (end - start < 2) {
+				end = start;
+			}
+			else if (b[end - 1] != DOUBLE_QUOTE) {
+				fix = CLOSE_QUOTE;
+			}
+		}
+		else {
+			// Fix string with embedded space
+			while (start < end && b[start] <= ' ') {
+				start = start + 1;
+			}
+			while (end > start && b[end - 1] <= ' ') {
+				end = end - 1;
+			}
+			for (int i = start + 1; i < end; i++) {
+				if (b[i] == ' ') {
+					fix = WRAP_QUOTE;
+					break;
+				}
+			}
+		}
+		starts[fieldCount] = start;
+		ends[fieldCount] = end;
+		fixes[fieldCount] = fix;
+		return offset;
+	}
+
+	/**
+	 * Skip spaces and tabs.
+	 *
+	 * @param pOffset int
+	 * @return int offset of the first non blank character
+	 */
+	private int skipBlanks(final int pOffset) {
+		int offset = pOffset;
+		while (offset < length) {
+			char c = line[offset];
+			if (c == ' ' || c == '\t') {
+				offset = offset + 1;
+			}
+			else {
+				break;
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Double the capacity of the field offsets.
+	 */
+	private void grow() {
+		int size = starts.length * 2;
+		int[] p = new int[size];
+		System.arraycopy(starts, 0, p, 0, fieldCount);
+		starts = p;
+		p = new int[size];
+		System.arraycopy(ends, 0, p, 0, fieldCount);
+		ends = p;
+		p = new int[size];
+		System.arraycopy(fixes, 0, p, 0, fieldCount);
+		fixes = p;
+	}
+
+	/**
+	 * Get number of fields found on the last line.
+	 *
+	 * @return int
+	 */
+	@Override
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Get the length of a field as it is written.
+	 *
+	 * @param index int field index
+	 * @return int
+	 */
+	@Override
+	public int getFieldLength(final int index) {
+		int size = ends[index] - starts[index];
+		switch (fixes[index]) {
+		case CLOSE_QUOTE:
+			return size + 1;
+		case WRAP_QUOTE:
+			return size + 2;
+		default:
+			return size;
+		}
+	}
+
+	/**
+	 * Get a field as String.
+	 *
+	 * @param index int field index
+	 * @return String
+	 */
+	@Override
+	public String getField(final int index) {
+		int start = starts[index];
+		int size = ends[index] - start;
+		switch (fixes[index]) {
+		case CLOSE_QUOTE:
+			return new String(line, start, size) + DOUBLE_QUOTE;
+		case WRAP_QUOTE:
+			return DOUBLE_QUOTE + new String(line, start, size) + DOUBLE_QUOTE;
+		default:
+			return new String(line, start, size);
+		}
+	}
+
+	/**
+	 * Write a field without creating a String.
+	 *
+	 * @param index int field index
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	public void writeField(final int index, final OutputSink w) throws IOException {
+		int start = starts[index];
+		int size = ends[index] - start;
+		int fix = fixes[index];
+		if (fix == WRAP_QUOTE) {
+			w.write(DOUBLE_QUOTE);
+		}
+		w.write(line, start, size);
+		if (fix != AS_IS) {
+			w.write(DOUBLE_QUOTE);
+		}
+	}
+
+	/**
+	 * Get the hash code of a field without creating a String, the same as
+	 * the hashCode of getField.
+	 *
+	 * @param index int field index
+	 * @return int
+	 */
+	int hashCode(final int index) {
+		int hash = 0;
+		int end = ends[index];
+		int fix = fixes[index];
+		if (fix == WRAP_QUOTE) {
+			hash = DOUBLE_QUOTE;
+		}
+		for (int i = starts[index]; i < end; i++) {
+			hash = 31 * hash + line[i];
+		}
+		if (fix != AS_IS) {
+			hash = 31 * hash + DOUBLE_QUOTE;
+		}
+		return hash;
+	}
+
+	/**
+	 * Mix the key of a field into an FNV-1a hash without creating a String:
+	 * the characters mixed are those of KeyJoin.key, the field without its
+	 * enclosing double quotes and with its doubled quotes made single.
+	 *
+	 * @param index int field index
+	 * @param pHash long hash of the fields before
+	 * @return long
+	 */
+	long hashKey(final int index, final long pHash) {
+		int start = starts[index];
+		int end = ends[index];
+		boolean quoted = true;
+		if (fixes[index] == CLOSE_QUOTE) {
+			// The closing quote added by getField is dropped with the opening one
+			start = start + 1;
+		}
+		else if (fixes[index] == AS_IS) {
+			quoted = end - start >= 2 && line[start] == DOUBLE_QUOTE
+				&& line[end - 1] == DOUBLE_QUOTE;
+			if (quoted) {
+				start = start + 1;
+				end = end - 1;
+			}
+		}
+		long hash = pHash;
+		int size = 0;
+		for (int i = start; i < end; i++) {
+			char c = line[i];
+			if (c == DOUBLE_QUOTE && quoted && i + 1 < end
+					&& line[i + 1] == DOUBLE_QUOTE) {
+				i = i + 1;
+			}
+			hash = (hash ^ c) * 0x100000001B3L;
+			size = size + 1;
+		}
+		// The length keeps "a","bc" apart from "ab","c"
+		return (hash ^ size) * 0x100000001B3L;
+	}
+
+	/**
+	 * Get all fields as Strings.
+	 *
+	 * @return Array of String
+	 */
+	@Override
+	public String[] toArray() {
+		String[] datas = new String[fieldCount];
+		for (int index = 0; index < fieldCount; index++) {
+			datas[index] = getField(index);
+		}
+		return datas;
+	}
+
+	/**
+	 * Get the whole line as String.
+	 *
+	 * @return String
+	 */
+	@Override
+	public String getLine() {
+		return new String(line, base, length - base);
+	}
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * This DedupeOutputSink class drops the records already written: each
+ * record is gathered, tokenized, and its key columns are hashed into a 64
+ * bit key kept in an OffHeapLongSet. A key column is compared without its
+ * double quotes, as the join compares its keys, so "1" and 1 are the same
+ * key. A record whose key is in the set is
+ * dropped, the others are written to the destination sink. A record is
+ * what was written until endRow, whatever its quotes and line feeds, so a
+ * multi-line record is one record.
+ * </p>
+ * <p>
+ * Two different keys sharing the same 64 bit hash are taken for the same
+ * key: with 500 millions keys the odds that any record is dropped wrongly
+ * are below one in a hundred.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe,
+ * it is written by one thread.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class DedupeOutputSink extends OutputSink {
+
+	/**
+	 * Initial size of the record buffer.
+	 */
+	private static final int LINE_SIZE = 8192;
+
+	/**
+	 * FNV-1a offset basis.
+	 */
+	private static final long FNV_BASIS = 0xCBF29CE484222325L;
+
+	/**
+	 * Destination of the records kept.
+	 */
+	private final OutputSink sink;
+
+	/**
+	 * Keys of the records written.
+	 */
+	private final OffHeapLongSet keys;
+
+	/**
+	 * Key columns, 0 based.
+	 */
+	private final int[] columns;
+
+	/**
+	 * Metrics updated on each record dropped, may be null.
+	 */
+	private final MergeMetrics metrics;
+
+	/**
+	 * Tokenizer of the records.
+	 */
+	private final CsvTokenizer tokenizer;
+
+	/**
+	 * Row lengths sizing the line buffer.
+	 */
+	private final BufferPool.Rows sizes;
+
+	/**
+	 * Record being gathered, taken from the pool.
+	 */
+	private char[] line;
+
+	/**
+	 * Number of characters in line.
+	 */
+	private int length;
+
+	/**
+	 * Number of records dropped.
+	 */
+	private long dropped;
+
+	/**
+	 * Constructor, the header must be written to the destination already.
+	 *
+	 * @param pSink OutputSink destination, closed with this sink
+	 * @param pKeys OffHeapLongSet keys of the records written, owned by
+	 *   the caller
+	 * @param pColumns Array of int key columns, 0 based
+	 * @param pMetrics MergeMetrics, may be null
+	 */
+	DedupeOutputSink(final OutputSink pSink, final OffHeapLongSet pKeys,
+			final int[] pColumns, final MergeMetrics pMetrics
+	) {
+		super(0);
+		int last = 0;
+		sink = pSink;
+		keys = pKeys;
+		columns = pColumns.clone();
+		metrics = pMetrics;
+		tokenizer = new CsvTokenizer();
+		for (int column : columns) {
+			last = Math.max(last, column);
+		}
+		tokenizer.setFieldLimit(last + 1);
+		line = BufferPool.SHARED.takeChars(LINE_SIZE);
+		sizes = new BufferPool.Rows(BufferPool.SHARED, LINE_SIZE,
+			BufferPool.Rows.DEFAULT_SHRINK_ROWS);
+		length = 0;
+		dropped = 0L;
+	}
+
+	/**
+	 * Get number of records dropped.
+	 *
+	 * @return long
+	 */
+	long getDropped() {
+		return dropped;
+	}
+
+	@Override
+	public void write(final char c) {
+		if (length == line.length) {
+			line = sizes.grow(line, length, length + 1);
+		}
+		line[length++] = c;
+	}
+
+	@Override
+	public void write(final char[] buffer, final int offset, final int size) {
+		if (length + size > line.length) {
+			line = sizes.grow(line, length, length + size);
+		}
+		System.arraycopy(buffer, offset, line, length, size);
+		length = length + size;
+	}
+
+	@Override
+	public void write(final String s) {
+		int size = s.length();
+		if (length + size > line.length) {
+			line = sizes.grow(line, length, length + size);
+		}
+		s.getChars(0, size, line, length);
+		length = length + size;
+	}
+
+	/**
+	 * Write the record just ended unless its key was written already.
+	 * A header, or several records ended together, are written as they are.
+	 *
+	 * @param count int records ended, 0 for the header
+	 * @throws IOException If any error at File I/O level or too many keys
+	 */
+	@Override
+	protected void ended(final int count) throws IOException {
+		if (count == 1) {
+			endLine();
+			return;
+		}
+		sink.write(line, 0, length);
+		if (count == 0) {
+			sink.endHeader();
+		}
+		else {
+			sink.endRows(count);
+		}
+		length = 0;
+	}
+
+	/**
+	 * Write the record just ended, with its line feed, unless its key was
+	 * written already.
+	 *
+	 * @throws IOException If any error at File I/O level or too many keys
+	 */
+	private void endLine() throws IOException {
+		int count = tokenizer.tokenize(line,
+			length > 0 && line[length - 1] == '\n' ? length - 1 : length);
+		long hash = FNV_BASIS;
+		for (int column : columns) {
+			hash = column < count ? tokenizer.hashKey(column, hash)
+				: (hash ^ -1L) * 0x100000001B3L;
+		}
+		if (keys.add(mix(hash))) {
+			sink.write(line, 0, length);
+			sink.endRows(1);
+		}
+		else {
+			dropped = dropped + 1L;
+			if (metrics != null) {
+				metrics.setDuplicates(dropped);
+			}
+		}
+		sizes.add(length);
+		length = 0;
+		line = sizes.shrink(line);
+	}
+
+	/**
+	 * Spread the bits of a hash, the top bits choose the segment of the key.
+	 *
+	 * @param pHash long
+	 * @return long
+	 */
+	private static long mix(final long pHash) {
+		long h = pHash;
+		h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+		h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+	/**
+	 * Flush the destination, a record not ended yet stays gathered.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	public void flush() throws IOException {
+		sink.flush();
+	}
+
+	/**
+	 * Write the characters of a record not ended, as they are, then close
+	 * the destination. The record buffer goes back to the pool.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	public void close() throws IOException {
+		if (length > 0) {
+			sink.write(line, 0, length);
+			length = 0;
+		}
+		BufferPool.SHARED.give(line);
+		line = null;
+		sink.close();
+	}
+
+}
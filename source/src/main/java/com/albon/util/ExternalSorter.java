@@ -0,0 +1,595 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <p>
+ * This ExternalSorter class sorts the records of an input CSV file by a key
+ * column within a memory budget. Records are collected until the budget is
+ * reached, sorted, then spilled as a run into a temporary file. The runs are
+ * finally merged k-way while being read back. With more runs than can be
+ * merged at once, they are first merged level by level, each record is
+ * written once per level.
+ * </p>
+ * <p>
+ * Run files are deleted as soon as merged, and by close of the records
+ * returned, or when the sort fails.
+ * </p>
+ * <p>
+ * The sort is stable, records with the same key keep their input order.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class ExternalSorter {
+
+	/**
+	 * Estimated memory used by one record besides its characters.
+	 */
+	private static final long RECORD_OVERHEAD = 96L;
+
+	/**
+	 * Maximum number of runs merged at once.
+	 */
+	private static final int MAX_FAN_IN = 64;
+
+	/**
+	 * Buffering size of a run file.
+	 */
+	private static final int RUN_BUFFER_SIZE = 65536;
+
+	/**
+	 * Encoding of run files.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * One record, its key and its line.
+	 */
+	static final class Record {
+		/**
+		 * Key field.
+		 */
+		private final String key;
+
+		/**
+		 * Record line.
+		 */
+		private final String line;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param pKey String
+		 * @param pLine String
+		 */
+		Record(final String pKey, final String pLine) {
+			key = pKey;
+			line = pLine;
+		}
+
+		/**
+		 * Get the key field.
+		 *
+		 * @return String
+		 */
+		String getKey() {
+			return key;
+		}
+
+		/**
+		 * Get the record line.
+		 *
+		 * @return String
+		 */
+		String getLine() {
+			return line;
+		}
+	}
+
+	/**
+	 * Sorted records, read one after another.
+	 */
+	abstract static class SortedRecords {
+		/**
+		 * Get the next record.
+		 *
+		 * @return Record or null when no more record
+		 * @throws IOException If any error at File I/O level
+		 */
+		abstract Record next() throws IOException;
+
+		/**
+		 * Free file resources.
+		 */
+		abstract void close();
+	}
+
+	/**
+	 * Orders records by key.
+	 */
+	private static final Comparator<Record> BY_KEY = new Comparator<Record>() {
+		@Override
+		public int compare(final Record r1, final Record r2) {
+			return r1.key.compareTo(r2.key);
+		}
+	};
+
+	/**
+	 * Memory budget in bytes.
+	 */
+	private final long memoryBudget;
+
+	/**
+	 * Directory of run files, null for the default temporary directory.
+	 */
+	private final File tmpDir;
+
+	/**
+	 * Number of records with less fields than the header.
+	 */
+	private long ignored;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pMemoryBudget long bytes of records kept in memory
+	 * @param pTmpDir File directory of run files or null
+	 */
+	ExternalSorter(final long pMemoryBudget, final File pTmpDir) {
+		memoryBudget = pMemoryBudget;
+		tmpDir = pTmpDir;
+		ignored = 0L;
+	}
+
+	/**
+	 * Sort the remaining records of the given input, by their key without
+	 * double quotes.
+	 *
+	 * @param input CsvInput
+	 * @param keyColumn int key column, 0 based
+	 * @return SortedRecords
+	 * @throws IOException If any error at File I/O level
+	 */
+	SortedRecords sort(final CsvInput input, final int keyColumn
+	) throws IOException {
+		List<Record> records = new ArrayList<Record>();
+		List<File> runs = new ArrayList<File>();
+		List<File> level;
+		SortedRecords sorted = null;
+		CsvRecord record;
+		String line;
+		long size = 0L;
+		int end;
+		try {
+			while (input.next()) {
+				if (!input.isComplete()) {
+					ignored++;
+					continue;
+				}
+				record = input.getRecord();
+				line = input.getLine();
+				records.add(new Record(KeyJoin.key(record, keyColumn), line));
+				size = size + RECORD_OVERHEAD
+					+ 2L * (line.length() + record.getFieldLength(keyColumn));
+				if (size >= memoryBudget) {
+					runs.add(spill(records));
+					records.clear();
+					size = 0L;
+				}
+			}
+			if (runs.isEmpty()) {
+				Collections.sort(records, BY_KEY);
+				sorted = new MemoryRecords(records);
+				return sorted;
+			}
+			if (!records.isEmpty()) {
+				runs.add(spill(records));
+				records.clear();
+			}
+			while (runs.size() > MAX_FAN_IN) {
+				// Consecutive runs are merged in order, the sort stays stable
+				level = new ArrayList<File>((runs.size() + MAX_FAN_IN - 1)
+					/ MAX_FAN_IN);
+				try {
+					while (!runs.isEmpty()) {
+						end = Math.min(MAX_FAN_IN, runs.size());
+						List<File> group = new ArrayList<File>(runs.subList(0, end));
+						runs.subList(0, end).clear();
+						level.add(group.size() == 1 ? group.get(0)
+							: mergeRuns(group));
+					}
+				} finally {
+					level.addAll(runs);
+					runs = level;
+				}
+			}
+			sorted = new MergedRecords(runs);
+			return sorted;
+		} finally {
+			if (sorted == null) {
+				deleteRuns(runs);
+			}
+		}
+	}
+
+	/**
+	 * Get number of records with less fields than the header.
+	 *
+	 * @return long
+	 */
+	long getIgnored() {
+		return ignored;
+	}
+
+	/**
+	 * Sort and write records into a new run file.
+	 *
+	 * @param records List of Record
+	 * @return File the run
+	 * @throws IOException If any error at File I/O level
+	 */
+	private File spill(final List<Record> records) throws IOException {
+		File run = createRun();
+		DataOutputStream out = null;
+		boolean written = false;
+		try {
+			out = openRun(run);
+			Collections.sort(records, BY_KEY);
+			for (Record r : records) {
+				writeRecord(out, r);
+			}
+			out.close();
+			written = true;
+		} finally {
+			if (!written) {
+				closeRun(out);
+				deleteRun(run);
+			}
+		}
+		return run;
+	}
+
+	/**
+	 * Merge several runs into a new run file.
+	 *
+	 * @param group List of File runs, deleted once merged
+	 * @return File the run
+	 * @throws IOException If any error at File I/O level
+	 */
+	private File mergeRuns(final List<File> group) throws IOException {
+		File run = null;
+		MergedRecords merged = null;
+		DataOutputStream out = null;
+		boolean written = false;
+		Record r;
+		try {
+			run = createRun();
+			merged = new MergedRecords(group);
+			out = openRun(run);
+			while ((r = merged.next()) != null) {
+				writeRecord(out, r);
+			}
+			out.close();
+			written = true;
+		} finally {
+			if (merged != null) {
+				merged.close();
+			}
+			else {
+				deleteRuns(group);
+			}
+			if (!written) {
+				closeRun(out);
+				if (run != null) {
+					deleteRun(run);
+				}
+			}
+		}
+		return run;
+	}
+
+	/**
+	 * Create an empty run file.
+	 *
+	 * @return File
+	 * @throws IOException If any error at File I/O level
+	 */
+	private File createRun() throws IOException {
+		return File.createTempFile("mergecsv", ".run", tmpDir);
+	}
+
+	/**
+	 * Open a run file for writing.
+	 *
+	 * @param run File
+	 * @return DataOutputStream
+	 * @throws IOException If any error at File I/O level
+	 */
+	private static DataOutputStream openRun(final File run) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(
+			new FileOutputStream(run), RUN_BUFFER_SIZE));
+	}
+
+	/**
+	 * Close a run being written after an error, the error is kept.
+	 *
+	 * @param out DataOutputStream or null
+	 */
+	private static void closeRun(final DataOutputStream out) {
+		if (out != null) {
+			try {
+				out.close();
+			} catch (IOException ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Write one record as length prefixed UTF-8 key and line.
+	 *
+	 * @param out DataOutputStream
+	 * @param r Record
+	 * @throws IOException If any error at File I/O level
+	 */
+	private static void writeRecord(final DataOutputStream out, final Record r
+	) throws IOException {
+		byte[] b = r.key.getBytes(UTF8);
+		out.writeInt(b.length);
+		out.write(b);
+		b = r.line.getBytes(UTF8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	/**
+	 * Read one record written by writeRecord.
+	 *
+	 * @param in DataInputStream
+	 * @return Record or null at end of run
+	 * @throws IOException If any error at File I/O level
+	 */
+	private static Record readRecord(final DataInputStream in) throws IOException {
+		byte[] key;
+		byte[] line;
+		try {
+			key = new byte[in.readInt()];
+		} catch (EOFException ex) {
+			return null;
+		}
+		in.readFully(key);
+		line = new byte[in.readInt()];
+		in.readFully(line);
+		return new Record(new String(key, UTF8), new String(line, UTF8));
+	}
+
+	/**
+	 * Delete run files, each once: a process serving merges never exits to
+	 * delete them later.
+	 *
+	 * @param runs List of File, emptied
+	 */
+	private static void deleteRuns(final List<File> runs) {
+		for (File run : runs) {
+			deleteRun(run);
+		}
+		runs.clear();
+	}
+
+	/**
+	 * Delete a run file.
+	 *
+	 * @param run File
+	 */
+	private static void deleteRun(final File run) {
+		if (!run.delete() && run.exists()) {
+			MergeCSV.log("Can't delete run '"+ run +"'");
+		}
+	}
+
+	/**
+	 * Records that fit into memory.
+	 */
+	private static final class MemoryRecords extends SortedRecords {
+		/**
+		 * Sorted records.
+		 */
+		private final List<Record> records;
+
+		/**
+		 * Index of the next record.
+		 */
+		private int index;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param pRecords List of Record, sorted
+		 */
+		private MemoryRecords(final List<Record> pRecords) {
+			records = pRecords;
+			index = 0;
+		}
+
+		@Override
+		Record next() {
+			if (index < records.size()) {
+				Record r = records.get(index);
+				records.set(index, null);
+				index = index + 1;
+				return r;
+			}
+			return null;
+		}
+
+		@Override
+		void close() {
+			records.clear();
+		}
+	}
+
+	/**
+	 * Head record of a run being merged.
+	 */
+	private static final class RunHead {
+		/**
+		 * Current record of the run.
+		 */
+		private Record record;
+
+		/**
+		 * Order of the run, for stable merging.
+		 */
+		private final int order;
+
+		/**
+		 * Run being read.
+		 */
+		private final DataInputStream in;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param pOrder int
+		 * @param pIn DataInputStream
+		 */
+		private RunHead(final int pOrder, final DataInputStream pIn) {
+			order = pOrder;
+			in = pIn;
+			record = null;
+		}
+	}
+
+	/**
+	 * Records merged k-way out of sorted runs.
+	 */
+	private static final class MergedRecords extends SortedRecords {
+		/**
+		 * Run files, deleted on close.
+		 */
+		private final List<File> runs;
+
+		/**
+		 * Runs ordered by their current record.
+		 */
+		private final PriorityQueue<RunHead> queue;
+
+		/**
+		 * Every opened run.
+		 */
+		private final List<RunHead> heads;
+
+		/**
+		 * Run whose record was returned last, to be advanced.
+		 */
+		private RunHead last;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param pRuns List of File sorted runs
+		 * @throws IOException If any error at File I/O level
+		 */
+		private MergedRecords(final List<File> pRuns) throws IOException {
+			runs = pRuns;
+			heads = new ArrayList<RunHead>();
+			queue = new PriorityQueue<RunHead>(Math.max(1, pRuns.size()),
+				new Comparator<RunHead>() {
+					@Override
+					public int compare(final RunHead h1, final RunHead h2) {
+						int c = BY_KEY.compare(h1.record, h2.record);
+						return c != 0 ? c : h1.order - h2.order;
+					}
+				});
+			last = null;
+			try {
+				for (File run : runs) {
+					RunHead head = new RunHead(heads.size(), new DataInputStream(
+						new BufferedInputStream(new FileInputStream(run),
+							RUN_BUFFER_SIZE)));
+					heads.add(head);
+					advance(head);
+				}
+			} catch (IOException ex) {
+				close();
+				throw ex;
+			}
+		}
+
+		/**
+		 * Read the next record of a run and queue it.
+		 *
+		 * @param head RunHead
+		 * @throws IOException If any error at File I/O level
+		 */
+		private void advance(final RunHead head) throws IOException {
+			head.record = readRecord(head.in);
+			if (head.record != null) {
+				queue.add(head);
+			}
+		}
+
+		@Override
+		Record next() throws IOException {
+			if (last != null) {
+				advance(last);
+				last = null;
+			}
+			last = queue.poll();
+			return last == null ? null : last.record;
+		}
+
+		@Override
+		void close() {
+			for (RunHead head : heads) {
+				try {
+					head.in.close();
+				} catch (IOException ignore) {
+				}
+			}
+			heads.clear();
+			queue.clear();
+			deleteRuns(runs);
+		}
+	}
+
+}
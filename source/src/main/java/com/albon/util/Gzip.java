@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>
+ * This Gzip class recognizes gzip inputs by their magic bytes and opens
+ * them decompressed, whatever their file name.
+ * </p>
+ * <p>
+ * A file made of BGZF members, as written by bgzip or by this application,
+ * declares the size of each member thus its members are decompressed in
+ * parallel by a BgzfInputStream. Any other gzip file is decompressed on one
+ * thread ahead of the reader.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is not mutable thus thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class Gzip {
+
+	/**
+	 * File name extension of a gzip file.
+	 */
+	static final String EXTENSION = ".gz";
+
+	/**
+	 * First magic byte.
+	 */
+	static final int ID1 = 0x1f;
+
+	/**
+	 * Second magic byte.
+	 */
+	static final int ID2 = 0x8b;
+
+	/**
+	 * Compression method deflate.
+	 */
+	static final int CM_DEFLATE = 8;
+
+	/**
+	 * Flag of an extra field.
+	 */
+	static final int FEXTRA = 4;
+
+	/**
+	 * Size of a BGZF member header, extra field included.
+	 */
+	static final int BGZF_HEADER = 18;
+
+	/**
+	 * Size of the buffer of a gzip stream.
+	 */
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * Utility class.
+	 */
+	private Gzip() {
+	}
+
+	/**
+	 * Check if a file is gzip compressed.
+	 *
+	 * @param file File
+	 * @return boolean false if the file can not be read
+	 */
+	static boolean isGzip(final File file) {
+		InputStream in = null;
+		try {
+			in = new FileInputStream(file);
+			return in.read() == ID1 && in.read() == ID2;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException ignore) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Open a stream decompressed if it starts as gzip, as is otherwise.
+	 *
+	 * @param source InputStream
+	 * @return InputStream
+	 * @throws IOException If any error at File I/O level
+	 */
+	static InputStream open(final InputStream source) throws IOException {
+		BufferedInputStream in = new BufferedInputStream(source, BUFFER_SIZE);
+		byte[] head = new byte[BGZF_HEADER];
+		int length = 0;
+		int n;
+		in.mark(BGZF_HEADER);
+		do {
+			n = in.read(head, length, head.length - length);
+			if (n > 0) {
+				length = length + n;
+			}
+		} while (n >= 0 && length < head.length);
+		in.reset();
+		if (length < 2 || (head[0] & 0xFF) != ID1 || (head[1] & 0xFF) != ID2) {
+			return in;
+		}
+		if (length == BGZF_HEADER && isBgzf(head)) {
+			return new BgzfInputStream(in, threads());
+		}
+		return new ReadAheadInputStream(new GZIPInputStream(in, BUFFER_SIZE),
+			"mergecsv-gunzip");
+	}
+
+	/**
+	 * Check if a member header is BGZF, its extra field is only the BC
+	 * subfield holding the size of the member.
+	 *
+	 * @param head Array of byte, at least BGZF_HEADER bytes
+	 * @return boolean
+	 */
+	static boolean isBgzf(final byte[] head) {
+		return (head[0] & 0xFF) == ID1 && (head[1] & 0xFF) == ID2
+			&& head[2] == CM_DEFLATE && (head[3] & FEXTRA) != 0
+			&& head[10] == 6 && head[11] == 0
+			&& head[12] == 'B' && head[13] == 'C'
+			&& head[14] == 2 && head[15] == 0;
+	}
+
+	/**
+	 * Number of threads compressing or decompressing one file.
+	 *
+	 * @return int
+	 */
+	static int threads() {
+		return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Create a pool of daemon threads.
+	 *
+	 * @param threads int number of threads
+	 * @param name String name of the threads
+	 * @return ExecutorService
+	 */
+	static ExecutorService pool(final int threads, final String name) {
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+}
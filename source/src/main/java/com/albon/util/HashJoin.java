@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * This HashJoin class joins input A and input B on a key column. The smaller
+ * input is loaded into a hash index, the larger input is then streamed
+ * against it one record at a time.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class HashJoin extends KeyJoin {
+
+	/**
+	 * Indexed record, records with the same key are chained.
+	 */
+	private static final class Entry {
+		/**
+		 * The record line.
+		 */
+		private final String line;
+
+		/**
+		 * Next record with the same key.
+		 */
+		private Entry next;
+
+		/**
+		 * Last record with the same key, only set on the first one.
+		 */
+		private Entry last;
+
+		/**
+		 * True once the record was merged.
+		 */
+		private boolean matched;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param pLine String record line
+		 */
+		private Entry(final String pLine) {
+			line = pLine;
+			next = null;
+			last = this;
+			matched = false;
+		}
+	}
+
+	/**
+	 * True to index input A, false to index input B.
+	 */
+	private final boolean indexA;
+
+	/**
+	 * Tokenizer of indexed records.
+	 */
+	private final CsvTokenizer indexRecord;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pMerger RecordMerger
+	 * @param pJoinType JoinType
+	 * @param pIndexA boolean true to index input A, false to index input B
+	 */
+	HashJoin(final RecordMerger pMerger, final JoinType pJoinType,
+			final boolean pIndexA
+	) {
+		super(pMerger, pJoinType);
+		indexA = pIndexA;
+		indexRecord = new CsvTokenizer();
+	}
+
+	/**
+	 * Join both inputs.
+	 *
+	 * @param aInput CsvInput input A
+	 * @param aKey int key column of input A, 0 based
+	 * @param bInput CsvInput input B
+	 * @param bKey int key column of input B, 0 based
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	void join(final CsvInput aInput, final int aKey,
+			final CsvInput bInput, final int bKey,
+			final OutputSink w
+	) throws IOException {
+		CsvInput index = indexA ? aInput : bInput;
+		CsvInput stream = indexA ? bInput : aInput;
+		int indexKey = indexA ? aKey : bKey;
+		int streamKey = indexA ? bKey : aKey;
+		boolean keepIndex = indexA ? joinType.keepA() : joinType.keepB();
+		boolean keepStream = indexA ? joinType.keepB() : joinType.keepA();
+		indexRecord.setFieldLimit(index.getFieldLimit());
+		Map<String, Entry> map = new LinkedHashMap<String, Entry>();
+		CsvRecord record;
+		Entry entry;
+		Entry first;
+		String key;
+		long unmatched;
+
+		// 1. Build the index
+		while (index.next()) {
+			if (!index.isComplete()) {
+				ignored++;
+				continue;
+			}
+			record = index.getRecord();
+			entry = new Entry(index.getLine());
+			key = key(record, indexKey);
+			first = map.get(key);
+			if (first == null) {
+				map.put(key, entry);
+			}
+			else {
+				first.last.next = entry;
+				first.last = entry;
+			}
+		}
+
+		// 2. Stream the other input against the index
+		unmatched = 0L;
+		while (stream.next()) {
+			if (!stream.isComplete()) {
+				ignored++;
+				continue;
+			}
+			record = stream.getRecord();
+			key = key(record, streamKey);
+			first = key.length() > 0 ? map.get(key) : null;
+			if (first == null) {
+				unmatched++;
+				if (keepStream) {
+					writeIndexed(null, record, w);
+				}
+				continue;
+			}
+			for (entry = first; entry != null; entry = entry.next) {
+				entry.matched = true;
+				indexRecord.tokenize(entry.line);
+				writeIndexed(indexRecord, record, w);
+				counters = counters + 1L;
+			}
+		}
+		if (indexA) {
+			unmatchedB = unmatched;
+		} else {
+			unmatchedA = unmatched;
+		}
+
+		// 3. Indexed records never matched
+		unmatched = 0L;
+		for (Entry e : map.values()) {
+			for (entry = e; entry != null; entry = entry.next) {
+				if (entry.matched) {
+					continue;
+				}
+				unmatched++;
+				if (keepIndex) {
+					indexRecord.tokenize(entry.line);
+					writeIndexed(indexRecord, null, w);
+				}
+			}
+		}
+		if (indexA) {
+			unmatchedA = unmatched;
+		} else {
+			unmatchedB = unmatched;
+		}
+	}
+
+	/**
+	 * Write one merged record.
+	 *
+	 * @param indexData CsvRecord indexed record or null
+	 * @param streamData CsvRecord streamed record or null
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void writeIndexed(final CsvRecord indexData,
+			final CsvRecord streamData,
+			final OutputSink w
+	) throws IOException {
+		if (indexA) {
+			write(indexData, streamData, w);
+		} else {
+			write(streamData, indexData, w);
+		}
+	}
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * This HeaderIndex class maps the column names of one header to their
+ * position. It is built once per input so every template column is resolved
+ * by a single hash lookup instead of a scan of the header.
+ * </p>
+ * <p>
+ * Names match exactly unless fuzzy: then they are case folded and stripped of
+ * everything but letters and digits, thus "First Name", FirstName and
+ * first_name are the same column, as are I.D. and ID. When a name is not
+ * found its aliases are tried in order. On a duplicate name the first column
+ * wins, as with the original scan.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is not mutable thus thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class HeaderIndex {
+
+	/**
+	 * Position of each column, 1 based, by name.
+	 */
+	private final Map<String, Integer> positions;
+
+	/**
+	 * True to match normalized names.
+	 */
+	private final boolean fuzzy;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param header Array of String column names
+	 * @param pFuzzy boolean true to match normalized names
+	 */
+	HeaderIndex(final String[] header, final boolean pFuzzy) {
+		int index;
+		String name;
+		fuzzy = pFuzzy;
+		positions = new HashMap<String, Integer>(header.length * 2);
+		for (index = 0; index < header.length; index++) {
+			name = key(header[index], fuzzy);
+			if (!positions.containsKey(name)) {
+				positions.put(name, Integer.valueOf(index + 1));
+			}
+		}
+	}
+
+	/**
+	 * Locate a column.
+	 *
+	 * @param name String column name
+	 * @return int position, 1 based, 0 if not in header
+	 */
+	int locate(final String name) {
+		Integer position = positions.get(key(name, fuzzy));
+		return position == null ? 0 : position.intValue();
+	}
+
+	/**
+	 * Locate a column by its name, then by each of its aliases.
+	 *
+	 * @param name String column name
+	 * @param aliases List of String other names of the column, may be null
+	 * @return int position, 1 based, 0 if not in header
+	 */
+	int locate(final String name, final List<String> aliases) {
+		int position = locate(name);
+		int index;
+		if (position == 0 && aliases != null) {
+			for (index = 0; index < aliases.size() && position == 0; index++) {
+				position = locate(aliases.get(index));
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * Get the lookup key of a column name.
+	 *
+	 * @param name String column name
+	 * @param fuzzy boolean true to normalize the name
+	 * @return String
+	 */
+	static String key(final String name, final boolean fuzzy) {
+		return fuzzy ? normalize(name) : name;
+	}
+
+	/**
+	 * Normalize a column name: letters and digits only, case folded.
+	 *
+	 * @param name String column name
+	 * @return String
+	 */
+	static String normalize(final String name) {
+		StringBuilder sb = new StringBuilder(name.length());
+		int index = 0;
+		int c;
+		while (index < name.length()) {
+			c = name.codePointAt(index);
+			if (Character.isLetterOrDigit(c)) {
+				sb.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c)));
+			}
+			index = index + Character.charCount(c);
+		}
+		return sb.toString();
+	}
+
+}
@@ -25,9 +25,23 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * <p>
@@ -46,6 +60,11 @@ public final class Helper {
 	 */
 	private static final int BUFFERED_BUFFER_SIZE = 16 * 65536;
 
+	/**
+	 * Buffering size of an OutputSink writing into a stream.
+	 */
+	private static final int STREAM_BUFFER_SIZE = 65536;
+
 	/**
 	 * Check if the given Object is null.
 	 *
@@ -182,6 +201,46 @@ public final class Helper {
 		return new BufferedReader(fr);
 	}
 
+	/**
+	 * Create a CsvLineReader decoding the given charset.
+	 *
+	 * @param szPath String path or null
+	 * @param fileName String filename
+	 * @param cs Charset of the file
+	 *
+	 * @return CsvLineReader instance
+	 *
+	 * @throws FileNotFoundException If any error at File I/O level
+	 * @throws IllegalArgumentException If given fileName is null or trim empty
+	 */
+	public static CsvLineReader createLineReader(final String szPath,
+		final String fileName,
+		final Charset cs
+	) throws FileNotFoundException {
+
+		File file;
+		Helper.checkStringNullOrEmpty(fileName, "fileName");
+		Helper.checkObject(cs, "cs");
+		if (Helper.isStringNullOrEmpty(szPath)) {
+			file = new File(fileName);
+
+		} else {
+			file = new File(szPath + "/" + fileName);
+		}
+		return new CsvLineReader(new InputStreamReader(new FileInputStream(file), cs));
+	}
+
+	/**
+	 * Helper to close the LineReader instance.
+	 *
+	 * @param lr LineReader
+	 */
+	public static void closeReader(LineReader lr) {
+		if (lr != null) {
+			lr.close();
+		}
+	}
+
 	/**
 	 * Helper to close the BufferReader instance.
 	 *
@@ -197,27 +256,30 @@ public final class Helper {
 	}
 
 	/**
-	 * Helper to create instance of FileWriter for writing CSV.
+	 * Helper to delete then create an empty file. A path that exists but is
+	 * not a regular file, such as a named pipe, is kept as is.
 	 *
 	 * @param pFile File or null
 	 * @param fileName String
-	 * @param method String 
-	 * @return FileWriter instance
+	 * @param method String
+	 * @return File instance
 	 *
 	 * @throws MergeCsvException If there is any error at File I/O level
 	 * @throws IllegalArgumentException If given fileName is null or trim empty
 	 */
-	public static FileWriter createFileWriter(File pFile,
+	private static File createNewFile(File pFile,
 		final String fileName,
 		final String method
 	) throws MergeCsvException {
 
-		FileWriter fw;
 		File file = pFile;
 		Helper.checkStringNullOrEmpty(fileName, "fileName");
 		if (pFile == null) {
 			file = new File(fileName);
 		}
+		if (file.exists() && !file.isFile() && !file.isDirectory()) {
+			return file;
+		}
 		if (file.exists()) {
 			if (!file.delete()) {
 				throw new MergeCsvException(method + ": Can't delete "
@@ -229,6 +291,27 @@ public final class Helper {
 		} catch (IOException ex) {
 			throw new MergeCsvException(method + ": " + ex.getMessage(), ex);
 		}
+		return file;
+	}
+
+	/**
+	 * Helper to create instance of FileWriter for writing CSV.
+	 *
+	 * @param pFile File or null
+	 * @param fileName String
+	 * @param method String 
+	 * @return FileWriter instance
+	 *
+	 * @throws MergeCsvException If there is any error at File I/O level
+	 * @throws IllegalArgumentException If given fileName is null or trim empty
+	 */
+	public static FileWriter createFileWriter(File pFile,
+		final String fileName,
+		final String method
+	) throws MergeCsvException {
+
+		FileWriter fw;
+		File file = createNewFile(pFile, fileName, method);
 		fw = null;
 		try {
 			fw = new FileWriter(file);
@@ -260,6 +343,136 @@ public final class Helper {
 		return bw;
 	}
 
+	/**
+	 * Helper to create OutputSink for creating CSV file, records are encoded
+	 * with the given charset and written through a FileChannel, or gzip
+	 * compressed on other threads when asked or when the file name ends with
+	 * .gz.
+	 *
+	 * @param fileName String file name
+	 * @param method String method
+	 * @param cs Charset of the file
+	 * @param flushRows int records between two flush, 0 to flush at the end
+	 * @param fsync boolean true to force data on the storage device on close
+	 * @param compress boolean true to gzip compress whatever the file name
+	 * @return OutputSink instance
+	 *
+	 * @throws MergeCsvException If there is any error at File I/O level
+	 * @throws IllegalArgumentException If given fileName is null or trim empty
+	 */
+	public static OutputSink createOutputSink(final String fileName,
+		final String method,
+		final Charset cs,
+		final int flushRows,
+		final boolean fsync,
+		final boolean compress
+	) throws MergeCsvException {
+		Helper.checkObject(cs, "cs");
+		File file = createNewFile(null, fileName, method);
+		FileOutputStream fos;
+		try {
+			fos = new FileOutputStream(file);
+		} catch (IOException ex) {
+			throw new MergeCsvException(method + ": " + ex.getMessage(), ex);
+		}
+		if (compress || fileName.endsWith(Gzip.EXTENSION)) {
+			return new ChannelOutputSink(Channels.newChannel(
+				new BgzfOutputStream(fos, Gzip.threads(), fsync)), cs,
+				BUFFERED_BUFFER_SIZE, flushRows, false);
+		}
+		return new ChannelOutputSink(fos.getChannel(), cs,
+			BUFFERED_BUFFER_SIZE, flushRows, fsync);
+	}
+
+	/**
+	 * Helper to reopen an output file where a merge stopped, the file is cut
+	 * at the given offset and written from there on.
+	 *
+	 * @param fileName String
+	 * @param method String
+	 * @param cs Charset of the output
+	 * @param flushRows int records between two flush, 0 for none
+	 * @param fsync boolean true to force the file on the storage device on close
+	 * @param offset long bytes of the file to keep
+	 * @return OutputSink instance
+	 *
+	 * @throws MergeCsvException If the file is shorter than offset or any
+	 *   error at File I/O level
+	 * @throws IllegalArgumentException If given fileName is null or trim empty
+	 */
+	public static OutputSink resumeOutputSink(final String fileName,
+		final String method,
+		final Charset cs,
+		final int flushRows,
+		final boolean fsync,
+		final long offset
+	) throws MergeCsvException {
+		Helper.checkStringNullOrEmpty(fileName, "fileName");
+		Helper.checkObject(cs, "cs");
+		FileChannel channel = null;
+		try {
+			channel = FileChannel.open(new File(fileName).toPath(),
+				StandardOpenOption.WRITE);
+			if (channel.size() < offset) {
+				channel.close();
+				throw new MergeCsvException(method + ": '"+ fileName
+					+"' is shorter than its checkpoint");
+			}
+			channel.truncate(offset);
+			channel.position(offset);
+		} catch (IOException ex) {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (IOException ignore) {
+				}
+			}
+			throw new MergeCsvException(method + ": " + ex.getMessage(), ex);
+		}
+		return new ChannelOutputSink(channel, cs, BUFFERED_BUFFER_SIZE,
+			flushRows, fsync);
+	}
+
+	/**
+	 * Helper to create OutputSink writing into a stream such as the standard
+	 * output. The buffer is kept small so a reader at the other end of a
+	 * pipe gets the records while the merge goes on. The stream is closed
+	 * with the sink.
+	 *
+	 * @param out OutputStream
+	 * @param cs Charset of the stream
+	 * @param flushRows int records between two flush, 0 when the buffer is full
+	 * @param compress boolean true to gzip compress
+	 * @return OutputSink instance
+	 *
+	 * @throws IllegalArgumentException If given out or cs is null
+	 */
+	public static OutputSink createOutputSink(final OutputStream out,
+		final Charset cs,
+		final int flushRows,
+		final boolean compress
+	) {
+		Helper.checkObject(out, "out");
+		Helper.checkObject(cs, "cs");
+		return new ChannelOutputSink(Channels.newChannel(compress
+			? new BgzfOutputStream(out, Gzip.threads(), false) : out), cs,
+			STREAM_BUFFER_SIZE, flushRows, false);
+	}
+
+	/**
+	 * Helper to close the OutputSink instance.
+	 *
+	 * @param sink OutputSink
+	 */
+	public static void closeSink(OutputSink sink) {
+		try {
+			if (sink != null) {
+			sink.close();
+			}
+		} catch (IOException ignore) {
+		}
+	}
+
 	/**
 	 * Helper to close the BufferedWriter instance.
 	 *
@@ -274,6 +487,59 @@ public final class Helper {
 		}
 	}
 
+	/**
+	 * Create a new temporary file in the directory of a file, named after it,
+	 * to be written then moved over it by replaceAtomically. Each call gets
+	 * its own name, so two writers never share a temporary file. Unlike
+	 * Files.createTempFile, its permissions follow the umask as the file
+	 * replaced did.
+	 *
+	 * @param target Path file to replace
+	 * @return Path empty temporary file
+	 * @throws IOException If the temporary file can't be created
+	 */
+	public static Path createTempFile(final Path target) throws IOException {
+		Path absolute = target.toAbsolutePath();
+		String prefix = absolute.getFileName().toString() +".";
+		for (;;) {
+			try {
+				return Files.createFile(absolute.resolveSibling(prefix
+					+ Long.toHexString(ThreadLocalRandom.current().nextLong()
+						& Long.MAX_VALUE) +".tmp"));
+			} catch (FileAlreadyExistsException e) {
+				// Taken by another writer, draw another name
+			}
+		}
+	}
+
+	/**
+	 * Replace a file with a temporary file written by the caller, atomically
+	 * when the file system can: a reader sees the old file or the new one,
+	 * never a partial one. The temporary file is deleted if it can't be
+	 * moved.
+	 *
+	 * @param tmp Path temporary file, see createTempFile
+	 * @param target Path file to replace
+	 * @throws IOException If the file can't be replaced
+	 */
+	public static void replaceAtomically(final Path tmp, final Path target)
+			throws IOException {
+		boolean moved = false;
+		try {
+			try {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+			}
+			moved = true;
+		} finally {
+			if (!moved) {
+				Files.deleteIfExists(tmp);
+			}
+		}
+	}
+
 	/**
 	 * Default constructor.
 	 */
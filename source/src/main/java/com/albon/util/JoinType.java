@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+/**
+ * <p>
+ * This JoinType enum defines which records are kept when input A and
+ * input B are joined on a key column.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This enum is not mutable thus thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+enum JoinType {
+
+	/**
+	 * Only records whose key is on both inputs.
+	 */
+	INNER,
+
+	/**
+	 * Every record of input A, matched with input B when possible.
+	 */
+	LEFT,
+
+	/**
+	 * Every record of input A and every record of input B.
+	 */
+	FULL;
+
+	/**
+	 * Check if unmatched records of input A are written.
+	 *
+	 * @return boolean
+	 */
+	boolean keepA() {
+		return this != INNER;
+	}
+
+	/**
+	 * Check if unmatched records of input B are written.
+	 *
+	 * @return boolean
+	 */
+	boolean keepB() {
+		return this == FULL;
+	}
+
+	/**
+	 * Convert a --join parameter into JoinType.
+	 *
+	 * @param param String inner, left or full
+	 * @return JoinType or null if unknown
+	 */
+	static JoinType parse(final String param) {
+		for (JoinType type : values()) {
+			if (type.name().equalsIgnoreCase(param)) {
+				return type;
+			}
+		}
+		return null;
+	}
+
+}
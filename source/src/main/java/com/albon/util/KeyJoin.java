@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * This KeyJoin class holds what is common to joining input A and input B on
+ * a key column: the merger, the join type and the counters.
+ * </p>
+ * <p>
+ * Keys are compared without their double quotes, "1" matches 1. A record
+ * whose key is empty never matches.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+abstract class KeyJoin {
+
+	/**
+	 * Writes the merged records.
+	 */
+	private final RecordMerger merger;
+
+	/**
+	 * Records to keep.
+	 */
+	protected final JoinType joinType;
+
+	/**
+	 * Record of input A and input B being merged.
+	 */
+	private final CsvRecord[] pair;
+
+	/**
+	 * Number of merged records.
+	 */
+	protected long counters;
+
+	/**
+	 * Number of records with less fields than the header.
+	 */
+	protected long ignored;
+
+	/**
+	 * Number of records of input A without key on input B.
+	 */
+	protected long unmatchedA;
+
+	/**
+	 * Number of records of input B without key on input A.
+	 */
+	protected long unmatchedB;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pMerger RecordMerger
+	 * @param pJoinType JoinType
+	 */
+	protected KeyJoin(final RecordMerger pMerger, final JoinType pJoinType) {
+		merger = pMerger;
+		joinType = pJoinType;
+		pair = new CsvRecord[2];
+		counters = 0L;
+		ignored = 0L;
+		unmatchedA = 0L;
+		unmatchedB = 0L;
+	}
+
+	/**
+	 * Join both inputs.
+	 *
+	 * @param aInput CsvInput input A
+	 * @param aKey int key column of input A, 0 based
+	 * @param bInput CsvInput input B
+	 * @param bKey int key column of input B, 0 based
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	abstract void join(CsvInput aInput, int aKey,
+			CsvInput bInput, int bKey,
+			OutputSink w
+	) throws IOException;
+
+	/**
+	 * Get the key of a record, without its double quotes: a quoted field
+	 * loses its enclosing quotes and its doubled quotes are made single.
+	 *
+	 * @param record CsvRecord
+	 * @param column int key column, 0 based
+	 * @return String
+	 */
+	static String key(final CsvRecord record, final int column) {
+		String field = record.getField(column);
+		int length = field.length();
+		if (length < 2 || field.charAt(0) != '"'
+				|| field.charAt(length - 1) != '"') {
+			return field;
+		}
+		field = field.substring(1, length - 1);
+		return field.indexOf('"') < 0 ? field : field.replace("\"\"", "\"");
+	}
+
+	/**
+	 * Write one merged record.
+	 *
+	 * @param aData CsvRecord record of input A or null if missing
+	 * @param bData CsvRecord record of input B or null if missing
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	protected final void write(final CsvRecord aData,
+			final CsvRecord bData,
+			final OutputSink w
+	) throws IOException {
+		pair[0] = aData;
+		pair[1] = bData;
+		merger.write(pair, w);
+	}
+
+	/**
+	 * Get number of merged records.
+	 *
+	 * @return long
+	 */
+	final long getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Get number of records with less fields than the header.
+	 *
+	 * @return long
+	 */
+	final long getIgnored() {
+		return ignored;
+	}
+
+	/**
+	 * Get number of records of input A without key on input B.
+	 *
+	 * @return long
+	 */
+	final long getUnmatchedA() {
+		return unmatchedA;
+	}
+
+	/**
+	 * Get number of records of input B without key on input A.
+	 *
+	 * @return long
+	 */
+	final long getUnmatchedB() {
+		return unmatchedB;
+	}
+
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * <p>
+ * This MappedByteLineReader class reads the lines of a chunk of a
+ * MappedCsvFile as raw bytes. Line terminators are searched on the mapped
+ * bytes, only the bytes of each line are copied into the reused byte
+ * buffer. Lines, or records in record mode, are terminated the same way as
+ * CsvLineReader. Line terminators and double quotes are searched eight
+ * bytes at a time by Swar unless it is turned off.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class MappedByteLineReader implements ByteLineReader {
+
+	/**
+	 * Initial size of the line buffer.
+	 */
+	private static final int LINE_SIZE = 8192;
+
+	/**
+	 * File being read.
+	 */
+	private final MappedCsvFile file;
+
+	/**
+	 * End offset of the chunk.
+	 */
+	private final long end;
+
+	/**
+	 * True to close the file with this reader.
+	 */
+	private final boolean closeFile;
+
+	/**
+	 * Maximum bytes of a record, 0 to read lines.
+	 */
+	private final int maxRecord;
+
+	/**
+	 * Offset of the mapped window in the file.
+	 */
+	private long windowStart;
+
+	/**
+	 * Mapped window, null until mapped.
+	 */
+	private ByteBuffer window;
+
+	/**
+	 * Next byte to consume in window.
+	 */
+	private int position;
+
+	/**
+	 * Row lengths sizing the line buffer.
+	 */
+	private final BufferPool.Rows sizes;
+
+	/**
+	 * Line buffer, reused, taken from the pool.
+	 */
+	private byte[] line;
+
+	/**
+	 * Number of bytes in line buffer.
+	 */
+	private int length;
+
+	/**
+	 * Skip the line feed following a carriage return.
+	 */
+	private boolean skipLF;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pFile MappedCsvFile
+	 * @param pStart long offset of the chunk
+	 * @param pEnd long end offset of the chunk
+	 * @param pCloseFile boolean true to close the file with this reader
+	 */
+	MappedByteLineReader(final MappedCsvFile pFile, final long pStart,
+			final long pEnd, final boolean pCloseFile
+	) {
+		this(pFile, pStart, pEnd, pCloseFile, 0);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pFile MappedCsvFile
+	 * @param pStart long offset of the chunk
+	 * @param pEnd long end offset of the chunk
+	 * @param pCloseFile boolean true to close the file with this reader
+	 * @param pMaxRecord int maximum bytes of a record, 0 to read lines
+	 */
+	MappedByteLineReader(final MappedCsvFile pFile, final long pStart,
+			final long pEnd, final boolean pCloseFile, final int pMaxRecord
+	) {
+		file = pFile;
+		end = pEnd;
+		closeFile = pCloseFile;
+		maxRecord = pMaxRecord;
+		windowStart = pStart;
+		window = null;
+		position = 0;
+		line = BufferPool.SHARED.takeBytes(LINE_SIZE);
+		sizes = new BufferPool.Rows(BufferPool.SHARED, LINE_SIZE,
+			BufferPool.Rows.DEFAULT_SHRINK_ROWS);
+		length = 0;
+		skipLF = false;
+	}
+
+	/**
+	 * Read the next line, or record in record mode.
+	 *
+	 * @return int number of bytes on the line or -1 at end of chunk
+	 * @throws IOException If any error at File I/O level or record too long
+	 */
+	@Override
+	public int readLine() throws IOException {
+		int index;
+		int limit;
+		byte b;
+		boolean quoted;
+		for (;;) {
+			if (windowStart + position >= end) {
+				return -1;
+			}
+			if (window == null || position >= window.limit()) {
+				remap(MappedCsvFile.WINDOW_SIZE);
+			}
+			limit = window.limit();
+			if (skipLF) {
+				skipLF = false;
+				if (window.get(position) == '\n') {
+					position = position + 1;
+					continue;
+				}
+			}
+			if (maxRecord == 0) {
+				if (Swar.ENABLED) {
+					index = Swar.indexOf(window, position, limit, Swar.LFS,
+						Swar.CRS);
+				}
+				else {
+					for (index = position; index < limit; index++) {
+						b = window.get(index);
+						if (b == '\n' || b == '\r') {
+							break;
+						}
+					}
+				}
+			}
+			else if (Swar.ENABLED) {
+				// The window always starts with the record, scan it again
+				quoted = false;
+				for (index = position; ; index++) {
+					index = quoted
+						? Swar.indexOf(window, index, limit, Swar.QUOTES)
+						: Swar.indexOf(window, index, limit, Swar.QUOTES,
+							Swar.LFS, Swar.CRS);
+					if (index == limit || window.get(index) != '"') {
+						break;
+					}
+					quoted = !quoted;
+				}
+				if (index - position > maxRecord) {
+					throw new IOException("Record longer than "+ maxRecord
+						+" bytes, unbalanced double quote?");
+				}
+			}
+			else {
+				// The window always starts with the record, scan it again
+				quoted = false;
+				for (index = position; index < limit; index++) {
+					b = window.get(index);
+					if (b == '"') {
+						quoted = !quoted;
+					}
+					else if ((b == '\n' || b == '\r') && !quoted) {
+						break;
+					}
+				}
+				if (index - position > maxRecord) {
+					throw new IOException("Record longer than "+ maxRecord
+						+" bytes, unbalanced double quote?");
+				}
+			}
+			if (index < limit) {
+				copy(position, index);
+				position = index + 1;
+				skipLF = window.get(index) == '\r';
+				return length;
+			}
+			if (windowStart + limit >= end) {
+				// Last line without line terminator
+				copy(position, limit);
+				position = limit;
+				return length;
+			}
+			// Line crosses the window, map again from its start
+			remap(Math.max(MappedCsvFile.WINDOW_SIZE, 2 * (limit - position)));
+		}
+	}
+
+	/**
+	 * Get the offset in the file of the next line.
+	 *
+	 * @return long
+	 * @throws IOException If any error at File I/O level
+	 */
+	long getPosition() throws IOException {
+		long offset = windowStart + position;
+		if (skipLF && offset < end) {
+			// The line feed of a carriage return ending the window
+			if (window == null || position >= window.limit()) {
+				remap(MappedCsvFile.WINDOW_SIZE);
+			}
+			skipLF = false;
+			if (window.get(position) == '\n') {
+				position = position + 1;
+				offset = offset + 1;
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Read the next line from an offset in the file, the offset of a line
+	 * returned by getPosition.
+	 *
+	 * @param offset long
+	 */
+	void seek(final long offset) {
+		windowStart = offset;
+		window = null;
+		position = 0;
+		skipLF = false;
+	}
+
+	/**
+	 * Map a new window starting at the current position.
+	 *
+	 * @param size int wanted size of the window
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void remap(final int size) throws IOException {
+		long start = windowStart + position;
+		window = file.map(start, (int) Math.min(size, end - start))
+			.order(ByteOrder.LITTLE_ENDIAN);
+		windowStart = start;
+		position = 0;
+	}
+
+	/**
+	 * Copy bytes of the window into the line buffer.
+	 *
+	 * @param from int offset of the first byte
+	 * @param to int end offset of the bytes
+	 */
+	private void copy(final int from, final int to) {
+		length = to - from;
+		line = sizes.shrink(line);
+		if (length > line.length) {
+			line = sizes.grow(line, 0, length);
+		}
+		sizes.add(length);
+		window.position(from);
+		window.get(line, 0, length);
+		window.position(0);
+	}
+
+	/**
+	 * Get the line buffer, valid until the next readLine.
+	 *
+	 * @return Array of byte
+	 */
+	@Override
+	public byte[] getLine() {
+		return line;
+	}
+
+	/**
+	 * Close the file if this reader owns it, the line buffer goes back to
+	 * the pool.
+	 */
+	@Override
+	public void close() {
+		window = null;
+		BufferPool.SHARED.give(line);
+		line = null;
+		if (closeFile) {
+			file.close();
+		}
+	}
+
+}
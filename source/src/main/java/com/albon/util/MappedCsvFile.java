@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * This MappedCsvFile class memory maps an input CSV file, read as a whole
+ * by a MappedLineReader or a MappedByteLineReader.
+ * </p>
+ * <p>
+ * Lines are found on the raw bytes thus the charset must encode line feed,
+ * carriage return, double quote and comma as their single ASCII byte, see
+ * isSupported.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is not mutable thus thread safe,
+ * its readers are not.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class MappedCsvFile {
+
+	/**
+	 * Bytes mapped at once.
+	 */
+	static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+	/**
+	 * ASCII characters that must keep their byte value.
+	 */
+	private static final String ASCII_SAFE = "\n\r\",";
+
+	/**
+	 * Opened file.
+	 */
+	private final RandomAccessFile file;
+
+	/**
+	 * Channel of the opened file.
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Size of the file in bytes.
+	 */
+	private final long size;
+
+	/**
+	 * Charset of the file.
+	 */
+	private final Charset charset;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pFile File to map
+	 * @param pCharset Charset of the file
+	 * @throws IOException If any error at File I/O level
+	 */
+	public MappedCsvFile(final File pFile, final Charset pCharset
+	) throws IOException {
+		Helper.checkObject(pFile, "pFile");
+		Helper.checkObject(pCharset, "pCharset");
+		file = new RandomAccessFile(pFile, "r");
+		channel = file.getChannel();
+		size = channel.size();
+		charset = pCharset;
+	}
+
+	/**
+	 * Check if a charset can be read from mapped bytes.
+	 *
+	 * @param cs Charset
+	 * @return boolean
+	 */
+	public static boolean isSupported(final Charset cs) {
+		byte[] b;
+		if (!cs.canEncode()) {
+			return false;
+		}
+		b = ASCII_SAFE.getBytes(cs);
+		return Arrays.equals(b, ASCII_SAFE.getBytes(Charset.forName("US-ASCII")));
+	}
+
+	/**
+	 * Create a reader of the whole file.
+	 *
+	 * @return MappedLineReader
+	 */
+	public MappedLineReader open() {
+		return new MappedLineReader(this, 0L, size, false);
+	}
+
+	/**
+	 * Create a reader of the raw bytes of the whole file.
+	 *
+	 * @return MappedByteLineReader
+	 */
+	public MappedByteLineReader openBytes() {
+		return new MappedByteLineReader(this, 0L, size, false);
+	}
+
+	/**
+	 * Map a region of the file.
+	 *
+	 * @param position long
+	 * @param length int
+	 * @return MappedByteBuffer
+	 * @throws IOException If any error at File I/O level
+	 */
+	MappedByteBuffer map(final long position, final int length) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+	}
+
+	/**
+	 * Get size of the file in bytes.
+	 *
+	 * @return long
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Get charset of the file.
+	 *
+	 * @return Charset
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Close the file, readers of its chunks can no longer map.
+	 */
+	public void close() {
+		try {
+			file.close();
+		} catch (IOException ignore) {
+		}
+	}
+
+}
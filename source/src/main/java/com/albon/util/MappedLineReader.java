@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * <p>
+ * This MappedLineReader class reads the lines of a chunk of a MappedCsvFile.
+ * Line terminators are searched on the mapped bytes by a MappedByteLineReader,
+ * only the bytes of each line are decoded into the reused char buffer. Lines,
+ * or records in record mode, are terminated the same way as CsvLineReader.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class MappedLineReader implements LineReader {
+
+	/**
+	 * Initial size of the line buffer.
+	 */
+	private static final int LINE_SIZE = 8192;
+
+	/**
+	 * Bytes of each line.
+	 */
+	private final MappedByteLineReader bytes;
+
+	/**
+	 * Decoder of line bytes.
+	 */
+	private final CharsetDecoder decoder;
+
+	/**
+	 * Maximum characters decoded out of one byte.
+	 */
+	private final float maxCharsPerByte;
+
+	/**
+	 * Byte buffer of the line, wrapped for decoding.
+	 */
+	private ByteBuffer in;
+
+	/**
+	 * Row lengths sizing the line buffer.
+	 */
+	private final BufferPool.Rows sizes;
+
+	/**
+	 * Line buffer, reused, taken from the pool.
+	 */
+	private char[] line;
+
+	/**
+	 * Line buffer wrapped for decoding.
+	 */
+	private CharBuffer out;
+
+	/**
+	 * Number of characters in line buffer.
+	 */
+	private int length;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pFile MappedCsvFile
+	 * @param pStart long offset of the chunk
+	 * @param pEnd long end offset of the chunk
+	 * @param pCloseFile boolean true to close the file with this reader
+	 */
+	MappedLineReader(final MappedCsvFile pFile, final long pStart,
+			final long pEnd, final boolean pCloseFile
+	) {
+		this(pFile, pStart, pEnd, pCloseFile, 0);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pFile MappedCsvFile
+	 * @param pStart long offset of the chunk
+	 * @param pEnd long end offset of the chunk
+	 * @param pCloseFile boolean true to close the file with this reader
+	 * @param pMaxRecord int maximum bytes of a record, 0 to read lines
+	 */
+	MappedLineReader(final MappedCsvFile pFile, final long pStart,
+			final long pEnd, final boolean pCloseFile, final int pMaxRecord
+	) {
+		bytes = new MappedByteLineReader(pFile, pStart, pEnd, pCloseFile,
+			pMaxRecord);
+		decoder = pFile.getCharset().newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		maxCharsPerByte = decoder.maxCharsPerByte();
+		in = ByteBuffer.wrap(bytes.getLine());
+		line = BufferPool.SHARED.takeChars(LINE_SIZE);
+		sizes = new BufferPool.Rows(BufferPool.SHARED, LINE_SIZE,
+			BufferPool.Rows.DEFAULT_SHRINK_ROWS);
+		out = CharBuffer.wrap(line);
+		length = 0;
+	}
+
+	/**
+	 * Read the next line, or record in record mode.
+	 *
+	 * @return int number of characters on the line or -1 at end of chunk
+	 * @throws IOException If any error at File I/O level or record too long
+	 */
+	@Override
+	public int readLine() throws IOException {
+		int size = bytes.readLine();
+		if (size < 0) {
+			return -1;
+		}
+		decode(size);
+		return length;
+	}
+
+	/**
+	 * Decode the bytes of the line into the line buffer.
+	 *
+	 * @param size int number of bytes
+	 */
+	private void decode(final int size) {
+		int capacity = (int) (size * (double) maxCharsPerByte) + 1;
+		CoderResult cr;
+		char[] previous = line;
+		line = sizes.shrink(line);
+		if (capacity > line.length) {
+			line = sizes.grow(line, 0, capacity);
+		}
+		if (line != previous) {
+			out = CharBuffer.wrap(line);
+		}
+		if (in.array() != bytes.getLine()) {
+			in = ByteBuffer.wrap(bytes.getLine());
+		}
+		in.limit(size).position(0);
+		out.clear();
+		decoder.reset();
+		cr = decoder.decode(in, out, true);
+		if (!cr.isError()) {
+			decoder.flush(out);
+		}
+		length = out.position();
+		// The line buffer holds capacity characters, not length
+		sizes.add(capacity);
+	}
+
+	/**
+	 * Get the offset in the file of the next line.
+	 *
+	 * @return long
+	 * @throws IOException If any error at File I/O level
+	 */
+	long getPosition() throws IOException {
+		return bytes.getPosition();
+	}
+
+	/**
+	 * Read the next line from an offset in the file, the offset of a line
+	 * returned by getPosition.
+	 *
+	 * @param offset long
+	 */
+	void seek(final long offset) {
+		bytes.seek(offset);
+	}
+
+	/**
+	 * Get the line buffer, valid until the next readLine.
+	 *
+	 * @return Array of char
+	 */
+	@Override
+	public char[] getLine() {
+		return line;
+	}
+
+	/**
+	 * Close the file if this reader owns it, the line buffer goes back to
+	 * the pool.
+	 */
+	@Override
+	public void close() {
+		bytes.close();
+		BufferPool.SHARED.give(line);
+		line = null;
+		out = null;
+	}
+
+}
@@ -21,10 +21,15 @@
  */
 package com.albon.util;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * <p>
@@ -41,470 +46,218 @@ import java.io.IOException;
 public class MergeCSV {
 
 	/**
-	 * Input A, a CSV file.
+	 * File name of the standard input or output.
 	 */
-	private BufferedReader brAInput;
+	static final String STD_STREAM = "-";
 
 	/**
-	 * Input B, a CSV file.
+	 * Settings of the merge, taken from the command line.
 	 */
-	private BufferedReader brBInput;
+	private final MergeOptions options;
 
 	/**
-	 * Template, a CSV file.
+	 * Engine doing the merge.
 	 */
-	private BufferedReader brTemplate;
-
-	/**
-	 * Generated CSV file.
-	 */
-	private BufferedWriter bwOutput;
+	private MergeEngine engine;
 
 	/**
 	 * Default constructor.
 	 */
 	public MergeCSV() {
-		brAInput = null;
-		brBInput = null;
-		brTemplate = null;
-		bwOutput = null;
+		options = new MergeOptions();
+		options.setVerbose(true);
+		engine = null;
 	}
 
 	/**
-	 * Read line from BufferedReader.
-	 *
-	 * @param br BufferedReader instance
-	 * @return String
-	 */
-	private String readLine(BufferedReader br) {
-		String line;
-		try {
-			line = br.readLine();
-		} catch (IOException e) {
-			line = null;
-		}
-		return line;
-	}
-
-	/**
-	 * Parse comma delimited line.
+	 * Helper to show parsed Header for debugging.
 	 *
-	 * @param line String
-	 * @param indexes Int
-	 * @return String
+	 * @param headers Array of String headers
+	 * @param name String header name
 	 */
-	private String getData(final String line, int[] indexes) {
-		final char cDoubleQoute = '"';
-		char c;
-		int offset = indexes[0];
-		int limit = line.length();
-		boolean inLiteral = false;
+	void emitHeader(final String[] headers, final String name) {
 		String s = "";
-		if (offset < limit) {
-			if (cDoubleQoute == line.charAt(offset)) {
-				inLiteral = true;
-				offset = offset + 1;
-				s = s + cDoubleQoute;
-				// Check two-double-quote
-				if (offset < limit) {
-					c = line.charAt(offset);
-					if (c == cDoubleQoute) {
-						s = s + cDoubleQoute;
-						offset = offset + 1;
-						inLiteral = false;
-					}
-				}
-			}
-		}
-		for ( ; offset < limit; ) {
-
-			c = line.charAt(offset);
-			offset = offset + 1;
-
-			if (c == ',' && inLiteral) {
-				s = s + c;
-			}
-			else {
-				// Check for two-double-quote
-				if (c == cDoubleQoute
-				&& ((offset < limit)
-				&& cDoubleQoute == line.charAt(offset))
-				) {
-					s = s + "\"\"";
-					offset = offset + 1;
-					continue;
-				}
-				else
-				if ((c == cDoubleQoute)
-				|| (c == ',')
-				) {
-					if (c == cDoubleQoute) {
-						s = s + c;
-						offset = offset + 1;
-					}
-
-					while (offset < limit) {
-						c = line.charAt(offset);
-						if (c == ' '
-						|| c == '\t'
-						) {
-							offset = offset + 1;
-						}
-						else {
-							break;
-						}
-					}
-
-					break;
-				}
-				s = s + c;
-			}
-		}
-		indexes[0] = offset;
-
-		// Fix in literal delimiter
-		String p;
-		if (inLiteral) {
-			limit = s.length() - 1;
-			if (limit < 1) {
-				return "";
-			}
-			if (s.charAt(limit) == cDoubleQoute) {
-				return s;
-			}
-			p = s + cDoubleQoute;
-			return p;
-		}
-
-		// Fix string with embedded space
-		p = s.trim();
-		limit = p.length();
-		if (limit > 0) {
-			offset = p.indexOf(' ');
-			if (offset > 0) {
-				return "\"" + p + "\"";
+		int index;
+		for (index = 0; index < headers.length; index++) {
+			if (index > 0) {
+				s = s + ",";
 			}
-
-			return p;
+			s = s + headers[index];
 		}
-
-		return "";
+		log("Header from: "+ name + " - ["+ s +"]");
 	}
 
 	/**
-	 * Parse a comma delimited CSV file.
+	 * Process CSV files.
 	 *
-	 * @param line String
+	 * @param aFile String file 1
+	 * @param bFile String file 2
+	 * @param output String file 4
+	 * @param template String file 3
 	 *
-	 * @return Array of String or null
+	 * @throws MergeCsvException If there is error at File I/O level
 	 */
-	private String[] getCsvData(final String line) {
-
-		String s;
-		int index, limit;
-		int size, offset, counter;
-		int[] indexes = {0,0};
-
-		String[] datas;
-
-		// Count how many data on this line.
-		limit = line.length();
-		size = 0;
-		index = 0;
-		do {
-			indexes[0] = index;
-			s = getData(line, indexes);
-			offset = indexes[0];
-			if (offset == index) {
-				break;
-			}
-			size = size + 1;
-			index = offset;
-		} while (offset < limit);
-
-		if (size < 2) {
-			return null;
-		}
-
-		// Allocate the String
-		datas = new String[size];
-		index = 0;
-		counter = 0;
-		do {
-			indexes[0] = index;
-			s = getData(line, indexes);
-			datas[counter] = s;
-			offset = indexes[0];
-			if (offset == index) {
-				break;
-			}
-			counter = counter + 1;
-			index = offset;
-		} while (offset < limit);
-
-		while (counter < size) {
-			datas[counter] = "";
-			counter = counter + 1;
-		}
-		return datas;
+	void run(final String aFile,
+			final String bFile,
+			final String output,
+			final String template
+	) throws MergeCsvException {
+		run(new String[] {aFile, bFile}, output, template);
 	}
 
 	/**
-	 * Read the CSV header information.
+	 * Process CSV files.
 	 *
-	 * @param br BufferedReader
-	 * @param fileName String
-	 * @return Array of String
+	 * @param files Array of String input files, in precedence order
+	 * @param output String output file
+	 * @param template String template file
 	 *
-	 * @throws MergeCsvException If no valid CSV header
+	 * @throws MergeCsvException If there is error at File I/O level
 	 */
-	private String[] readHeader(BufferedReader br,
-			final String fileName
+	void run(final String[] files,
+			final String output,
+			final String template
 	) throws MergeCsvException {
 
-		String[] headers;
-
-		String line = readLine(br);
-		// minimum value "a,b"
-		if (line == null || line.length() < 3) {
-			throw new MergeCsvException("Missing header data on '"+ fileName +"'");
+		CsvSource[] sources = new CsvSource[files.length];
+		OutputSink sink;
+		int index;
+		for (index = 0; index < files.length; index++) {
+			sources[index] = source(files[index]);
 		}
-
-		headers = getCsvData(line);
-		// minumin value is 2
-		if (headers == null || headers.length < 2) {
-			throw new MergeCsvException("Missing header data on '"+ fileName +"'");
+		if (engine == null) {
+			engine = new MergeEngine(options);
+		}
+		if (!STD_STREAM.equals(output)) {
+			engine.merge(source(template), sources, Paths.get(output));
+			return;
+		}
+		sink = Helper.createOutputSink(new FileOutputStream(FileDescriptor.out),
+			options.getCharset(), options.getFlushRows(), options.isCompress());
+		try {
+			engine.merge(source(template), sources, sink);
+		} finally {
+			Helper.closeSink(sink);
 		}
-
-		return headers;
 	}
 
 	/**
-	 * Locate key index.
+	 * Serve merges on a localhost port until the JVM is stopped, every job
+	 * with the options of the command line.
 	 *
-	 * @param key String
-	 * @param headers Array of String
-	 * @return int 0 if key not in headers
+	 * @param port int localhost port
+	 * @param jobs int jobs merging at the same time
+	 * @param root File directory holding the files of the jobs
+	 *
+	 * @throws IOException If the port can't be bound or root doesn't exist
 	 */
-	private int locateKey(final String key, final String[] headers) {
-
-		int index;
-		for (index = 0; index < headers.length; index++) {
-			if (key.equals(headers[index])) {
-				return index + 1;
+	void serve(final int port, final int jobs, final File root
+	) throws IOException {
+		final MergeServer server;
+		// One line per job would flood the console
+		options.setVerbose(false);
+		server = new MergeServer(options, port, jobs, root.toPath());
+		Runtime.getRuntime().addShutdownHook(new Thread("mergecsv-stop") {
+			@Override
+			public void run() {
+				server.close();
 			}
-		}
-
-		return 0;
+		});
+		server.start();
+		log("Serving merges on http://localhost:"+ server.getPort() +"/merge, "
+			+ jobs +" at a time on "+ (server.isVirtual() ? "virtual" : "platform")
+			+" threads");
+		log("Files of the jobs must be in "+ server.getRoot());
+		log("Every request must send the header "+ MergeServer.TOKEN_HEADER
+			+": "+ server.getToken());
 	}
 
 	/**
-	 * Helper to show parsed Header for debugging.
+	 * Get the source of a file name, the standard input for "-".
 	 *
-	 * @param headers Array of String headers
-	 * @param name String header name
+	 * @param fileName String
+	 * @return CsvSource
 	 */
-	void emitHeader(final String[] headers, final String name) {
-		String s = "";
-		int index;
-		for (index = 0; index < headers.length; index++) {
-			if (index > 0) {
-				s = s + ",";
-			}
-			s = s + headers[index];
+	private CsvSource source(final String fileName) {
+		if (STD_STREAM.equals(fileName)) {
+			return CsvSource.of(System.in, options.getCharset(), "stdin");
 		}
-		log("Header from: "+ name + " - ["+ s +"]");
+		return CsvSource.of(Paths.get(fileName));
 	}
 
 	/**
-	 * Process CSV files.
+	 * Load the aliases of columns. Each line of the file is CSV, the column
+	 * name followed by its other names, spelled as in the headers.
 	 *
-	 * @param aInput String file 1
-	 * @param bInput String file 2
-	 * @param output String file 4
-	 * @param template String file 3
+	 * @param fileName String aliases file
 	 *
 	 * @throws MergeCsvException If there is error at File I/O level
 	 */
-	void run(final String aInput,
-			final String bInput,
-			final String output,
-			final String template
-	) throws MergeCsvException {
-
-		String fileName;
-		String forOutputHeader;
-		String line1;
-		String line2;
-		String key;
-		String s;
-		String xs;
-		String[] aHeader;
-		String[] bHeader;
-		String[] outputHeader;
-		String[] aData;
-		String[] bData;
-		int outputSize;
+	void loadAliases(final String fileName) throws MergeCsvException {
+		CsvLineReader reader = null;
+		CsvTokenizer tokenizer = new CsvTokenizer();
+		int length;
+		int count;
 		int index;
-		int offset;
-		int xOffset;
-		int[] aIndexes;
-		int[] bIndexes;
-		long counters;
-		long ignored;
-		// 1. Load the template
-		fileName = template;
 		try {
-			brTemplate = Helper.createFileReader(null, fileName);
-
-			// 2. read template header information
-			forOutputHeader = readLine(brTemplate);
-			if (forOutputHeader == null || forOutputHeader.length() < 3) {
-				throw new MergeCsvException("Missing header data on '"+ template +"'");
-			}
-
-			outputHeader = getCsvData(forOutputHeader);
-			if (outputHeader == null || outputHeader.length < 2) {
-				throw new MergeCsvException("Missing header data on '"+ template +"'");
+			reader = Helper.createLineReader(null, fileName,
+				options.getCharset());
+			while ((length = reader.readLine()) >= 0) {
+				count = tokenizer.tokenize(reader.getLine(), length);
+				for (index = 1; index < count; index++) {
+					if (tokenizer.getFieldLength(index) > 0) {
+						options.addAlias(tokenizer.getField(0),
+							tokenizer.getField(index));
+					}
+				}
 			}
-			Helper.closeReader(brTemplate);
-			brTemplate = null;
-
-			log("Template '"+ template +"' contains "+ outputHeader.length + " columns");
-			//emitHeader(outputHeader, "Template "+ template);
-
-			// 3. Load input file #1
-			fileName = aInput;
-			brAInput = Helper.createFileReader(null, fileName);
-
-			// 4. read input file #1 header information
-			aHeader = readHeader(brAInput, aInput);
-			log("Input 1 '"+ aInput + "' contains "+ aHeader.length + " columns");
-			//emitHeader(aHeader, aInput);
-
-			// 5. Load input file #2
-			fileName = bInput;
-			brBInput = Helper.createFileReader(null, fileName);
-
-			// 6. read input file #2 header information
-			bHeader = readHeader(brBInput, bInput);
-			log("Input 2 '"+ bInput + "' contains "+ bHeader.length + " columns");
-			//emitHeader(bHeader, bInput);
-
 		} catch (FileNotFoundException ex) {
 			throw new MergeCsvException("Not found '"+ fileName +"'", ex);
+		} catch (IOException ex) {
+			throw new MergeCsvException("Error reading '"+ fileName +"'", ex);
+		} catch (IllegalArgumentException ex) {
+			throw new MergeCsvException("Invalid alias in '"+ fileName +"'", ex);
+		} finally {
+			Helper.closeReader(reader);
 		}
+	}
 
-		// 7. Create the output CSV file
-		log("Creating output '"+ output + "'");
-		bwOutput = Helper.createBufferedWriter(output, "run");
-
+	/**
+	 * Load the rules of columns. Each line of the file is CSV, the template
+	 * column name, its rule then the argument of the rule if any.
+	 *
+	 * @param fileName String rules file
+	 *
+	 * @throws MergeCsvException If there is error at File I/O level or a
+	 *   rule is invalid
+	 */
+	void loadRules(final String fileName) throws MergeCsvException {
+		CsvLineReader reader = null;
+		CsvTokenizer tokenizer = new CsvTokenizer();
+		int length;
+		int count;
 		try {
-			// 8. Write the ouput CSV header.
-			bwOutput.write(forOutputHeader + "\n");
-			bwOutput.flush();
-
-		} catch (IOException e) {
-			throw new MergeCsvException("Error writing to "+ output, e);
-		}
-
-		// 9. Create a mapping
-		outputSize = outputHeader.length;
-
-		aIndexes = new int[outputSize];
-		bIndexes = new int[outputSize];
-		for (index = 0; index < outputSize; index++) {
-			key = outputHeader[index];
-			// Mapping for first CSV
-			offset = locateKey(key, aHeader);
-			aIndexes[index] = offset;
-			// Mapping for 2nd CSV
-			xOffset = locateKey(key, bHeader);
-			bIndexes[index] = xOffset;
-		}
-
-		counters = 0L;
-		ignored = 0L;
-		do {
-			// 10. read both CSV
-			line1 = readLine(brAInput);
-			if (line1 == null || line1.length() < 2) {
-				break;
-			}
-			aData = getCsvData(line1);
-			if (aData == null || aData.length < 2) {
-				break;
-			}
-
-			line2 = readLine(brBInput);
-			if (line2 == null || line2.length() < 2) {
-				break;
-			}
-			bData = getCsvData(line2);
-			if (bData == null || bData.length < 2) {
-				break;
-			}
-
-			counters = counters + 1L;
-			if ((counters % 1024L) == 0L) {
-				log("Merging "+ counters +" CSV records");
-			}
-
-			if ((aData.length >= aHeader.length)
-			&& (bData.length >= bHeader.length)
-			) {
-				// 11. Merge the CSV
-				s = "";
-				for (index = 0; index < outputSize; index++) {
-					if (index > 0) {
-						s = s + ",";
-					}
-					offset = aIndexes[index];
-					xOffset = bIndexes[index];
-					if (offset == 0 && xOffset == 0) {
-						// key not in 1st and 2nd CSV
-					}
-					else if (xOffset == 0 && offset > 0) {
-						// key at 1st CSV
-						s = s + aData[offset - 1];
-					}
-					else if (xOffset > 0 && offset == 0) {
-						// key at 2nd CSV
-						s = s + bData[xOffset - 1];
-					}
-					else {
-						// key both at 1st and 2nd CSV
-						key = aData[offset - 1];
-						xs = bData[xOffset - 1];
-						if (key.length() < 1) {
-							s = s + xs;
-						}
-						else if (xs.length() < 1) {
-							s = s + key;
-						}
-						else if (key.length() >= xs.length()) {
-							s = s + key;
-						}
-						else {
-							s = s + xs;
-						}
-					}
-				}
-				s = s + "\n";
-
-				try {
-					bwOutput.write(s);
-					bwOutput.flush();
-				} catch (IOException e) {
-					throw new MergeCsvException("Error writing to "+ output, e);
+			reader = Helper.createLineReader(null, fileName,
+				options.getCharset());
+			while ((length = reader.readLine()) >= 0) {
+				count = tokenizer.tokenize(reader.getLine(), length);
+				if (count < 2 || tokenizer.getFieldLength(0) == 0) {
+					continue;
 				}
+				options.setRule(tokenizer.getField(0),
+					ColumnRule.unquote(tokenizer.getField(1)),
+					count > 2 ? ColumnRule.unquote(tokenizer.getField(2)) : null);
 			}
-			else {
-				ignored++;
-			}
-		} while(true);
-
-		log("Merged "+ counters +" CSV records, Ignored "+ ignored +" CSV record(s).");
+		} catch (FileNotFoundException ex) {
+			throw new MergeCsvException("Not found '"+ fileName +"'", ex);
+		} catch (IOException ex) {
+			throw new MergeCsvException("Error reading '"+ fileName +"'", ex);
+		} catch (IllegalArgumentException ex) {
+			throw new MergeCsvException("Invalid rule in '"+ fileName +"': "
+				+ ex.getMessage(), ex);
+		} finally {
+			Helper.closeReader(reader);
+		}
 	}
 
 	/**
@@ -518,11 +271,61 @@ public class MergeCSV {
 		String pzBInput = null;
 		String pzOut = null;
 		String pzPlate = null;
+		String pzAliases = null;
+		String pzRules = null;
+		int servePort = -1;
+		int jobs = MergeServer.DEFAULT_JOBS;
+		File serveRoot = new File(".");
+		List<String> pzInputs = new ArrayList<String>();
 		String par;
+		JoinType joinType;
+		long size;
+		int value;
 		int index;
 		int length = args.length;
+		app = new MergeCSV();
 		for (index = 0; index < length; ) {
 			par = args[index++];
+			if ("--sort".equals(par)) {
+				app.options.setSortJoin(true);
+				continue;
+			}
+			if ("--mmap".equals(par)) {
+				app.options.setMmap(true);
+				continue;
+			}
+			if ("--fsync".equals(par)) {
+				app.options.setFsync(true);
+				continue;
+			}
+			if ("--fuzzy".equals(par)) {
+				app.options.setFuzzyHeaders(true);
+				continue;
+			}
+			if ("--jmx".equals(par)) {
+				app.options.setJmx(true);
+				continue;
+			}
+			if ("--compress".equals(par)) {
+				app.options.setCompress(true);
+				continue;
+			}
+			if ("--resume".equals(par)) {
+				app.options.setResume(true);
+				continue;
+			}
+			if ("--cache".equals(par)) {
+				app.options.setCache(true);
+				continue;
+			}
+			if ("--prune".equals(par)) {
+				app.options.setPrune(true);
+				continue;
+			}
+			if ("--multiline".equals(par)) {
+				app.options.setMultiline(true);
+				continue;
+			}
 			if (index == length) {
 				missingParameter(par);
 				return;
@@ -533,21 +336,200 @@ public class MergeCSV {
 			else if ("--b".equals(par)) {
 				pzBInput = args[index++];
 			}
+			else if ("--in".equals(par)) {
+				pzInputs.add(args[index++]);
+			}
 			else if ("--o".equals(par)) {
 				pzOut = args[index++];
 			}
 			else if ("--t".equals(par)) {
 				pzPlate = args[index++];
+			}
+			else if ("--aliases".equals(par)) {
+				pzAliases = args[index++];
+			}
+			else if ("--rules".equals(par)) {
+				pzRules = args[index++];
+			}
+			else if ("--dedupe-on".equals(par)) {
+				List<String> columns = new ArrayList<String>();
+				for (String column : args[index++].split(",")) {
+					if (column.trim().length() > 0) {
+						columns.add(column.trim());
+					}
+				}
+				if (columns.isEmpty()) {
+					quit(1, "Invalid dedupe columns '"+ args[index - 1] +"'");
+					return;
+				}
+				app.options.setDedupeColumns(columns);
+			}
+			else if ("--serve".equals(par)) {
+				par = args[index++];
+				servePort = Helper.atoi(par);
+				if (servePort < 1 || servePort > 65535) {
+					quit(1, "Invalid port '"+ par +"'");
+					return;
+				}
+			}
+			else if ("--serve-root".equals(par)) {
+				serveRoot = new File(args[index++]);
+			}
+			else if ("--jobs".equals(par)) {
+				par = args[index++];
+				jobs = Helper.atoi(par);
+				if (jobs < 1) {
+					quit(1, "Invalid jobs '"+ par +"'");
+					return;
+				}
+			}
+			else if ("--dedupe-dir".equals(par)) {
+				app.options.setDedupeDirectory(new File(args[index++]));
+			}
+			else if ("--plan".equals(par)) {
+				app.options.setPlanFile(new File(args[index++]));
+			}
+			else if ("--key".equals(par)) {
+				app.options.setJoinKey(args[index++]);
+			}
+			else if ("--bkey".equals(par)) {
+				app.options.setJoinBKey(args[index++]);
+			}
+			else if ("--memory".equals(par)) {
+				par = args[index++];
+				value = Helper.atoi(par);
+				if (value < 1) {
+					quit(1, "Invalid memory '"+ par +"'");
+					return;
+				}
+				app.options.setSortMemory(value);
+			}
+			else if ("--threads".equals(par)) {
+				par = args[index++];
+				value = Helper.atoi(par);
+				if (value < 1) {
+					quit(1, "Invalid threads '"+ par +"'");
+					return;
+				}
+				app.options.setThreads(value);
+			}
+			else if ("--flush-rows".equals(par)) {
+				par = args[index++];
+				value = Helper.atoi(par);
+				if (value < 0) {
+					quit(1, "Invalid flush rows '"+ par +"'");
+					return;
+				}
+				app.options.setFlushRows(value);
+			}
+			else if ("--checkpoint".equals(par)) {
+				par = args[index++];
+				value = Helper.atoi(par);
+				if (value < 1) {
+					quit(1, "Invalid checkpoint rows '"+ par +"'");
+					return;
+				}
+				app.options.setCheckpointRows(value);
+			}
+			else if ("--shard-rows".equals(par)) {
+				par = args[index++];
+				size = Helper.atol(par);
+				if (size < 1L) {
+					quit(1, "Invalid shard rows '"+ par +"'");
+					return;
+				}
+				app.options.setShardRows(size);
+			}
+			else if ("--shard-bytes".equals(par)) {
+				par = args[index++];
+				size = Helper.atol(par);
+				if (size < 1L) {
+					quit(1, "Invalid shard bytes '"+ par +"'");
+					return;
+				}
+				app.options.setShardBytes(size);
+			}
+			else if ("--shard-by".equals(par)) {
+				app.options.setShardBy(args[index++]);
+			}
+			else if ("--shards".equals(par)) {
+				par = args[index++];
+				value = Helper.atoi(par);
+				if (value < 1) {
+					quit(1, "Invalid shards '"+ par +"'");
+					return;
+				}
+				app.options.setShards(value);
+			}
+			else if ("--metrics".equals(par)) {
+				app.options.setMetricsFile(new File(args[index++]));
+			}
+			else if ("--metrics-interval".equals(par)) {
+				par = args[index++];
+				value = Helper.atoi(par);
+				if (value < 1) {
+					quit(1, "Invalid metrics interval '"+ par +"'");
+					return;
+				}
+				app.options.setMetricsInterval(value);
+			}
+			else if ("--max-record".equals(par)) {
+				par = args[index++];
+				value = Helper.atoi(par);
+				if (value < 1) {
+					quit(1, "Invalid max record '"+ par +"'");
+					return;
+				}
+				app.options.setMaxRecord(value);
+			}
+			else if ("--charset".equals(par)) {
+				par = args[index++];
+				try {
+					app.options.setCharset(Charset.forName(par));
+				} catch (IllegalArgumentException ex) {
+					quit(1, "Unknown charset '"+ par +"'");
+					return;
+				}
+			}
+			else if ("--join".equals(par)) {
+				par = args[index++];
+				joinType = JoinType.parse(par);
+				if (joinType == null) {
+					quit(1, "Unknown join '"+ par +"'");
+					return;
+				}
+				app.options.setJoinType(joinType);
 			} else {
 				quit(1, "Unknown parameter '"+ par +"'");
 				return;
 			}
 		}
-		if (Helper.isStringNullOrEmpty(pzAInput)) {
-			missingParameter("--a");
+		if (servePort > 0) {
+			try {
+				if (pzAliases != null) {
+					app.loadAliases(pzAliases);
+				}
+				if (pzRules != null) {
+					app.loadRules(pzRules);
+				}
+				app.serve(servePort, jobs, serveRoot);
+			} catch (Exception ex) {
+				ex.printStackTrace();
+				quit(1, "Can't serve on port "+ servePort);
+			}
+			return;
+		}
+		if (!Helper.isStringNullOrEmpty(pzBInput)) {
+			pzInputs.add(0, pzBInput);
 		}
-		if (Helper.isStringNullOrEmpty(pzBInput)) {
-			missingParameter("--b");
+		if (!Helper.isStringNullOrEmpty(pzAInput)) {
+			pzInputs.add(0, pzAInput);
+		}
+		if (pzInputs.size() < 2) {
+			missingParameter(Helper.isStringNullOrEmpty(pzAInput) ? "--a" : "--b");
+		}
+		if (app.options.getJoinKey() != null && pzInputs.size() != 2) {
+			quit(1, "Parameter '--key' needs exactly 2 input files");
 		}
 		if (Helper.isStringNullOrEmpty(pzOut)) {
 			missingParameter("--o");
@@ -555,10 +537,32 @@ public class MergeCSV {
 		if (Helper.isStringNullOrEmpty(pzPlate)) {
 			missingParameter("--t");
 		}
+		if (app.options.getShardBy() != null && (app.options.getShardRows() > 0L
+				|| app.options.getShardBytes() > 0L)) {
+			quit(1, "Parameter '--shard-by' can't be used with '--shard-rows' or '--shard-bytes'");
+		}
+		if (app.options.isSharded() && STD_STREAM.equals(pzOut)) {
+			quit(1, "Shards can't be written to the standard output");
+		}
+		value = STD_STREAM.equals(pzPlate) ? 1 : 0;
+		for (String input : pzInputs) {
+			if (STD_STREAM.equals(input)) {
+				value = value + 1;
+			}
+		}
+		if (value > 1) {
+			quit(1, "Only one of the input files can be '-'");
+		}
 
-		app = new MergeCSV();
 		try {
-			app.run(pzAInput, pzBInput, pzOut, pzPlate);
+			// after --charset, whatever the order of the parameters
+			if (pzAliases != null) {
+				app.loadAliases(pzAliases);
+			}
+			if (pzRules != null) {
+				app.loadRules(pzRules);
+			}
+			app.run(pzInputs.toArray(new String[pzInputs.size()]), pzOut, pzPlate);
 		} catch (Exception ex) {
 			ex.printStackTrace();
 		}
@@ -574,12 +578,63 @@ public class MergeCSV {
 		"",
 		"MergeCSV version 1.0, (c) 2019 tmalbonph@yahoo.com",
 		"",
-		"usage: com.albon.util.MergeCSV --a A --b B --t T --o O",
+		"usage: com.albon.util.MergeCSV --a A --b B [--in I ...] --t T --o O",
 		"where: --o O specify {O} to save merge CSV column into this {O} file",
 		"       --a A specify {A} as 1st input CSV file to merge into {O} file",
 		"       --b B specify {B} as 2nd input CSV file to merge into {O} file",
+		"       --in I specify {I} as next input CSV file, repeat for more files;",
+		"             when a column is on several files the longer value wins,",
+		"             on equal length the file given first ({A}, {B}, then {I}) wins",
 		"       --t T specify {T} as the Template that specify the CSV column header,",
 		"             that exist on file {A} or {B} and written into {O} CSV file.",
+		"       '-' as {O} writes to the standard output, as one of {A}, {B}, {I}",
+		"             or {T} reads the standard input; named pipes are read as files",
+		"",
+		"optional: --fuzzy  match column names case folded, without spaces and punctuation",
+		"          --aliases F specify {F} as CSV file of a column name then its other names",
+		"          --rules F specify {F} as CSV file of a template column, its rule and",
+		"                   argument: LONGEST (default), FIRST_NON_EMPTY, MAX_NUMERIC,",
+		"                   LATEST_DATE[,pattern], SUM or TRIM",
+		"          --key K  join {A} and {B} on column {K} instead of line position",
+		"          --bkey K specify {K} as the key column on {B} if spelled differently",
+		"          --join J specify {J} as inner (default), left or full join",
+		"          --sort   join by sorting {A} and {B} on disk, for files larger than memory",
+		"          --memory M specify {M} megabytes of records sorted in memory (default 64)",
+		"          --threads N merge by line position on {N} threads (default 1)",
+		"          --mmap   read input files through memory mapping",
+		"          --charset C read and write files in charset {C} (default of the platform),",
+		"                   UTF-8 files are merged as bytes without decoding",
+		"          --prune  tokenize records only up to the last column needed by {T},",
+		"                   a record is then ignored only if it misses a needed column",
+		"          --cache  read each input file {F} from its columnar cache {F}.mcc,",
+		"                   written first when missing or older than {F}",
+		"          --multiline read RFC 4180 records, quoted fields may span lines",
+		"          --max-record S stop on a multi-line record longer than {S} characters",
+		"                   (default 16777216), most likely an unbalanced double quote",
+		"          --flush-rows R flush {O} every {R} records (default 0, at the end)",
+		"          --fsync  force {O} on the storage device at the end",
+		"          --serve P serve merges on localhost port {P} instead, POST the",
+		"                   fields a=A&b=B&t=T&o=O to /merge, GET /status for the",
+		"                   counters, with the token printed at start in X-Merge-Token",
+		"          --serve-root D files of the jobs of --serve must be in directory {D}",
+		"                   (default the current directory)",
+		"          --jobs N merge at most {N} jobs of --serve at the same time",
+		"          --dedupe-on C drop the records whose columns {C}, comma separated,",
+		"                   were written already, keys kept off the heap",
+		"          --dedupe-dir D keep the keys of --dedupe-on on disk in directory {D}",
+		"          --plan F keep the column mapping of {T} and the headers of the inputs",
+		"                   in {F}, a merge of the same files then skips planning",
+		"          --shard-rows N split {O} into shards {O}-00000.csv, ... of {N} records",
+		"          --shard-bytes N split {O} into shards of at most {N} bytes",
+		"          --shard-by C split {O} into shards by the hash of template column {C}",
+		"          --shards N specify {N} shards with --shard-by (default 8)",
+		"          --checkpoint R record every {R} records where the merge is into {O}.ckpt",
+		"          --resume resume a merge that stopped from its checkpoint {O}.ckpt",
+		"          --metrics F write a JSON snapshot of the metrics into {F} every second",
+		"          --metrics-interval S snapshot and log progress every {S} seconds",
+		"          --jmx    expose the metrics as MBean com.albon.util:type=MergeMetrics",
+		"          --compress gzip {O} even if not named *.gz, gzip inputs are",
+		"                   always recognized and decompressed",
 		""
 	};
 
@@ -603,17 +658,13 @@ public class MergeCSV {
 	}
 
 	/**
-	 * Free file resources.
+	 * Free the engine resources.
 	 */
 	private void close() {
-		Helper.closeReader(brAInput);
-		brAInput = null;
-		Helper.closeReader(brBInput);
-		brBInput = null;
-		Helper.closeReader(brTemplate);
-		brTemplate = null;
-		Helper.closeWriter(bwOutput);
-		bwOutput = null;
+		if (engine != null) {
+			engine.close();
+			engine = null;
+		}
 	}
 
 	/**
@@ -633,7 +684,7 @@ public class MergeCSV {
 	 * Log error messages into the console only.
 	 * @param msg String message to log
 	 */
-	private static void log(String msg) {
+	static void log(String msg) {
 		System.err.println(msg);
 	}
 
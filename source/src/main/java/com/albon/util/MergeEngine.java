@@ -0,0 +1,1234 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * This MergeEngine class merges CSV inputs into one CSV output with the
+ * columns of a template, in process. It does what the command line does
+ * without calling System.exit: errors are thrown as MergeCsvException and
+ * the counters are returned as a MergeResult.
+ * </p>
+ * <p>
+ * An engine is created once with its MergeOptions and reused for many
+ * merges. Merging on several threads uses a worker pool owned by the
+ * engine, shared by every merge until the engine is closed.
+ * </p>
+ * <p>
+ * The plan of a merge, what it works out of the headers, is kept for the
+ * next merges of the same template file into inputs of the same headers,
+ * and saved into the plan file of the options if any.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is thread safe, every merge
+ * keeps its state on its own and merges may run concurrently; the plans
+ * kept are shared under a lock.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class MergeEngine implements Closeable {
+
+	/**
+	 * Number of merges registered as MBean, to name them apart.
+	 */
+	private static final AtomicLong MERGES = new AtomicLong();
+
+	/**
+	 * Key column to join input A and B, null to pair records by position.
+	 */
+	private final String joinKey;
+
+	/**
+	 * Key column on input B.
+	 */
+	private final String joinBKey;
+
+	/**
+	 * Records to keep when joining on joinKey.
+	 */
+	private final JoinType joinType;
+
+	/**
+	 * True to match column names case folded, without spaces and punctuation.
+	 */
+	private final boolean fuzzyHeaders;
+
+	/**
+	 * Other names of a column, by lookup key of the column name.
+	 */
+	private final Map<String, List<String>> aliases;
+
+	/**
+	 * Rule of a template column, by column name.
+	 */
+	private final Map<String, ColumnRule> rules;
+
+	/**
+	 * True to join with bounded memory by sorting both inputs on disk.
+	 */
+	private final boolean sortJoin;
+
+	/**
+	 * Memory budget in megabytes of each sort.
+	 */
+	private final int sortMemory;
+
+	/**
+	 * Directory of the sorted runs, null for the default one.
+	 */
+	private final File sortDirectory;
+
+	/**
+	 * Number of threads merging by line position.
+	 */
+	private final int threads;
+
+	/**
+	 * True to read input files through memory mapping, always when taking
+	 * checkpoints.
+	 */
+	private final boolean mmap;
+
+	/**
+	 * True to tokenize each record only up to the last needed column.
+	 */
+	private final boolean prune;
+
+	/**
+	 * True to read input files from their columnar cache.
+	 */
+	private final boolean cache;
+
+	/**
+	 * Records of an output shard, 0 for no limit.
+	 */
+	private final long shardRows;
+
+	/**
+	 * Encoded bytes of an output shard, 0 for no limit.
+	 */
+	private final long shardBytes;
+
+	/**
+	 * Template column whose hash chooses the output shard, null if none.
+	 */
+	private final String shardBy;
+
+	/**
+	 * Number of output shards chosen by hash.
+	 */
+	private final int shards;
+
+	/**
+	 * Template columns of the key of a record, null to keep duplicates.
+	 */
+	private final List<String> dedupeColumns;
+
+	/**
+	 * Directory of the key set on disk, null to keep it in memory.
+	 */
+	private final File dedupeDirectory;
+
+	/**
+	 * Records between two checkpoints, 0 for none.
+	 */
+	private final int checkpointRows;
+
+	/**
+	 * True to resume from the checkpoint of the output.
+	 */
+	private final boolean resume;
+
+	/**
+	 * Maximum size of a multi-line record, 0 to read lines.
+	 */
+	private final int maxRecord;
+
+	/**
+	 * Charset of files without their own charset and of an output file.
+	 */
+	private final Charset charset;
+
+	/**
+	 * Records between two flush of the output.
+	 */
+	private final int flushRows;
+
+	/**
+	 * True to force an output file on the storage device at the end.
+	 */
+	private final boolean fsync;
+
+	/**
+	 * True to gzip compress an output file whatever its name.
+	 */
+	private final boolean compress;
+
+	/**
+	 * True to log progress into the console.
+	 */
+	private final boolean verbose;
+
+	/**
+	 * File of the periodic JSON snapshot of the metrics, null if none.
+	 */
+	private final File metricsFile;
+
+	/**
+	 * Milliseconds between two reports of the metrics.
+	 */
+	private final long metricsInterval;
+
+	/**
+	 * True to register the metrics of each merge as a JMX MBean.
+	 */
+	private final boolean jmx;
+
+	/**
+	 * True to measure parse and write times of every record.
+	 */
+	private final boolean timed;
+
+	/**
+	 * Worker pool shared by the merges on several threads, null if single thread.
+	 */
+	private final ExecutorService workers;
+
+	/**
+	 * Options a plan depends on.
+	 */
+	private final String planOptions;
+
+	/**
+	 * Plans kept, null to plan every merge.
+	 */
+	private final MergePlan.Cache plans;
+
+	/**
+	 * Constructor with default options.
+	 */
+	public MergeEngine() {
+		this(new MergeOptions());
+	}
+
+	/**
+	 * Constructor, the options are copied.
+	 *
+	 * @param options MergeOptions
+	 * @throws IllegalArgumentException If given options is null
+	 */
+	public MergeEngine(final MergeOptions options) {
+		Helper.checkObject(options, "options");
+		joinKey = options.getJoinKey();
+		joinBKey = options.getJoinBKey() == null
+			? options.getJoinKey() : options.getJoinBKey();
+		joinType = options.getJoinType();
+		fuzzyHeaders = options.isFuzzyHeaders();
+		aliases = new HashMap<String, List<String>>();
+		for (Map.Entry<String, List<String>> e : options.getAliases().entrySet()) {
+			aliases.put(HeaderIndex.key(e.getKey(), fuzzyHeaders),
+				Collections.unmodifiableList(new ArrayList<String>(e.getValue())));
+		}
+		rules = new LinkedHashMap<String, ColumnRule>(options.getRules());
+		sortJoin = options.isSortJoin();
+		sortMemory = options.getSortMemory();
+		sortDirectory = options.getSortDirectory();
+		threads = options.getThreads();
+		shardRows = options.getShardRows();
+		shardBytes = options.getShardBytes();
+		shardBy = options.getShardBy();
+		shards = options.getShards();
+		dedupeColumns = options.getDedupeColumns();
+		dedupeDirectory = options.getDedupeDirectory();
+		checkpointRows = options.getCheckpointRows();
+		resume = options.isResume();
+		// Checkpoints need the file offset of each record
+		mmap = options.isMmap() || checkpointRows > 0 || resume;
+		prune = options.isPrune();
+		cache = options.isCache();
+		maxRecord = options.isMultiline() ? options.getMaxRecord() : 0;
+		charset = options.getCharset();
+		flushRows = options.getFlushRows();
+		fsync = options.isFsync();
+		compress = options.isCompress();
+		verbose = options.isVerbose();
+		metricsFile = options.getMetricsFile();
+		metricsInterval = options.getMetricsInterval() * 1000L;
+		jmx = options.isJmx();
+		timed = jmx || metricsFile != null;
+		if (threads > 1 && joinKey == null) {
+			workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread t = new Thread(r, "mergecsv-worker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		else {
+			workers = null;
+		}
+		planOptions = planOptions();
+		plans = options.getPlans() > 0
+			? new MergePlan.Cache(options.getPlans(), options.getPlanFile())
+			: null;
+	}
+
+	/**
+	 * Get the options a plan depends on, written into a String.
+	 *
+	 * @return String
+	 */
+	private String planOptions() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("fuzzy=").append(fuzzyHeaders);
+		sb.append(";aliases=").append(new TreeMap<String, List<String>>(aliases));
+		sb.append(";rules=");
+		for (Map.Entry<String, ColumnRule> e : rules.entrySet()) {
+			sb.append(e.getKey()).append('=').append(e.getValue().getName());
+			sb.append('(').append(e.getValue().getArgument()).append("),");
+		}
+		sb.append(";dedupe=").append(dedupeColumns);
+		sb.append(";shard=").append(shardBy);
+		sb.append(";join=").append(joinKey).append(',').append(joinBKey);
+		return sb.toString();
+	}
+
+	/**
+	 * Merge the inputs into an output file, the file is replaced.
+	 *
+	 * @param template CsvSource whose header is the output header
+	 * @param sources Array of CsvSource inputs, in precedence order
+	 * @param output Path output file
+	 * @return MergeResult
+	 *
+	 * @throws MergeCsvException If an input is invalid or any File I/O error
+	 * @throws IllegalArgumentException If a parameter is null or less than 2 inputs
+	 */
+	public MergeResult merge(final CsvSource template,
+			final CsvSource[] sources,
+			final Path output
+	) throws MergeCsvException {
+		Helper.checkObject(output, "output");
+		return merge(template, sources, null, output.toString());
+	}
+
+	/**
+	 * Merge the inputs into a Writer, the Writer is flushed and left open.
+	 *
+	 * @param template CsvSource whose header is the output header
+	 * @param sources Array of CsvSource inputs, in precedence order
+	 * @param output Writer
+	 * @return MergeResult
+	 *
+	 * @throws MergeCsvException If an input is invalid or any I/O error
+	 * @throws IllegalArgumentException If a parameter is null or less than 2 inputs
+	 */
+	public MergeResult merge(final CsvSource template,
+			final CsvSource[] sources,
+			final Writer output
+	) throws MergeCsvException {
+		Helper.checkObject(output, "output");
+		return merge(template, sources, new WriterOutputSink(output, flushRows),
+			"output");
+	}
+
+	/**
+	 * Merge the inputs into a sink, the sink is flushed and left open.
+	 *
+	 * @param template CsvSource whose header is the output header
+	 * @param sources Array of CsvSource inputs, in precedence order
+	 * @param output OutputSink
+	 * @return MergeResult
+	 *
+	 * @throws MergeCsvException If an input is invalid or any I/O error
+	 * @throws IllegalArgumentException If a parameter is null or less than 2 inputs
+	 */
+	public MergeResult merge(final CsvSource template,
+			final CsvSource[] sources,
+			final OutputSink output
+	) throws MergeCsvException {
+		Helper.checkObject(output, "output");
+		return merge(template, sources, output, "output");
+	}
+
+	/**
+	 * Merge the inputs.
+	 *
+	 * @param template CsvSource
+	 * @param sources Array of CsvSource
+	 * @param pSink OutputSink or null to create the output file
+	 * @param output String output file or name used in messages
+	 * @return MergeResult
+	 *
+	 * @throws MergeCsvException If an input is invalid or any I/O error
+	 */
+	private MergeResult merge(final CsvSource template,
+			final CsvSource[] sources,
+			final OutputSink pSink,
+			final String output
+	) throws MergeCsvException {
+
+		CsvInput[] inputs;
+		OutputSink sink = pSink;
+		String[] header;
+		MergePlan plan;
+		RecordMerger merger;
+		MergeResult result;
+		long rows;
+		int input;
+		MergeMetrics metrics;
+		Checkpoint checkpoint = null;
+		OffHeapLongSet keys = null;
+		DedupeOutputSink dedupe = null;
+		MetricsReporter reporter = null;
+		ObjectName mbean = null;
+
+		Helper.checkObject(template, "template");
+		Helper.checkObject(sources, "sources");
+		if (sources.length < 2) {
+			throw new IllegalArgumentException("Parameter 'sources' needs 2 inputs.");
+		}
+		if (joinKey != null && sources.length != 2) {
+			throw new IllegalArgumentException("Joining on a key needs exactly 2 inputs.");
+		}
+		for (input = 0; input < sources.length; input++) {
+			Helper.checkObject(sources[input], "sources");
+		}
+
+		if (checkpointRows > 0 || resume) {
+			checkpoint = checkpoint(template, sources, pSink, output);
+		}
+
+		metrics = new MergeMetrics(output);
+		if (jmx) {
+			mbean = register(metrics);
+		}
+		if (verbose || metricsFile != null) {
+			reporter = new MetricsReporter(metrics, metricsFile, metricsInterval,
+				verbose);
+			reporter.start();
+		}
+		inputs = new CsvInput[sources.length];
+		try {
+			// 3. Load every input
+			// 4. read every input header information
+			for (input = 0; input < sources.length; input++) {
+				// UTF-8 inputs are merged as bytes unless cut into batches
+				inputs[input] = cache && workers == null
+					? openCached(sources[input])
+					: open(sources[input], workers == null);
+			}
+
+			// 1. Load the template
+			// 2. read template header information
+			// 9. Create a mapping
+			plan = plan(template, inputs);
+			// Logged after the template, as when it was read first
+			for (input = 0; input < sources.length; input++) {
+				header = inputs[input].getHeader();
+				log("Input "+ (input + 1) +" '"+ sources[input].getName()
+					+ "' contains "+ header.length + " columns");
+			}
+
+			if (checkpoint != null) {
+				seek(inputs, checkpoint);
+			}
+
+			// 7. Create the output CSV file
+			if (sink == null && resume) {
+				log("Resuming output '"+ output + "' at record "
+					+ checkpoint.getRecords());
+				sink = Helper.resumeOutputSink(output, "merge", charset,
+					flushRows, fsync, checkpoint.getOutputOffset());
+			}
+			else if (sink == null) {
+				sink = createSink(output, plan.getShardColumn());
+			}
+			rows = sink.getRows();
+
+			// 8. Write the ouput CSV header, already there when resuming.
+			if (!resume) {
+				plan.writeHeader(sink);
+				sink.write('\n');
+				sink.endHeader();
+			}
+			if (plan.getDedupeColumns() != null) {
+				log("Dropping duplicates of "+ dedupeColumns
+					+ (dedupeDirectory == null ? ""
+					: ", keys in '"+ dedupeDirectory +"'"));
+				keys = new OffHeapLongSet(dedupeDirectory);
+				dedupe = new DedupeOutputSink(sink, keys,
+					plan.getDedupeColumns(), metrics);
+				sink = dedupe;
+				rows = 0L;
+			}
+
+			merger = new RecordMerger(plan.getIndexes(), plan.getRules());
+			if (prune) {
+				prune(inputs, plan);
+			}
+			select(inputs, plan);
+
+			if (joinKey != null) {
+				result = join(merger, inputs, plan.getKeyColumns(), sources,
+					sink, rows, metrics);
+			}
+			else if (workers != null) {
+				result = mergeParallel(merger, inputs, sink, rows, metrics);
+			}
+			else {
+				result = merge(merger, inputs, sink, rows, metrics, checkpoint,
+					output);
+			}
+			for (input = 0; input < inputs.length; input++) {
+				inputs[input].checkError();
+			}
+			if (dedupe != null) {
+				log("Dropped "+ dedupe.getDropped() +" duplicate record(s).");
+				result = new MergeResult(result.getCounters(),
+					result.getIgnored(), result.getUnmatchedA(),
+					result.getUnmatchedB(),
+					result.getRows() - dedupe.getDropped(),
+					dedupe.getDropped(), metrics);
+			}
+
+			// 12. Write what is left and close the output CSV file
+			if (pSink == null) {
+				sink.close();
+				sink = null;
+			}
+			else {
+				sink.flush();
+			}
+			if (checkpoint != null) {
+				checkpoint.delete();
+			}
+		} catch (IOException e) {
+			throw new MergeCsvException("Error writing to "+ output, e);
+		} finally {
+			metrics.finish();
+			if (reporter != null) {
+				reporter.stop();
+			}
+			if (mbean != null) {
+				unregister(mbean);
+			}
+			for (input = 0; input < inputs.length; input++) {
+				if (inputs[input] != null) {
+					inputs[input].close();
+				}
+			}
+			if (pSink == null) {
+				Helper.closeSink(sink);
+			}
+			if (keys != null) {
+				keys.close();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the plan of a merge: the kept plan of the template file and input
+	 * headers, else a new plan out of the template header.
+	 *
+	 * @param template CsvSource
+	 * @param inputs Array of CsvInput, headers read
+	 * @return MergePlan
+	 *
+	 * @throws MergeCsvException If the template is invalid, or a column of
+	 *   the options is not in the template
+	 */
+	private MergePlan plan(final CsvSource template, final CsvInput[] inputs
+	) throws MergeCsvException {
+		String[][] headers = new String[inputs.length][];
+		File file = template.getFile();
+		String key = null;
+		MergePlan plan;
+		CsvInput templateInput;
+		String[] outputHeader;
+		HeaderIndex[] columns;
+		int[][] indexes;
+		int[] keyColumns;
+		int shardColumn = 0;
+		int input;
+		int index;
+		for (input = 0; input < inputs.length; input++) {
+			headers[input] = inputs[input].getHeader();
+		}
+		if (plans != null && file != null && file.isFile()) {
+			key = MergePlan.key(file, template.getCharset(charset), headers);
+			plan = plans.get(key, planOptions, headers);
+			if (plan != null) {
+				log("Template '"+ template.getName() +"' contains "
+					+ plan.getOutputHeader().length + " columns, planned already");
+				return plan;
+			}
+		}
+
+		templateInput = open(template, false);
+		outputHeader = templateInput.getHeader();
+		templateInput.close();
+		log("Template '"+ template.getName() +"' contains "
+			+ outputHeader.length + " columns");
+		if (shardBy != null) {
+			shardColumn = new HeaderIndex(outputHeader, fuzzyHeaders)
+				.locate(shardBy);
+			if (shardColumn == 0) {
+				throw new MergeCsvException("Shard column '"+ shardBy
+					+"' not in template");
+			}
+		}
+		columns = new HeaderIndex[inputs.length];
+		for (input = 0; input < inputs.length; input++) {
+			columns[input] = new HeaderIndex(headers[input], fuzzyHeaders);
+		}
+		indexes = new int[inputs.length][outputHeader.length];
+		for (index = 0; index < outputHeader.length; index++) {
+			for (input = 0; input < inputs.length; input++) {
+				indexes[input][index] = locateKey(outputHeader[index],
+					columns[input]);
+			}
+		}
+		keyColumns = new int[inputs.length];
+		if (joinKey != null) {
+			for (input = 0; input < inputs.length; input++) {
+				keyColumns[input] = locateKey(input == 0 ? joinKey : joinBKey,
+					columns[input]);
+			}
+		}
+		plan = new MergePlan(key, planOptions, headers, outputHeader,
+			templateInput.getHeaderLine(), indexes,
+			compileRules(outputHeader),
+			dedupeColumns == null ? null : dedupeColumns(outputHeader),
+			shardColumn, keyColumns);
+		if (key != null) {
+			plans.put(plan);
+		}
+		return plan;
+	}
+
+	/**
+	 * Compile the rules into the rule of each template column.
+	 *
+	 * @param outputHeader Array of String template columns
+	 * @return Array of ColumnRule, null when every column keeps the longer value
+	 *
+	 * @throws MergeCsvException If a rule column is not in the template
+	 */
+	private ColumnRule[] compileRules(final String[] outputHeader
+	) throws MergeCsvException {
+		ColumnRule[] columnRules;
+		HeaderIndex columns;
+		int column;
+		if (rules.isEmpty()) {
+			return null;
+		}
+		columnRules = new ColumnRule[outputHeader.length];
+		columns = new HeaderIndex(outputHeader, fuzzyHeaders);
+		for (Map.Entry<String, ColumnRule> e : rules.entrySet()) {
+			column = columns.locate(e.getKey());
+			if (column == 0) {
+				throw new MergeCsvException("Rule column '"+ e.getKey()
+					+"' not in template");
+			}
+			columnRules[column - 1] = e.getValue();
+			log("Column '"+ outputHeader[column - 1] +"' merged by "
+				+ e.getValue().getName());
+		}
+		return columnRules;
+	}
+
+	/**
+	 * Locate the key columns of the deduplication in the template.
+	 *
+	 * @param outputHeader Array of String template columns
+	 * @return Array of int key columns, 0 based
+	 *
+	 * @throws MergeCsvException If a key column is not in the template
+	 */
+	private int[] dedupeColumns(final String[] outputHeader
+	) throws MergeCsvException {
+		HeaderIndex columns = new HeaderIndex(outputHeader, fuzzyHeaders);
+		int[] indexes = new int[dedupeColumns.size()];
+		int index;
+		for (index = 0; index < indexes.length; index++) {
+			indexes[index] = columns.locate(dedupeColumns.get(index)) - 1;
+			if (indexes[index] < 0) {
+				throw new MergeCsvException("Dedupe column '"
+					+ dedupeColumns.get(index) +"' not in template");
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Create the output file, or its shards.
+	 *
+	 * @param output String output file
+	 * @param shardColumn int template column of the shards, 1 based, or 0
+	 * @return OutputSink
+	 *
+	 * @throws MergeCsvException If the output can't be created
+	 */
+	private OutputSink createSink(final String output, final int shardColumn
+	) throws MergeCsvException {
+		if (shardBy != null) {
+			log("Creating "+ shards +" shards of '"+ output +"' by '"+ shardBy +"'");
+			return new ShardedOutputSink(output, charset, flushRows, fsync,
+				compress, shardColumn - 1, shards);
+		}
+		if (shardRows > 0L || shardBytes > 0L) {
+			log("Creating shards of '"+ output +"'");
+			return new ShardedOutputSink(output, charset, flushRows, fsync,
+				compress, shardRows, shardBytes);
+		}
+		log("Creating output '"+ output + "'");
+		return Helper.createOutputSink(output, "merge", charset, flushRows,
+			fsync, compress);
+	}
+
+	/**
+	 * Create the checkpoint of a merge, or load it when resuming.
+	 *
+	 * @param template CsvSource
+	 * @param sources Array of CsvSource
+	 * @param pSink OutputSink or null to create the output file
+	 * @param output String output file
+	 * @return Checkpoint
+	 *
+	 * @throws MergeCsvException If the merge can't take checkpoints, or
+	 *   the checkpoint to resume is missing or of other files
+	 */
+	private Checkpoint checkpoint(final CsvSource template,
+			final CsvSource[] sources,
+			final OutputSink pSink,
+			final String output
+	) throws MergeCsvException {
+		File[] files = new File[sources.length + 1];
+		CsvSource source;
+		int index;
+		if (pSink != null || compress || output.endsWith(Gzip.EXTENSION)) {
+			throw new MergeCsvException("Checkpoints need an uncompressed output file");
+		}
+		if (shardBy != null || shardRows > 0L || shardBytes > 0L) {
+			throw new MergeCsvException("Checkpoints need a single output file, not shards");
+		}
+		if (dedupeColumns != null) {
+			throw new MergeCsvException("Checkpoints can't keep the keys of --dedupe-on");
+		}
+		if (joinKey != null || workers != null || cache) {
+			throw new MergeCsvException(
+				"Checkpoints need a merge by line position on a single thread");
+		}
+		for (index = 0; index < files.length; index++) {
+			source = index == 0 ? template : sources[index - 1];
+			files[index] = source.getFile();
+			if (files[index] == null || !files[index].isFile()
+					|| Gzip.isGzip(files[index])) {
+				throw new MergeCsvException("Can't checkpoint '"+ source.getName()
+					+"', not a plain file");
+			}
+		}
+		if (resume) {
+			return Checkpoint.load(output, files, checkpointRows);
+		}
+		return Checkpoint.create(output, files, checkpointRows);
+	}
+
+	/**
+	 * Check that every input can tell the offset of its records, and move
+	 * them to the records of the checkpoint when resuming.
+	 *
+	 * @param inputs Array of CsvInput
+	 * @param checkpoint Checkpoint
+	 *
+	 * @throws MergeCsvException If an input can't be read from an offset
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void seek(final CsvInput[] inputs, final Checkpoint checkpoint
+	) throws MergeCsvException, IOException {
+		int input;
+		for (input = 0; input < inputs.length; input++) {
+			if (inputs[input].getPosition() < 0L) {
+				throw new MergeCsvException("Can't checkpoint '"
+					+ inputs[input].getName() +"' in charset "+ charset.name());
+			}
+			if (resume) {
+				inputs[input].seek(checkpoint.getOffset(input));
+			}
+		}
+	}
+
+	/**
+	 * Open a source and read its header.
+	 *
+	 * @param source CsvSource
+	 * @param bytes boolean true to read an UTF-8 source as bytes
+	 * @return CsvInput
+	 *
+	 * @throws MergeCsvException If not found or no valid CSV header
+	 */
+	private CsvInput open(final CsvSource source, final boolean bytes
+	) throws MergeCsvException {
+		CsvInput input;
+		try {
+			if (bytes && source.isUtf8(charset)) {
+				input = new CsvInput(source.getName(),
+					source.openBytes(mmap, maxRecord));
+			}
+			else {
+				input = new CsvInput(source.getName(),
+					source.open(mmap, charset, maxRecord));
+			}
+		} catch (FileNotFoundException ex) {
+			throw new MergeCsvException("Not found '"+ source.getName() +"'", ex);
+		} catch (IOException ex) {
+			throw new MergeCsvException("Error reading '"+ source.getName()
+				+"': "+ ex.getMessage(), ex);
+		}
+		try {
+			input.readHeader();
+		} catch (MergeCsvException ex) {
+			input.close();
+			throw ex;
+		}
+		return input;
+	}
+
+	/**
+	 * Open a file source from its columnar cache, the cache is written first
+	 * when missing or stale. A stream is opened as is.
+	 *
+	 * @param source CsvSource
+	 * @return CsvInput
+	 *
+	 * @throws MergeCsvException If not found, no valid CSV header or any File
+	 *   I/O error on the cache
+	 */
+	private CsvInput openCached(final CsvSource source) throws MergeCsvException {
+		File file = source.getFile();
+		String format;
+		ColumnarCache records;
+		CsvInput csv;
+		if (file == null || !file.isFile()) {
+			return open(source, true);
+		}
+		format = source.getCharset(charset).name() +","+ maxRecord;
+		try {
+			records = ColumnarCache.open(source.getName(), file, format);
+			if (records == null) {
+				csv = open(source, true);
+				try {
+					log("Caching '"+ source.getName() +"' into '"
+						+ ColumnarCache.of(file) +"'");
+					log("Cached "+ ColumnarCache.build(csv, file, format)
+						+" CSV records");
+				} finally {
+					csv.close();
+				}
+				records = ColumnarCache.open(source.getName(), file, format);
+				if (records == null) {
+					throw new MergeCsvException("'"+ source.getName()
+						+"' changed while caching");
+				}
+			}
+		} catch (IOException ex) {
+			throw new MergeCsvException("Error caching '"+ source.getName()
+				+"': "+ ex.getMessage(), ex);
+		}
+		csv = new CsvInput(source.getName(), records);
+		csv.readHeader();
+		return csv;
+	}
+
+	/**
+	 * Read from the columnar cache only the columns needed by the template
+	 * and the join key.
+	 *
+	 * @param inputs Array of CsvInput
+	 * @param plan MergePlan
+	 */
+	private void select(final CsvInput[] inputs, final MergePlan plan) {
+		int[][] indexes = plan.getIndexes();
+		boolean[] needed;
+		int input;
+		int index;
+		int count;
+		for (input = 0; input < inputs.length; input++) {
+			if (!inputs[input].isCached()) {
+				continue;
+			}
+			needed = new boolean[inputs[input].getHeader().length];
+			for (index = 0; index < indexes[input].length; index++) {
+				if (indexes[input][index] > 0) {
+					needed[indexes[input][index] - 1] = true;
+				}
+			}
+			if (joinKey != null) {
+				index = plan.getKeyColumns()[input];
+				if (index > 0) {
+					needed[index - 1] = true;
+				}
+			}
+			count = 0;
+			for (index = 0; index < needed.length; index++) {
+				if (needed[index]) {
+					count = count + 1;
+				}
+			}
+			inputs[input].select(needed);
+			log("Input "+ (input + 1) +" read from cache, "+ count +" of "
+				+ needed.length +" columns");
+		}
+	}
+
+	/**
+	 * Limit the tokenizing of every input to its last needed column.
+	 *
+	 * @param inputs Array of CsvInput
+	 * @param plan MergePlan
+	 */
+	private void prune(final CsvInput[] inputs, final MergePlan plan) {
+		int[][] indexes = plan.getIndexes();
+		int input;
+		int index;
+		int last;
+		for (input = 0; input < inputs.length; input++) {
+			// A record needs 2 fields to be valid
+			last = 2;
+			for (index = 0; index < indexes[input].length; index++) {
+				last = Math.max(last, indexes[input][index]);
+			}
+			last = Math.max(last, plan.getKeyColumns()[input]);
+			inputs[input].setFieldLimit(last);
+			log("Input "+ (input + 1) +" tokenized up to column "+ last
+				+" of "+ inputs[input].getHeader().length);
+		}
+	}
+
+	/**
+	 * Locate key index, by its name then by its aliases.
+	 *
+	 * @param key String
+	 * @param columns HeaderIndex of the input header
+	 * @return int 0 if key not in header
+	 */
+	private int locateKey(final String key, final HeaderIndex columns) {
+		return columns.locate(key, aliases.get(HeaderIndex.key(key, fuzzyHeaders)));
+	}
+
+	/**
+	 * Merge every input by line position.
+	 *
+	 * @param merger RecordMerger
+	 * @param inputs Array of CsvInput
+	 * @param sink OutputSink
+	 * @param rows long records in sink before the merge
+	 * @param metrics MergeMetrics
+	 * @param checkpoint Checkpoint to update, or null
+	 * @param output String output file
+	 * @return MergeResult
+	 *
+	 * @throws IOException If there is error at File I/O level
+	 */
+	private MergeResult merge(final RecordMerger merger,
+			final CsvInput[] inputs,
+			final OutputSink sink,
+			final long rows,
+			final MergeMetrics metrics,
+			final Checkpoint checkpoint,
+			final String output
+	) throws IOException {
+
+		CsvRecord[] records = new CsvRecord[inputs.length];
+		File outputFile = new File(output);
+		long counters;
+		long ignored;
+		long written;
+		long interval;
+		long parseNanos = 0L;
+		long writeNanos = 0L;
+		long time = 0L;
+		long now;
+		int input;
+		boolean complete;
+
+		// Go on counting from the checkpoint when resuming
+		counters = checkpoint == null ? 0L : checkpoint.getRecords();
+		ignored = checkpoint == null ? 0L : checkpoint.getIgnored();
+		written = checkpoint == null ? 0L : checkpoint.getRows();
+		interval = checkpoint == null ? 0L : checkpoint.getInterval();
+		do {
+			if (timed) {
+				time = System.nanoTime();
+			}
+			// 10. read every CSV
+			complete = true;
+			for (input = 0; input < inputs.length; input++) {
+				if (!inputs[input].next()) {
+					break;
+				}
+				records[input] = inputs[input].getRecord();
+				complete = complete && inputs[input].isComplete();
+			}
+			if (input < inputs.length) {
+				break;
+			}
+
+			counters = counters + 1L;
+			if (timed) {
+				now = System.nanoTime();
+				parseNanos = parseNanos + now - time;
+				time = now;
+			}
+
+			if (complete) {
+				// 11. Merge the CSV
+				merger.write(records, sink);
+			}
+			else {
+				ignored++;
+			}
+			if (timed) {
+				writeNanos = writeNanos + System.nanoTime() - time;
+			}
+			if ((counters & 1023L) == 0L) {
+				publish(metrics, inputs, counters, ignored, parseNanos, writeNanos);
+			}
+			if (interval > 0L && counters % interval == 0L) {
+				sink.flush();
+				checkpoint.save(counters, ignored,
+					written + sink.getRows() - rows, outputFile, inputs);
+			}
+		} while(true);
+
+		publish(metrics, inputs, counters, ignored, parseNanos, writeNanos);
+		log("Merged "+ counters +" CSV records, Ignored "+ ignored +" CSV record(s).");
+		return new MergeResult(counters, ignored, 0L, 0L,
+			written + sink.getRows() - rows, metrics);
+	}
+
+	/**
+	 * Publish the counters of a merge with the lines read by every input.
+	 *
+	 * @param metrics MergeMetrics
+	 * @param inputs Array of CsvInput
+	 * @param counters long records read or matched
+	 * @param ignored long records with less fields than needed
+	 * @param parseNanos long nanoseconds reading and tokenizing
+	 * @param writeNanos long nanoseconds merging and writing
+	 */
+	private static void publish(final MergeMetrics metrics,
+			final CsvInput[] inputs,
+			final long counters,
+			final long ignored,
+			final long parseNanos,
+			final long writeNanos
+	) {
+		long bytesRead = 0L;
+		long peakRecord = 0L;
+		for (CsvInput input : inputs) {
+			bytesRead = bytesRead + input.getBytesRead();
+			peakRecord = Math.max(peakRecord, input.getPeakRecord());
+		}
+		metrics.update(counters, ignored, bytesRead, parseNanos, writeNanos,
+			peakRecord);
+	}
+
+	/**
+	 * Register the metrics of a merge as a JMX MBean.
+	 *
+	 * @param metrics MergeMetrics
+	 * @return ObjectName null if it can't be registered
+	 */
+	private ObjectName register(final MergeMetrics metrics) {
+		ObjectName name;
+		try {
+			name = new ObjectName("com.albon.util:type=MergeMetrics,name="
+				+ ObjectName.quote(metrics.getName() +"#"+ MERGES.incrementAndGet()));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+			return name;
+		} catch (JMException e) {
+			log("Can't register metrics: "+ e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Unregister the MBean of a merge.
+	 *
+	 * @param name ObjectName
+	 */
+	private static void unregister(final ObjectName name) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		} catch (JMException ignore) {
+		}
+	}
+
+	/**
+	 * Merge every input by line position on the worker pool.
+	 *
+	 * @param merger RecordMerger
+	 * @param inputs Array of CsvInput
+	 * @param sink OutputSink
+	 * @param rows long records in sink before the merge
+	 * @param metrics MergeMetrics
+	 * @return MergeResult
+	 *
+	 * @throws IOException If there is error at File I/O level
+	 */
+	private MergeResult mergeParallel(final RecordMerger merger,
+			final CsvInput[] inputs,
+			final OutputSink sink,
+			final long rows,
+			final MergeMetrics metrics
+	) throws IOException {
+
+		ParallelMerge parallel = new ParallelMerge(merger, threads, workers, metrics);
+		log("Merging with "+ threads +" threads");
+		parallel.merge(inputs, sink);
+
+		log("Merged "+ parallel.getCounters() +" CSV records, Ignored "
+			+ parallel.getIgnored() +" CSV record(s).");
+		return new MergeResult(parallel.getCounters(), parallel.getIgnored(),
+			0L, 0L, sink.getRows() - rows, metrics);
+	}
+
+	/**
+	 * Join input A and B on the key column, the smaller input is indexed
+	 * unless both are sorted on disk. An input of unknown size, a stream,
+	 * may not fit in memory, both are then sorted on disk.
+	 *
+	 * @param merger RecordMerger
+	 * @param inputs Array of CsvInput
+	 * @param keyColumns Array of int join key column of each input, 1 based
+	 * @param sources Array of CsvSource
+	 * @param sink OutputSink
+	 * @param rows long records in sink before the merge
+	 * @param metrics MergeMetrics
+	 * @return MergeResult
+	 *
+	 * @throws MergeCsvException If key column not found
+	 * @throws IOException If there is error at File I/O level
+	 */
+	private MergeResult join(final RecordMerger merger,
+			final CsvInput[] inputs,
+			final int[] keyColumns,
+			final CsvSource[] sources,
+			final OutputSink sink,
+			final long rows,
+			final MergeMetrics metrics
+	) throws MergeCsvException, IOException {
+
+		String aName = sources[0].getName();
+		String bName = sources[1].getName();
+		int aOffset = keyColumns[0];
+		int bOffset = keyColumns[1];
+		boolean indexA;
+		boolean sorted;
+		KeyJoin keyJoin;
+
+		if (aOffset == 0) {
+			throw new MergeCsvException("Key '"+ joinKey +"' not in '"+ aName +"'");
+		}
+		if (bOffset == 0) {
+			throw new MergeCsvException("Key '"+ joinBKey +"' not in '"+ bName +"'");
+		}
+
+		sorted = sortJoin || sources[0].size() < 0L || sources[1].size() < 0L;
+		if (sorted) {
+			log("Joining on '"+ joinKey +"' ("+ joinType.name().toLowerCase()
+				+"), sorting with "+ sortMemory +" MB"
+				+ (sortJoin ? "" : ", an input has no known size"));
+			keyJoin = new SortMergeJoin(merger, joinType,
+				sortMemory * 1024L * 1024L, sortDirectory);
+		}
+		else {
+			indexA = sources[0].size() <= sources[1].size();
+			log("Joining on '"+ joinKey +"' ("+ joinType.name().toLowerCase()
+				+"), indexing '"+ (indexA ? aName : bName) +"'");
+			keyJoin = new HashJoin(merger, joinType, indexA);
+		}
+		keyJoin.join(inputs[0], aOffset - 1, inputs[1], bOffset - 1, sink);
+		publish(metrics, inputs, keyJoin.getCounters(), keyJoin.getIgnored(),
+			0L, 0L);
+		metrics.setUnmatched(keyJoin.getUnmatchedA() + keyJoin.getUnmatchedB());
+
+		log("Merged "+ keyJoin.getCounters() +" CSV records, Ignored "
+			+ keyJoin.getIgnored() +" CSV record(s), Unmatched "
+			+ keyJoin.getUnmatchedA() +" from '"+ aName +"' and "
+			+ keyJoin.getUnmatchedB() +" from '"+ bName +"'.");
+		return new MergeResult(keyJoin.getCounters(), keyJoin.getIgnored(),
+			keyJoin.getUnmatchedA(), keyJoin.getUnmatchedB(),
+			sink.getRows() - rows, metrics);
+	}
+
+	/**
+	 * Stop the worker pool, merges on several threads fail afterwards.
+	 */
+	@Override
+	public void close() {
+		if (workers != null) {
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * Log into the console when verbose.
+	 *
+	 * @param msg String message to log
+	 */
+	private void log(final String msg) {
+		if (verbose) {
+			MergeCSV.log(msg);
+		}
+	}
+
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+/**
+ * <p>
+ * This MergeMetrics class holds the live metrics of one merge. The merge
+ * thread publishes its counters every 1024 records into volatile fields,
+ * thus the merge pays no lock and no allocation while JMX, the snapshot
+ * file or the progress log read them from other threads.
+ * </p>
+ * <p>
+ * Parse and write times are only measured when asked, timing every record
+ * costs two clock reads.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is thread safe, it is written
+ * by the merge thread only and read by any thread.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class MergeMetrics implements MergeMetricsMBean {
+
+	/**
+	 * Nanoseconds in a millisecond.
+	 */
+	private static final long NANOS_PER_MILLI = 1000000L;
+
+	/**
+	 * Name of the merge.
+	 */
+	private final String name;
+
+	/**
+	 * Start of the merge, System.nanoTime.
+	 */
+	private final long start;
+
+	/**
+	 * End of the merge, 0 while running.
+	 */
+	private volatile long end;
+
+	/**
+	 * Records read or matched.
+	 */
+	private volatile long rows;
+
+	/**
+	 * Characters or bytes read.
+	 */
+	private volatile long bytesRead;
+
+	/**
+	 * Nanoseconds reading and tokenizing.
+	 */
+	private volatile long parseNanos;
+
+	/**
+	 * Nanoseconds merging and writing.
+	 */
+	private volatile long writeNanos;
+
+	/**
+	 * Records with less fields than needed.
+	 */
+	private volatile long ignoredIncomplete;
+
+	/**
+	 * Records without a match.
+	 */
+	private volatile long unmatched;
+
+	/**
+	 * Records dropped as duplicates.
+	 */
+	private volatile long duplicates;
+
+	/**
+	 * Longest line read.
+	 */
+	private volatile long peakRecord;
+
+	/**
+	 * Constructor, the merge starts now.
+	 *
+	 * @param pName String name of the merge
+	 */
+	MergeMetrics(final String pName) {
+		name = pName;
+		start = System.nanoTime();
+		end = 0L;
+	}
+
+	/**
+	 * Publish the counters of the merge.
+	 *
+	 * @param pRows long records read or matched
+	 * @param pIgnored long records with less fields than needed
+	 * @param pBytesRead long characters or bytes read
+	 * @param pParseNanos long nanoseconds reading and tokenizing
+	 * @param pWriteNanos long nanoseconds merging and writing
+	 * @param pPeakRecord long longest line read
+	 */
+	void update(final long pRows, final long pIgnored, final long pBytesRead,
+			final long pParseNanos, final long pWriteNanos, final long pPeakRecord
+	) {
+		rows = pRows;
+		ignoredIncomplete = pIgnored;
+		bytesRead = pBytesRead;
+		parseNanos = pParseNanos;
+		writeNanos = pWriteNanos;
+		peakRecord = pPeakRecord;
+	}
+
+	/**
+	 * Publish the records without a match, at the end of a join.
+	 *
+	 * @param pUnmatched long records without a match
+	 */
+	void setUnmatched(final long pUnmatched) {
+		unmatched = pUnmatched;
+	}
+
+	/**
+	 * Publish the records dropped as duplicates.
+	 *
+	 * @param pDuplicates long records dropped
+	 */
+	void setDuplicates(final long pDuplicates) {
+		duplicates = pDuplicates;
+	}
+
+	/**
+	 * End the merge.
+	 */
+	void finish() {
+		end = System.nanoTime();
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return end == 0L;
+	}
+
+	@Override
+	public long getElapsedMillis() {
+		long stop = end;
+		return ((stop == 0L ? System.nanoTime() : stop) - start) / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public long getRows() {
+		return rows;
+	}
+
+	@Override
+	public double getRowsPerSecond() {
+		return perSecond(rows);
+	}
+
+	@Override
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	@Override
+	public double getBytesPerSecond() {
+		return perSecond(bytesRead);
+	}
+
+	@Override
+	public long getParseMillis() {
+		return parseNanos / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public long getWriteMillis() {
+		return writeNanos / NANOS_PER_MILLI;
+	}
+
+	@Override
+	public long getIgnoredIncomplete() {
+		return ignoredIncomplete;
+	}
+
+	@Override
+	public long getUnmatched() {
+		return unmatched;
+	}
+
+	@Override
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	@Override
+	public long getPeakRecord() {
+		return peakRecord;
+	}
+
+	/**
+	 * Get a count per second of the elapsed time.
+	 *
+	 * @param count long
+	 * @return double
+	 */
+	private double perSecond(final long count) {
+		long millis = getElapsedMillis();
+		return millis == 0L ? 0.0 : count * 1000.0 / millis;
+	}
+
+	/**
+	 * Get a snapshot of the metrics as a JSON object, with the counters of
+	 * the buffer pool shared by every merge.
+	 *
+	 * @return String
+	 */
+	public String toJson() {
+		StringBuilder sb = new StringBuilder(320);
+		sb.append("{\"name\":");
+		quote(sb, name);
+		sb.append(",\"running\":").append(isRunning());
+		sb.append(",\"elapsedMillis\":").append(getElapsedMillis());
+		sb.append(",\"rows\":").append(rows);
+		sb.append(",\"rowsPerSecond\":").append(Math.round(getRowsPerSecond()));
+		sb.append(",\"bytesRead\":").append(bytesRead);
+		sb.append(",\"bytesPerSecond\":").append(Math.round(getBytesPerSecond()));
+		sb.append(",\"parseMillis\":").append(getParseMillis());
+		sb.append(",\"writeMillis\":").append(getWriteMillis());
+		sb.append(",\"ignored\":{\"incomplete\":").append(ignoredIncomplete);
+		sb.append(",\"unmatched\":").append(unmatched);
+		sb.append(",\"duplicate\":").append(duplicates).append('}');
+		sb.append(",\"peakRecord\":").append(peakRecord);
+		sb.append(",\"pool\":").append(BufferPool.SHARED.toJson());
+		sb.append('}');
+		return sb.toString();
+	}
+
+	/**
+	 * Append a JSON string.
+	 *
+	 * @param sb StringBuilder
+	 * @param s String
+	 */
+	private static void quote(final StringBuilder sb, final String s) {
+		char c;
+		sb.append('"');
+		for (int index = 0; index < s.length(); index++) {
+			c = s.charAt(index);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			}
+			else if (c < ' ') {
+				sb.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+
+	@Override
+	public String toString() {
+		return toJson();
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+/**
+ * <p>
+ * This MergeMetricsMBean interface exposes the live metrics of one merge
+ * through JMX, as a standard MBean.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>Implementations must be thread safe, they
+ * are read by JMX while the merge updates them.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public interface MergeMetricsMBean {
+
+	/**
+	 * Get the name of the merge, its output.
+	 *
+	 * @return String
+	 */
+	String getName();
+
+	/**
+	 * Check if the merge is still running.
+	 *
+	 * @return boolean
+	 */
+	boolean isRunning();
+
+	/**
+	 * Get the time since the merge started, or its duration once ended.
+	 *
+	 * @return long milliseconds
+	 */
+	long getElapsedMillis();
+
+	/**
+	 * Get number of records read from every input, or matched by the join.
+	 *
+	 * @return long
+	 */
+	long getRows();
+
+	/**
+	 * Get the average number of records per second.
+	 *
+	 * @return double
+	 */
+	double getRowsPerSecond();
+
+	/**
+	 * Get number of characters, or bytes for UTF-8, of the lines read.
+	 *
+	 * @return long
+	 */
+	long getBytesRead();
+
+	/**
+	 * Get the average number of characters, or bytes, read per second.
+	 *
+	 * @return double
+	 */
+	double getBytesPerSecond();
+
+	/**
+	 * Get the time spent reading and tokenizing records, 0 unless timed.
+	 *
+	 * @return long milliseconds
+	 */
+	long getParseMillis();
+
+	/**
+	 * Get the time spent merging and writing records, 0 unless timed.
+	 *
+	 * @return long milliseconds
+	 */
+	long getWriteMillis();
+
+	/**
+	 * Get number of records ignored with less fields than needed.
+	 *
+	 * @return long
+	 */
+	long getIgnoredIncomplete();
+
+	/**
+	 * Get number of records without a match that the join dropped or kept.
+	 *
+	 * @return long
+	 */
+	long getUnmatched();
+
+	/**
+	 * Get number of records dropped by --dedupe-on as duplicates.
+	 *
+	 * @return long
+	 */
+	long getDuplicates();
+
+	/**
+	 * Get the size of the longest line read, the peak size of the line
+	 * buffers.
+	 *
+	 * @return long characters or bytes
+	 */
+	long getPeakRecord();
+
+}
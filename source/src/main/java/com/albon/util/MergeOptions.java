@@ -0,0 +1,991 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * This MergeOptions class holds the settings of a MergeEngine: how records
+ * are paired, how many threads merge them, how inputs are read and how the
+ * output is flushed. The default pairs records by line position on a single
+ * thread, as the command line does without options.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe,
+ * a MergeEngine copies the options when it is created.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class MergeOptions {
+
+	/**
+	 * Default memory budget in megabytes of each sort.
+	 */
+	public static final int DEFAULT_SORT_MEMORY = 64;
+
+	/**
+	 * Default maximum size of a multi-line record, 16M characters or bytes.
+	 */
+	public static final int DEFAULT_MAX_RECORD = 16 * 1024 * 1024;
+
+	/**
+	 * Default seconds between two snapshots of the metrics.
+	 */
+	public static final int DEFAULT_METRICS_INTERVAL = 1;
+
+	/**
+	 * Default number of output shards chosen by hash.
+	 */
+	public static final int DEFAULT_SHARDS = 8;
+
+	/**
+	 * Default number of merge plans kept by a MergeEngine.
+	 */
+	public static final int DEFAULT_PLANS = 64;
+
+	/**
+	 * Key column to join input A and B, null to pair records by position.
+	 */
+	private String joinKey;
+
+	/**
+	 * Key column on input B when spelled differently, null if same as joinKey.
+	 */
+	private String joinBKey;
+
+	/**
+	 * Records to keep when joining on joinKey.
+	 */
+	private JoinType joinType;
+
+	/**
+	 * True to match column names case folded, without spaces and punctuation.
+	 */
+	private boolean fuzzyHeaders;
+
+	/**
+	 * Other names of a column, by column name.
+	 */
+	private final Map<String, List<String>> aliases;
+
+	/**
+	 * Rule of a template column, by column name.
+	 */
+	private final Map<String, ColumnRule> rules;
+
+	/**
+	 * True to join with bounded memory by sorting both inputs on disk.
+	 */
+	private boolean sortJoin;
+
+	/**
+	 * Memory budget in megabytes of each sort.
+	 */
+	private int sortMemory;
+
+	/**
+	 * Directory of the sorted runs, null for the default temporary directory.
+	 */
+	private File sortDirectory;
+
+	/**
+	 * Number of threads merging by line position, 1 for single thread.
+	 */
+	private int threads;
+
+	/**
+	 * True to read input files through memory mapping.
+	 */
+	private boolean mmap;
+
+	/**
+	 * True to tokenize each record only up to the last needed column.
+	 */
+	private boolean prune;
+
+	/**
+	 * True to read input files from their columnar cache.
+	 */
+	private boolean cache;
+
+	/**
+	 * Records of an output shard, 0 for no limit.
+	 */
+	private long shardRows;
+
+	/**
+	 * Encoded bytes of an output shard, 0 for no limit.
+	 */
+	private long shardBytes;
+
+	/**
+	 * Template column whose hash chooses the output shard, null if none.
+	 */
+	private String shardBy;
+
+	/**
+	 * Number of output shards chosen by hash.
+	 */
+	private int shards;
+
+	/**
+	 * Template columns of the key of a record, null to keep duplicates.
+	 */
+	private List<String> dedupeColumns;
+
+	/**
+	 * Directory of the key set on disk, null to keep it in memory.
+	 */
+	private File dedupeDirectory;
+
+	/**
+	 * Number of merge plans kept, 0 to plan every merge.
+	 */
+	private int plans;
+
+	/**
+	 * File of the merge plans kept across runs, null for none.
+	 */
+	private File planFile;
+
+	/**
+	 * Records between two checkpoints, 0 for none.
+	 */
+	private int checkpointRows;
+
+	/**
+	 * True to resume from the checkpoint of the output.
+	 */
+	private boolean resume;
+
+	/**
+	 * True to read RFC 4180 records whose quoted fields span several lines.
+	 */
+	private boolean multiline;
+
+	/**
+	 * Maximum size of a multi-line record, in characters or bytes.
+	 */
+	private int maxRecord;
+
+	/**
+	 * Charset of files without their own charset and of an output file.
+	 */
+	private Charset charset;
+
+	/**
+	 * Records between two flush of the output, 0 to flush at the end.
+	 */
+	private int flushRows;
+
+	/**
+	 * True to force an output file on the storage device at the end.
+	 */
+	private boolean fsync;
+
+	/**
+	 * True to gzip compress an output file whatever its name.
+	 */
+	private boolean compress;
+
+	/**
+	 * True to log progress into the console.
+	 */
+	private boolean verbose;
+
+	/**
+	 * File of the periodic JSON snapshot of the metrics, null for none.
+	 */
+	private File metricsFile;
+
+	/**
+	 * Seconds between two snapshots, or two progress logs.
+	 */
+	private int metricsInterval;
+
+	/**
+	 * True to register the metrics of each merge as a JMX MBean.
+	 */
+	private boolean jmx;
+
+	/**
+	 * Default constructor.
+	 */
+	public MergeOptions() {
+		joinKey = null;
+		joinBKey = null;
+		joinType = JoinType.INNER;
+		fuzzyHeaders = false;
+		aliases = new LinkedHashMap<String, List<String>>();
+		rules = new LinkedHashMap<String, ColumnRule>();
+		sortJoin = false;
+		sortMemory = DEFAULT_SORT_MEMORY;
+		sortDirectory = null;
+		threads = 1;
+		mmap = false;
+		prune = false;
+		cache = false;
+		shardRows = 0L;
+		shardBytes = 0L;
+		shardBy = null;
+		shards = DEFAULT_SHARDS;
+		dedupeColumns = null;
+		dedupeDirectory = null;
+		plans = DEFAULT_PLANS;
+		planFile = null;
+		checkpointRows = 0;
+		resume = false;
+		multiline = false;
+		maxRecord = DEFAULT_MAX_RECORD;
+		charset = Charset.defaultCharset();
+		flushRows = 0;
+		fsync = false;
+		compress = false;
+		verbose = false;
+		metricsFile = null;
+		metricsInterval = DEFAULT_METRICS_INTERVAL;
+		jmx = false;
+	}
+
+	/**
+	 * Get the key column to join input A and B.
+	 *
+	 * @return String null to pair records by position
+	 */
+	public String getJoinKey() {
+		return joinKey;
+	}
+
+	/**
+	 * Set the key column to join input A and B.
+	 *
+	 * @param pJoinKey String null to pair records by position
+	 */
+	public void setJoinKey(final String pJoinKey) {
+		joinKey = pJoinKey;
+	}
+
+	/**
+	 * Get the key column on input B.
+	 *
+	 * @return String null if same as the join key
+	 */
+	public String getJoinBKey() {
+		return joinBKey;
+	}
+
+	/**
+	 * Set the key column on input B when spelled differently.
+	 *
+	 * @param pJoinBKey String null if same as the join key
+	 */
+	public void setJoinBKey(final String pJoinBKey) {
+		joinBKey = pJoinBKey;
+	}
+
+	/**
+	 * Check if column names are matched fuzzy.
+	 *
+	 * @return boolean
+	 */
+	public boolean isFuzzyHeaders() {
+		return fuzzyHeaders;
+	}
+
+	/**
+	 * Match column names case folded, without spaces and punctuation, thus
+	 * "First Name" is FirstName and I.D. is ID.
+	 *
+	 * @param pFuzzyHeaders boolean
+	 */
+	public void setFuzzyHeaders(final boolean pFuzzyHeaders) {
+		fuzzyHeaders = pFuzzyHeaders;
+	}
+
+	/**
+	 * Get the other names of each column.
+	 *
+	 * @return Map of column name to its aliases, not modifiable
+	 */
+	public Map<String, List<String>> getAliases() {
+		return Collections.unmodifiableMap(aliases);
+	}
+
+	/**
+	 * Add another name of a column, tried on an input without the column.
+	 *
+	 * @param column String column name, of the template or a join key
+	 * @param alias String other name of the column on some input
+	 * @throws IllegalArgumentException If given column or alias is null or empty
+	 */
+	public void addAlias(final String column, final String alias) {
+		Helper.checkStringNullOrEmpty(column, "column");
+		Helper.checkStringNullOrEmpty(alias, "alias");
+		List<String> names = aliases.get(column);
+		if (names == null) {
+			names = new ArrayList<String>();
+			aliases.put(column, names);
+		}
+		names.add(alias);
+	}
+
+	/**
+	 * Get the rule of each template column having one.
+	 *
+	 * @return Map of column name to its rule, not modifiable
+	 */
+	Map<String, ColumnRule> getRules() {
+		return Collections.unmodifiableMap(rules);
+	}
+
+	/**
+	 * Set how the value of a template column is decided when the column is
+	 * on several inputs, instead of the longer value.
+	 *
+	 * @param column String template column name
+	 * @param rule String LONGEST, FIRST_NON_EMPTY, MAX_NUMERIC, LATEST_DATE,
+	 *   SUM or TRIM
+	 * @param argument String argument of the rule, the date pattern of
+	 *   LATEST_DATE, null for its default
+	 * @throws IllegalArgumentException If given column is null or empty, the
+	 *   rule is unknown or its argument is invalid
+	 */
+	public void setRule(final String column, final String rule,
+			final String argument
+	) {
+		Helper.checkStringNullOrEmpty(column, "column");
+		ColumnRule columnRule = ColumnRule.of(rule, argument);
+		if (columnRule == null) {
+			throw new IllegalArgumentException("Unknown rule '"+ rule +"'");
+		}
+		rules.put(column, columnRule);
+	}
+
+	/**
+	 * Get the records to keep when joining.
+	 *
+	 * @return JoinType
+	 */
+	public JoinType getJoinType() {
+		return joinType;
+	}
+
+	/**
+	 * Set the records to keep when joining.
+	 *
+	 * @param pJoinType JoinType
+	 * @throws IllegalArgumentException If given pJoinType is null
+	 */
+	public void setJoinType(final JoinType pJoinType) {
+		Helper.checkObject(pJoinType, "pJoinType");
+		joinType = pJoinType;
+	}
+
+	/**
+	 * Check if the join sorts both inputs on disk.
+	 *
+	 * @return boolean
+	 */
+	public boolean isSortJoin() {
+		return sortJoin;
+	}
+
+	/**
+	 * Join with bounded memory by sorting both inputs on disk.
+	 *
+	 * @param pSortJoin boolean
+	 */
+	public void setSortJoin(final boolean pSortJoin) {
+		sortJoin = pSortJoin;
+	}
+
+	/**
+	 * Get the memory budget in megabytes of each sort.
+	 *
+	 * @return int
+	 */
+	public int getSortMemory() {
+		return sortMemory;
+	}
+
+	/**
+	 * Set the memory budget in megabytes of each sort.
+	 *
+	 * @param pSortMemory int
+	 * @throws IllegalArgumentException If given pSortMemory is less than 1
+	 */
+	public void setSortMemory(final int pSortMemory) {
+		if (pSortMemory < 1) {
+			throw new IllegalArgumentException("Invalid memory '"+ pSortMemory +"'");
+		}
+		sortMemory = pSortMemory;
+	}
+
+	/**
+	 * Get the directory of the sorted runs.
+	 *
+	 * @return File null for the default temporary directory
+	 */
+	public File getSortDirectory() {
+		return sortDirectory;
+	}
+
+	/**
+	 * Set the directory of the sorted runs.
+	 *
+	 * @param pSortDirectory File null for the default temporary directory
+	 */
+	public void setSortDirectory(final File pSortDirectory) {
+		sortDirectory = pSortDirectory;
+	}
+
+	/**
+	 * Get the number of threads merging by line position.
+	 *
+	 * @return int
+	 */
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Set the number of threads merging by line position.
+	 *
+	 * @param pThreads int 1 for single thread
+	 * @throws IllegalArgumentException If given pThreads is less than 1
+	 */
+	public void setThreads(final int pThreads) {
+		if (pThreads < 1) {
+			throw new IllegalArgumentException("Invalid threads '"+ pThreads +"'");
+		}
+		threads = pThreads;
+	}
+
+	/**
+	 * Check if input files are read through memory mapping.
+	 *
+	 * @return boolean
+	 */
+	public boolean isMmap() {
+		return mmap;
+	}
+
+	/**
+	 * Read input files through memory mapping.
+	 *
+	 * @param pMmap boolean
+	 */
+	public void setMmap(final boolean pMmap) {
+		mmap = pMmap;
+	}
+
+	/**
+	 * Check if records are tokenized only up to the last needed column.
+	 *
+	 * @return boolean
+	 */
+	public boolean isPrune() {
+		return prune;
+	}
+
+	/**
+	 * Tokenize each record only up to the last column of the template or
+	 * join key found on the input. A record is then ignored only when it
+	 * misses one of these columns, not any column of its header.
+	 *
+	 * @param pPrune boolean
+	 */
+	public void setPrune(final boolean pPrune) {
+		prune = pPrune;
+	}
+
+	/**
+	 * Check if input files are read from their columnar cache.
+	 *
+	 * @return boolean
+	 */
+	public boolean isCache() {
+		return cache;
+	}
+
+	/**
+	 * Read each input file from its columnar cache, the file name followed
+	 * by ".mcc", instead of parsing the CSV. A missing or stale cache is
+	 * written first. Merging on several threads reads the CSV.
+	 *
+	 * @param pCache boolean
+	 */
+	public void setCache(final boolean pCache) {
+		cache = pCache;
+	}
+
+	/**
+	 * Check if the output is split into shards.
+	 *
+	 * @return boolean
+	 */
+	public boolean isSharded() {
+		return shardRows > 0L || shardBytes > 0L || shardBy != null;
+	}
+
+	/**
+	 * Get the records of an output shard.
+	 *
+	 * @return long 0 for no limit
+	 */
+	public long getShardRows() {
+		return shardRows;
+	}
+
+	/**
+	 * Split the output file into shards of at most the given number of
+	 * records, output-00000.csv, output-00001.csv... each starting with the
+	 * template header.
+	 *
+	 * @param pShardRows long records of a shard, 0 for no limit
+	 * @throws IllegalArgumentException If given pShardRows is negative
+	 */
+	public void setShardRows(final long pShardRows) {
+		if (pShardRows < 0L) {
+			throw new IllegalArgumentException("Invalid shard rows '"+ pShardRows +"'");
+		}
+		shardRows = pShardRows;
+	}
+
+	/**
+	 * Get the encoded bytes of an output shard.
+	 *
+	 * @return long 0 for no limit
+	 */
+	public long getShardBytes() {
+		return shardBytes;
+	}
+
+	/**
+	 * Split the output file into shards of at most the given number of
+	 * bytes, once encoded in the output charset and before compression. A
+	 * shard holds at least one record, thus a single record larger than the
+	 * limit makes a larger shard.
+	 *
+	 * @param pShardBytes long bytes of a shard, 0 for no limit
+	 * @throws IllegalArgumentException If given pShardBytes is negative
+	 */
+	public void setShardBytes(final long pShardBytes) {
+		if (pShardBytes < 0L) {
+			throw new IllegalArgumentException("Invalid shard bytes '"+ pShardBytes +"'");
+		}
+		shardBytes = pShardBytes;
+	}
+
+	/**
+	 * Get the template column whose hash chooses the output shard.
+	 *
+	 * @return String null if none
+	 */
+	public String getShardBy() {
+		return shardBy;
+	}
+
+	/**
+	 * Split the output file into getShards shards, the shard of a record is
+	 * chosen by the hash of its value of the given template column. Records
+	 * of the same value always go to the same shard.
+	 *
+	 * @param pShardBy String template column, null for none
+	 */
+	public void setShardBy(final String pShardBy) {
+		shardBy = pShardBy;
+	}
+
+	/**
+	 * Get the number of output shards chosen by hash.
+	 *
+	 * @return int
+	 */
+	public int getShards() {
+		return shards;
+	}
+
+	/**
+	 * Set the number of output shards chosen by hash.
+	 *
+	 * @param pShards int number of shards
+	 * @throws IllegalArgumentException If given pShards is less than 1
+	 */
+	public void setShards(final int pShards) {
+		if (pShards < 1) {
+			throw new IllegalArgumentException("Invalid shards '"+ pShards +"'");
+		}
+		shards = pShards;
+	}
+
+	/**
+	 * Get the template columns of the key of a record.
+	 *
+	 * @return List of String, null to keep duplicates
+	 */
+	public List<String> getDedupeColumns() {
+		return dedupeColumns;
+	}
+
+	/**
+	 * Drop the records whose key, the values of the given template columns,
+	 * was written already.
+	 *
+	 * @param pColumns List of String template columns, null or empty to
+	 *   keep duplicates
+	 * @throws IllegalArgumentException If a column is null or empty
+	 */
+	public void setDedupeColumns(final List<String> pColumns) {
+		if (pColumns == null || pColumns.isEmpty()) {
+			dedupeColumns = null;
+			return;
+		}
+		for (String column : pColumns) {
+			Helper.checkStringNullOrEmpty(column, "column");
+		}
+		dedupeColumns = Collections.unmodifiableList(
+			new ArrayList<String>(pColumns));
+	}
+
+	/**
+	 * Get the directory of the key set on disk.
+	 *
+	 * @return File null to keep the key set in memory
+	 */
+	public File getDedupeDirectory() {
+		return dedupeDirectory;
+	}
+
+	/**
+	 * Keep the key set of the deduplication in memory mapped files of the
+	 * given directory, for more keys than the memory holds.
+	 *
+	 * @param pDedupeDirectory File null to keep the key set in memory
+	 */
+	public void setDedupeDirectory(final File pDedupeDirectory) {
+		dedupeDirectory = pDedupeDirectory;
+	}
+
+	/**
+	 * Get the number of merge plans kept.
+	 *
+	 * @return int 0 to plan every merge
+	 */
+	public int getPlans() {
+		return plans;
+	}
+
+	/**
+	 * Keep the plans of the given number of recent merges, the least
+	 * recently used plan is dropped first. A merge of a template file and
+	 * inputs having the headers of a kept plan neither reads the template
+	 * nor locates its columns again.
+	 *
+	 * @param pPlans int number of plans, 0 to plan every merge
+	 * @throws IllegalArgumentException If given pPlans is negative
+	 */
+	public void setPlans(final int pPlans) {
+		if (pPlans < 0) {
+			throw new IllegalArgumentException("Invalid plans '"+ pPlans +"'");
+		}
+		plans = pPlans;
+	}
+
+	/**
+	 * Get the file of the merge plans kept across runs.
+	 *
+	 * @return File null for none
+	 */
+	public File getPlanFile() {
+		return planFile;
+	}
+
+	/**
+	 * Load the kept merge plans from the given file, if it exists, and save
+	 * them into it after each new plan.
+	 *
+	 * @param pPlanFile File null to keep the plans in memory only
+	 */
+	public void setPlanFile(final File pPlanFile) {
+		planFile = pPlanFile;
+	}
+
+	/**
+	 * Get the records between two checkpoints.
+	 *
+	 * @return int 0 for none
+	 */
+	public int getCheckpointRows() {
+		return checkpointRows;
+	}
+
+	/**
+	 * Record a checkpoint every given number of records into the output file
+	 * name followed by ".ckpt", deleted once the merge is done. Only a merge
+	 * by line position on a single thread, of plain input files, into an
+	 * uncompressed output file takes checkpoints.
+	 *
+	 * @param pCheckpointRows int records between two checkpoints, 0 for none
+	 * @throws IllegalArgumentException If given pCheckpointRows is negative
+	 */
+	public void setCheckpointRows(final int pCheckpointRows) {
+		if (pCheckpointRows < 0) {
+			throw new IllegalArgumentException("Invalid checkpoint rows '"
+				+ pCheckpointRows +"'");
+		}
+		checkpointRows = pCheckpointRows;
+	}
+
+	/**
+	 * Check if a merge resumes from its checkpoint.
+	 *
+	 * @return boolean
+	 */
+	public boolean isResume() {
+		return resume;
+	}
+
+	/**
+	 * Resume a merge from the checkpoint of its output file: the output is
+	 * cut where the checkpoint was taken and every input is read from its
+	 * record at the checkpoint. Checkpoints go on at the same interval unless
+	 * setCheckpointRows is given.
+	 *
+	 * @param pResume boolean
+	 */
+	public void setResume(final boolean pResume) {
+		resume = pResume;
+	}
+
+	/**
+	 * Check if records may span several lines.
+	 *
+	 * @return boolean
+	 */
+	public boolean isMultiline() {
+		return multiline;
+	}
+
+	/**
+	 * Read RFC 4180 records, a line terminator between double quotes belongs
+	 * to the field instead of ending the record.
+	 *
+	 * @param pMultiline boolean
+	 */
+	public void setMultiline(final boolean pMultiline) {
+		multiline = pMultiline;
+	}
+
+	/**
+	 * Get the maximum size of a multi-line record.
+	 *
+	 * @return int characters or bytes
+	 */
+	public int getMaxRecord() {
+		return maxRecord;
+	}
+
+	/**
+	 * Set the maximum size of a multi-line record, a longer record stops the
+	 * merge with an error since it is most likely an unbalanced double quote.
+	 *
+	 * @param pMaxRecord int characters or bytes
+	 * @throws IllegalArgumentException If given pMaxRecord is less than 1
+	 */
+	public void setMaxRecord(final int pMaxRecord) {
+		if (pMaxRecord < 1) {
+			throw new IllegalArgumentException("Invalid max record '"+ pMaxRecord +"'");
+		}
+		maxRecord = pMaxRecord;
+	}
+
+	/**
+	 * Get the charset of files and of an output file.
+	 *
+	 * @return Charset
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Set the charset of files without their own charset and of an output
+	 * file, UTF-8 files are merged as raw bytes without decoding.
+	 *
+	 * @param pCharset Charset
+	 * @throws IllegalArgumentException If given pCharset is null
+	 */
+	public void setCharset(final Charset pCharset) {
+		Helper.checkObject(pCharset, "pCharset");
+		charset = pCharset;
+	}
+
+	/**
+	 * Get the records between two flush of the output.
+	 *
+	 * @return int 0 to flush at the end
+	 */
+	public int getFlushRows() {
+		return flushRows;
+	}
+
+	/**
+	 * Set the records between two flush of the output.
+	 *
+	 * @param pFlushRows int 0 to flush at the end
+	 * @throws IllegalArgumentException If given pFlushRows is negative
+	 */
+	public void setFlushRows(final int pFlushRows) {
+		if (pFlushRows < 0) {
+			throw new IllegalArgumentException("Invalid flush rows '"+ pFlushRows +"'");
+		}
+		flushRows = pFlushRows;
+	}
+
+	/**
+	 * Check if an output file is forced on the storage device at the end.
+	 *
+	 * @return boolean
+	 */
+	public boolean isFsync() {
+		return fsync;
+	}
+
+	/**
+	 * Force an output file on the storage device at the end.
+	 *
+	 * @param pFsync boolean
+	 */
+	public void setFsync(final boolean pFsync) {
+		fsync = pFsync;
+	}
+
+	/**
+	 * Check if an output file is gzip compressed whatever its name.
+	 *
+	 * @return boolean
+	 */
+	public boolean isCompress() {
+		return compress;
+	}
+
+	/**
+	 * Gzip compress an output file whatever its name, a file named *.gz is
+	 * always compressed.
+	 *
+	 * @param pCompress boolean
+	 */
+	public void setCompress(final boolean pCompress) {
+		compress = pCompress;
+	}
+
+	/**
+	 * Check if progress is logged into the console.
+	 *
+	 * @return boolean
+	 */
+	public boolean isVerbose() {
+		return verbose;
+	}
+
+	/**
+	 * Log progress into the console.
+	 *
+	 * @param pVerbose boolean
+	 */
+	public void setVerbose(final boolean pVerbose) {
+		verbose = pVerbose;
+	}
+
+	/**
+	 * Get the file of the periodic JSON snapshot of the metrics.
+	 *
+	 * @return File null for none
+	 */
+	public File getMetricsFile() {
+		return metricsFile;
+	}
+
+	/**
+	 * Write a JSON snapshot of the metrics into a file every interval and at
+	 * the end of each merge. Parse and write times are then measured.
+	 *
+	 * @param pMetricsFile File null for none
+	 */
+	public void setMetricsFile(final File pMetricsFile) {
+		metricsFile = pMetricsFile;
+	}
+
+	/**
+	 * Get the seconds between two snapshots or progress logs.
+	 *
+	 * @return int
+	 */
+	public int getMetricsInterval() {
+		return metricsInterval;
+	}
+
+	/**
+	 * Set the seconds between two snapshots or progress logs.
+	 *
+	 * @param pMetricsInterval int
+	 * @throws IllegalArgumentException If given pMetricsInterval is less than 1
+	 */
+	public void setMetricsInterval(final int pMetricsInterval) {
+		if (pMetricsInterval < 1) {
+			throw new IllegalArgumentException("Invalid metrics interval '"
+				+ pMetricsInterval +"'");
+		}
+		metricsInterval = pMetricsInterval;
+	}
+
+	/**
+	 * Check if the metrics of each merge are registered as a JMX MBean.
+	 *
+	 * @return boolean
+	 */
+	public boolean isJmx() {
+		return jmx;
+	}
+
+	/**
+	 * Register the metrics of each merge as a JMX MBean while it runs, under
+	 * com.albon.util:type=MergeMetrics. Parse and write times are then
+	 * measured.
+	 *
+	 * @param pJmx boolean
+	 */
+	public void setJmx(final boolean pJmx) {
+		jmx = pJmx;
+	}
+
+}
@@ -0,0 +1,524 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * This MergePlan class holds what a merge works out of the headers before
+ * its first record: the template columns, the header line encoded in UTF-8,
+ * the column of each template column on each input, the rule of each
+ * template column, the columns of the deduplication key, of the shards and
+ * of the join key. A plan is good for any merge of the same template file
+ * into inputs having the same headers, under the same options.
+ * </p>
+ * <p>
+ * Plans are kept by a MergePlan.Cache, keyed by the path, charset, size and
+ * modification time of the template file and the hash of every input
+ * header. The cache can be saved into a file, so that the next run merging
+ * the same files neither reads the template nor locates a column.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is not mutable thus thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class MergePlan implements Serializable {
+
+	/**
+	 * Version of the serialized form.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Key of the plan in the cache.
+	 */
+	private final String key;
+
+	/**
+	 * Options the plan was made under.
+	 */
+	private final String options;
+
+	/**
+	 * Header of every input.
+	 */
+	private final String[][] headers;
+
+	/**
+	 * Template columns.
+	 */
+	private final String[] outputHeader;
+
+	/**
+	 * Template header line, UTF-8 encoded.
+	 */
+	private final byte[] headerLine;
+
+	/**
+	 * Column of each template column on each input, 1 based, 0 if missing.
+	 */
+	private final int[][] indexes;
+
+	/**
+	 * Rule name of each template column, null when every column keeps the
+	 * longer value.
+	 */
+	private final String[] ruleNames;
+
+	/**
+	 * Rule argument of each template column, null if none.
+	 */
+	private final String[] ruleArguments;
+
+	/**
+	 * Template columns of the deduplication key, 0 based, null if none.
+	 */
+	private final int[] dedupeColumns;
+
+	/**
+	 * Template column of the shards, 1 based, 0 if none.
+	 */
+	private final int shardColumn;
+
+	/**
+	 * Join key column of each input, 1 based, 0 if missing or no join.
+	 */
+	private final int[] keyColumns;
+
+	/**
+	 * Rule of each template column, compiled again after loading.
+	 */
+	private transient ColumnRule[] rules;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pKey String key of the plan, null if not kept
+	 * @param pOptions String options of the merge
+	 * @param pHeaders Array of header of every input
+	 * @param pOutputHeader Array of String template columns
+	 * @param pHeaderLine String template header line
+	 * @param pIndexes Array of column mapping of each input, 1 based
+	 * @param pRules Array of ColumnRule, null when every column keeps the
+	 *   longer value
+	 * @param pDedupeColumns Array of int deduplication key, 0 based, or null
+	 * @param pShardColumn int template column of the shards, 1 based, or 0
+	 * @param pKeyColumns Array of int join key column of each input, 1 based
+	 */
+	MergePlan(final String pKey, final String pOptions,
+			final String[][] pHeaders, final String[] pOutputHeader,
+			final String pHeaderLine, final int[][] pIndexes,
+			final ColumnRule[] pRules, final int[] pDedupeColumns,
+			final int pShardColumn, final int[] pKeyColumns
+	) {
+		int index;
+		key = pKey;
+		options = pOptions;
+		headers = pHeaders;
+		outputHeader = pOutputHeader;
+		headerLine = pHeaderLine.getBytes(StandardCharsets.UTF_8);
+		indexes = pIndexes;
+		rules = pRules;
+		if (pRules == null) {
+			ruleNames = null;
+			ruleArguments = null;
+		}
+		else {
+			ruleNames = new String[pRules.length];
+			ruleArguments = new String[pRules.length];
+			for (index = 0; index < pRules.length; index++) {
+				if (pRules[index] != null) {
+					ruleNames[index] = pRules[index].getName();
+					ruleArguments[index] = pRules[index].getArgument();
+				}
+			}
+		}
+		dedupeColumns = pDedupeColumns;
+		shardColumn = pShardColumn;
+		keyColumns = pKeyColumns;
+	}
+
+	/**
+	 * Get the key of the plan of a template file and input headers.
+	 *
+	 * @param template File template
+	 * @param charset Charset of the template
+	 * @param pHeaders Array of header of every input
+	 * @return String
+	 */
+	static String key(final File template, final Charset charset,
+			final String[][] pHeaders
+	) {
+		StringBuilder sb = new StringBuilder(template.getAbsolutePath());
+		sb.append('|').append(charset.name());
+		sb.append('|').append(template.length());
+		sb.append('|').append(template.lastModified());
+		for (String[] header : pHeaders) {
+			sb.append('|').append(Integer.toHexString(Arrays.hashCode(header)));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Compile the rules again after loading.
+	 *
+	 * @param in ObjectInputStream
+	 * @throws IOException If any error at File I/O level
+	 * @throws ClassNotFoundException If a class of the plan is missing
+	 */
+	private void readObject(final ObjectInputStream in)
+			throws IOException, ClassNotFoundException {
+		int index;
+		in.defaultReadObject();
+		if (ruleNames == null) {
+			return;
+		}
+		rules = new ColumnRule[ruleNames.length];
+		for (index = 0; index < ruleNames.length; index++) {
+			if (ruleNames[index] != null) {
+				rules[index] = ColumnRule.of(ruleNames[index],
+					ruleArguments[index]);
+			}
+		}
+	}
+
+	/**
+	 * Check if the plan is good for inputs of the given headers.
+	 *
+	 * @param pOptions String options of the merge
+	 * @param pHeaders Array of header of every input
+	 * @return boolean
+	 */
+	boolean matches(final String pOptions, final String[][] pHeaders) {
+		return options.equals(pOptions) && Arrays.deepEquals(headers, pHeaders);
+	}
+
+	/**
+	 * Get the key of the plan.
+	 *
+	 * @return String null if not kept
+	 */
+	String getKey() {
+		return key;
+	}
+
+	/**
+	 * Get the template columns.
+	 *
+	 * @return Array of String
+	 */
+	String[] getOutputHeader() {
+		return outputHeader;
+	}
+
+	/**
+	 * Write the template header line, without its line feed.
+	 *
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	void writeHeader(final OutputSink w) throws IOException {
+		w.writeUtf8(headerLine, 0, headerLine.length);
+	}
+
+	/**
+	 * Get the column of each template column on each input.
+	 *
+	 * @return Array of column mapping of each input, 1 based
+	 */
+	int[][] getIndexes() {
+		return indexes;
+	}
+
+	/**
+	 * Get the rule of each template column.
+	 *
+	 * @return Array of ColumnRule, null when every column keeps the longer
+	 *   value
+	 */
+	ColumnRule[] getRules() {
+		return rules;
+	}
+
+	/**
+	 * Get the template columns of the deduplication key.
+	 *
+	 * @return Array of int, 0 based, null to keep duplicates
+	 */
+	int[] getDedupeColumns() {
+		return dedupeColumns;
+	}
+
+	/**
+	 * Get the template column of the shards.
+	 *
+	 * @return int 1 based, 0 if none
+	 */
+	int getShardColumn() {
+		return shardColumn;
+	}
+
+	/**
+	 * Get the join key column of each input.
+	 *
+	 * @return Array of int, 1 based, 0 if missing or no join
+	 */
+	int[] getKeyColumns() {
+		return keyColumns;
+	}
+
+	/**
+	 * <p>
+	 * This PlanInputStream class reads plans, and nothing else: a class
+	 * other than those of the fields of a plan is not loaded.
+	 * </p>
+	 * <p>
+	 * <strong>Thread Safety: </strong>This class is mutable thus not thread
+	 * safe.
+	 * </p>
+	 */
+	private static final class PlanInputStream extends ObjectInputStream {
+
+		/**
+		 * Classes of a plan.
+		 */
+		private static final List<String> CLASSES = Arrays.asList(
+			MergePlan.class.getName(), String.class.getName(),
+			String[].class.getName(), String[][].class.getName(),
+			int[].class.getName(), int[][].class.getName(),
+			byte[].class.getName());
+
+		/**
+		 * Constructor.
+		 *
+		 * @param in InputStream
+		 * @throws IOException If the stream header is invalid
+		 */
+		private PlanInputStream(final InputStream in) throws IOException {
+			super(in);
+		}
+
+		/**
+		 * Load the class of an object, only if of a plan.
+		 *
+		 * @param desc ObjectStreamClass
+		 * @return Class
+		 * @throws IOException If any error at File I/O level
+		 * @throws ClassNotFoundException If not the class of a plan
+		 */
+		@Override
+		protected Class<?> resolveClass(final ObjectStreamClass desc)
+				throws IOException, ClassNotFoundException {
+			if (!CLASSES.contains(desc.getName())) {
+				throw new InvalidClassException(desc.getName(), "not of a plan");
+			}
+			return super.resolveClass(desc);
+		}
+
+	}
+
+	/**
+	 * <p>
+	 * This Cache class keeps the most recently used plans, and saves them
+	 * into its file after each new plan. The file is written into a
+	 * temporary file then moved over the former one, thus always complete.
+	 * A file that can't be read, or of another version, is taken as empty.
+	 * </p>
+	 * <p>
+	 * <strong>Thread Safety: </strong>This class is thread safe, merges of
+	 * several threads share it.
+	 * </p>
+	 */
+	static final class Cache {
+
+		/**
+		 * Plans by options and key, least recently used first.
+		 */
+		private final LinkedHashMap<String, MergePlan> plans;
+
+		/**
+		 * File of the plans, null for none.
+		 */
+		private final File file;
+
+		/**
+		 * Constructor, the plans are loaded from the file.
+		 *
+		 * @param capacity int number of plans kept
+		 * @param pFile File of the plans, null for none
+		 */
+		Cache(final int capacity, final File pFile) {
+			plans = new LinkedHashMap<String, MergePlan>(16, 0.75f, true) {
+
+				/**
+				 * Version of the serialized form.
+				 */
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						final Map.Entry<String, MergePlan> eldest) {
+					return size() > capacity;
+				}
+			};
+			file = pFile;
+			if (file != null) {
+				for (MergePlan plan : load(file)) {
+					plans.put(plan.options +'|'+ plan.key, plan);
+				}
+			}
+		}
+
+		/**
+		 * Get the plan of a key, if good for the given headers.
+		 *
+		 * @param key String
+		 * @param options String options of the merge
+		 * @param headers Array of header of every input
+		 * @return MergePlan or null if none
+		 */
+		synchronized MergePlan get(final String key, final String options,
+				final String[][] headers
+		) {
+			MergePlan plan = plans.get(options +'|'+ key);
+			return plan != null && plan.matches(options, headers) ? plan : null;
+		}
+
+		/**
+		 * Keep a plan, and save the plans into the file.
+		 *
+		 * @param plan MergePlan
+		 * @throws MergeCsvException If the file can't be written
+		 */
+		synchronized void put(final MergePlan plan) throws MergeCsvException {
+			plans.put(plan.options +'|'+ plan.key, plan);
+			if (file == null) {
+				return;
+			}
+			try {
+				save(file, new ArrayList<MergePlan>(plans.values()));
+			} catch (IOException ex) {
+				throw new MergeCsvException("Error writing plans '"+ file +"'", ex);
+			}
+		}
+
+		/**
+		 * Load the plans of a file.
+		 *
+		 * @param pFile File
+		 * @return List of MergePlan, empty if missing or invalid
+		 */
+		private static List<MergePlan> load(final File pFile) {
+			List<MergePlan> list = new ArrayList<MergePlan>();
+			ObjectInputStream in = null;
+			int count;
+			try {
+				in = new PlanInputStream(new BufferedInputStream(
+					new FileInputStream(pFile)));
+				count = in.readInt();
+				while (count-- > 0) {
+					list.add((MergePlan) in.readObject());
+				}
+			} catch (FileNotFoundException ex) {
+				return list;
+			} catch (IOException ex) {
+				MergeCSV.log("Ignoring plans '"+ pFile +"': "+ ex);
+				list.clear();
+			} catch (ClassNotFoundException ex) {
+				MergeCSV.log("Ignoring plans '"+ pFile +"': "+ ex);
+				list.clear();
+			} catch (IllegalArgumentException ex) {
+				// a date pattern no longer valid
+				MergeCSV.log("Ignoring plans '"+ pFile +"': "+ ex);
+				list.clear();
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException ignore) {
+					}
+				}
+			}
+			return list;
+		}
+
+		/**
+		 * Save plans into a file.
+		 *
+		 * @param pFile File
+		 * @param list List of MergePlan
+		 * @throws IOException If any error at File I/O level
+		 */
+		private static void save(final File pFile, final List<MergePlan> list)
+				throws IOException {
+			Path target = pFile.toPath();
+			Path tmp = Helper.createTempFile(target);
+			ObjectOutputStream out;
+			boolean done = false;
+			try {
+				out = new ObjectOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmp.toFile())));
+				try {
+					out.writeInt(list.size());
+					for (MergePlan plan : list) {
+						out.writeObject(plan);
+					}
+				} finally {
+					out.close();
+				}
+				Helper.replaceAtomically(tmp, target);
+				done = true;
+			} finally {
+				if (!done) {
+					Files.deleteIfExists(tmp);
+				}
+			}
+		}
+
+	}
+
+}
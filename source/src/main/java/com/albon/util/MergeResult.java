@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+/**
+ * <p>
+ * This MergeResult class holds the counters of one merge.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is immutable thus thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class MergeResult {
+
+	/**
+	 * Number of records read from every input, or matched by the join.
+	 */
+	private final long counters;
+
+	/**
+	 * Number of records with less fields than their header.
+	 */
+	private final long ignored;
+
+	/**
+	 * Number of records of input A without a match.
+	 */
+	private final long unmatchedA;
+
+	/**
+	 * Number of records of input B without a match.
+	 */
+	private final long unmatchedB;
+
+	/**
+	 * Number of records written, the header excluded.
+	 */
+	private final long rows;
+
+	/**
+	 * Number of records dropped as duplicates.
+	 */
+	private final long duplicates;
+
+	/**
+	 * Final metrics of the merge.
+	 */
+	private final MergeMetrics metrics;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pCounters long merged records
+	 * @param pIgnored long ignored records
+	 * @param pUnmatchedA long unmatched records of input A
+	 * @param pUnmatchedB long unmatched records of input B
+	 * @param pRows long written records
+	 * @param pMetrics MergeMetrics of the merge
+	 */
+	MergeResult(final long pCounters,
+			final long pIgnored,
+			final long pUnmatchedA,
+			final long pUnmatchedB,
+			final long pRows,
+			final MergeMetrics pMetrics
+	) {
+		this(pCounters, pIgnored, pUnmatchedA, pUnmatchedB, pRows, 0L,
+			pMetrics);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pCounters long merged records
+	 * @param pIgnored long ignored records
+	 * @param pUnmatchedA long unmatched records of input A
+	 * @param pUnmatchedB long unmatched records of input B
+	 * @param pRows long written records
+	 * @param pDuplicates long records dropped as duplicates
+	 * @param pMetrics MergeMetrics of the merge
+	 */
+	MergeResult(final long pCounters,
+			final long pIgnored,
+			final long pUnmatchedA,
+			final long pUnmatchedB,
+			final long pRows,
+			final long pDuplicates,
+			final MergeMetrics pMetrics
+	) {
+		counters = pCounters;
+		ignored = pIgnored;
+		unmatchedA = pUnmatchedA;
+		unmatchedB = pUnmatchedB;
+		rows = pRows;
+		duplicates = pDuplicates;
+		metrics = pMetrics;
+	}
+
+	/**
+	 * Get number of records read from every input, or matched by the join.
+	 *
+	 * @return long
+	 */
+	public long getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Get number of records with less fields than their header.
+	 *
+	 * @return long
+	 */
+	public long getIgnored() {
+		return ignored;
+	}
+
+	/**
+	 * Get number of records of input A without a match, 0 unless joining.
+	 *
+	 * @return long
+	 */
+	public long getUnmatchedA() {
+		return unmatchedA;
+	}
+
+	/**
+	 * Get number of records of input B without a match, 0 unless joining.
+	 *
+	 * @return long
+	 */
+	public long getUnmatchedB() {
+		return unmatchedB;
+	}
+
+	/**
+	 * Get number of records written, the header excluded.
+	 *
+	 * @return long
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Get number of records dropped as duplicates, 0 unless deduplicating.
+	 *
+	 * @return long
+	 */
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * Get the metrics of the merge, final once the merge returned.
+	 *
+	 * @return MergeMetrics
+	 */
+	public MergeMetrics getMetrics() {
+		return metrics;
+	}
+
+	@Override
+	public String toString() {
+		return "Merged "+ counters +" CSV records, Ignored "+ ignored
+			+" CSV record(s), Unmatched "+ unmatchedA +"/"+ unmatchedB
+			+", Duplicates "+ duplicates +", Written "+ rows;
+	}
+
+}
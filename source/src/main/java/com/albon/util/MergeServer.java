@@ -0,0 +1,550 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <p>
+ * This MergeServer class runs merges for other processes, so that thousands
+ * of small merges pay the start of a JVM once. It listens on a localhost
+ * HTTP port; a job is a POST on /merge of the fields of a form, the input
+ * files a, b and in (repeated), the template t and the output o:
+ * </p>
+ * <pre>
+ * curl -H 'X-Merge-Token: TOKEN' -H 'Content-Type: application/x-mergecsv' \
+ *   -d 'a=A.csv&amp;b=B.csv&amp;t=T.csv&amp;o=O.csv' http://localhost:8080/merge
+ * </pre>
+ * <p>
+ * The response is the MergeResult, or the error of the merge. GET /status
+ * returns the counters of the server as JSON.
+ * </p>
+ * <p>
+ * Any local process, a web page in a browser included, can reach a localhost
+ * port. Every request must carry the token of the server, drawn at random
+ * when it is created, in the X-Merge-Token header. A browser can't send that
+ * header to another origin without asking first, and a request with the
+ * content type of a form or an Origin header other than the server is
+ * refused as well. The files of a job, resolved against the root directory
+ * of the server, links followed, must be inside it. Every job is merged by the
+ * same MergeEngine with the same MergeOptions, and the read and line buffers
+ * of its inputs come from the shared BufferPool, whose counters are part of
+ * the status.
+ * </p>
+ * <p>
+ * Each job runs on its own virtual thread when the JVM has them (Java 21),
+ * otherwise on a pool of platform threads. At most a given number of jobs
+ * merge at the same time, the others wait for their turn.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class MergeServer implements Closeable {
+
+	/**
+	 * Default number of jobs merging at the same time.
+	 */
+	public static final int DEFAULT_JOBS = 2 * Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Header carrying the token.
+	 */
+	public static final String TOKEN_HEADER = "X-Merge-Token";
+
+	/**
+	 * Engine merging every job.
+	 */
+	private final MergeEngine engine;
+
+	/**
+	 * HTTP server.
+	 */
+	private final HttpServer server;
+
+	/**
+	 * Threads of the jobs.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * True if executor starts a virtual thread per job.
+	 */
+	private final boolean virtual;
+
+	/**
+	 * Token of every request, 32 hexadecimal digits.
+	 */
+	private final String token;
+
+	/**
+	 * Real path of the directory holding the files of the jobs.
+	 */
+	private final Path root;
+
+	/**
+	 * Jobs allowed to merge at the same time.
+	 */
+	private final Semaphore permits;
+
+	/**
+	 * Jobs merging.
+	 */
+	private final AtomicLong running = new AtomicLong();
+
+	/**
+	 * Jobs merged.
+	 */
+	private final AtomicLong done = new AtomicLong();
+
+	/**
+	 * Jobs failed.
+	 */
+	private final AtomicLong failed = new AtomicLong();
+
+	/**
+	 * Nanoseconds of every job from its request to the start of its merge.
+	 */
+	private final AtomicLong waitNanos = new AtomicLong();
+
+	/**
+	 * Constructor, the server is started by start.
+	 *
+	 * @param options MergeOptions of every job
+	 * @param port int localhost port, 0 for any free port
+	 * @param jobs int jobs merging at the same time
+	 * @param pRoot Path directory holding the files of the jobs, relative
+	 *   file names are resolved against it
+	 * @throws IOException If the port can't be bound or pRoot doesn't exist
+	 * @throws IllegalArgumentException If options or pRoot is null or jobs
+	 *   less than 1
+	 */
+	public MergeServer(final MergeOptions options, final int port,
+			final int jobs, final Path pRoot
+	) throws IOException {
+		byte[] random = new byte[16];
+		StringBuilder sb = new StringBuilder(32);
+		Helper.checkObject(options, "options");
+		Helper.checkObject(pRoot, "pRoot");
+		if (jobs < 1) {
+			throw new IllegalArgumentException("Invalid jobs '"+ jobs +"'");
+		}
+		root = pRoot.toRealPath();
+		if (!Files.isDirectory(root)) {
+			throw new IOException("Root '"+ pRoot +"' is not a directory");
+		}
+		new SecureRandom().nextBytes(random);
+		for (byte b : random) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+				.append(Character.forDigit(b & 0xf, 16));
+		}
+		token = sb.toString();
+		permits = new Semaphore(jobs);
+		ExecutorService threads = virtualThreads();
+		virtual = threads != null;
+		executor = virtual ? threads : Executors.newFixedThreadPool(jobs,
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread t = new Thread(r, "mergecsv-job");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		server = HttpServer.create(new InetSocketAddress(
+			InetAddress.getLoopbackAddress(), port), 0);
+		server.setExecutor(executor);
+		server.createContext("/merge", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				merge(exchange);
+			}
+		});
+		server.createContext("/status", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				if (allowed(exchange)) {
+					respond(exchange, 200, status());
+				}
+			}
+		});
+		engine = new MergeEngine(options);
+	}
+
+	/**
+	 * Create an executor starting a virtual thread per task, found by
+	 * reflection as this application runs on Java 8 as well.
+	 *
+	 * @return ExecutorService or null if the JVM has no virtual threads
+	 */
+	private static ExecutorService virtualThreads() {
+		Method method;
+		try {
+			method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Start to accept jobs.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Get the port the server listens on.
+	 *
+	 * @return int
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Get the token every request must carry in the X-Merge-Token header.
+	 *
+	 * @return String
+	 */
+	public String getToken() {
+		return token;
+	}
+
+	/**
+	 * Get the directory holding the files of the jobs.
+	 *
+	 * @return Path real path
+	 */
+	public Path getRoot() {
+		return root;
+	}
+
+	/**
+	 * Check if each job runs on its own virtual thread.
+	 *
+	 * @return boolean
+	 */
+	public boolean isVirtual() {
+		return virtual;
+	}
+
+	/**
+	 * Check the token and the origin of a request, refuse it if wrong.
+	 *
+	 * @param exchange HttpExchange
+	 * @return boolean true if the request may go on
+	 * @throws IOException If the response can't be sent
+	 */
+	private boolean allowed(final HttpExchange exchange) throws IOException {
+		String value = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+		String origin = exchange.getRequestHeaders().getFirst("Origin");
+		if (value == null || !MessageDigest.isEqual(
+				token.getBytes(StandardCharsets.US_ASCII),
+				value.getBytes(StandardCharsets.US_ASCII))) {
+			respond(exchange, 401, "Missing or wrong "+ TOKEN_HEADER +"\n");
+			return false;
+		}
+		if (origin != null && !origin.equals("http://localhost:"+ getPort())
+				&& !origin.equals("http://127.0.0.1:"+ getPort())) {
+			respond(exchange, 403, "Origin '"+ origin +"' not allowed\n");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Resolve a file name of a job against the root directory.
+	 *
+	 * @param name String file name
+	 * @return Path
+	 * @throws IOException If the directory of the file can't be resolved
+	 * @throws InvalidPathException If name is not a valid path
+	 * @throws IllegalArgumentException If the file is not inside the root
+	 */
+	private Path resolve(final String name) throws IOException {
+		Path path = root.resolve(name).normalize();
+		Path parent = path.getParent();
+		Path real;
+		if (Files.exists(path)) {
+			real = path.toRealPath();
+		}
+		else if (parent != null) {
+			// An output file created by the merge
+			real = parent.toRealPath().resolve(path.getFileName());
+		}
+		else {
+			real = path;
+		}
+		if (!real.startsWith(root) || real.equals(root)) {
+			throw new IllegalArgumentException("File '"+ name
+				+"' is outside of "+ root);
+		}
+		return real;
+	}
+
+	/**
+	 * Run one job.
+	 *
+	 * @param exchange HttpExchange
+	 * @throws IOException If the response can't be sent
+	 */
+	private void merge(final HttpExchange exchange) throws IOException {
+		long received = System.nanoTime();
+		List<String> inputs = new ArrayList<String>();
+		String aInput = null;
+		String bInput = null;
+		String template = null;
+		String output = null;
+		CsvSource[] sources;
+		Path templatePath;
+		Path outputPath;
+		MergeResult result;
+		String contentType;
+		String name;
+		String value;
+		int equal;
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			respond(exchange, 405, "POST a=A&b=B&t=T&o=O\n");
+			return;
+		}
+		if (!allowed(exchange)) {
+			return;
+		}
+		contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+		if (contentType != null) {
+			// The content types a browser posts to any origin without asking
+			contentType = contentType.trim().toLowerCase(Locale.ROOT);
+			if (contentType.startsWith("application/x-www-form-urlencoded")
+					|| contentType.startsWith("multipart/")
+					|| contentType.startsWith("text/plain")) {
+				respond(exchange, 415, "Content type '"+ contentType
+					+"' not allowed, use application/x-mergecsv\n");
+				return;
+			}
+		}
+		try {
+			for (String pair : read(exchange.getRequestBody()).split("&")) {
+				equal = pair.indexOf('=');
+				if (equal <= 0) {
+					continue;
+				}
+				name = decode(pair.substring(0, equal));
+				value = decode(pair.substring(equal + 1));
+				if ("a".equals(name)) {
+					aInput = value;
+				}
+				else if ("b".equals(name)) {
+					bInput = value;
+				}
+				else if ("in".equals(name)) {
+					inputs.add(value);
+				}
+				else if ("t".equals(name)) {
+					template = value;
+				}
+				else if ("o".equals(name)) {
+					output = value;
+				}
+			}
+		} catch (IllegalArgumentException e) {
+			// A malformed escape such as %zz
+			failed.incrementAndGet();
+			respond(exchange, 400, "Invalid field: "+ e.getMessage() +"\n");
+			return;
+		}
+		if (bInput != null) {
+			inputs.add(0, bInput);
+		}
+		if (aInput != null) {
+			inputs.add(0, aInput);
+		}
+		if (inputs.size() < 2 || Helper.isStringNullOrEmpty(template)
+				|| Helper.isStringNullOrEmpty(output)) {
+			respond(exchange, 400, "Missing a, b, t or o\n");
+			return;
+		}
+		sources = new CsvSource[inputs.size()];
+		try {
+			for (int index = 0; index < sources.length; index++) {
+				sources[index] = CsvSource.of(resolve(inputs.get(index)));
+			}
+			templatePath = resolve(template);
+			outputPath = resolve(output);
+		} catch (InvalidPathException e) {
+			failed.incrementAndGet();
+			respond(exchange, 400, "Invalid path: "+ e.getMessage() +"\n");
+			return;
+		} catch (IllegalArgumentException e) {
+			failed.incrementAndGet();
+			respond(exchange, 403, e.getMessage() +"\n");
+			return;
+		} catch (IOException e) {
+			failed.incrementAndGet();
+			respond(exchange, 400, "Invalid path: "+ e +"\n");
+			return;
+		}
+		permits.acquireUninterruptibly();
+		try {
+			waitNanos.addAndGet(System.nanoTime() - received);
+			running.incrementAndGet();
+			result = engine.merge(CsvSource.of(templatePath), sources,
+				outputPath);
+			done.incrementAndGet();
+		} catch (MergeCsvException e) {
+			failed.incrementAndGet();
+			respond(exchange, 500, e.getMessage() +"\n");
+			return;
+		} catch (RuntimeException e) {
+			failed.incrementAndGet();
+			respond(exchange, 500, e +"\n");
+			return;
+		} finally {
+			running.decrementAndGet();
+			permits.release();
+		}
+		respond(exchange, 200, result +"\n");
+	}
+
+	/**
+	 * Get the counters of the server as JSON.
+	 *
+	 * @return String
+	 */
+	String status() {
+		long jobs = done.get() + failed.get();
+		return "{\"virtual\":"+ virtual
+			+",\"running\":"+ running.get()
+			+",\"done\":"+ done.get()
+			+",\"failed\":"+ failed.get()
+			+",\"waitMicros\":"+ (jobs == 0L ? 0L
+				: TimeUnit.NANOSECONDS.toMicros(waitNanos.get() / jobs))
+			+",\"pool\":"+ BufferPool.SHARED.toJson()
+			+"}\n";
+	}
+
+	/**
+	 * Read a request body.
+	 *
+	 * @param in InputStream
+	 * @return String
+	 * @throws IOException If any error at I/O level
+	 */
+	private static String read(final InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+		byte[] buffer = new byte[1024];
+		int n;
+		try {
+			while ((n = in.read(buffer)) > 0) {
+				out.write(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Decode a form field.
+	 *
+	 * @param s String
+	 * @return String
+	 * @throws IllegalArgumentException If s has a malformed escape
+	 */
+	private static String decode(final String s) {
+		try {
+			return URLDecoder.decode(s, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Send a text response.
+	 *
+	 * @param exchange HttpExchange
+	 * @param status int HTTP status
+	 * @param text String
+	 * @throws IOException If any error at I/O level
+	 */
+	private static void respond(final HttpExchange exchange, final int status,
+			final String text
+	) throws IOException {
+		byte[] body = text.getBytes(StandardCharsets.UTF_8);
+		OutputStream out;
+		exchange.getResponseHeaders().set("Content-Type",
+			text.startsWith("{") ? "application/json" : "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, body.length);
+		out = exchange.getResponseBody();
+		try {
+			out.write(body);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Stop to accept jobs, let the jobs merging end for one second, then
+	 * stop the threads.
+	 */
+	@Override
+	public void close() {
+		server.stop(1);
+		executor.shutdown();
+		engine.close();
+	}
+
+}
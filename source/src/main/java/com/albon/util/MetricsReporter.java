@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * <p>
+ * This MetricsReporter class reports the metrics of a merge on its own
+ * thread at a fixed interval: a JSON snapshot replaces the snapshot file and,
+ * when verbose, the progress is logged into the console. The merge thread
+ * itself never formats nor prints anything.
+ * </p>
+ * <p>
+ * The snapshot is written to a temporary file then moved over the snapshot
+ * file, so a reader never sees half a snapshot.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is thread safe, start and stop
+ * are called by the merge thread.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class MetricsReporter implements Runnable {
+
+	/**
+	 * Metrics reported.
+	 */
+	private final MergeMetrics metrics;
+
+	/**
+	 * Snapshot file, null if none.
+	 */
+	private final File file;
+
+	/**
+	 * Milliseconds between two reports.
+	 */
+	private final long interval;
+
+	/**
+	 * True to log the progress into the console.
+	 */
+	private final boolean verbose;
+
+	/**
+	 * Reporting thread.
+	 */
+	private final Thread thread;
+
+	/**
+	 * True once a snapshot failed, it is logged once.
+	 */
+	private boolean failed;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pMetrics MergeMetrics
+	 * @param pFile File snapshot file or null
+	 * @param pInterval long milliseconds between two reports
+	 * @param pVerbose boolean true to log the progress
+	 */
+	MetricsReporter(final MergeMetrics pMetrics, final File pFile,
+			final long pInterval, final boolean pVerbose
+	) {
+		metrics = pMetrics;
+		file = pFile;
+		interval = pInterval;
+		verbose = pVerbose;
+		failed = false;
+		thread = new Thread(this, "mergecsv-metrics");
+		thread.setDaemon(true);
+	}
+
+	/**
+	 * Start reporting.
+	 */
+	void start() {
+		thread.start();
+	}
+
+	/**
+	 * Stop reporting and write the final snapshot, once the metrics are
+	 * finished.
+	 */
+	void stop() {
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (file != null) {
+			snapshot();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				Thread.sleep(interval);
+				if (file != null) {
+					snapshot();
+				}
+				if (verbose) {
+					MergeCSV.log("Merging "+ metrics.getRows() +" CSV records, "
+						+ Math.round(metrics.getRowsPerSecond()) +" records/s");
+				}
+			}
+		} catch (InterruptedException e) {
+			// stopped at the end of the merge
+		}
+	}
+
+	/**
+	 * Delete a temporary snapshot left by an error.
+	 *
+	 * @param tmp Path or null
+	 */
+	private static void deleteQuietly(final Path tmp) {
+		if (tmp != null) {
+			try {
+				Files.deleteIfExists(tmp);
+			} catch (IOException ignore) {
+			}
+		}
+	}
+
+	/**
+	 * Replace the snapshot file with the current metrics.
+	 */
+	private synchronized void snapshot() {
+		Path target = file.toPath();
+		Path tmp = null;
+		try {
+			tmp = Helper.createTempFile(target);
+			Files.write(tmp, metrics.toJson().getBytes(StandardCharsets.UTF_8));
+			Helper.replaceAtomically(tmp, target);
+			tmp = null;
+		} catch (IOException e) {
+			deleteQuietly(tmp);
+			if (!failed) {
+				failed = true;
+				MergeCSV.log("Can't write metrics to '"+ file +"': "+ e.getMessage());
+			}
+		}
+	}
+
+}
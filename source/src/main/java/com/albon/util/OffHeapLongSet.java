@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * This OffHeapLongSet class is a set of 64 bit keys kept outside of the
+ * heap, thus hundreds of millions of keys neither fill the heap nor slow
+ * down the garbage collector. The keys are split by their top bits into
+ * segments, each segment is an open addressing table of longs searched by
+ * linear probing, doubled on its own once three quarters full.
+ * </p>
+ * <p>
+ * The tables are direct byte buffers, limited by -XX:MaxDirectMemorySize,
+ * or, given a directory, temporary files of that directory memory mapped
+ * read write: the operating system then writes to disk the pages of a key
+ * set larger than the memory. The files are removed by close.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class OffHeapLongSet implements Closeable {
+
+	/**
+	 * Bits of a key choosing its segment.
+	 */
+	private static final int SEGMENT_BITS = 6;
+
+	/**
+	 * Number of segments.
+	 */
+	private static final int SEGMENTS = 1 << SEGMENT_BITS;
+
+	/**
+	 * Initial slots of a segment.
+	 */
+	private static final int INITIAL_SLOTS = 1 << 12;
+
+	/**
+	 * Maximum slots of a segment, 1 GB.
+	 */
+	private static final int MAX_SLOTS = 1 << 27;
+
+	/**
+	 * Key stored instead of 0, 0 marks a free slot.
+	 */
+	private static final long ZERO = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Directory of the memory mapped tables, null for direct buffers.
+	 */
+	private final File directory;
+
+	/**
+	 * Table of each segment.
+	 */
+	private final ByteBuffer[] tables;
+
+	/**
+	 * File of the table of each segment, null for direct buffers.
+	 */
+	private final File[] files;
+
+	/**
+	 * Number of keys of each segment.
+	 */
+	private final int[] sizes;
+
+	/**
+	 * Number of keys.
+	 */
+	private long size;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pDirectory File directory of the memory mapped tables,
+	 *   null to keep them in direct buffers
+	 * @throws IOException If a table can't be allocated
+	 */
+	OffHeapLongSet(final File pDirectory) throws IOException {
+		int segment;
+		directory = pDirectory;
+		tables = new ByteBuffer[SEGMENTS];
+		files = new File[SEGMENTS];
+		sizes = new int[SEGMENTS];
+		size = 0L;
+		try {
+			for (segment = 0; segment < SEGMENTS; segment++) {
+				tables[segment] = allocate(segment, INITIAL_SLOTS);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Add a key.
+	 *
+	 * @param pKey long
+	 * @return boolean true if the key was not in the set
+	 * @throws IOException If the set can't grow
+	 */
+	boolean add(final long pKey) throws IOException {
+		long key = pKey == 0L ? ZERO : pKey;
+		int segment = (int) (key >>> (64 - SEGMENT_BITS));
+		ByteBuffer table = tables[segment];
+		int mask = (table.capacity() >>> 3) - 1;
+		int slot = (int) key & mask;
+		long value;
+		while ((value = table.getLong(slot << 3)) != 0L) {
+			if (value == key) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		table.putLong(slot << 3, key);
+		sizes[segment] = sizes[segment] + 1;
+		size = size + 1L;
+		if (sizes[segment] > (mask >>> 2) * 3) {
+			grow(segment);
+		}
+		return true;
+	}
+
+	/**
+	 * Get number of keys.
+	 *
+	 * @return long
+	 */
+	long size() {
+		return size;
+	}
+
+	/**
+	 * Double the table of a segment.
+	 *
+	 * @param segment int
+	 * @throws IOException If the table is at its maximum or can't be allocated
+	 */
+	private void grow(final int segment) throws IOException {
+		ByteBuffer old = tables[segment];
+		File oldFile = files[segment];
+		int slots = old.capacity() >>> 3;
+		ByteBuffer table;
+		int mask;
+		int slot;
+		int index;
+		long key;
+		if (slots >= MAX_SLOTS) {
+			throw new IOException("Too many keys, "+ size +" in the key set");
+		}
+		table = allocate(segment, slots * 2);
+		mask = slots * 2 - 1;
+		for (index = 0; index < slots; index++) {
+			key = old.getLong(index << 3);
+			if (key != 0L) {
+				slot = (int) key & mask;
+				while (table.getLong(slot << 3) != 0L) {
+					slot = (slot + 1) & mask;
+				}
+				table.putLong(slot << 3, key);
+			}
+		}
+		tables[segment] = table;
+		delete(oldFile);
+	}
+
+	/**
+	 * Allocate the table of a segment, zero filled.
+	 *
+	 * @param segment int
+	 * @param slots int number of keys of the table
+	 * @return ByteBuffer
+	 * @throws IOException If the table can't be allocated
+	 */
+	private ByteBuffer allocate(final int segment, final int slots
+	) throws IOException {
+		RandomAccessFile raf = null;
+		File file;
+		ByteBuffer table;
+		if (directory == null) {
+			try {
+				return ByteBuffer.allocateDirect(slots << 3)
+					.order(ByteOrder.nativeOrder());
+			} catch (OutOfMemoryError e) {
+				throw new IOException("Out of direct memory with "+ size
+					+" keys, raise -XX:MaxDirectMemorySize or keep the keys"
+					+" on disk", e);
+			}
+		}
+		file = File.createTempFile("mergecsv-keys", ".tmp", directory);
+		try {
+			raf = new RandomAccessFile(file, "rw");
+			raf.setLength((long) slots << 3);
+			table = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0L,
+				(long) slots << 3).order(ByteOrder.nativeOrder());
+		} catch (IOException e) {
+			delete(file);
+			throw e;
+		} finally {
+			if (raf != null) {
+				raf.close();
+			}
+		}
+		files[segment] = file;
+		return table;
+	}
+
+	/**
+	 * Remove the file of a table, once unmapped if it can't be removed now.
+	 *
+	 * @param file File, may be null
+	 */
+	private static void delete(final File file) {
+		if (file != null && !file.delete()) {
+			file.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Release the tables and remove their files.
+	 */
+	@Override
+	public void close() {
+		int segment;
+		for (segment = 0; segment < SEGMENTS; segment++) {
+			tables[segment] = null;
+			delete(files[segment]);
+			files[segment] = null;
+		}
+	}
+
+}
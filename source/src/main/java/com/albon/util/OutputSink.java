@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * This OutputSink class defines where merged CSV records are written. Every
+ * record ends with endRow, the header line with endHeader, so a sink knows
+ * where each record ends without looking at its characters. The sink
+ * flushes itself every flushRows records or only on flush and close when
+ * flushRows is 0.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>Implementations are mutable thus not
+ * thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public abstract class OutputSink {
+
+	/**
+	 * Records between two flush, 0 to flush only at the end.
+	 */
+	private final int flushRows;
+
+	/**
+	 * Records written since the last flush.
+	 */
+	private int pendingRows;
+
+	/**
+	 * Records written.
+	 */
+	private long rows;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pFlushRows int records between two flush, 0 for none
+	 */
+	protected OutputSink(final int pFlushRows) {
+		flushRows = pFlushRows;
+		pendingRows = 0;
+		rows = 0L;
+	}
+
+	/**
+	 * Write one character.
+	 *
+	 * @param c char
+	 * @throws IOException If any error at File I/O level
+	 */
+	public abstract void write(char c) throws IOException;
+
+	/**
+	 * Write characters.
+	 *
+	 * @param buffer Array of char
+	 * @param offset int offset of the first character
+	 * @param length int number of characters
+	 * @throws IOException If any error at File I/O level
+	 */
+	public abstract void write(char[] buffer, int offset, int length
+	) throws IOException;
+
+	/**
+	 * Write a String.
+	 *
+	 * @param s String
+	 * @throws IOException If any error at File I/O level
+	 */
+	public abstract void write(String s) throws IOException;
+
+	/**
+	 * Write UTF-8 encoded bytes, decoded into characters unless the sink
+	 * writes UTF-8 itself.
+	 *
+	 * @param buffer Array of byte
+	 * @param offset int offset of the first byte
+	 * @param length int number of bytes
+	 * @throws IOException If any error at File I/O level
+	 */
+	public void writeUtf8(final byte[] buffer, final int offset, final int length
+	) throws IOException {
+		write(new String(buffer, offset, length, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * End the current record with a line feed.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	public final void endRow() throws IOException {
+		write('\n');
+		endRows(1);
+	}
+
+	/**
+	 * Account for records already ended with their line feed.
+	 *
+	 * @param count int number of records
+	 * @throws IOException If any error at File I/O level
+	 */
+	public final void endRows(final int count) throws IOException {
+		ended(count);
+		rows = rows + count;
+		if (flushRows > 0) {
+			pendingRows = pendingRows + count;
+			if (pendingRows >= flushRows) {
+				pendingRows = 0;
+				flush();
+			}
+		}
+	}
+
+	/**
+	 * Account for the header line already ended with its line feed, the
+	 * header is not a record.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	public final void endHeader() throws IOException {
+		ended(0);
+	}
+
+	/**
+	 * Called when the characters written since the last call end the header,
+	 * one record or several records ended together. A sink splitting its
+	 * output by record overrides it, the others have nothing to do.
+	 *
+	 * @param count int records ended, 0 for the header
+	 * @throws IOException If any error at File I/O level
+	 */
+	protected void ended(final int count) throws IOException {
+		// Nothing to do
+	}
+
+	/**
+	 * Get number of records written.
+	 *
+	 * @return long
+	 */
+	public final long getRows() {
+		return rows;
+	}
+
+	/**
+	 * Write buffered data to the destination.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	public abstract void flush() throws IOException;
+
+	/**
+	 * Flush then close the destination.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	public abstract void close() throws IOException;
+
+}
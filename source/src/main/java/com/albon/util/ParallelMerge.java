@@ -0,0 +1,574 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * This ParallelMerge class merges every input by line position on several
+ * threads. A reader thread cuts the inputs into batches of aligned lines,
+ * a pool of workers tokenizes and merges the batches, and the calling
+ * thread writes the merged batches back in their original order.
+ * </p>
+ * <p>
+ * The output and the counters are the same as merging on a single thread.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class ParallelMerge {
+
+	/**
+	 * Maximum number of line pairs in a batch.
+	 */
+	private static final int BATCH_LINES = 1024;
+
+	/**
+	 * Characters of one input after which a batch is cut.
+	 */
+	private static final int BATCH_CHARS = 1024 * 1024;
+
+	/**
+	 * Initial characters of one input in a batch.
+	 */
+	private static final int INITIAL_CHARS = 65536;
+
+	/**
+	 * Lines of one input cut into a batch, packed into one char buffer.
+	 */
+	private static final class Lines {
+		/**
+		 * Characters of every line.
+		 */
+		private char[] chars;
+
+		/**
+		 * Number of characters in chars.
+		 */
+		private int length;
+
+		/**
+		 * End offset of each line.
+		 */
+		private final int[] ends;
+
+		/**
+		 * Constructor.
+		 */
+		private Lines() {
+			chars = new char[INITIAL_CHARS];
+			length = 0;
+			ends = new int[BATCH_LINES];
+		}
+
+		/**
+		 * Append a line.
+		 *
+		 * @param line Array of char
+		 * @param size int number of characters
+		 * @param index int line index in the batch
+		 */
+		private void add(final char[] line, final int size, final int index) {
+			if (length + size > chars.length) {
+				char[] p = new char[Math.max(length + size, chars.length * 2)];
+				System.arraycopy(chars, 0, p, 0, length);
+				chars = p;
+			}
+			System.arraycopy(line, 0, chars, length, size);
+			length = length + size;
+			ends[index] = length;
+		}
+
+		/**
+		 * Tokenize one line of the batch.
+		 *
+		 * @param tokenizer CsvTokenizer
+		 * @param index int line index in the batch
+		 * @return int number of fields
+		 */
+		private int tokenize(final CsvTokenizer tokenizer, final int index) {
+			int start = index == 0 ? 0 : ends[index - 1];
+			return tokenizer.tokenize(chars, start, ends[index] - start);
+		}
+	}
+
+	/**
+	 * Aligned lines of every input.
+	 */
+	private static final class Batch {
+		/**
+		 * Lines of each input.
+		 */
+		private final Lines[] lines;
+
+		/**
+		 * Number of line pairs.
+		 */
+		private int size;
+
+		/**
+		 * Longest line of the batch.
+		 */
+		private int peak;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param count int number of inputs
+		 */
+		private Batch(final int count) {
+			lines = new Lines[count];
+			for (int index = 0; index < count; index++) {
+				lines[index] = new Lines();
+			}
+			size = 0;
+			peak = 0;
+		}
+
+		/**
+		 * Check if the lines of an input reached the batch limit.
+		 *
+		 * @return boolean
+		 */
+		private boolean isFull() {
+			if (size >= BATCH_LINES) {
+				return true;
+			}
+			for (Lines l : lines) {
+				if (l.length >= BATCH_CHARS) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Get number of characters of every input.
+		 *
+		 * @return int
+		 */
+		private int chars() {
+			int count = 0;
+			for (Lines l : lines) {
+				count = count + l.length;
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Merged batch.
+	 */
+	private static final class Result {
+		/**
+		 * Merged records.
+		 */
+		private final CharArrayOutputSink output;
+
+		/**
+		 * Number of merged line pairs.
+		 */
+		private long counters;
+
+		/**
+		 * Number of line pairs with less fields than the header.
+		 */
+		private long ignored;
+
+		/**
+		 * True if merging stops on this batch.
+		 */
+		private boolean stopped;
+
+		/**
+		 * Characters of the lines of the batch.
+		 */
+		private final int chars;
+
+		/**
+		 * Longest line of the batch.
+		 */
+		private final int peak;
+
+		/**
+		 * Nanoseconds the worker spent on the batch.
+		 */
+		private long nanos;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param batch Batch merged
+		 */
+		private Result(final Batch batch) {
+			chars = batch.chars();
+			peak = batch.peak;
+			output = new CharArrayOutputSink(chars);
+			counters = 0L;
+			ignored = 0L;
+			stopped = false;
+			nanos = 0L;
+		}
+	}
+
+	/**
+	 * Marks the end of batches.
+	 */
+	private static final Future<Result> END = new FutureTask<Result>(
+		new Callable<Result>() {
+			@Override
+			public Result call() {
+				return null;
+			}
+		});
+
+	/**
+	 * Writes the merged records.
+	 */
+	private final RecordMerger merger;
+
+	/**
+	 * Number of worker threads.
+	 */
+	private final int threads;
+
+	/**
+	 * Worker pool of the caller, null to create one for each merge.
+	 */
+	private final ExecutorService pool;
+
+	/**
+	 * Metrics of the merge.
+	 */
+	private final MergeMetrics metrics;
+
+	/**
+	 * Number of fields of a complete record of each input.
+	 */
+	private int[] widths;
+
+	/**
+	 * Number of fields tokenized on each record of each input.
+	 */
+	private int[] limits;
+
+	/**
+	 * Number of merged line pairs.
+	 */
+	private long counters;
+
+	/**
+	 * Number of line pairs with less fields than the header.
+	 */
+	private long ignored;
+
+	/**
+	 * Set by the writer to stop the reader.
+	 */
+	private volatile boolean stopped;
+
+	/**
+	 * Error of the reader thread, if any.
+	 */
+	private volatile Throwable failure;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pMerger RecordMerger
+	 * @param pThreads int number of worker threads
+	 * @param pPool ExecutorService shared worker pool, null for none
+	 * @param pMetrics MergeMetrics updated after each batch
+	 */
+	ParallelMerge(final RecordMerger pMerger,
+			final int pThreads,
+			final ExecutorService pPool,
+			final MergeMetrics pMetrics
+	) {
+		merger = pMerger;
+		threads = pThreads;
+		pool = pPool;
+		metrics = pMetrics;
+		widths = null;
+		limits = null;
+		counters = 0L;
+		ignored = 0L;
+		stopped = false;
+		failure = null;
+	}
+
+	/**
+	 * Merge every input by line position.
+	 *
+	 * @param inputs Array of CsvInput
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	void merge(final CsvInput[] inputs, final OutputSink w
+	) throws IOException {
+		widths = new int[inputs.length];
+		limits = new int[inputs.length];
+		for (int index = 0; index < inputs.length; index++) {
+			widths[index] = inputs[index].getWidth();
+			limits[index] = inputs[index].getFieldLimit();
+		}
+		final BlockingQueue<Future<Result>> queue =
+			new ArrayBlockingQueue<Future<Result>>(threads * 2);
+		final ExecutorService workers = pool != null ? pool
+			: Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread t = new Thread(r, "mergecsv-worker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				read(inputs, workers, queue);
+			}
+		}, "mergecsv-reader");
+		reader.setDaemon(true);
+		reader.start();
+
+		Future<Result> future;
+		Result result;
+		long bytesRead = 0L;
+		long peakRecord = 0L;
+		long parseNanos = 0L;
+		long writeNanos = 0L;
+		long time;
+		try {
+			while (true) {
+				future = queue.take();
+				if (future == END) {
+					break;
+				}
+				result = future.get();
+				time = System.nanoTime();
+				result.output.writeTo(w);
+				writeNanos = writeNanos + System.nanoTime() - time;
+				parseNanos = parseNanos + result.nanos;
+				bytesRead = bytesRead + result.chars;
+				peakRecord = Math.max(peakRecord, result.peak);
+				counters = counters + result.counters;
+				ignored = ignored + result.ignored;
+				metrics.update(counters, ignored, bytesRead, parseNanos,
+					writeNanos, peakRecord);
+				if (result.stopped) {
+					break;
+				}
+			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted", ex);
+		} catch (ExecutionException ex) {
+			throw new IOException(ex.getCause().getMessage(), ex.getCause());
+		} finally {
+			stopped = true;
+			for (Future<Result> f : queue) {
+				if (f != END) {
+					f.cancel(true);
+				}
+			}
+			queue.clear();
+			reader.interrupt();
+			// The inputs are closed after the merge, not while still read
+			join(reader);
+			if (pool == null) {
+				workers.shutdownNow();
+			}
+		}
+		if (failure instanceof Error) {
+			throw (Error) failure;
+		}
+		if (failure != null) {
+			throw new IOException(failure.getMessage(), failure);
+		}
+	}
+
+	/**
+	 * Wait for the end of the reader thread, even if interrupted meanwhile.
+	 *
+	 * @param reader Thread
+	 */
+	private static void join(final Thread reader) {
+		boolean interrupted = false;
+		while (reader.isAlive()) {
+			try {
+				reader.join();
+			} catch (InterruptedException ex) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Reader thread, cut every input into batches and submit them.
+	 *
+	 * @param inputs Array of CsvInput
+	 * @param workers ExecutorService
+	 * @param queue BlockingQueue of merged batches in input order
+	 */
+	private void read(final CsvInput[] inputs,
+			final ExecutorService workers,
+			final BlockingQueue<Future<Result>> queue
+	) {
+		Batch batch;
+		int length;
+		int index;
+		boolean done = false;
+		try {
+			while (!done && !stopped) {
+				batch = new Batch(inputs.length);
+				while (!done && !batch.isFull()) {
+					for (index = 0; index < inputs.length; index++) {
+						length = inputs[index].readLine();
+						if (length < 2) {
+							done = true;
+							break;
+						}
+						batch.lines[index].add(inputs[index].getLineBuffer(),
+							length, batch.size);
+						if (length > batch.peak) {
+							batch.peak = length;
+						}
+					}
+					if (!done) {
+						batch.size = batch.size + 1;
+					}
+				}
+				if (batch.size > 0) {
+					queue.put(workers.submit(task(batch)));
+				}
+			}
+		} catch (InterruptedException ex) {
+			// stopped by the writer
+		} catch (Throwable ex) {
+			// An Error as well, the writer must not take it for the end
+			if (!stopped) {
+				failure = ex;
+			}
+		} finally {
+			try {
+				queue.put(END);
+			} catch (InterruptedException ignore) {
+				queue.offer(END);
+			}
+		}
+	}
+
+	/**
+	 * Create the worker task of a batch.
+	 *
+	 * @param batch Batch
+	 * @return Callable
+	 */
+	private Callable<Result> task(final Batch batch) {
+		return new Callable<Result>() {
+			@Override
+			public Result call() throws IOException {
+				return mergeBatch(batch);
+			}
+		};
+	}
+
+	/**
+	 * Worker, tokenize and merge every line pair of a batch.
+	 *
+	 * @param batch Batch
+	 * @return Result
+	 * @throws IOException If any error writing into memory
+	 */
+	private Result mergeBatch(final Batch batch) throws IOException {
+		CsvTokenizer[] records = new CsvTokenizer[batch.lines.length];
+		Result result = new Result(batch);
+		long time = System.nanoTime();
+		int index;
+		int input;
+		boolean complete;
+		for (input = 0; input < records.length; input++) {
+			records[input] = new CsvTokenizer();
+			records[input].setFieldLimit(limits[input]);
+		}
+		for (index = 0; index < batch.size; index++) {
+			complete = true;
+			for (input = 0; input < records.length; input++) {
+				if (batch.lines[input].tokenize(records[input], index) < 2) {
+					result.stopped = true;
+					result.nanos = System.nanoTime() - time;
+					return result;
+				}
+				if (records[input].getFieldCount() < widths[input]) {
+					complete = false;
+				}
+			}
+			result.counters = result.counters + 1L;
+			if (complete) {
+				merger.write(records, result.output);
+			}
+			else {
+				result.ignored = result.ignored + 1L;
+			}
+		}
+		// Tokenizing and merging in memory, the parse time of the batch
+		result.nanos = System.nanoTime() - time;
+		return result;
+	}
+
+	/**
+	 * Get number of merged line pairs.
+	 *
+	 * @return long
+	 */
+	long getCounters() {
+		return counters;
+	}
+
+	/**
+	 * Get number of line pairs with less fields than the header.
+	 *
+	 * @return long
+	 */
+	long getIgnored() {
+		return ignored;
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>
+ * This ReadAheadInputStream class reads another InputStream on its own
+ * thread, a few buffers ahead of the reader. It lets the decompression of
+ * an input overlap with the parsing of the lines already decompressed.
+ * </p>
+ * <p>
+ * Buffers are recycled between both threads, an error of the source is
+ * thrown to the reader when it reaches it.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe,
+ * it is read by one thread while its own thread fills it.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class ReadAheadInputStream extends InputStream {
+
+	/**
+	 * Size of each buffer.
+	 */
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * Number of buffers read ahead.
+	 */
+	private static final int DEPTH = 4;
+
+	/**
+	 * Buffer filled by the source, marks the end of the source when empty.
+	 */
+	private static final class Chunk {
+
+		/**
+		 * Bytes read.
+		 */
+		private final byte[] data;
+
+		/**
+		 * Number of bytes in data, -1 at end of the source.
+		 */
+		private final int length;
+
+		/**
+		 * Error of the source, null if none.
+		 */
+		private final IOException error;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param pData Array of byte
+		 * @param pLength int number of bytes, -1 at end of the source
+		 * @param pError IOException error of the source or null
+		 */
+		Chunk(final byte[] pData, final int pLength, final IOException pError) {
+			data = pData;
+			length = pLength;
+			error = pError;
+		}
+	}
+
+	/**
+	 * Source of bytes, read by the read ahead thread.
+	 */
+	private final InputStream source;
+
+	/**
+	 * Buffers filled by the read ahead thread.
+	 */
+	private final BlockingQueue<Chunk> filled;
+
+	/**
+	 * Buffers given back to the read ahead thread.
+	 */
+	private final BlockingQueue<byte[]> free;
+
+	/**
+	 * Read ahead thread.
+	 */
+	private final Thread thread;
+
+	/**
+	 * Buffer being read, null before the first read.
+	 */
+	private Chunk current;
+
+	/**
+	 * Next byte to read in current.
+	 */
+	private int position;
+
+	/**
+	 * Constructor, starts the read ahead thread.
+	 *
+	 * @param pSource InputStream source of bytes
+	 * @param name String name of the thread
+	 */
+	ReadAheadInputStream(final InputStream pSource, final String name) {
+		Helper.checkObject(pSource, "pSource");
+		source = pSource;
+		filled = new ArrayBlockingQueue<Chunk>(DEPTH + 1);
+		free = new ArrayBlockingQueue<byte[]>(DEPTH + 1);
+		for (int index = 0; index < DEPTH; index++) {
+			free.add(new byte[BUFFER_SIZE]);
+		}
+		current = null;
+		position = 0;
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				fill();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Read ahead thread, fill every free buffer until the end of the source.
+	 */
+	private void fill() {
+		byte[] data;
+		int length;
+		int n;
+		try {
+			for (;;) {
+				data = free.take();
+				length = 0;
+				do {
+					n = source.read(data, length, data.length - length);
+					if (n > 0) {
+						length = length + n;
+					}
+				} while (n >= 0 && length < data.length);
+				if (length > 0) {
+					filled.put(new Chunk(data, length, null));
+				}
+				if (n < 0) {
+					filled.put(new Chunk(null, -1, null));
+					return;
+				}
+			}
+		} catch (IOException e) {
+			filled.offer(new Chunk(null, -1, e));
+		} catch (InterruptedException e) {
+			// Closed by the reader
+		}
+	}
+
+	/**
+	 * Take the next filled buffer once the current one is read.
+	 *
+	 * @return boolean false at end of the source
+	 * @throws IOException If the source failed
+	 */
+	private boolean next() throws IOException {
+		if (current != null) {
+			if (current.length < 0) {
+				return false;
+			}
+			if (position < current.length) {
+				return true;
+			}
+			free.offer(current.data);
+		}
+		try {
+			current = filled.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while reading ahead", e);
+		}
+		position = 0;
+		if (current.error != null) {
+			throw current.error;
+		}
+		return current.length >= 0;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!next()) {
+			return -1;
+		}
+		int b = current.data[position] & 0xFF;
+		position = position + 1;
+		return b;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		int n;
+		if (len == 0) {
+			return 0;
+		}
+		if (!next()) {
+			return -1;
+		}
+		n = Math.min(len, current.length - position);
+		System.arraycopy(current.data, position, b, off, n);
+		position = position + n;
+		return n;
+	}
+
+	/**
+	 * Stop the read ahead thread and close the source.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	public void close() throws IOException {
+		thread.interrupt();
+		source.close();
+	}
+
+}
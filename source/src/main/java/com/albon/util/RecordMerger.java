@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ * This RecordMerger class writes one output record out of one record of
+ * each input using the column mapping of the template.
+ * </p>
+ * <p>
+ * When a column exists on several inputs the longer value wins, on equal
+ * length the input given first wins. With two inputs A and B this is the
+ * original rule: A unless B is longer. Another ColumnRule may be given for
+ * each column, it is called with the records as they are read.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is not mutable thus thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class RecordMerger {
+
+	/**
+	 * For each output column, the inputs having it in precedence order.
+	 */
+	private final int[][] inputs;
+
+	/**
+	 * For each output column, the field of the column on each of inputs.
+	 */
+	private final int[][] fields;
+
+	/**
+	 * For each output column, the rule deciding its value.
+	 */
+	private final ColumnRule[] rules;
+
+	/**
+	 * Constructor, the longer value wins on every column.
+	 *
+	 * @param indexes Array of column mapping of each input, 1 based,
+	 *   0 if the column is not on the input
+	 */
+	RecordMerger(final int[][] indexes) {
+		this(indexes, null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param indexes Array of column mapping of each input, 1 based,
+	 *   0 if the column is not on the input
+	 * @param pRules Array of ColumnRule of each output column, null for
+	 *   the longer value on every column
+	 */
+	RecordMerger(final int[][] indexes, final ColumnRule[] pRules) {
+		int outputSize = indexes.length == 0 ? 0 : indexes[0].length;
+		int column;
+		int input;
+		int count;
+		inputs = new int[outputSize][];
+		fields = new int[outputSize][];
+		rules = new ColumnRule[outputSize];
+		for (column = 0; column < outputSize; column++) {
+			rules[column] = pRules == null || pRules[column] == null
+				? ColumnRule.LONGEST : pRules[column];
+			count = 0;
+			for (input = 0; input < indexes.length; input++) {
+				if (indexes[input][column] > 0) {
+					count = count + 1;
+				}
+			}
+			inputs[column] = new int[count];
+			fields[column] = new int[count];
+			count = 0;
+			for (input = 0; input < indexes.length; input++) {
+				if (indexes[input][column] > 0) {
+					inputs[column][count] = input;
+					fields[column][count] = indexes[input][column] - 1;
+					count = count + 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Constructor for input A and input B.
+	 *
+	 * @param pAIndexes Array of int mapping for input A
+	 * @param pBIndexes Array of int mapping for input B
+	 */
+	RecordMerger(final int[] pAIndexes, final int[] pBIndexes) {
+		this(new int[][] {pAIndexes, pBIndexes});
+	}
+
+	/**
+	 * Get number of output columns.
+	 *
+	 * @return int
+	 */
+	int getOutputSize() {
+		return inputs.length;
+	}
+
+	/**
+	 * Write the merged record.
+	 *
+	 * @param records Array of CsvRecord, one record of each input,
+	 *   null for an input without record
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	void write(final CsvRecord[] records, final OutputSink w
+	) throws IOException {
+		int column;
+		int[] from;
+		int[] field;
+		ColumnRule rule;
+		for (column = 0; column < inputs.length; column++) {
+			if (column > 0) {
+				w.write(',');
+			}
+			from = inputs[column];
+			field = fields[column];
+			rule = rules[column];
+			if (rule == ColumnRule.LONGEST && from.length == 1) {
+				// Single source, no length to compare
+				if (records[from[0]] != null) {
+					records[from[0]].writeField(field[0], w);
+				}
+			}
+			else {
+				rule.write(records, from, field, w);
+			}
+		}
+		w.endRow();
+	}
+
+}
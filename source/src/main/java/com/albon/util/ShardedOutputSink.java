@@ -0,0 +1,725 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+
+/**
+ * <p>
+ * This ShardedOutputSink class splits merged records into several output
+ * files, the shards, named after the output with a shard number before its
+ * extension: output-00000.csv, output-00001.csv... The header, the line
+ * ended by endHeader, starts every shard.
+ * </p>
+ * <p>
+ * Records go either to one shard after the other, a shard being closed once
+ * it holds shardRows records or before the next record takes it over
+ * shardBytes bytes once encoded in the charset of the shards, header
+ * included and before any compression, or to the shard
+ * chosen by the hash of one output column. A record is what was written
+ * until endRow, or endRows, whatever its quotes and line feeds, so a
+ * multi-line record is never split.
+ * </p>
+ * <p>
+ * Records are gathered into batches on the merge thread. Each batch is
+ * encoded, compressed and written by a pool of writer threads, in order
+ * within its shard, while the merge goes on. Shards are thus written
+ * concurrently. The arrays of the batches are taken from the shared
+ * BufferPool and given back once written.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe,
+ * it is written by one thread.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class ShardedOutputSink extends OutputSink {
+
+	/**
+	 * Characters of a batch handed to a writer.
+	 */
+	private static final int BATCH_SIZE = 256 * 1024;
+
+	/**
+	 * Initial size of the line buffer.
+	 */
+	private static final int LINE_SIZE = 8192;
+
+	/**
+	 * Batches waiting for or being written, at most.
+	 */
+	private static final int MAX_PENDING = 16;
+
+	/**
+	 * Write a batch.
+	 */
+	private static final int WRITE = 0;
+
+	/**
+	 * Flush the shard.
+	 */
+	private static final int FLUSH = 1;
+
+	/**
+	 * Close the shard.
+	 */
+	private static final int CLOSE = 2;
+
+	/**
+	 * One output file and its queue of batches, written by one writer at a
+	 * time.
+	 */
+	private final class Shard implements Runnable {
+		/**
+		 * Destination, used by the writers only.
+		 */
+		private final OutputSink sink;
+
+		/**
+		 * Tasks not yet written, the batch or null and the action.
+		 */
+		private final ArrayDeque<Object[]> tasks = new ArrayDeque<Object[]>();
+
+		/**
+		 * True while a writer drains tasks.
+		 */
+		private boolean running;
+
+		/**
+		 * Batch being filled by the merge thread.
+		 */
+		private CharArrayOutputSink batch;
+
+		/**
+		 * Records of this shard.
+		 */
+		private long rows;
+
+		/**
+		 * Encoded bytes of the header and records of this shard.
+		 */
+		private long bytes;
+
+		/**
+		 * True once closed by the merge thread.
+		 */
+		private boolean closed;
+
+		/**
+		 * Constructor, the header, if any, starts the first batch.
+		 *
+		 * @param pSink OutputSink
+		 * @throws IOException If any error at File I/O level
+		 */
+		private Shard(final OutputSink pSink) throws IOException {
+			sink = pSink;
+			batch = new CharArrayOutputSink(BATCH_SIZE, BufferPool.SHARED);
+			if (header != null) {
+				batch.write(header, 0, header.length);
+				batch.write('\n');
+				batch.endHeader();
+				bytes = headerBytes;
+			}
+		}
+
+		/**
+		 * Queue a task for a writer.
+		 *
+		 * @param action int WRITE, FLUSH or CLOSE
+		 * @throws IOException If a writer failed, not when closing
+		 */
+		private void submit(final int action) throws IOException {
+			CharArrayOutputSink b = null;
+			if (batch.size() > 0) {
+				b = batch;
+				batch = new CharArrayOutputSink(BATCH_SIZE, BufferPool.SHARED);
+			}
+			closed = action == CLOSE;
+			if (!closed) {
+				checkFailure();
+			}
+			pending.acquireUninterruptibly();
+			synchronized (this) {
+				tasks.add(new Object[] {b, action});
+				if (running) {
+					return;
+				}
+				running = true;
+			}
+			writers.execute(this);
+		}
+
+		/**
+		 * Write the queued batches in order.
+		 */
+		@Override
+		public void run() {
+			Object[] task;
+			CharArrayOutputSink b;
+			int action;
+			for (;;) {
+				synchronized (this) {
+					task = tasks.poll();
+					if (task == null) {
+						running = false;
+						return;
+					}
+				}
+				b = (CharArrayOutputSink) task[0];
+				action = (Integer) task[1];
+				try {
+					if (failure == null) {
+						if (b != null) {
+							b.writeTo(sink);
+						}
+						if (action == FLUSH) {
+							sink.flush();
+						}
+					}
+					if (action == CLOSE) {
+						sink.close();
+					}
+				} catch (IOException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				} finally {
+					if (b != null) {
+						b.release();
+					}
+					pending.release();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Output file the shard names derive from.
+	 */
+	private final String output;
+
+	/**
+	 * Charset of the shards.
+	 */
+	private final Charset charset;
+
+	/**
+	 * Records between two flush of a shard, 0 for none.
+	 */
+	private final int flushRows;
+
+	/**
+	 * True to force each shard on the storage device on close.
+	 */
+	private final boolean fsync;
+
+	/**
+	 * True to gzip compress each shard.
+	 */
+	private final boolean compress;
+
+	/**
+	 * Records of a shard, 0 for no limit.
+	 */
+	private final long shardRows;
+
+	/**
+	 * Encoded bytes of a shard, 0 for no limit.
+	 */
+	private final long shardBytes;
+
+	/**
+	 * True if the charset of the shards is UTF-8.
+	 */
+	private final boolean utf8;
+
+	/**
+	 * Encoder of the charset of the shards, null if UTF-8 or one byte per
+	 * character.
+	 */
+	private final CharsetEncoder encoder;
+
+	/**
+	 * Encoded bytes of the header and its line feed.
+	 */
+	private long headerBytes;
+
+	/**
+	 * Output column hashed to choose the shard, -1 to fill shards in order.
+	 */
+	private final int column;
+
+	/**
+	 * Number of shards chosen by hash, 0 to fill shards in order.
+	 */
+	private final int shardTotal;
+
+	/**
+	 * Shards opened, in order.
+	 */
+	private final List<Shard> shards;
+
+	/**
+	 * Shard filled in order, null until the next record.
+	 */
+	private Shard current;
+
+	/**
+	 * Writer threads.
+	 */
+	private final ExecutorService writers;
+
+	/**
+	 * Permits of the batches not yet written.
+	 */
+	private final Semaphore pending;
+
+	/**
+	 * First error of a writer, null if none.
+	 */
+	private volatile IOException failure;
+
+	/**
+	 * Header line, null until the header is ended.
+	 */
+	private char[] header;
+
+	/**
+	 * Row lengths sizing the line buffer.
+	 */
+	private final BufferPool.Rows sizes;
+
+	/**
+	 * Characters of the current record, taken from the pool.
+	 */
+	private char[] line;
+
+	/**
+	 * Number of characters in line.
+	 */
+	private int length;
+
+	/**
+	 * Tokenizer of a record to hash its column.
+	 */
+	private final CsvTokenizer tokenizer;
+
+	/**
+	 * Constructor of shards filled one after the other.
+	 *
+	 * @param pOutput String output file the shard names derive from
+	 * @param pCharset Charset of the shards
+	 * @param pFlushRows int records between two flush of a shard, 0 for none
+	 * @param pFsync boolean true to force each shard on the storage device
+	 * @param pCompress boolean true to gzip compress each shard
+	 * @param pShardRows long records of a shard, 0 for no limit
+	 * @param pShardBytes long encoded bytes of a shard, 0 for no limit
+	 * @throws IllegalArgumentException If a parameter is null or both limits are 0
+	 */
+	public ShardedOutputSink(final String pOutput,
+			final Charset pCharset,
+			final int pFlushRows,
+			final boolean pFsync,
+			final boolean pCompress,
+			final long pShardRows,
+			final long pShardBytes
+	) {
+		this(pOutput, pCharset, pFlushRows, pFsync, pCompress, pShardRows,
+			pShardBytes, -1, 0);
+		if (pShardRows <= 0L && pShardBytes <= 0L) {
+			throw new IllegalArgumentException("Shards need a number of rows or bytes");
+		}
+	}
+
+	/**
+	 * Constructor of shards chosen by the hash of an output column.
+	 *
+	 * @param pOutput String output file the shard names derive from
+	 * @param pCharset Charset of the shards
+	 * @param pFlushRows int records between two flush of a shard, 0 for none
+	 * @param pFsync boolean true to force each shard on the storage device
+	 * @param pCompress boolean true to gzip compress each shard
+	 * @param pColumn int output column, 0 based
+	 * @param pShards int number of shards
+	 * @throws IllegalArgumentException If a parameter is null or out of range
+	 */
+	public ShardedOutputSink(final String pOutput,
+			final Charset pCharset,
+			final int pFlushRows,
+			final boolean pFsync,
+			final boolean pCompress,
+			final int pColumn,
+			final int pShards
+	) {
+		this(pOutput, pCharset, pFlushRows, pFsync, pCompress, 0L, 0L,
+			pColumn, pShards);
+		if (pColumn < 0 || pShards < 1) {
+			throw new IllegalArgumentException("Invalid shard column or shards");
+		}
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pOutput String
+	 * @param pCharset Charset
+	 * @param pFlushRows int
+	 * @param pFsync boolean
+	 * @param pCompress boolean
+	 * @param pShardRows long
+	 * @param pShardBytes long
+	 * @param pColumn int
+	 * @param pShards int
+	 */
+	private ShardedOutputSink(final String pOutput,
+			final Charset pCharset,
+			final int pFlushRows,
+			final boolean pFsync,
+			final boolean pCompress,
+			final long pShardRows,
+			final long pShardBytes,
+			final int pColumn,
+			final int pShards
+	) {
+		super(0);
+		Helper.checkStringNullOrEmpty(pOutput, "pOutput");
+		Helper.checkObject(pCharset, "pCharset");
+		output = pOutput;
+		charset = pCharset;
+		flushRows = pFlushRows;
+		fsync = pFsync;
+		compress = pCompress;
+		shardRows = pShardRows;
+		shardBytes = pShardBytes;
+		utf8 = StandardCharsets.UTF_8.equals(pCharset);
+		if (utf8 || pCharset.newEncoder().maxBytesPerChar() <= 1.0F) {
+			encoder = null;
+		}
+		else {
+			encoder = pCharset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+		headerBytes = 0L;
+		column = pColumn;
+		shardTotal = pShards;
+		shards = new ArrayList<Shard>();
+		current = null;
+		writers = Gzip.pool(Math.min(Gzip.threads(), column < 0 ? 2 : pShards),
+			"mergecsv-shard");
+		pending = new Semaphore(MAX_PENDING);
+		failure = null;
+		header = null;
+		line = BufferPool.SHARED.takeChars(LINE_SIZE);
+		sizes = new BufferPool.Rows(BufferPool.SHARED, LINE_SIZE,
+			BufferPool.Rows.DEFAULT_SHRINK_ROWS);
+		length = 0;
+		tokenizer = new CsvTokenizer();
+	}
+
+	/**
+	 * Get the file name of a shard: the output file name with the shard
+	 * number before its extension, output-00000.csv for output.csv.
+	 *
+	 * @param output String output file
+	 * @param index int shard number
+	 * @return String
+	 */
+	public static String shardName(final String output, final int index) {
+		String suffix = "";
+		String base = output;
+		int dot;
+		if (base.endsWith(Gzip.EXTENSION)) {
+			suffix = Gzip.EXTENSION;
+			base = base.substring(0, base.length() - suffix.length());
+		}
+		dot = base.lastIndexOf('.');
+		if (dot > base.lastIndexOf('/') + 1 && dot > base.lastIndexOf('\\') + 1) {
+			suffix = base.substring(dot) + suffix;
+			base = base.substring(0, dot);
+		}
+		return String.format("%s-%05d%s", base, index, suffix);
+	}
+
+	/**
+	 * Get number of shards opened.
+	 *
+	 * @return int
+	 */
+	public int getShards() {
+		return shards.size();
+	}
+
+	@Override
+	public void write(final char c) {
+		if (length == line.length) {
+			line = sizes.grow(line, length, length + 1);
+		}
+		line[length++] = c;
+	}
+
+	@Override
+	public void write(final char[] buffer, final int offset, final int size) {
+		if (length + size > line.length) {
+			line = sizes.grow(line, length, length + size);
+		}
+		System.arraycopy(buffer, offset, line, length, size);
+		length = length + size;
+	}
+
+	@Override
+	public void write(final String s) {
+		int size = s.length();
+		if (length + size > line.length) {
+			line = sizes.grow(line, length, length + size);
+		}
+		s.getChars(0, size, line, length);
+		length = length + size;
+	}
+
+	/**
+	 * Keep the header, or route the record just ended to its shard.
+	 *
+	 * @param count int records ended, 0 for the header
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	protected void ended(final int count) throws IOException {
+		if (count == 0 && header == null) {
+			header = Arrays.copyOf(line, length > 0 && line[length - 1] == '\n'
+				? length - 1 : length);
+			headerBytes = shardBytes > 0L ? encodedLength(line, length) : 0L;
+			length = 0;
+			openAll();
+			return;
+		}
+		route(count);
+	}
+
+	/**
+	 * Open every shard chosen by hash, each exists even without records.
+	 *
+	 * @throws IOException If a shard file can't be created
+	 */
+	private void openAll() throws IOException {
+		if (column >= 0) {
+			while (shards.size() < shardTotal) {
+				open();
+			}
+		}
+	}
+
+	/**
+	 * Route the characters of the current record to its shard. Several
+	 * records ended together go as one, to the shard of the first.
+	 *
+	 * @param count int records of the characters, 0 if not ended
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void route(final int count) throws IOException {
+		Shard shard;
+		long bytes = shardBytes > 0L ? encodedLength(line, length) : 0L;
+		int fields;
+		openAll();
+		if (column >= 0) {
+			fields = tokenizer.tokenize(line,
+				length > 0 && line[length - 1] == '\n' ? length - 1 : length);
+			shard = shards.get(fields > column
+				? (tokenizer.hashCode(column) & 0x7fffffff) % shardTotal
+				: 0);
+		}
+		else {
+			if (current != null && shardBytes > 0L && current.rows > 0L
+					&& current.bytes + bytes > shardBytes) {
+				// A shard holds at least one record, even a larger one
+				current.submit(CLOSE);
+				current = null;
+			}
+			if (current == null) {
+				current = open();
+			}
+			shard = current;
+		}
+		if (shard.batch.size() > 0
+				&& shard.batch.size() + length > BATCH_SIZE) {
+			// A full batch goes as is, its pooled array is not grown
+			shard.submit(WRITE);
+		}
+		shard.batch.write(line, 0, length);
+		if (count > 0) {
+			shard.batch.endRows(count);
+		}
+		shard.rows = shard.rows + count;
+		shard.bytes = shard.bytes + bytes;
+		sizes.add(length);
+		length = 0;
+		line = sizes.shrink(line);
+		if (column < 0 && shardRows > 0L && shard.rows >= shardRows) {
+			shard.submit(CLOSE);
+			current = null;
+		}
+		else if (shard.batch.size() >= BATCH_SIZE) {
+			shard.submit(WRITE);
+		}
+	}
+
+	/**
+	 * Get the number of bytes of characters once encoded in the charset of
+	 * the shards.
+	 *
+	 * @param chars Array of char
+	 * @param size int number of characters
+	 * @return long
+	 * @throws IOException If the characters can't be encoded
+	 */
+	private long encodedLength(final char[] chars, final int size)
+			throws IOException {
+		long bytes;
+		int index;
+		char c;
+		if (encoder != null) {
+			encoder.reset();
+			return encoder.encode(CharBuffer.wrap(chars, 0, size)).remaining();
+		}
+		if (!utf8) {
+			return size;
+		}
+		bytes = size;
+		for (index = 0; index < size; index++) {
+			c = chars[index];
+			if (c >= 0x80) {
+				if (c < 0x800) {
+					bytes = bytes + 1L;
+				}
+				else if (Character.isHighSurrogate(c) && index + 1 < size
+						&& Character.isLowSurrogate(chars[index + 1])) {
+					// 4 bytes for the pair of chars
+					bytes = bytes + 2L;
+					index = index + 1;
+				}
+				else {
+					bytes = bytes + 2L;
+				}
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Open the next shard.
+	 *
+	 * @return Shard
+	 * @throws IOException If the shard file can't be created
+	 */
+	private Shard open() throws IOException {
+		Shard shard;
+		try {
+			shard = new Shard(Helper.createOutputSink(
+				shardName(output, shards.size()), "shard", charset, flushRows,
+				fsync, compress));
+		} catch (MergeCsvException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+		shards.add(shard);
+		return shard;
+	}
+
+	/**
+	 * Throw the first error of a writer.
+	 *
+	 * @throws IOException If a writer failed
+	 */
+	private void checkFailure() throws IOException {
+		IOException e = failure;
+		if (e != null) {
+			throw new IOException("Error writing shard: "+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Wait until every queued task is done.
+	 */
+	private void await() {
+		pending.acquireUninterruptibly(MAX_PENDING);
+		pending.release(MAX_PENDING);
+	}
+
+	/**
+	 * Write every record so far into the open shards.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	public void flush() throws IOException {
+		for (Shard shard : shards) {
+			if (!shard.closed) {
+				shard.submit(FLUSH);
+			}
+		}
+		await();
+		checkFailure();
+	}
+
+	/**
+	 * Write every record and close the shards, a shard with the header only
+	 * is written if there was no record. Characters of a record not ended
+	 * are written as they are. The line buffer goes back to the pool.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (length > 0) {
+				route(0);
+			}
+			if (header != null && shards.isEmpty()) {
+				open();
+			}
+			for (Shard shard : shards) {
+				if (!shard.closed) {
+					shard.submit(CLOSE);
+				}
+			}
+			await();
+		} finally {
+			writers.shutdown();
+			BufferPool.SHARED.give(line);
+			line = null;
+		}
+		checkFailure();
+	}
+
+}
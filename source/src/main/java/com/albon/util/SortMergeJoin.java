@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * This SortMergeJoin class joins input A and input B on a key column with
+ * bounded memory. Both inputs are sorted by ExternalSorter then streamed
+ * side by side, only the records of input B sharing the current key are
+ * kept in memory.
+ * </p>
+ * <p>
+ * Merged records are written in key order.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class SortMergeJoin extends KeyJoin {
+
+	/**
+	 * Memory budget in bytes of each sort.
+	 */
+	private final long memoryBudget;
+
+	/**
+	 * Directory of run files, null for the default temporary directory.
+	 */
+	private final File tmpDir;
+
+	/**
+	 * Tokenizer of records of input A.
+	 */
+	private final CsvTokenizer aRecord;
+
+	/**
+	 * Tokenizer of records of input B.
+	 */
+	private final CsvTokenizer bRecord;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pMerger RecordMerger
+	 * @param pJoinType JoinType
+	 * @param pMemoryBudget long bytes of records kept in memory by each sort
+	 * @param pTmpDir File directory of run files or null
+	 */
+	SortMergeJoin(final RecordMerger pMerger, final JoinType pJoinType,
+			final long pMemoryBudget, final File pTmpDir
+	) {
+		super(pMerger, pJoinType);
+		memoryBudget = pMemoryBudget;
+		tmpDir = pTmpDir;
+		aRecord = new CsvTokenizer();
+		bRecord = new CsvTokenizer();
+	}
+
+	/**
+	 * Join both inputs.
+	 *
+	 * @param aInput CsvInput input A
+	 * @param aKey int key column of input A, 0 based
+	 * @param bInput CsvInput input B
+	 * @param bKey int key column of input B, 0 based
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	void join(final CsvInput aInput, final int aKey,
+			final CsvInput bInput, final int bKey,
+			final OutputSink w
+	) throws IOException {
+		ExternalSorter aSorter = new ExternalSorter(memoryBudget, tmpDir);
+		ExternalSorter bSorter = new ExternalSorter(memoryBudget, tmpDir);
+		ExternalSorter.SortedRecords aSorted = null;
+		ExternalSorter.SortedRecords bSorted = null;
+		aRecord.setFieldLimit(aInput.getFieldLimit());
+		bRecord.setFieldLimit(bInput.getFieldLimit());
+		try {
+			aSorted = aSorter.sort(aInput, aKey);
+			bSorted = bSorter.sort(bInput, bKey);
+			ignored = aSorter.getIgnored() + bSorter.getIgnored();
+			merge(aSorted, bSorted, w);
+		} finally {
+			if (aSorted != null) {
+				aSorted.close();
+			}
+			if (bSorted != null) {
+				bSorted.close();
+			}
+		}
+	}
+
+	/**
+	 * Stream both sorted inputs side by side.
+	 *
+	 * @param aSorted SortedRecords of input A
+	 * @param bSorted SortedRecords of input B
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void merge(final ExternalSorter.SortedRecords aSorted,
+			final ExternalSorter.SortedRecords bSorted,
+			final OutputSink w
+	) throws IOException {
+		List<String> group = new ArrayList<String>();
+		ExternalSorter.Record a = aSorted.next();
+		ExternalSorter.Record b = bSorted.next();
+		String key;
+		int c;
+		while (a != null && b != null) {
+			if (a.getKey().length() < 1) {
+				writeA(a, w);
+				a = aSorted.next();
+				continue;
+			}
+			if (b.getKey().length() < 1) {
+				writeB(b, w);
+				b = bSorted.next();
+				continue;
+			}
+			c = a.getKey().compareTo(b.getKey());
+			if (c < 0) {
+				writeA(a, w);
+				a = aSorted.next();
+			}
+			else if (c > 0) {
+				writeB(b, w);
+				b = bSorted.next();
+			}
+			else {
+				// Keep every record of input B with this key
+				key = b.getKey();
+				group.clear();
+				do {
+					group.add(b.getLine());
+					b = bSorted.next();
+				} while (b != null && key.equals(b.getKey()));
+
+				do {
+					aRecord.tokenize(a.getLine());
+					for (String line : group) {
+						bRecord.tokenize(line);
+						write(aRecord, bRecord, w);
+						counters = counters + 1L;
+					}
+					a = aSorted.next();
+				} while (a != null && key.equals(a.getKey()));
+			}
+		}
+		for ( ; a != null; a = aSorted.next()) {
+			writeA(a, w);
+		}
+		for ( ; b != null; b = bSorted.next()) {
+			writeB(b, w);
+		}
+	}
+
+	/**
+	 * Count and write if kept a record of input A without match.
+	 *
+	 * @param a Record
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void writeA(final ExternalSorter.Record a, final OutputSink w
+	) throws IOException {
+		unmatchedA++;
+		if (joinType.keepA()) {
+			aRecord.tokenize(a.getLine());
+			write(aRecord, null, w);
+		}
+	}
+
+	/**
+	 * Count and write if kept a record of input B without match.
+	 *
+	 * @param b Record
+	 * @param w OutputSink
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void writeB(final ExternalSorter.Record b, final OutputSink w
+	) throws IOException {
+		unmatchedB++;
+		if (joinType.keepB()) {
+			bRecord.tokenize(b.getLine());
+			write(null, bRecord, w);
+		}
+	}
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * This Swar class searches the bytes of a line eight at a time, SIMD within
+ * a register: eight bytes are read as one little endian long, compared to a
+ * byte repeated eight times, and the first equal byte is found by counting
+ * the trailing zero bits of the result. Double quotes, commas and line
+ * terminators are thus found without a branch on each byte in between,
+ * which pays off on long quoted fields such as HTML pages.
+ * </p>
+ * <p>
+ * The search is turned off with -Dmergecsv.scan=scalar, the callers then
+ * look at one byte at a time as before. The buffers searched must be
+ * ordered ByteOrder.LITTLE_ENDIAN.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is not mutable thus thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class Swar {
+
+	/**
+	 * True to search eight bytes at a time, false with -Dmergecsv.scan=scalar.
+	 */
+	static final boolean ENABLED = !"scalar".equalsIgnoreCase(
+		System.getProperty("mergecsv.scan"));
+
+	/**
+	 * Byte 0x01 repeated eight times.
+	 */
+	private static final long ONES = 0x0101010101010101L;
+
+	/**
+	 * Byte 0x7F repeated eight times.
+	 */
+	private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+	/**
+	 * Double quote repeated eight times.
+	 */
+	static final long QUOTES = pattern((byte) '"');
+
+	/**
+	 * Comma repeated eight times.
+	 */
+	static final long COMMAS = pattern((byte) ',');
+
+	/**
+	 * Carriage return repeated eight times.
+	 */
+	static final long CRS = pattern((byte) '\r');
+
+	/**
+	 * Line feed repeated eight times.
+	 */
+	static final long LFS = pattern((byte) '\n');
+
+	/**
+	 * Private constructor, static methods only.
+	 */
+	private Swar() {
+	}
+
+	/**
+	 * Repeat a byte eight times.
+	 *
+	 * @param b byte
+	 * @return long
+	 */
+	static long pattern(final byte b) {
+		return (b & 0xFFL) * ONES;
+	}
+
+	/**
+	 * Mark the zero bytes of a long, exactly: no carry crosses a byte.
+	 *
+	 * @param v long
+	 * @return long 0x80 in each zero byte, 0 elsewhere
+	 */
+	private static long zeros(final long v) {
+		return ~(((v & LOW7) + LOW7) | v | LOW7);
+	}
+
+	/**
+	 * Get the offset of the first marked byte.
+	 *
+	 * @param from int offset of the long
+	 * @param marks long marks of zeros, not 0
+	 * @return int
+	 */
+	private static int first(final int from, final long marks) {
+		return from + (Long.numberOfTrailingZeros(marks) >>> 3);
+	}
+
+	/**
+	 * Find the first byte equal to a pattern.
+	 *
+	 * @param b ByteBuffer ordered little endian
+	 * @param from int offset of the first byte
+	 * @param to int end offset of the bytes
+	 * @param p long pattern of the byte
+	 * @return int offset of the byte, to if not found
+	 */
+	static int indexOf(final ByteBuffer b, final int from, final int to,
+			final long p
+	) {
+		int index = from;
+		long marks;
+		byte c = (byte) p;
+		for (; index + 8 <= to; index += 8) {
+			marks = zeros(b.getLong(index) ^ p);
+			if (marks != 0L) {
+				return first(index, marks);
+			}
+		}
+		for (; index < to; index++) {
+			if (b.get(index) == c) {
+				break;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Find the first byte equal to one of two patterns.
+	 *
+	 * @param b ByteBuffer ordered little endian
+	 * @param from int offset of the first byte
+	 * @param to int end offset of the bytes
+	 * @param p1 long pattern of the first byte
+	 * @param p2 long pattern of the second byte
+	 * @return int offset of the byte, to if not found
+	 */
+	static int indexOf(final ByteBuffer b, final int from, final int to,
+			final long p1, final long p2
+	) {
+		int index = from;
+		long word;
+		long marks;
+		byte c;
+		for (; index + 8 <= to; index += 8) {
+			word = b.getLong(index);
+			marks = zeros(word ^ p1) | zeros(word ^ p2);
+			if (marks != 0L) {
+				return first(index, marks);
+			}
+		}
+		for (; index < to; index++) {
+			c = b.get(index);
+			if (c == (byte) p1 || c == (byte) p2) {
+				break;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Find the first byte equal to one of three patterns.
+	 *
+	 * @param b ByteBuffer ordered little endian
+	 * @param from int offset of the first byte
+	 * @param to int end offset of the bytes
+	 * @param p1 long pattern of the first byte
+	 * @param p2 long pattern of the second byte
+	 * @param p3 long pattern of the third byte
+	 * @return int offset of the byte, to if not found
+	 */
+	static int indexOf(final ByteBuffer b, final int from, final int to,
+			final long p1, final long p2, final long p3
+	) {
+		int index = from;
+		long word;
+		long marks;
+		byte c;
+		for (; index + 8 <= to; index += 8) {
+			word = b.getLong(index);
+			marks = zeros(word ^ p1) | zeros(word ^ p2) | zeros(word ^ p3);
+			if (marks != 0L) {
+				return first(index, marks);
+			}
+		}
+		for (; index < to; index++) {
+			c = b.get(index);
+			if (c == (byte) p1 || c == (byte) p2 || c == (byte) p3) {
+				break;
+			}
+		}
+		return index;
+	}
+
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * This Utf8CsvTokenizer class splits one UTF-8 encoded line into fields on
+ * the raw bytes, the same way CsvTokenizer does on characters. Comma, double
+ * quote, space and line terminators are ASCII thus never part of a multi
+ * byte sequence, fields are kept as byte offsets and written as bytes.
+ * </p>
+ * <p>
+ * Field lengths are counted in UTF-16 characters so that the longer field
+ * of a merge is the same one as with CsvTokenizer. The character following
+ * a closing double quote is skipped as a whole sequence; when it is a four
+ * byte sequence CsvTokenizer skips only half of its surrogate pair, such a
+ * line is reported by needsDecoding to be tokenized as characters instead.
+ * Malformed sequences are copied as they are.
+ * </p>
+ * <p>
+ * The next double quote, or comma outside double quotes, is searched eight
+ * bytes at a time by Swar unless it is turned off.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * One instance is meant to be reused line after line by a single thread.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class Utf8CsvTokenizer implements CsvRecord {
+
+	/**
+	 * Double quote character.
+	 */
+	private static final byte DOUBLE_QUOTE = '"';
+
+	/**
+	 * Field delimiter character.
+	 */
+	private static final byte DELIMITER = ',';
+
+	/**
+	 * Field is written as is.
+	 */
+	private static final int AS_IS = 0;
+
+	/**
+	 * Field is a literal missing its closing double quote.
+	 */
+	private static final int CLOSE_QUOTE = 1;
+
+	/**
+	 * Field contains a space and is wrapped in double quotes.
+	 */
+	private static final int WRAP_QUOTE = 2;
+
+	/**
+	 * Initial number of fields.
+	 */
+	private static final int INITIAL_FIELDS = 16;
+
+	/**
+	 * Line buffer, referenced.
+	 */
+	private byte[] line;
+
+	/**
+	 * Line buffer wrapped for reading eight bytes at a time.
+	 */
+	private ByteBuffer words;
+
+	/**
+	 * Offset of the line in line buffer.
+	 */
+	private int base;
+
+	/**
+	 * End offset of the line in line buffer.
+	 */
+	private int length;
+
+	/**
+	 * Start offset of each field.
+	 */
+	private int[] starts;
+
+	/**
+	 * End offset (exclusive) of each field.
+	 */
+	private int[] ends;
+
+	/**
+	 * Fix up of each field, one of AS_IS, CLOSE_QUOTE or WRAP_QUOTE.
+	 */
+	private int[] fixes;
+
+	/**
+	 * Number of fields found on the last line.
+	 */
+	private int fieldCount;
+
+	/**
+	 * Number of fields after which the scan of a line stops.
+	 */
+	private int fieldLimit;
+
+	/**
+	 * True if the last line splits a surrogate pair.
+	 */
+	private boolean splitPair;
+
+	/**
+	 * Default constructor.
+	 */
+	public Utf8CsvTokenizer() {
+		line = new byte[0];
+		words = null;
+		base = 0;
+		length = 0;
+		starts = new int[INITIAL_FIELDS];
+		ends = new int[INITIAL_FIELDS];
+		fixes = new int[INITIAL_FIELDS];
+		fieldCount = 0;
+		fieldLimit = Integer.MAX_VALUE;
+		splitPair = false;
+	}
+
+	/**
+	 * Tokenize the given bytes, the buffer is referenced not copied thus it
+	 * must not be modified while fields are in use.
+	 *
+	 * @param buffer Array of byte
+	 * @param size int number of bytes in buffer
+	 * @return int number of fields
+	 */
+	public int tokenize(final byte[] buffer, final int size) {
+		return tokenize(buffer, 0, size);
+	}
+
+	/**
+	 * Tokenize the given bytes starting at an offset, the buffer is
+	 * referenced not copied thus it must not be modified while fields are
+	 * in use.
+	 *
+	 * @param buffer Array of byte
+	 * @param offset int offset of the line in buffer
+	 * @param size int number of bytes of the line
+	 * @return int number of fields
+	 */
+	public int tokenize(final byte[] buffer, final int offset, final int size) {
+		int index = offset;
+		int next;
+		int to = offset + size;
+		line = buffer;
+		if (Swar.ENABLED && (words == null || words.array() != buffer)) {
+			words = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		base = offset;
+		length = to;
+		fieldCount = 0;
+		splitPair = false;
+		do {
+			if (fieldCount == starts.length) {
+				grow();
+			}
+			next = scanField(index);
+			if (next == index) {
+				break;
+			}
+			fieldCount = fieldCount + 1;
+			index = next;
+		} while (next < to && fieldCount < fieldLimit);
+
+		return fieldCount;
+	}
+
+	/**
+	 * Stop the scan of each line after the given number of fields, as
+	 * CsvTokenizer.setFieldLimit.
+	 *
+	 * @param pFieldLimit int number of fields, Integer.MAX_VALUE for all
+	 * @throws IllegalArgumentException If given pFieldLimit is less than 1
+	 */
+	public void setFieldLimit(final int pFieldLimit) {
+		if (pFieldLimit < 1) {
+			throw new IllegalArgumentException("Invalid field limit '"+ pFieldLimit +"'");
+		}
+		fieldLimit = pFieldLimit;
+	}
+
+	/**
+	 * Scan one field starting at the given offset and record its boundaries
+	 * at slot fieldCount.
+	 *
+	 * @param pOffset int start of the field
+	 * @return int start of the next field
+	 */
+	private int scanField(final int pOffset) {
+		final byte[] b = line;
+		final int limit = length;
+		int offset = pOffset;
+		int start = pOffset;
+		int end;
+		byte c;
+		boolean inLiteral = false;
+		if (offset < limit) {
+			if (b[offset] == DOUBLE_QUOTE) {
+				inLiteral = true;
+				offset = offset + 1;
+				// Check two-double-quote
+				if (offset < limit && b[offset] == DOUBLE_QUOTE) {
+					offset = offset + 1;
+					inLiteral = false;
+				}
+			}
+		}
+		end = offset;
+		while (offset < limit) {
+			if (Swar.ENABLED) {
+				// Skip the bytes up to the next one that matters
+				offset = inLiteral
+					? Swar.indexOf(words, offset, limit, Swar.QUOTES)
+					: Swar.indexOf(words, offset, limit, Swar.QUOTES, Swar.COMMAS);
+				end = offset;
+				if (offset == limit) {
+					break;
+				}
+			}
+			c = b[offset];
+			offset = offset + 1;
+			if (c == DELIMITER && inLiteral) {
+				end = offset;
+				continue;
+			}
+			if (c == DOUBLE_QUOTE) {
+				// Check for two-double-quote
+				if (offset < limit && b[offset] == DOUBLE_QUOTE) {
+					offset = offset + 1;
+					end = offset;
+					continue;
+				}
+				end = offset;
+				offset = skipChar(offset);
+				offset = skipBlanks(offset);
+				break;
+			}
+			if (c == DELIMITER) {
+				offset = skipBlanks(offset);
+				break;
+			}
+			end = offset;
+		}
+
+		int fix = AS_IS;
+		if (inLiteral) {
+			// Fix in literal delimiter
+			if (end - start < 2) {
+				end = start;
+			}
+			else if (b[end - 1] != DOUBLE_QUOTE) {
+				fix = CLOSE_QUOTE;
+			}
+		}
+		else {
+			// Fix string with embedded space, bytes of multi byte
+			// sequences are above ' ' once unsigned
+			while (start < end && (b[start] & 0xFF) <= ' ') {
+				start = start + 1;
+			}
+			while (end > start && (b[end - 1] & 0xFF) <= ' ') {
+				end = end - 1;
+			}
+			for (int i = start + 1; i < end; i++) {
+				if (b[i] == ' ') {
+					fix = WRAP_QUOTE;
+					break;
+				}
+			}
+		}
+		starts[fieldCount] = start;
+		ends[fieldCount] = end;
+		fixes[fieldCount] = fix;
+		return offset;
+	}
+
+	/**
+	 * Skip the whole sequence of the character at the given offset.
+	 *
+	 * @param pOffset int
+	 * @return int offset of the next character
+	 */
+	private int skipChar(final int pOffset) {
+		int c;
+		if (pOffset >= length) {
+			return pOffset + 1;
+		}
+		c = line[pOffset];
+		if (c >= 0 || (c & 0xC0) == 0x80) {
+			return pOffset + 1;
+		}
+		if ((c & 0xE0) == 0xC0) {
+			return pOffset + 2;
+		}
+		if ((c & 0xF0) == 0xE0) {
+			return pOffset + 3;
+		}
+		splitPair = true;
+		return pOffset + 4;
+	}
+
+	/**
+	 * Check if the last line must be decoded and tokenized as characters
+	 * to get the same fields as CsvTokenizer.
+	 *
+	 * @return boolean
+	 */
+	public boolean needsDecoding() {
+		return splitPair;
+	}
+
+	/**
+	 * Skip spaces and tabs.
+	 *
+	 * @param pOffset int
+	 * @return int offset of the first non blank byte
+	 */
+	private int skipBlanks(final int pOffset) {
+		int offset = pOffset;
+		while (offset < length) {
+			byte c = line[offset];
+			if (c == ' ' || c == '\t') {
+				offset = offset + 1;
+			}
+			else {
+				break;
+			}
+		}
+		return offset;
+	}
+
+	/**
+	 * Double the capacity of the field offsets.
+	 */
+	private void grow() {
+		int size = starts.length * 2;
+		int[] p = new int[size];
+		System.arraycopy(starts, 0, p, 0, fieldCount);
+		starts = p;
+		p = new int[size];
+		System.arraycopy(ends, 0, p, 0, fieldCount);
+		ends = p;
+		p = new int[size];
+		System.arraycopy(fixes, 0, p, 0, fieldCount);
+		fixes = p;
+	}
+
+	@Override
+	public int getFieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * Get the length of a field as it is written, in UTF-16 characters: one
+	 * for each byte that does not continue a sequence, one more for each
+	 * four byte sequence which is a surrogate pair.
+	 *
+	 * @param index int field index
+	 * @return int
+	 */
+	@Override
+	public int getFieldLength(final int index) {
+		final byte[] b = line;
+		int end = ends[index];
+		int size = 0;
+		int c;
+		for (int i = starts[index]; i < end; i++) {
+			c = b[i];
+			if (c >= 0) {
+				size = size + 1;
+			}
+			else if ((c & 0xC0) != 0x80) {
+				size = (c & 0xF8) == 0xF0 ? size + 2 : size + 1;
+			}
+		}
+		switch (fixes[index]) {
+		case CLOSE_QUOTE:
+			return size + 1;
+		case WRAP_QUOTE:
+			return size + 2;
+		default:
+			return size;
+		}
+	}
+
+	@Override
+	public String getField(final int index) {
+		int start = starts[index];
+		int size = ends[index] - start;
+		switch (fixes[index]) {
+		case CLOSE_QUOTE:
+			return new String(line, start, size, StandardCharsets.UTF_8) + '"';
+		case WRAP_QUOTE:
+			return '"' + new String(line, start, size, StandardCharsets.UTF_8) + '"';
+		default:
+			return new String(line, start, size, StandardCharsets.UTF_8);
+		}
+	}
+
+	@Override
+	public void writeField(final int index, final OutputSink w) throws IOException {
+		int start = starts[index];
+		int size = ends[index] - start;
+		int fix = fixes[index];
+		if (fix == WRAP_QUOTE) {
+			w.write('"');
+		}
+		w.writeUtf8(line, start, size);
+		if (fix != AS_IS) {
+			w.write('"');
+		}
+	}
+
+	@Override
+	public String[] toArray() {
+		String[] datas = new String[fieldCount];
+		for (int index = 0; index < fieldCount; index++) {
+			datas[index] = getField(index);
+		}
+		return datas;
+	}
+
+	@Override
+	public String getLine() {
+		return new String(line, base, length - base, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * <p>
+ * This WriterOutputSink class writes records into a Writer owned by the
+ * caller. Small writes are gathered in a char buffer and handed to the
+ * Writer in blocks, the Writer is flushed but never closed.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public final class WriterOutputSink extends OutputSink {
+
+	/**
+	 * Size of the char buffer.
+	 */
+	private static final int BUFFER_SIZE = 65536;
+
+	/**
+	 * Destination.
+	 */
+	private final Writer writer;
+
+	/**
+	 * Characters waiting to be written.
+	 */
+	private final char[] buffer;
+
+	/**
+	 * Number of characters in buffer.
+	 */
+	private int count;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param pWriter Writer destination
+	 * @param pFlushRows int records between two flush, 0 for none
+	 */
+	public WriterOutputSink(final Writer pWriter, final int pFlushRows) {
+		super(pFlushRows);
+		Helper.checkObject(pWriter, "pWriter");
+		writer = pWriter;
+		buffer = new char[BUFFER_SIZE];
+		count = 0;
+	}
+
+	@Override
+	public void write(final char c) throws IOException {
+		if (count == buffer.length) {
+			drain();
+		}
+		buffer[count++] = c;
+	}
+
+	@Override
+	public void write(final char[] chars, final int offset, final int length
+	) throws IOException {
+		if (length > buffer.length - count) {
+			drain();
+			if (length > buffer.length) {
+				writer.write(chars, offset, length);
+				return;
+			}
+		}
+		System.arraycopy(chars, offset, buffer, count, length);
+		count = count + length;
+	}
+
+	@Override
+	public void write(final String s) throws IOException {
+		int length = s.length();
+		if (length > buffer.length - count) {
+			drain();
+			if (length > buffer.length) {
+				writer.write(s);
+				return;
+			}
+		}
+		s.getChars(0, length, buffer, count);
+		count = count + length;
+	}
+
+	/**
+	 * Hand the buffered characters to the Writer.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	private void drain() throws IOException {
+		if (count > 0) {
+			writer.write(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drain();
+		writer.flush();
+	}
+
+	/**
+	 * Flush, the Writer belongs to the caller and is left open.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	@Override
+	public void close() throws IOException {
+		flush();
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>
+ * Tests of ColumnRule, each input is one line holding the column alone.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public class ColumnRuleTest extends TestCase {
+
+	/**
+	 * Write the column out of the values of each input.
+	 *
+	 * @param rule ColumnRule
+	 * @param values Array of String line of each input, in precedence order
+	 * @return String value written
+	 * @throws IOException If any error at File I/O level
+	 */
+	private static String write(final ColumnRule rule, final String... values)
+			throws IOException {
+		CsvRecord[] records = new CsvRecord[values.length];
+		int[] from = new int[values.length];
+		int[] fields = new int[values.length];
+		CsvTokenizer tokenizer;
+		char[] line;
+		for (int index = 0; index < values.length; index++) {
+			line = values[index].toCharArray();
+			tokenizer = new CsvTokenizer();
+			tokenizer.tokenize(line, line.length);
+			records[index] = tokenizer;
+			from[index] = index;
+		}
+		TextSink out = new TextSink();
+		rule.write(records, from, fields, out);
+		return out.toString();
+	}
+
+	/**
+	 * TRIM collapses the blanks and quotes again with the quotes doubled.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	public void testTrim() throws IOException {
+		ColumnRule rule = ColumnRule.of("trim", null);
+		assertEquals("\"a b\"", write(rule, "  a   b  ", "x"));
+		assertEquals("ab", write(rule, "\" ab \""));
+		assertEquals("\"a, b\"", write(rule, "\"a,   b\""));
+		assertEquals("\"say \"\"hi\"\"\"", write(rule, "\"say \"\"hi\"\"\""));
+		assertEquals("\"x \"\" y\"", write(rule, "x  \"\"  y"));
+		assertEquals("", write(rule, ""));
+	}
+
+	/**
+	 * LATEST_DATE takes dates with or without a time.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	public void testLatestDate() throws IOException {
+		ColumnRule rule = ColumnRule.of("LATEST_DATE", null);
+		assertEquals("2020-01-02", write(rule, "2020-01-01 23:59",
+			"2020-01-02"));
+		assertEquals("\"2020-01-01T10:00\"", write(rule, "2020-01-01",
+			"\"2020-01-01T10:00\"", "soon"));
+		assertEquals("unknown", write(rule, "unknown", "later"));
+	}
+
+}
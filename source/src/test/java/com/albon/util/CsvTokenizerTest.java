@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>
+ * Tests of CsvTokenizer and Utf8CsvTokenizer against the getData fix-ups
+ * they replace, kept here as they were.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public class CsvTokenizerTest extends TestCase {
+
+	/**
+	 * Lines of the edge cases.
+	 */
+	private static final String[] LINES = {
+		"",
+		"a",
+		"a,b,c",
+		"a,",
+		",,",
+		"1,\"\",3",
+		"\"\",x",
+		"\"",
+		"\"x\",,",
+		"\"a\",\"b,c\",d",
+		"\"a \"\"q\"\" b\",x",
+		"\"open,b",
+		"\"a\"  ,  b",
+		" a , b  b ,c",
+		"a\tb, c",
+		"5\" screen,40",
+		"x \"\" y,z",
+		"été,\"€ 5\",😀",
+	};
+
+	/**
+	 * Get a field the way getData did.
+	 *
+	 * @param line String
+	 * @param indexes Array of int, the offset of the field then of the next
+	 * @return String
+	 */
+	private static String getData(final String line, final int[] indexes) {
+		final char cDoubleQoute = '"';
+		char c;
+		int offset = indexes[0];
+		int limit = line.length();
+		boolean inLiteral = false;
+		String s = "";
+		if (offset < limit) {
+			if (cDoubleQoute == line.charAt(offset)) {
+				inLiteral = true;
+				offset = offset + 1;
+				s = s + cDoubleQoute;
+				// Check two-double-quote
+				if (offset < limit) {
+					c = line.charAt(offset);
+					if (c == cDoubleQoute) {
+						s = s + cDoubleQoute;
+						offset = offset + 1;
+						inLiteral = false;
+					}
+				}
+			}
+		}
+		for ( ; offset < limit; ) {
+
+			c = line.charAt(offset);
+			offset = offset + 1;
+
+			if (c == ',' && inLiteral) {
+				s = s + c;
+			}
+			else {
+				// Check for two-double-quote
+				if (c == cDoubleQoute
+				&& ((offset < limit)
+				&& cDoubleQoute == line.charAt(offset))
+				) {
+					s = s + "\"\"";
+					offset = offset + 1;
+					continue;
+				}
+				else
+				if ((c == cDoubleQoute)
+				|| (c == ',')
+				) {
+					if (c == cDoubleQoute) {
+						s = s + c;
+						offset = offset + 1;
+					}
+
+					while (offset < limit) {
+						c = line.charAt(offset);
+						if (c == ' '
+						|| c == '\t'
+						) {
+							offset = offset + 1;
+						}
+						else {
+							break;
+						}
+					}
+
+					break;
+				}
+				s = s + c;
+			}
+		}
+		indexes[0] = offset;
+
+		// Fix in literal delimiter
+		String p;
+		if (inLiteral) {
+			limit = s.length() - 1;
+			if (limit < 1) {
+				return "";
+			}
+			if (s.charAt(limit) == cDoubleQoute) {
+				return s;
+			}
+			p = s + cDoubleQoute;
+			return p;
+		}
+
+		// Fix string with embedded space
+		p = s.trim();
+		limit = p.length();
+		if (limit > 0) {
+			offset = p.indexOf(' ');
+			if (offset > 0) {
+				return "\"" + p + "\"";
+			}
+
+			return p;
+		}
+
+		return "";
+	}
+
+	/**
+	 * Get the fields of a line the way getCsvData did, without its check of
+	 * at least two fields.
+	 *
+	 * @param line String
+	 * @return Array of String
+	 */
+	private static String[] getCsvData(final String line) {
+		List<String> datas = new ArrayList<String>();
+		int[] indexes = {0, 0};
+		int index = 0;
+		int offset;
+		String s;
+		do {
+			indexes[0] = index;
+			s = getData(line, indexes);
+			offset = indexes[0];
+			if (offset == index) {
+				break;
+			}
+			datas.add(s);
+			index = offset;
+		} while (offset < line.length());
+		return datas.toArray(new String[datas.size()]);
+	}
+
+	/**
+	 * FNV-1a hash of a String, as hashKey mixes it.
+	 *
+	 * @param s String
+	 * @param pHash long hash of the fields before
+	 * @return long
+	 */
+	private static long fnv(final String s, final long pHash) {
+		long hash = pHash;
+		for (int i = 0; i < s.length(); i++) {
+			hash = (hash ^ s.charAt(i)) * 0x100000001B3L;
+		}
+		return (hash ^ s.length()) * 0x100000001B3L;
+	}
+
+	/**
+	 * Fields are those of getData, each written and hashed the same way.
+	 */
+	public void testSameAsGetData() {
+		CsvTokenizer tokenizer = new CsvTokenizer();
+		String[] expected;
+		int count;
+		for (String line : LINES) {
+			expected = getCsvData(line);
+			count = tokenizer.tokenize(line);
+			assertEquals(line, Arrays.asList(expected),
+				Arrays.asList(tokenizer.toArray()));
+			for (int index = 0; index < count; index++) {
+				assertEquals(line, expected[index].length(),
+					tokenizer.getFieldLength(index));
+				assertEquals(line, expected[index].hashCode(),
+					tokenizer.hashCode(index));
+			}
+		}
+	}
+
+	/**
+	 * A line read with an offset into a larger buffer gives the same fields.
+	 */
+	public void testOffset() {
+		CsvTokenizer tokenizer = new CsvTokenizer();
+		char[] buffer = "xx\"a\",b c,d\nyy".toCharArray();
+		assertEquals(3, tokenizer.tokenize(buffer, 2, 9));
+		assertEquals(Arrays.asList("\"a\"", "\"b c\"", "d"),
+			Arrays.asList(tokenizer.toArray()));
+	}
+
+	/**
+	 * The UTF-8 tokenizer gives the fields of the char one.
+	 */
+	public void testUtf8SameAsChars() {
+		Charset utf8 = Charset.forName("UTF-8");
+		CsvTokenizer chars = new CsvTokenizer();
+		Utf8CsvTokenizer bytes = new Utf8CsvTokenizer();
+		byte[] line;
+		for (String s : LINES) {
+			line = s.getBytes(utf8);
+			assertEquals(s, chars.tokenize(s), bytes.tokenize(line, line.length));
+			assertEquals(s, Arrays.asList(chars.toArray()),
+				Arrays.asList(bytes.toArray()));
+		}
+	}
+
+	/**
+	 * The key hash of a field is the hash of its KeyJoin key.
+	 */
+	public void testHashKey() {
+		CsvTokenizer tokenizer = new CsvTokenizer();
+		int count;
+		for (String line : LINES) {
+			count = tokenizer.tokenize(line);
+			for (int index = 0; index < count; index++) {
+				assertEquals(line, fnv(KeyJoin.key(tokenizer, index), 7L),
+					tokenizer.hashKey(index, 7L));
+			}
+		}
+		tokenizer.tokenize("\"1\",\"a\"\"b\"");
+		assertEquals(fnv("1", 7L), tokenizer.hashKey(0, 7L));
+		assertEquals(fnv("a\"b", 7L), tokenizer.hashKey(1, 7L));
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>
+ * Tests of DedupeOutputSink, records are those ended by endRow whatever
+ * their quotes.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public class DedupeOutputSinkTest extends TestCase {
+
+	/**
+	 * Write the header and the records, each ended by endRow, to a sink
+	 * dropping the records whose first column was written already.
+	 *
+	 * @param pSink TextSink destination
+	 * @param pRecords Array of String records without line feed
+	 * @return DedupeOutputSink, closed
+	 * @throws IOException If any error at File I/O level
+	 */
+	private static DedupeOutputSink dedupe(final TextSink pSink,
+			final String... pRecords) throws IOException {
+		OffHeapLongSet keys = new OffHeapLongSet(null);
+		DedupeOutputSink sink = new DedupeOutputSink(pSink, keys,
+			new int[] {0}, null);
+		try {
+			sink.write("ID,Name,Size\n");
+			sink.endHeader();
+			for (String record : pRecords) {
+				sink.write(record);
+				sink.endRow();
+			}
+			sink.close();
+		} finally {
+			keys.close();
+		}
+		return sink;
+	}
+
+	/**
+	 * A legacy row with a lone double quote does not glue the next records.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	public void testLoneQuote() throws IOException {
+		TextSink out = new TextSink();
+		DedupeOutputSink sink = dedupe(out, "4,5\" screen,40", "1,a,10",
+			"1,a,10", "2,b,20", "4,5\" screen,40");
+		assertEquals(2L, sink.getDropped());
+		assertEquals(3L, out.getRows());
+		assertEquals("ID,Name,Size\n4,5\" screen,40\n1,a,10\n2,b,20\n",
+			out.toString());
+	}
+
+	/**
+	 * A key is compared without its double quotes, as the join compares it.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	public void testQuotedKey() throws IOException {
+		TextSink out = new TextSink();
+		DedupeOutputSink sink = dedupe(out, "\"1\",a,10", "1,b,20",
+			"\"2\"\"x\",c,30", "\"2\"\"x\",d,40", "\"\",e,50", ",f,60");
+		assertEquals(3L, sink.getDropped());
+		assertEquals("ID,Name,Size\n\"1\",a,10\n\"2\"\"x\",c,30\n\"\",e,50\n",
+			out.toString());
+	}
+
+	/**
+	 * A quoted field with a line feed stays in one record.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	public void testMultiLine() throws IOException {
+		TextSink out = new TextSink();
+		DedupeOutputSink sink = dedupe(out, "1,\"a\nb\",10", "1,\"a\nb\",10",
+			"2,b,20");
+		assertEquals(1L, sink.getDropped());
+		assertEquals("ID,Name,Size\n1,\"a\nb\",10\n2,b,20\n",
+			out.toString());
+	}
+
+	/**
+	 * Records merged apart keep their ends through CharArrayOutputSink.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	public void testWriteTo() throws IOException {
+		TextSink out = new TextSink();
+		OffHeapLongSet keys = new OffHeapLongSet(null);
+		CharArrayOutputSink chunk = new CharArrayOutputSink(16);
+		DedupeOutputSink sink = new DedupeOutputSink(out, keys,
+			new int[] {0}, null);
+		try {
+			chunk.write("4,5\" screen,40");
+			chunk.endRow();
+			chunk.write("4,5\" screen,40");
+			chunk.endRow();
+			chunk.writeTo(sink);
+			sink.close();
+		} finally {
+			keys.close();
+		}
+		assertEquals(1L, sink.getDropped());
+		assertEquals("4,5\" screen,40\n", out.toString());
+	}
+
+	/**
+	 * Characters not ended by endRow are written on close.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 */
+	public void testCloseWritesPending() throws IOException {
+		TextSink out = new TextSink();
+		OffHeapLongSet keys = new OffHeapLongSet(null);
+		DedupeOutputSink sink = new DedupeOutputSink(out, keys,
+			new int[] {0}, null);
+		try {
+			sink.write("9,\"open");
+			sink.close();
+		} finally {
+			keys.close();
+		}
+		assertEquals("9,\"open", out.toString());
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>
+ * Tests of ExternalSorter, in memory and spilled into more runs than are
+ * merged at once.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public class ExternalSorterTest extends TestCase {
+
+	/**
+	 * Number of records sorted, more than 64 runs of one record.
+	 */
+	private static final int RECORDS = 200;
+
+	/**
+	 * Sort records whose keys repeat, then check each record comes after
+	 * the records of a smaller key and of the same key read before.
+	 *
+	 * @param memoryBudget long bytes of records kept in memory
+	 * @throws IOException If any error at File I/O level
+	 * @throws MergeCsvException If the header is invalid
+	 */
+	private static void sort(final long memoryBudget)
+			throws IOException, MergeCsvException {
+		StringBuilder sb = new StringBuilder("Key,Seq\n");
+		for (int seq = 0; seq < RECORDS; seq++) {
+			// Keys k0 to k6, quoted every other time
+			if (seq % 2 == 0) {
+				sb.append("\"k").append(seq * 5 % 7).append('"');
+			}
+			else {
+				sb.append('k').append(seq * 5 % 7);
+			}
+			sb.append(',').append(seq).append('\n');
+		}
+		CsvInput input = new CsvInput("input",
+			new CsvLineReader(new StringReader(sb.toString())));
+		ExternalSorter.SortedRecords sorted = null;
+		ExternalSorter.Record record;
+		String key = "";
+		int last = -1;
+		int seq;
+		int count = 0;
+		try {
+			input.readHeader();
+			sorted = new ExternalSorter(memoryBudget, null).sort(input, 0);
+			while ((record = sorted.next()) != null) {
+				seq = Integer.parseInt(record.getLine()
+					.substring(record.getLine().indexOf(',') + 1));
+				assertTrue(record.getKey(), record.getKey().compareTo(key) >= 0);
+				if (!record.getKey().equals(key)) {
+					key = record.getKey();
+					last = -1;
+				}
+				assertTrue(record.getLine(), seq > last);
+				assertEquals("k" + (seq * 5 % 7), key);
+				last = seq;
+				count = count + 1;
+			}
+		} finally {
+			if (sorted != null) {
+				sorted.close();
+			}
+			input.close();
+		}
+		assertEquals(RECORDS, count);
+	}
+
+	/**
+	 * Records sorted in memory keep their order on equal keys.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 * @throws MergeCsvException If the header is invalid
+	 */
+	public void testStableInMemory() throws IOException, MergeCsvException {
+		sort(1L << 20);
+	}
+
+	/**
+	 * Records spilled and merged level by level keep their order on equal
+	 * keys.
+	 *
+	 * @throws IOException If any error at File I/O level
+	 * @throws MergeCsvException If the header is invalid
+	 */
+	public void testStableSpilled() throws IOException, MergeCsvException {
+		sort(1L);
+	}
+
+}
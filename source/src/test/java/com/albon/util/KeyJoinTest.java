@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>
+ * Tests of HashJoin and SortMergeJoin, both write the same records but not
+ * in the same order: the hash join keeps the order of input A, the sort join
+ * writes by key.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public class KeyJoinTest extends TestCase {
+
+	/**
+	 * Input A, keys quoted or not, missing and repeated.
+	 */
+	private static final String A = "ID,Name,Size\n"
+		+ "3,c,30\n"
+		+ "\"1\",a,10\n"
+		+ "2,\"b, jr\",20\n"
+		+ "5,e,50\n"
+		+ "\"6\"\"x\",f,60\n"
+		+ "2,b2,21\n"
+		+ ",g,70\n";
+
+	/**
+	 * Input B, matching A on some keys only.
+	 */
+	private static final String B = "ID,Email,Size\n"
+		+ "1,a@x,11\n"
+		+ "\"2\",b@x,22\n"
+		+ "4,d@x,40\n"
+		+ "\"6\"\"x\",f@x,61\n"
+		+ "\"\",g@x,71\n";
+
+	/**
+	 * Header of the output.
+	 */
+	private static final String TEMPLATE = "ID,Name,Email,Size\n";
+
+	/**
+	 * Merge A and B joined on ID.
+	 *
+	 * @param type JoinType
+	 * @param sortJoin boolean true for the sort join
+	 * @return List of String lines, sorted
+	 * @throws MergeCsvException If the merge fails
+	 */
+	private static List<String> join(final JoinType type,
+			final boolean sortJoin) throws MergeCsvException {
+		MergeOptions options = new MergeOptions();
+		options.setJoinKey("ID");
+		options.setJoinType(type);
+		options.setSortJoin(sortJoin);
+		TextSink out = new TextSink();
+		MergeEngine engine = new MergeEngine(options);
+		try {
+			engine.merge(CsvSource.of(new StringReader(TEMPLATE), "T"),
+				new CsvSource[] {
+					CsvSource.of(new StringReader(A), "A"),
+					CsvSource.of(new StringReader(B), "B"),
+				}, out);
+		} finally {
+			engine.close();
+		}
+		List<String> lines = Arrays.asList(out.toString().split("\n"));
+		assertEquals("ID,Name,Email,Size", lines.get(0));
+		Collections.sort(lines);
+		return lines;
+	}
+
+	/**
+	 * Both joins write the same records for each join type.
+	 *
+	 * @throws MergeCsvException If the merge fails
+	 */
+	public void testSameRecords() throws MergeCsvException {
+		for (JoinType type : JoinType.values()) {
+			assertEquals(type.name(), join(type, false), join(type, true));
+		}
+	}
+
+	/**
+	 * Keys match without their double quotes, empty keys match nothing.
+	 *
+	 * @throws MergeCsvException If the merge fails
+	 */
+	public void testQuotedKeys() throws MergeCsvException {
+		assertEquals(Arrays.asList("\"1\",a,a@x,10", "\"2\",\"b, jr\",b@x,20",
+			"\"2\",b2,b@x,21", "\"6\"\"x\",f,f@x,60", "ID,Name,Email,Size"),
+			join(JoinType.INNER, true));
+	}
+
+}
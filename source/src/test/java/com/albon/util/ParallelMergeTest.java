@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+/**
+ * <p>
+ * Tests of ParallelMerge, records merged on several threads are written in
+ * the order of the inputs.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+public class ParallelMergeTest extends TestCase {
+
+	/**
+	 * Number of records of each input, several batches.
+	 */
+	private static final int RECORDS = 5000;
+
+	/**
+	 * Merge two inputs by line position.
+	 *
+	 * @param threads int number of threads
+	 * @return String output
+	 * @throws MergeCsvException If the merge fails
+	 */
+	private static String merge(final int threads) throws MergeCsvException {
+		StringBuilder a = new StringBuilder("ID,Name,Size\n");
+		StringBuilder b = new StringBuilder("ID,Email,Size\n");
+		for (int seq = 0; seq < RECORDS; seq++) {
+			a.append(seq).append(",\"n ").append(seq).append("\",")
+				.append(seq % 10).append('\n');
+			// Every third record of B lacks its size and is ignored
+			if (seq % 3 == 0) {
+				b.append(seq).append(",e").append(seq).append("@x\n");
+			}
+			else {
+				b.append(seq).append(",e").append(seq).append("@x,")
+					.append(seq % 100).append('\n');
+			}
+		}
+		MergeOptions options = new MergeOptions();
+		options.setThreads(threads);
+		TextSink out = new TextSink();
+		MergeEngine engine = new MergeEngine(options);
+		MergeResult result;
+		try {
+			result = engine.merge(
+				CsvSource.of(new StringReader("ID,Name,Email,Size\n"), "T"),
+				new CsvSource[] {
+					CsvSource.of(new StringReader(a.toString()), "A"),
+					CsvSource.of(new StringReader(b.toString()), "B"),
+				}, out);
+		} finally {
+			engine.close();
+		}
+		assertEquals(RECORDS, result.getCounters());
+		assertEquals((RECORDS + 2) / 3, result.getIgnored());
+		assertEquals(RECORDS - result.getIgnored(), result.getRows());
+		return out.toString();
+	}
+
+	/**
+	 * Four threads write what one thread writes.
+	 *
+	 * @throws MergeCsvException If the merge fails
+	 */
+	public void testSameAsOneThread() throws MergeCsvException {
+		assertEquals(merge(1), merge(4));
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2019 Teddy Albon Sr.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.albon.util;
+
+/**
+ * <p>
+ * This TextSink class is the destination of the tests, it keeps everything
+ * written in memory.
+ * </p>
+ * <p>
+ * <strong>Thread Safety: </strong>This class is mutable thus not thread safe.
+ * </p>
+ *
+ * @author Teddy Albon Sr &lt;tmalbonph@yahoo.com&gt;
+ * @version 1.0
+ */
+final class TextSink extends OutputSink {
+
+	/**
+	 * Characters written.
+	 */
+	private final StringBuilder text = new StringBuilder();
+
+	/**
+	 * Constructor.
+	 */
+	TextSink() {
+		super(0);
+	}
+
+	@Override
+	public void write(final char c) {
+		text.append(c);
+	}
+
+	@Override
+	public void write(final char[] buffer, final int offset,
+			final int length) {
+		text.append(buffer, offset, length);
+	}
+
+	@Override
+	public void write(final String s) {
+		text.append(s);
+	}
+
+	@Override
+	public void flush() {
+		// Nothing to do
+	}
+
+	@Override
+	public void close() {
+		// Nothing to do
+	}
+
+	/**
+	 * Get the characters written.
+	 *
+	 * @return String
+	 */
+	@Override
+	public String toString() {
+		return text.toString();
+	}
+
+}